@@ -0,0 +1,49 @@
+package pw.wunderlich.lightbeat.audio;
+
+import org.openjdk.jmh.annotations.*;
+import pw.wunderlich.lightbeat.config.FixedConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link BeatInterpreter#interpretValue(double)} on the chunk amplitudes of a synthesized signal.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BeatInterpreterBenchmark {
+
+    private double[] amplitudes;
+    private int amplitudeIndex;
+    private long time;
+
+    private BeatInterpreter beatInterpreter;
+
+
+    @Setup
+    public void setUp() {
+        byte[][] chunks = LBAudioReaderBenchmark.createChunks(LBAudioReaderBenchmark.createSignal());
+        amplitudes = new double[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            double sum = 0d;
+            for (int j = 0; j < chunks[i].length; j += 2) {
+                double sample = (short) ((chunks[i][j] & 0xFF) | (chunks[i][j + 1] << 8)) / (double) Short.MAX_VALUE;
+                sum += sample * sample;
+            }
+            amplitudes[i] = Math.sqrt(sum / (chunks[i].length / 2d));
+        }
+
+        beatInterpreter = new BeatInterpreter(new FixedConfig(false), LBAudioReader.AMPLITUDES_PER_SECOND, () -> time);
+    }
+
+    @Benchmark
+    public BeatEvent interpretValue() {
+        double amplitude = amplitudes[amplitudeIndex];
+        amplitudeIndex = (amplitudeIndex + 1) % amplitudes.length;
+        time += 1000 / LBAudioReader.AMPLITUDES_PER_SECOND;
+        return beatInterpreter.interpretValue(amplitude);
+    }
+}
@@ -0,0 +1,115 @@
+package pw.wunderlich.lightbeat.audio;
+
+import org.openjdk.jmh.annotations.*;
+import pw.wunderlich.lightbeat.audio.device.AudioDevice;
+import pw.wunderlich.lightbeat.audio.device.LBAudioFormat;
+import pw.wunderlich.lightbeat.config.FixedConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures processing of a single audio chunk by {@link LBAudioReader}, from raw PCM data to the
+ * {@link BeatInterpreter} decision, with and without bass only mode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LBAudioReaderBenchmark {
+
+    static final LBAudioFormat FORMAT = new LBAudioFormat(SyntheticSignal.SAMPLE_RATE, true, 1, 2);
+    static final int BYTES_PER_CHUNK = (int) (FORMAT.sampleRate() * FORMAT.getBytesPerFrame()) / LBAudioReader.AMPLITUDES_PER_SECOND;
+
+    @Param({"false", "true"})
+    public boolean bassOnlyMode;
+
+    private byte[][] chunks;
+    private int chunkIndex;
+    private long time;
+
+    private BenchmarkDevice device;
+    private LBAudioReader audioReader;
+
+
+    @Setup
+    public void setUp() {
+        chunks = createChunks(createSignal());
+        device = new BenchmarkDevice();
+        audioReader = new LBAudioReader(new FixedConfig(bassOnlyMode), () -> time);
+        audioReader.start(device);
+    }
+
+    @TearDown
+    public void tearDown() {
+        audioReader.stop();
+    }
+
+    @Benchmark
+    public void processChunk() {
+        byte[] chunk = chunks[chunkIndex];
+        chunkIndex = (chunkIndex + 1) % chunks.length;
+        time += 1000 / LBAudioReader.AMPLITUDES_PER_SECOND;
+        device.listener.onDataAvailable(chunk, chunk.length);
+    }
+
+    static SyntheticSignal createSignal() {
+        return SyntheticSignal.builder()
+                .pad(0.05)
+                .hats(0.2)
+                .kicks(128, 30, 0.5)
+                .build();
+    }
+
+    static byte[][] createChunks(SyntheticSignal signal) {
+        byte[] pcm = signal.toPcm();
+        byte[][] chunks = new byte[pcm.length / BYTES_PER_CHUNK][BYTES_PER_CHUNK];
+        for (int i = 0; i < chunks.length; i++) {
+            System.arraycopy(pcm, i * BYTES_PER_CHUNK, chunks[i], 0, BYTES_PER_CHUNK);
+        }
+        return chunks;
+    }
+
+
+    /**
+     * Device that is fed by the benchmark itself.
+     */
+    private static class BenchmarkDevice implements AudioDevice {
+
+        private AudioDataListener listener;
+        private boolean isOpen;
+
+        @Override
+        public String getName() {
+            return "Benchmark";
+        }
+
+        @Override
+        public LBAudioFormat getAudioFormat() {
+            return FORMAT;
+        }
+
+        @Override
+        public void setAudioListener(AudioDataListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public boolean start() {
+            isOpen = true;
+            return true;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return isOpen;
+        }
+
+        @Override
+        public boolean stop() {
+            isOpen = false;
+            return true;
+        }
+    }
+}
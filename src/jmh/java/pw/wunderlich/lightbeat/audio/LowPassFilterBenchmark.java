@@ -0,0 +1,38 @@
+package pw.wunderlich.lightbeat.audio;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the FFT based low pass filter that is applied to every chunk in bass only mode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LowPassFilterBenchmark {
+
+    private double[] samples;
+    private double[] buffer;
+
+
+    @Setup
+    public void setUp() {
+        byte[] chunk = LBAudioReaderBenchmark.createChunks(LBAudioReaderBenchmark.createSignal())[0];
+        samples = new double[chunk.length / 2];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) ((chunk[i * 2] & 0xFF) | (chunk[i * 2 + 1] << 8)) / (double) Short.MAX_VALUE;
+        }
+        buffer = new double[samples.length];
+    }
+
+    @Benchmark
+    public double[] lowPassFilter() {
+        System.arraycopy(samples, 0, buffer, 0, samples.length);
+        LBAudioReader.lowPassFilter(buffer, LBAudioReaderBenchmark.FORMAT);
+        return buffer;
+    }
+}
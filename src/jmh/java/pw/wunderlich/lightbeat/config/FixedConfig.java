@@ -0,0 +1,87 @@
+package pw.wunderlich.lightbeat.config;
+
+import java.util.List;
+
+/**
+ * {@link Config} that only provides a fixed {@link ConfigSnapshot}, so benchmarks neither depend on
+ * the stored preferences nor measure mock overhead.
+ */
+public class FixedConfig implements Config {
+
+    private final ConfigSnapshot snapshot;
+
+
+    public FixedConfig(boolean bassOnlyMode) {
+        this.snapshot = new ConfigSnapshot(5, false, 200, bassOnlyMode, false, 0, 1, 254, 5, 5, 5, 3, null);
+    }
+
+    @Override
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public String get(ConfigNode node) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void put(ConfigNode node, String value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getInt(ConfigNode node) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getDefaultInt(ConfigNode node) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void putInt(ConfigNode node, int value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getLong(ConfigNode node) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void putLong(ConfigNode node, long value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean getBoolean(ConfigNode node) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean getDefaultBoolean(ConfigNode node) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void putBoolean(ConfigNode node, boolean value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<String> getStringList(ConfigNode node) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void putList(ConfigNode node, List<?> list) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void remove(ConfigNode node) {
+        throw new UnsupportedOperationException();
+    }
+}
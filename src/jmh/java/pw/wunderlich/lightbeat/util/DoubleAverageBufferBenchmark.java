@@ -0,0 +1,64 @@
+package pw.wunderlich.lightbeat.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures adding a value and reading the average, for {@link DoubleAverageBuffer} with and without
+ * max determination and for {@link DoubleStatisticsBuffer}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DoubleAverageBufferBenchmark {
+
+    private static final int BUFFER_SIZE = 150;
+
+    private final double[] values = new double[1024];
+    private int valueIndex;
+
+    private DoubleAverageBuffer averageBuffer;
+    private DoubleAverageBuffer averageBufferWithoutMax;
+    private DoubleStatisticsBuffer statisticsBuffer;
+
+
+    @Setup
+    public void setUp() {
+        Random rnd = new Random(1);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rnd.nextDouble();
+        }
+
+        averageBuffer = new DoubleAverageBuffer(BUFFER_SIZE);
+        averageBufferWithoutMax = new DoubleAverageBuffer(BUFFER_SIZE, false);
+        statisticsBuffer = new DoubleStatisticsBuffer(BUFFER_SIZE);
+    }
+
+    @Benchmark
+    public double averageBuffer() {
+        averageBuffer.add(nextValue());
+        return averageBuffer.getCurrentAverage();
+    }
+
+    @Benchmark
+    public double averageBufferWithoutMax() {
+        averageBufferWithoutMax.add(nextValue());
+        return averageBufferWithoutMax.getCurrentAverage();
+    }
+
+    @Benchmark
+    public double statisticsBuffer() {
+        statisticsBuffer.add(nextValue());
+        return statisticsBuffer.getCurrentAverage();
+    }
+
+    private double nextValue() {
+        valueIndex = (valueIndex + 1) & (values.length - 1);
+        return values[valueIndex];
+    }
+}
@@ -0,0 +1,80 @@
+package pw.wunderlich.lightbeat.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.*;
+
+/**
+ * Measures a strobe beat on 1k lights, each light cancelling its running strobe and scheduling a new one
+ * with a delay between 250 and 500 ms, like the strobe controller does. Compares the {@link TimerWheel}
+ * with a single threaded {@link ScheduledThreadPoolExecutor}, which keeps cancelled futures in its heap
+ * until their deadline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimerWheelBenchmark {
+
+    private static final int LIGHTS = 1000;
+
+    @Param({"wheel", "executor"})
+    public String scheduler;
+
+    private final long[] delays = new long[1024];
+    private int delayIndex;
+
+    private ExecutorService workerExecutor;
+    private TimerWheel timerWheel;
+    private ScheduledThreadPoolExecutor scheduledExecutor;
+    private ScheduledFuture<?>[] strobes;
+
+
+    @Setup
+    public void setUp() {
+        Random rnd = new Random(1);
+        for (int i = 0; i < delays.length; i++) {
+            delays[i] = 250L + rnd.nextInt(251);
+        }
+
+        workerExecutor = Executors.newCachedThreadPool();
+        timerWheel = new TimerWheel(workerExecutor);
+        scheduledExecutor = new ScheduledThreadPoolExecutor(1);
+        strobes = new ScheduledFuture<?>[LIGHTS];
+    }
+
+    @TearDown
+    public void tearDown() {
+        timerWheel.stop();
+        scheduledExecutor.shutdownNow();
+        workerExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public ScheduledFuture<?>[] strobeBeat() {
+        boolean useWheel = scheduler.equals("wheel");
+        for (int light = 0; light < LIGHTS; light++) {
+            if (strobes[light] != null) {
+                strobes[light].cancel(false);
+            }
+
+            long delay = nextDelay();
+            strobes[light] = useWheel
+                    ? timerWheel.schedule(TimerWheelBenchmark::strobe, delay, TimeUnit.MILLISECONDS)
+                    : scheduledExecutor.schedule(() -> workerExecutor.submit(TimerWheelBenchmark::strobe), delay, TimeUnit.MILLISECONDS);
+        }
+        return strobes;
+    }
+
+    private static void strobe() {
+        // light update is not part of the measurement
+    }
+
+    private long nextDelay() {
+        delayIndex = (delayIndex + 1) & (delays.length - 1);
+        return delays[delayIndex];
+    }
+}
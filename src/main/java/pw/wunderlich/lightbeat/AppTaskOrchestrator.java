@@ -3,53 +3,130 @@ package pw.wunderlich.lightbeat;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pw.wunderlich.lightbeat.util.AdaptiveLimiter;
+import pw.wunderlich.lightbeat.util.Clock;
+import pw.wunderlich.lightbeat.util.TaskScheduler;
+import pw.wunderlich.lightbeat.util.TimerWheel;
+import pw.wunderlich.lightbeat.util.VirtualClock;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
 import java.util.concurrent.*;
+import java.util.function.Supplier;
 
 /**
- * Orchestrates application-wide task execution using a combination of a scheduled executor
+ * Orchestrates application-wide task execution using a combination of a {@link TimerWheel}
  * for timed tasks and a virtual thread executor for lightweight, concurrent task handling.
+ * The timer wheel keeps scheduling and cancelling cheap for the many short-lived light timers,
+ * such as strobes, that are created and cancelled on every beat.
  * <p>
  * Designed to efficiently manage I/O-bound operations, particularly those involving communication
  * with external devices like Hue bridges, while preventing resource exhaustion through controlled
- * concurrency limits.
+ * concurrency limits. Every bridge has its own {@link AdaptiveLimiter}, which raises the amount of
+ * concurrent commands while the bridge responds quickly and backs off once its latency grows or commands fail.
+ * Non-blocking bridge commands wait for the limiter in a queue instead of on a thread.
  * <p>
  * Provides methods to dispatch immediate tasks, schedule delayed or periodic tasks, and ensures
- * graceful shutdown of executors.
+ * graceful shutdown of executors. All tasks are instrumented, see {@link TaskMetrics}.
+ * <p>
+ * The {@link Clock} of the orchestrator is the time source for all classes that share it. An orchestrator created
+ * with a {@link VirtualClock} runs all tasks on the thread that advances the clock instead, which allows
+ * deterministic simulations that run much faster than real time.
  */
 public class AppTaskOrchestrator implements Executor, AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(AppTaskOrchestrator.class);
 
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-    private final ExecutorService workerExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Clock clock;
+    private final ExecutorService workerExecutor;
+    private final TaskScheduler scheduler;
+    private final Map<String, AdaptiveLimiter> bridgeLimiters = new ConcurrentHashMap<>();
+    private final Map<String, Queue<AsyncBridgeCommand>> waitingAsyncBridgeCommands = new ConcurrentHashMap<>();
+    private final TaskMetrics metrics;
 
     /**
-     * Limit was chosen as a trade-off to be able to handle high amounts of light to not block
+     * Initial limit was chosen as a trade-off to be able to handle high amounts of light to not block
      * during bridge communication i/o and to not overwhelm the bridge with too many commands.
+     * The limit adapts within the given bounds.
      */
     private static final int BRIDGE_CONCURRENCY_LIMIT = 8;
-    private final Semaphore bridgeAccessLimiter = new Semaphore(BRIDGE_CONCURRENCY_LIMIT);
+    private static final int BRIDGE_CONCURRENCY_LIMIT_MIN = 2;
+    private static final int BRIDGE_CONCURRENCY_LIMIT_MAX = 32;
+
 
+    public AppTaskOrchestrator() {
+        this.clock = Clock.SYSTEM;
+        this.workerExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        this.scheduler = new TimerWheel(workerExecutor);
+        this.metrics = new TaskMetrics(scheduler::getScheduledCount, this::getBridgeLimiters);
+    }
+
+    /**
+     * Creates an orchestrator for simulations, whose tasks only run while the given clock is advanced,
+     * on the advancing thread. Durations in the {@link TaskMetrics} are measured in virtual time.
+     *
+     * @param clock to take the time from and to run all tasks with
+     */
+    public AppTaskOrchestrator(VirtualClock clock) {
+        this.clock = clock;
+        this.workerExecutor = clock.getExecutor();
+        this.scheduler = clock;
+        this.metrics = new TaskMetrics(scheduler::getScheduledCount, this::getBridgeLimiters);
+    }
 
     /**
      * Submits a task to be executed on a virtual thread.
-     * Thread count will be limited by a semaphore and the set {@link #BRIDGE_CONCURRENCY_LIMIT}.
-     * To be used by threads that access the bridge.
+     * Thread count will be limited by the {@link AdaptiveLimiter} of the given bridge, starting at
+     * {@link #BRIDGE_CONCURRENCY_LIMIT}. To be used by threads that access the bridge, every task should
+     * send a single request, as its duration is used as the latency of the bridge.
      *
+     * @param bridgeId   identifies the bridge the task sends its request to, for example its address
      * @param bridgeTask The task to be executed.
      * @return a Future representing pending completion of the task
      */
-    public Future<?> dispatchBridgeCommand(Runnable bridgeTask) {
+    public Future<?> dispatchBridgeCommand(String bridgeId, Runnable bridgeTask) {
+        AdaptiveLimiter limiter = getBridgeLimiter(bridgeId);
         try {
             return dispatch(() -> {
+                long waitStartNanos = clock.nanoTime();
+                metrics.bridgeCommandsWaiting.incrementAndGet();
+                try {
+                    limiter.acquire();
+                } catch (InterruptedException e) {
+                    metrics.failedBridgeCommands.incrementAndGet();
+                    logger.warn("Could not schedule bridge command", e);
+                    return;
+                } finally {
+                    metrics.bridgeCommandsWaiting.decrementAndGet();
+                }
+
+                long executionStartNanos = clock.nanoTime();
+                metrics.bridgeWaitTime.record(executionStartNanos - waitStartNanos);
+                metrics.bridgeCommands.incrementAndGet();
+                metrics.bridgeCommandsInFlight.incrementAndGet();
+                boolean isSuccess = false;
                 try {
-                    bridgeAccessLimiter.acquire();
                     bridgeTask.run();
+                    isSuccess = true;
                 } catch (Exception e) {
+                    metrics.failedBridgeCommands.incrementAndGet();
                     logger.warn("Could not schedule bridge command", e);
                 } finally {
-                    bridgeAccessLimiter.release();
+                    long executionNanos = clock.nanoTime() - executionStartNanos;
+                    limiter.release(executionNanos, isSuccess);
+                    metrics.bridgeCommandsInFlight.decrementAndGet();
+                    metrics.bridgeExecutionTime.record(executionNanos);
+                }
+
+                // the released slot may be taken by a waiting non-blocking command
+                Queue<AsyncBridgeCommand> waitingCommands = waitingAsyncBridgeCommands.get(bridgeId);
+                if (waitingCommands != null) {
+                    startAsyncBridgeCommands(limiter, waitingCommands);
                 }
             });
         } catch (RejectedExecutionException e) {
@@ -57,6 +134,100 @@ public class AppTaskOrchestrator implements Executor, AutoCloseable {
         }
     }
 
+    /**
+     * Starts a non-blocking bridge command once the {@link AdaptiveLimiter} of the given bridge has a free slot,
+     * without occupying a thread while the command waits for a slot or for its response. Shares the limit with
+     * {@link #dispatchBridgeCommand(String, Runnable)}, the time until the returned future of the command completes
+     * is used as the latency of the bridge. Commands that wait for a slot are started in order. Commands are always
+     * started on a worker thread, never on the calling thread, so the caller may hold a lock that other commands
+     * of the same bridge need.
+     *
+     * @param bridgeId      identifies the bridge the command sends its request to, for example its address
+     * @param bridgeCommand starts the request and returns a future that completes once the response was received
+     * @return future that completes with the command, or null if the orchestrator was shut down
+     */
+    public CompletableFuture<Void> dispatchAsyncBridgeCommand(String bridgeId,
+                                                             Supplier<? extends CompletableFuture<?>> bridgeCommand) {
+        if (isShutdown()) {
+            metrics.rejectedTasks.incrementAndGet();
+            return null;
+        }
+
+        AdaptiveLimiter limiter = getBridgeLimiter(bridgeId);
+        Queue<AsyncBridgeCommand> waitingCommands = waitingAsyncBridgeCommands.computeIfAbsent(bridgeId, id -> new ArrayDeque<>());
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        long waitStartNanos = clock.nanoTime();
+        metrics.bridgeCommandsWaiting.incrementAndGet();
+
+        Runnable startCommand = () -> {
+            long executionStartNanos = clock.nanoTime();
+            metrics.bridgeCommandsWaiting.decrementAndGet();
+            metrics.bridgeWaitTime.record(executionStartNanos - waitStartNanos);
+            metrics.bridgeCommands.incrementAndGet();
+            metrics.bridgeCommandsInFlight.incrementAndGet();
+
+            CompletableFuture<?> commandFuture;
+            try {
+                commandFuture = bridgeCommand.get();
+                if (commandFuture == null) {
+                    commandFuture = CompletableFuture.failedFuture(new IllegalStateException("Bridge command returned no future"));
+                }
+            } catch (Exception e) {
+                commandFuture = CompletableFuture.failedFuture(e);
+            }
+            commandFuture.whenComplete((response, throwable) -> {
+                long executionNanos = clock.nanoTime() - executionStartNanos;
+                limiter.release(executionNanos, throwable == null);
+                metrics.bridgeCommandsInFlight.decrementAndGet();
+                metrics.bridgeExecutionTime.record(executionNanos);
+                if (throwable != null) {
+                    metrics.failedBridgeCommands.incrementAndGet();
+                    logger.warn("Bridge command failed", throwable);
+                    result.completeExceptionally(throwable);
+                } else {
+                    result.complete(null);
+                }
+                // only hands the next commands to worker threads, commands that fail right away don't recurse
+                startAsyncBridgeCommands(limiter, waitingCommands);
+            });
+        };
+
+        synchronized (waitingCommands) {
+            waitingCommands.add(new AsyncBridgeCommand(startCommand, result));
+        }
+        startAsyncBridgeCommands(limiter, waitingCommands);
+        return result;
+    }
+
+    /**
+     * Hands waiting commands to worker threads while the limiter has free slots. Doesn't run them on the current
+     * thread, as it may hold a lock that a waiting command needs.
+     */
+    private void startAsyncBridgeCommands(AdaptiveLimiter limiter, Queue<AsyncBridgeCommand> waitingCommands) {
+        while (true) {
+            AsyncBridgeCommand command;
+            synchronized (waitingCommands) {
+                if (waitingCommands.isEmpty() || !limiter.tryAcquire()) {
+                    return;
+                }
+                command = waitingCommands.poll();
+            }
+
+            try {
+                dispatch(command.start());
+            } catch (RejectedExecutionException e) {
+                limiter.cancel();
+                metrics.bridgeCommandsWaiting.decrementAndGet();
+                command.result().completeExceptionally(e);
+            }
+        }
+    }
+
+    private AdaptiveLimiter getBridgeLimiter(String bridgeId) {
+        return bridgeLimiters.computeIfAbsent(bridgeId, id -> new AdaptiveLimiter("bridge " + id,
+                BRIDGE_CONCURRENCY_LIMIT, BRIDGE_CONCURRENCY_LIMIT_MIN, BRIDGE_CONCURRENCY_LIMIT_MAX));
+    }
+
     @Override
     public void execute(@NotNull Runnable command) {
         dispatch(command);
@@ -64,14 +235,33 @@ public class AppTaskOrchestrator implements Executor, AutoCloseable {
 
     /**
      * Submits a task to be executed on a virtual thread.
-     * This bypasses the bridge-specific semaphore and is suitable for general-purpose
+     * This bypasses the bridge-specific limiter and is suitable for general-purpose
      * background tasks that don't need throttling.
      *
      * @param task the task to execute.
      * @return a Future representing pending completion of the task.
      */
     public Future<?> dispatch(Runnable task) {
-        return workerExecutor.submit(task);
+        long submitNanos = clock.nanoTime();
+        metrics.tasksInFlight.incrementAndGet();
+        try {
+            Future<?> future = workerExecutor.submit(() -> {
+                long startNanos = clock.nanoTime();
+                metrics.dispatchQueueTime.record(startNanos - submitNanos);
+                try {
+                    task.run();
+                } finally {
+                    metrics.dispatchExecutionTime.record(clock.nanoTime() - startNanos);
+                    metrics.tasksInFlight.decrementAndGet();
+                }
+            });
+            metrics.dispatchedTasks.incrementAndGet();
+            return future;
+        } catch (RejectedExecutionException e) {
+            metrics.tasksInFlight.decrementAndGet();
+            metrics.rejectedTasks.incrementAndGet();
+            throw e;
+        }
     }
 
     /**
@@ -83,11 +273,21 @@ public class AppTaskOrchestrator implements Executor, AutoCloseable {
      * @return a ScheduledFuture representing pending completion of the task, which can be used to cancel it.
      */
     public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
-        return scheduler.schedule(() -> workerExecutor.submit(task), delay, unit);
+        long plannedNanos = clock.nanoTime() + unit.toNanos(delay);
+        try {
+            return scheduler.schedule(() -> {
+                metrics.scheduleLateness.record(clock.nanoTime() - plannedNanos);
+                task.run();
+            }, delay, unit);
+        } catch (RejectedExecutionException e) {
+            metrics.rejectedTasks.incrementAndGet();
+            throw e;
+        }
     }
 
     /**
      * Schedules a periodic task to execute on a virtual thread after a given initial delay.
+     * Executions of the same task don't overlap.
      *
      * @param task         the task to execute.
      * @param initialDelay the time to delay first execution.
@@ -96,12 +296,61 @@ public class AppTaskOrchestrator implements Executor, AutoCloseable {
      * @return a ScheduledFuture representing pending completion, which can be used to cancel the periodic execution.
      */
     public ScheduledFuture<?> schedulePeriodicTask(Runnable task, long initialDelay, long period, TimeUnit unit) {
-        return scheduler.scheduleAtFixedRate(
-                () -> workerExecutor.submit(task),
-                initialDelay,
-                period,
-                unit
-        );
+        long firstPlannedNanos = clock.nanoTime() + unit.toNanos(initialDelay);
+        long periodNanos = unit.toNanos(period);
+        try {
+            return scheduler.scheduleAtFixedRate(new Runnable() {
+
+                // executions don't overlap, but may run on different threads
+                private volatile long executions = 0L;
+
+                @Override
+                public void run() {
+                    long plannedNanos = firstPlannedNanos + executions * periodNanos;
+                    executions++;
+                    metrics.periodicDrift.record(clock.nanoTime() - plannedNanos);
+                    task.run();
+                }
+            }, initialDelay, period, unit);
+        } catch (RejectedExecutionException e) {
+            metrics.rejectedTasks.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * @return clock that all time dependent classes using this orchestrator should use
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * @return current state of the concurrency limiters, keyed by bridge id
+     */
+    public Map<String, AdaptiveLimiter.Snapshot> getBridgeLimiters() {
+        Map<String, AdaptiveLimiter.Snapshot> snapshots = new TreeMap<>();
+        bridgeLimiters.forEach((bridgeId, limiter) -> snapshots.put(bridgeId, limiter.snapshot()));
+        return snapshots;
+    }
+
+    /**
+     * @return current state of the task metrics
+     */
+    public TaskMetrics.Snapshot getMetrics() {
+        return metrics.snapshot();
+    }
+
+    /**
+     * Registers the task metrics with the platform MBean server, see {@link TaskMetricsMXBean}.
+     * They are unregistered on {@link #shutdown()}.
+     */
+    public void registerMXBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(TaskMetrics.OBJECT_NAME));
+        } catch (JMException e) {
+            logger.warn("Could not register task metrics MXBean", e);
+        }
     }
 
     /**
@@ -109,9 +358,10 @@ public class AppTaskOrchestrator implements Executor, AutoCloseable {
      */
     public void shutdown() {
         logger.info("Attempting graceful shutdown of executors...");
+        unregisterMXBean();
 
+        scheduler.stop();
         workerExecutor.shutdown();
-        scheduler.shutdown();
 
         try {
             final var TIMEOUT = 5;
@@ -130,17 +380,38 @@ public class AppTaskOrchestrator implements Executor, AutoCloseable {
         }
     }
 
+    private void unregisterMXBean() {
+        try {
+            var objectName = new ObjectName(TaskMetrics.OBJECT_NAME);
+            var server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            logger.warn("Could not unregister task metrics MXBean", e);
+        }
+    }
+
     private void forceShutdown() {
+        scheduler.stop();
         workerExecutor.shutdownNow();
-        scheduler.shutdownNow();
     }
 
     public boolean isShutdown() {
-        return workerExecutor.isShutdown() || scheduler.isShutdown();
+        return workerExecutor.isShutdown() || scheduler.isStopped();
     }
 
     @Override
     public void close() {
         shutdown();
     }
+
+
+    /**
+     * Non-blocking bridge command that waits for a slot of the limiter of its bridge.
+     *
+     * @param start  takes the slot and starts the request
+     * @param result completed once the request completed
+     */
+    private record AsyncBridgeCommand(Runnable start, CompletableFuture<Void> result) {}
 }
@@ -9,6 +9,7 @@ import pw.wunderlich.lightbeat.config.LBConfig;
 import pw.wunderlich.lightbeat.gui.FrameManager;
 import pw.wunderlich.lightbeat.hue.bridge.AccessPoint;
 import pw.wunderlich.lightbeat.hue.bridge.LBHueManager;
+import pw.wunderlich.lightbeat.util.EventJournal;
 
 import java.util.Objects;
 
@@ -34,8 +35,10 @@ public class LightBeat {
     private LightBeat() {
 
         logger.info("LightBeat v{} starting", getVersion());
+        EventJournal.get().startDrainThread();
 
         final var taskOrchestrator = new AppTaskOrchestrator();
+        taskOrchestrator.registerMXBean();
         final var config = new LBConfig();
 
         final var audioReader = new LBAudioReader(config, taskOrchestrator);
@@ -0,0 +1,315 @@
+package pw.wunderlich.lightbeat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pw.wunderlich.lightbeat.audio.BeatAnalysis;
+import pw.wunderlich.lightbeat.audio.OfflineBeatAnalyzer;
+import pw.wunderlich.lightbeat.config.Config;
+import pw.wunderlich.lightbeat.config.ConfigSnapshot;
+import pw.wunderlich.lightbeat.config.LBConfig;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioSystem;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Headless entry point that analyzes audio files with the beat detection settings stored by {@link LightBeat},
+ * without playing them back. Files of a directory are spread across a {@link ForkJoinPool}, one file per task.
+ * For every file the detected beats, no beat and silence segments and a summary are written as JSON or CSV,
+ * and a summary of all files is written to {@value #SUMMARY_FILE_NAME}.
+ * <p>
+ * Usage: {@code LightBeatAnalyzer <file or directory> [output directory] [--format json|csv] [--threads n]}
+ */
+public class LightBeatAnalyzer {
+
+    private static final Logger logger = LoggerFactory.getLogger(LightBeatAnalyzer.class);
+
+    private static final String USAGE = "Usage: LightBeatAnalyzer <file or directory> [output directory] [--format json|csv] [--threads n]";
+    private static final String SUMMARY_FILE_NAME = "summary.csv";
+
+    public static void main(String[] args) {
+        Path input = null;
+        Path outputDirectory = null;
+        boolean isCsv = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--format" -> {
+                        String format = args[++i];
+                        if (!format.equals("json") && !format.equals("csv")) {
+                            throw new IllegalArgumentException("Unknown format " + format);
+                        }
+                        isCsv = format.equals("csv");
+                    }
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    default -> {
+                        if (input == null) {
+                            input = Path.of(args[i]);
+                        } else if (outputDirectory == null) {
+                            outputDirectory = Path.of(args[i]);
+                        } else {
+                            throw new IllegalArgumentException("Unexpected argument " + args[i]);
+                        }
+                    }
+                }
+            }
+
+            if (input == null || threads < 1) {
+                throw new IllegalArgumentException("No input given");
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+
+        if (outputDirectory == null) {
+            outputDirectory = Files.isDirectory(input) ? input : input.toAbsolutePath().getParent();
+        }
+
+        try {
+            int failed = new LightBeatAnalyzer(new LBConfig(), outputDirectory, isCsv).run(input, threads);
+            System.exit(failed > 0 ? 2 : 0);
+        } catch (IOException e) {
+            logger.error("Couldn't analyze {}", input, e);
+            System.exit(1);
+        }
+    }
+
+
+    private final Config config;
+    private final OfflineBeatAnalyzer analyzer;
+    private final Path outputDirectory;
+    private final boolean isCsv;
+
+
+    LightBeatAnalyzer(Config config, Path outputDirectory, boolean isCsv) {
+        this.config = config;
+        this.analyzer = new OfflineBeatAnalyzer(config);
+        this.outputDirectory = outputDirectory;
+        this.isCsv = isCsv;
+    }
+
+    /**
+     * Analyzes the given file or all supported audio files in the given directory.
+     *
+     * @param input   file or directory
+     * @param threads parallelism of the pool the files are spread across
+     * @return amount of files that couldn't be analyzed
+     * @throws IOException if the input directory couldn't be listed or the output couldn't be written
+     */
+    int run(Path input, int threads) throws IOException {
+
+        List<Path> files = Files.isDirectory(input) ? getAudioFiles(input) : List.of(input);
+        if (files.isEmpty()) {
+            logger.warn("No supported audio files found in {}", input);
+            return 0;
+        }
+
+        ConfigSnapshot settings = config.getSnapshot();
+        logger.info("Analyzing {} files with {} threads (sensitivity {}, bass only mode {}, min time between beats {}ms)",
+                files.size(), threads, settings.beatSensitivity(), settings.beatBassOnlyMode(), settings.beatMinTimeBetween());
+
+        Files.createDirectories(outputDirectory);
+
+        long startTime = System.currentTimeMillis();
+        List<BeatAnalysis> analyses = new ArrayList<>();
+        int failed = 0;
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<BeatAnalysis>> tasks = files.stream()
+                    .map(file -> pool.submit(() -> analyzeAndWrite(file)))
+                    .toList();
+
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    analyses.add(tasks.get(i).join());
+                } catch (RuntimeException e) {
+                    logger.warn("Couldn't analyze {}", files.get(i), e);
+                    failed++;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        Files.writeString(outputDirectory.resolve(SUMMARY_FILE_NAME), toSummaryCsv(analyses), StandardCharsets.UTF_8);
+
+        long audioMillis = analyses.stream().mapToLong(BeatAnalysis::durationMillis).sum();
+        long elapsedMillis = Math.max(System.currentTimeMillis() - startTime, 1L);
+        logger.info("Analyzed {} files ({} failed) in {}ms, {}x real time",
+                analyses.size(), failed, elapsedMillis, String.format(Locale.ROOT, "%.1f", (double) audioMillis / elapsedMillis));
+        return failed;
+    }
+
+    private BeatAnalysis analyzeAndWrite(Path file) {
+        try {
+            BeatAnalysis analysis = analyzer.analyze(file);
+            String fileName = file.getFileName() + ".beats." + (isCsv ? "csv" : "json");
+            Files.writeString(outputDirectory.resolve(fileName), isCsv ? toCsv(analysis) : toJson(analysis), StandardCharsets.UTF_8);
+            logger.info("Analyzed {} ({} beats, {} bpm)", file.getFileName(), analysis.beats().size(), format(analysis.getBeatsPerMinute()));
+            return analysis;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<Path> getAudioFiles(Path directory) throws IOException {
+        Set<String> extensions = Arrays.stream(AudioSystem.getAudioFileTypes())
+                .map(AudioFileFormat.Type::getExtension)
+                .map(extension -> extension.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+        // aiff files are often named .aif
+        extensions.add("aif");
+
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> {
+                        String name = file.getFileName().toString();
+                        int extensionIndex = name.lastIndexOf('.');
+                        return extensionIndex > 0 && extensions.contains(name.substring(extensionIndex + 1).toLowerCase(Locale.ROOT));
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    static String toJson(BeatAnalysis analysis) {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"file\": \"").append(escapeJson(analysis.file().getFileName().toString())).append("\",\n");
+        json.append("  \"durationMillis\": ").append(analysis.durationMillis()).append(",\n");
+        json.append("  \"beatCount\": ").append(analysis.beats().size()).append(",\n");
+        json.append("  \"beatsPerMinute\": ").append(format(analysis.getBeatsPerMinute())).append(",\n");
+        json.append("  \"beatDensity\": ").append(format(analysis.getBeatDensity())).append(",\n");
+        json.append("  \"noBeatMillis\": ").append(analysis.getSegmentMillis(BeatAnalysis.Segment.Type.NO_BEAT)).append(",\n");
+        json.append("  \"silenceMillis\": ").append(analysis.getSegmentMillis(BeatAnalysis.Segment.Type.SILENCE)).append(",\n");
+
+        json.append("  \"beats\": [");
+        for (int i = 0; i < analysis.beats().size(); i++) {
+            BeatAnalysis.Beat beat = analysis.beats().get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"time\": ").append(beat.timeMillis())
+                    .append(", \"amplitude\": ").append(format(beat.amplitude()))
+                    .append(", \"average\": ").append(format(beat.average()))
+                    .append(", \"beatInBar\": ").append(beat.beatInBar())
+                    .append(", \"bar\": ").append(beat.bar())
+                    .append(", \"synthetic\": ").append(beat.synthetic()).append('}');
+        }
+        json.append(analysis.beats().isEmpty() ? "],\n" : "\n  ],\n");
+
+        json.append("  \"segments\": [");
+        for (int i = 0; i < analysis.segments().size(); i++) {
+            BeatAnalysis.Segment segment = analysis.segments().get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"type\": \"").append(segment.type().name().toLowerCase(Locale.ROOT))
+                    .append("\", \"start\": ").append(segment.startMillis())
+                    .append(", \"end\": ").append(segment.endMillis()).append('}');
+        }
+        json.append(analysis.segments().isEmpty() ? "],\n" : "\n  ],\n");
+
+        json.append("  \"sections\": [");
+        for (int i = 0; i < analysis.sections().size(); i++) {
+            BeatAnalysis.SectionChange change = analysis.sections().get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"time\": ").append(change.timeMillis())
+                    .append(", \"section\": \"").append(change.section().name().toLowerCase(Locale.ROOT)).append("\"}");
+        }
+        json.append(analysis.sections().isEmpty() ? "],\n" : "\n  ],\n");
+
+        json.append("  \"onsets\": [");
+        for (int i = 0; i < analysis.onsets().size(); i++) {
+            BeatAnalysis.Onset onset = analysis.onsets().get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"time\": ").append(onset.timeMillis())
+                    .append(", \"retracted\": ").append(onset.retracted()).append('}');
+        }
+        json.append(analysis.onsets().isEmpty() ? "]\n" : "\n  ]\n");
+
+        return json.append("}\n").toString();
+    }
+
+    /**
+     * One row per beat, segment, section or onset, beats and onsets only have a start time.
+     */
+    static String toCsv(BeatAnalysis analysis) {
+        StringBuilder csv = new StringBuilder("type,start_ms,end_ms,amplitude,average,beat_in_bar,bar\n");
+        for (BeatAnalysis.Beat beat : analysis.beats()) {
+            csv.append(beat.synthetic() ? "synthetic_beat," : "beat,").append(beat.timeMillis()).append(",,")
+                    .append(format(beat.amplitude())).append(',')
+                    .append(format(beat.average())).append(',')
+                    .append(beat.beatInBar()).append(',')
+                    .append(beat.bar()).append('\n');
+        }
+        for (BeatAnalysis.Segment segment : analysis.segments()) {
+            csv.append(segment.type().name().toLowerCase(Locale.ROOT)).append(',')
+                    .append(segment.startMillis()).append(',')
+                    .append(segment.endMillis()).append(",,,,\n");
+        }
+        List<BeatAnalysis.SectionChange> sections = analysis.sections();
+        for (int i = 0; i < sections.size(); i++) {
+            long end = i + 1 < sections.size() ? sections.get(i + 1).timeMillis() : analysis.durationMillis();
+            csv.append(sections.get(i).section().name().toLowerCase(Locale.ROOT)).append(',')
+                    .append(sections.get(i).timeMillis()).append(',')
+                    .append(end).append(",,,,\n");
+        }
+        for (BeatAnalysis.Onset onset : analysis.onsets()) {
+            csv.append(onset.retracted() ? "retracted_onset," : "onset,").append(onset.timeMillis()).append(",,,,,\n");
+        }
+        return csv.toString();
+    }
+
+    static String toSummaryCsv(List<BeatAnalysis> analyses) {
+        StringBuilder csv = new StringBuilder("file,duration_ms,beats,beats_per_minute,beat_density,no_beat_ms,silence_ms\n");
+        analyses.stream()
+                .sorted(Comparator.comparing(BeatAnalysis::file))
+                .forEach(analysis -> csv.append(escapeCsv(analysis.file().getFileName().toString())).append(',')
+                        .append(analysis.durationMillis()).append(',')
+                        .append(analysis.beats().size()).append(',')
+                        .append(format(analysis.getBeatsPerMinute())).append(',')
+                        .append(format(analysis.getBeatDensity())).append(',')
+                        .append(analysis.getSegmentMillis(BeatAnalysis.Segment.Type.NO_BEAT)).append(',')
+                        .append(analysis.getSegmentMillis(BeatAnalysis.Segment.Type.SILENCE)).append('\n'));
+        return csv.toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+
+    private static String escapeJson(String value) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> escaped.append("\\\"");
+                case '\\' -> escaped.append("\\\\");
+                default -> {
+                    if (c < 0x20) {
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+                }
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String escapeCsv(String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+}
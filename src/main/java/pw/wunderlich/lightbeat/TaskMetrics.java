@@ -0,0 +1,181 @@
+package pw.wunderlich.lightbeat;
+
+import pw.wunderlich.lightbeat.util.AdaptiveLimiter;
+import pw.wunderlich.lightbeat.util.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Counters and latency histograms of the {@link AppTaskOrchestrator}, updated by the orchestrator itself.
+ * Covers dispatched tasks (time until a thread picked them up and execution time), bridge commands
+ * (time waiting for the bridge access limiter and execution time) together with the current concurrency limit
+ * of every bridge, the lateness of scheduled tasks compared to their planned time and the drift of periodic
+ * tasks from their fixed rate.
+ * <p>
+ * Read via {@link AppTaskOrchestrator#getMetrics()} or JMX, see {@link TaskMetricsMXBean}.
+ */
+public class TaskMetrics implements TaskMetricsMXBean {
+
+    static final String OBJECT_NAME = "pw.wunderlich.lightbeat:type=TaskMetrics";
+
+    final AtomicLong dispatchedTasks = new AtomicLong();
+    final AtomicLong rejectedTasks = new AtomicLong();
+    final AtomicInteger tasksInFlight = new AtomicInteger();
+    final LatencyHistogram dispatchQueueTime = new LatencyHistogram();
+    final LatencyHistogram dispatchExecutionTime = new LatencyHistogram();
+
+    final AtomicLong bridgeCommands = new AtomicLong();
+    final AtomicLong failedBridgeCommands = new AtomicLong();
+    final AtomicInteger bridgeCommandsWaiting = new AtomicInteger();
+    final AtomicInteger bridgeCommandsInFlight = new AtomicInteger();
+    final LatencyHistogram bridgeWaitTime = new LatencyHistogram();
+    final LatencyHistogram bridgeExecutionTime = new LatencyHistogram();
+
+    final LatencyHistogram scheduleLateness = new LatencyHistogram();
+    final LatencyHistogram periodicDrift = new LatencyHistogram();
+
+    private final IntSupplier scheduledTasks;
+    private final Supplier<Map<String, AdaptiveLimiter.Snapshot>> bridgeLimiters;
+
+
+    /**
+     * @param scheduledTasks supplies the amount of scheduled tasks that didn't run yet
+     * @param bridgeLimiters supplies the state of the concurrency limiter of every bridge
+     */
+    TaskMetrics(IntSupplier scheduledTasks, Supplier<Map<String, AdaptiveLimiter.Snapshot>> bridgeLimiters) {
+        this.scheduledTasks = scheduledTasks;
+        this.bridgeLimiters = bridgeLimiters;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(dispatchedTasks.get(), rejectedTasks.get(), tasksInFlight.get(),
+                dispatchQueueTime.snapshot(), dispatchExecutionTime.snapshot(),
+                bridgeCommands.get(), failedBridgeCommands.get(), bridgeCommandsWaiting.get(), bridgeCommandsInFlight.get(),
+                bridgeWaitTime.snapshot(), bridgeExecutionTime.snapshot(), bridgeLimiters.get(),
+                scheduledTasks.getAsInt(), scheduleLateness.snapshot(), periodicDrift.snapshot());
+    }
+
+    @Override
+    public long getDispatchedTasks() {
+        return dispatchedTasks.get();
+    }
+
+    @Override
+    public long getRejectedTasks() {
+        return rejectedTasks.get();
+    }
+
+    @Override
+    public int getTasksInFlight() {
+        return tasksInFlight.get();
+    }
+
+    @Override
+    public double getDispatchQueueMeanMillis() {
+        return dispatchQueueTime.snapshot().meanMillis();
+    }
+
+    @Override
+    public double getDispatchQueueP99Millis() {
+        return dispatchQueueTime.snapshot().p99Millis();
+    }
+
+    @Override
+    public double getDispatchExecutionMeanMillis() {
+        return dispatchExecutionTime.snapshot().meanMillis();
+    }
+
+    @Override
+    public double getDispatchExecutionP99Millis() {
+        return dispatchExecutionTime.snapshot().p99Millis();
+    }
+
+    @Override
+    public long getBridgeCommands() {
+        return bridgeCommands.get();
+    }
+
+    @Override
+    public long getFailedBridgeCommands() {
+        return failedBridgeCommands.get();
+    }
+
+    @Override
+    public int getBridgeCommandsWaiting() {
+        return bridgeCommandsWaiting.get();
+    }
+
+    @Override
+    public int getBridgeCommandsInFlight() {
+        return bridgeCommandsInFlight.get();
+    }
+
+    @Override
+    public double getBridgeWaitMeanMillis() {
+        return bridgeWaitTime.snapshot().meanMillis();
+    }
+
+    @Override
+    public double getBridgeWaitP99Millis() {
+        return bridgeWaitTime.snapshot().p99Millis();
+    }
+
+    @Override
+    public double getBridgeExecutionMeanMillis() {
+        return bridgeExecutionTime.snapshot().meanMillis();
+    }
+
+    @Override
+    public double getBridgeExecutionP99Millis() {
+        return bridgeExecutionTime.snapshot().p99Millis();
+    }
+
+    @Override
+    public Map<String, Integer> getBridgeConcurrencyLimits() {
+        Map<String, Integer> limits = new LinkedHashMap<>();
+        bridgeLimiters.get().forEach((bridgeId, limiter) -> limits.put(bridgeId, limiter.limit()));
+        return limits;
+    }
+
+    @Override
+    public int getScheduledTasks() {
+        return scheduledTasks.getAsInt();
+    }
+
+    @Override
+    public double getScheduleLatenessMeanMillis() {
+        return scheduleLateness.snapshot().meanMillis();
+    }
+
+    @Override
+    public double getScheduleLatenessP99Millis() {
+        return scheduleLateness.snapshot().p99Millis();
+    }
+
+    @Override
+    public double getPeriodicDriftMeanMillis() {
+        return periodicDrift.snapshot().meanMillis();
+    }
+
+    @Override
+    public double getPeriodicDriftP99Millis() {
+        return periodicDrift.snapshot().p99Millis();
+    }
+
+
+    /**
+     * State of all metrics at the time it was taken.
+     */
+    public record Snapshot(long dispatchedTasks, long rejectedTasks, int tasksInFlight,
+                           LatencyHistogram.Snapshot dispatchQueueTime, LatencyHistogram.Snapshot dispatchExecutionTime,
+                           long bridgeCommands, long failedBridgeCommands, int bridgeCommandsWaiting, int bridgeCommandsInFlight,
+                           LatencyHistogram.Snapshot bridgeWaitTime, LatencyHistogram.Snapshot bridgeExecutionTime,
+                           Map<String, AdaptiveLimiter.Snapshot> bridgeLimiters,
+                           int scheduledTasks, LatencyHistogram.Snapshot scheduleLateness,
+                           LatencyHistogram.Snapshot periodicDrift) {}
+}
@@ -0,0 +1,55 @@
+package pw.wunderlich.lightbeat;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link TaskMetrics} of the {@link AppTaskOrchestrator}, registered as
+ * {@value TaskMetrics#OBJECT_NAME}. Durations are in milliseconds and cover the whole runtime.
+ */
+public interface TaskMetricsMXBean {
+
+    long getDispatchedTasks();
+
+    long getRejectedTasks();
+
+    int getTasksInFlight();
+
+    double getDispatchQueueMeanMillis();
+
+    double getDispatchQueueP99Millis();
+
+    double getDispatchExecutionMeanMillis();
+
+    double getDispatchExecutionP99Millis();
+
+    long getBridgeCommands();
+
+    long getFailedBridgeCommands();
+
+    int getBridgeCommandsWaiting();
+
+    int getBridgeCommandsInFlight();
+
+    double getBridgeWaitMeanMillis();
+
+    double getBridgeWaitP99Millis();
+
+    double getBridgeExecutionMeanMillis();
+
+    double getBridgeExecutionP99Millis();
+
+    /**
+     * @return current concurrency limit of every bridge, keyed by bridge id
+     */
+    Map<String, Integer> getBridgeConcurrencyLimits();
+
+    int getScheduledTasks();
+
+    double getScheduleLatenessMeanMillis();
+
+    double getScheduleLatenessP99Millis();
+
+    double getPeriodicDriftMeanMillis();
+
+    double getPeriodicDriftP99Millis();
+}
@@ -0,0 +1,192 @@
+package pw.wunderlich.lightbeat.audio;
+
+import java.util.Arrays;
+
+import static pw.wunderlich.lightbeat.audio.BeatEvent.BARS_PER_PHRASE;
+import static pw.wunderlich.lightbeat.audio.BeatEvent.BEATS_PER_BAR;
+
+/**
+ * Estimates the position of accepted beats in a 4/4 bar. Every beat is assigned to one of four phases,
+ * for each phase the average accent is kept, which is the beat's amplitude and low band energy relative to
+ * the average of recent beats. The phase with the strongest accents is assumed to hold the downbeat.
+ * <p>
+ * Beats the detector missed are counted via the tempo of a {@link TempoTracker}, and after a gap without beats,
+ * like a breakdown, the next beat starts a new phrase. Generated beats advance the position, but don't count towards
+ * the accents. Every update is constant time.
+ */
+class BarTracker {
+
+    private static final double ACCENT_SMOOTHING = 0.15d;
+    private static final double PHASE_SMOOTHING = 0.2d;
+    private static final double PHASE_SWITCH_MARGIN = 0.05d;
+    private static final double MIN_TEMPO_CONFIDENCE = 0.5d;
+    private static final long MAX_GAP_MILLIS = 2000L;
+    private static final int MIN_BEATS_FOR_PHASE = 2 * BEATS_PER_BAR;
+
+    private final TempoTracker tempoTracker;
+
+    private final double[] phaseAccents = new double[BEATS_PER_BAR];
+    private double amplitudeAverage;
+    private double bassAverage;
+
+    private long beatCount;
+    private int downbeatPhase;
+    private int beatInBar;
+    private long bar;
+    private long lastBeatMillis;
+
+
+    BarTracker(TempoTracker tempoTracker) {
+        this.tempoTracker = tempoTracker;
+        reset();
+    }
+
+    /**
+     * Advances the position by one beat, or more if beats were missed.
+     *
+     * @param timeMillis    time of the accepted beat
+     * @param amplitude     amplitude that triggered the beat
+     * @param bassAmplitude amplitude of the low frequency band when the beat was triggered
+     */
+    void beatAccepted(long timeMillis, double amplitude, double bassAmplitude) {
+        int previousBeatInBar = beatInBar;
+        boolean isGap = advance(timeMillis);
+
+        double accent = getAccent(amplitude, bassAmplitude);
+        int phase = (int) (beatCount % BEATS_PER_BAR);
+        phaseAccents[phase] += PHASE_SMOOTHING * (accent - phaseAccents[phase]);
+        if (!isGap && beatCount >= MIN_BEATS_FOR_PHASE) {
+            updateDownbeatPhase();
+        }
+
+        updatePosition(previousBeatInBar, isGap);
+    }
+
+    /**
+     * Advances the position by one beat, or more if beats were missed, without changing the downbeat.
+     *
+     * @param timeMillis time of the generated beat
+     */
+    void beatGenerated(long timeMillis) {
+        int previousBeatInBar = beatInBar;
+        updatePosition(previousBeatInBar, advance(timeMillis));
+    }
+
+    /**
+     * Estimates the position of a beat at the given time without advancing, used for provisional onsets.
+     *
+     * @param timeMillis time of the expected beat
+     * @param amplitude  expected amplitude of the beat
+     * @param average    current amplitude average
+     * @return beat event with the estimated position
+     */
+    BeatEvent predictBeat(long timeMillis, double amplitude, double average) {
+        if (lastBeatMillis < 0L) {
+            return new BeatEvent(amplitude, average, 0, 0L);
+        }
+
+        long interval = timeMillis - lastBeatMillis;
+        if (interval > MAX_GAP_MILLIS) {
+            return new BeatEvent(amplitude, average, 0, (bar / BARS_PER_PHRASE + 1) * BARS_PER_PHRASE);
+        }
+
+        int nextBeatInBar = Math.floorMod(beatCount + getBeatsSince(interval) - downbeatPhase, BEATS_PER_BAR);
+        return new BeatEvent(amplitude, average, nextBeatInBar, nextBeatInBar <= beatInBar ? bar + 1 : bar);
+    }
+
+    /**
+     * Forgets the current position, the next beat will be the downbeat of the first bar.
+     */
+    void reset() {
+        Arrays.fill(phaseAccents, 0d);
+        amplitudeAverage = 0d;
+        bassAverage = 0d;
+        beatCount = 0L;
+        downbeatPhase = 0;
+        beatInBar = BEATS_PER_BAR;
+        bar = BeatEvent.UNKNOWN_POSITION;
+        lastBeatMillis = -1L;
+    }
+
+    int getBeatInBar() {
+        return beatInBar;
+    }
+
+    long getBar() {
+        return bar;
+    }
+
+    /**
+     * Counts the beats since the last beat, or moves to the next phrase after a gap.
+     *
+     * @return true if there was a gap since the last beat
+     */
+    private boolean advance(long timeMillis) {
+        boolean isGap = false;
+        if (lastBeatMillis >= 0L) {
+            long interval = timeMillis - lastBeatMillis;
+            if (interval > MAX_GAP_MILLIS) {
+                isGap = true;
+            } else {
+                beatCount += getBeatsSince(interval);
+            }
+        }
+        lastBeatMillis = timeMillis;
+
+        if (isGap) {
+            // music usually picks up again on the downbeat of a new phrase
+            beatCount += Math.floorMod(downbeatPhase - beatCount, BEATS_PER_BAR);
+            bar = (bar / BARS_PER_PHRASE + 1) * BARS_PER_PHRASE;
+        }
+        return isGap;
+    }
+
+    private void updatePosition(int previousBeatInBar, boolean isGap) {
+        beatInBar = Math.floorMod(beatCount - downbeatPhase, BEATS_PER_BAR);
+        if (!isGap && beatInBar <= previousBeatInBar) {
+            bar++;
+        }
+    }
+
+    /**
+     * @return amount of beats on the tempo grid since the last beat, 1 if the tempo is not known yet
+     */
+    private int getBeatsSince(long intervalMillis) {
+        if (tempoTracker.getConfidence() < MIN_TEMPO_CONFIDENCE) {
+            return 1;
+        }
+        double beatMillis = 60000d / tempoTracker.getBeatsPerMinute();
+        return (int) Math.max(1L, Math.min(BEATS_PER_BAR, Math.round(intervalMillis / beatMillis)));
+    }
+
+    /**
+     * @return sum of amplitude and bass amplitude, each relative to the average of recent beats
+     */
+    private double getAccent(double amplitude, double bassAmplitude) {
+        if (amplitudeAverage == 0d) {
+            amplitudeAverage = amplitude;
+            bassAverage = bassAmplitude;
+        } else {
+            amplitudeAverage += ACCENT_SMOOTHING * (amplitude - amplitudeAverage);
+            bassAverage += ACCENT_SMOOTHING * (bassAmplitude - bassAverage);
+        }
+
+        double accent = amplitudeAverage > 0d ? amplitude / amplitudeAverage : 0d;
+        accent += bassAverage > 0d ? bassAmplitude / bassAverage : 0d;
+        return accent;
+    }
+
+    private void updateDownbeatPhase() {
+        int strongestPhase = downbeatPhase;
+        for (int i = 0; i < BEATS_PER_BAR; i++) {
+            if (phaseAccents[i] > phaseAccents[strongestPhase]) {
+                strongestPhase = i;
+            }
+        }
+
+        // only switch for a clear difference, to not jump between phases with similar accents
+        if (phaseAccents[strongestPhase] > phaseAccents[downbeatPhase] * (1d + PHASE_SWITCH_MARGIN)) {
+            downbeatPhase = strongestPhase;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package pw.wunderlich.lightbeat.audio;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Result of an offline analysis of an audio file by {@link OfflineBeatAnalyzer}.
+ * All times are in milliseconds since the start of the file.
+ *
+ * @param file           the analyzed file
+ * @param durationMillis length of the analyzed audio
+ * @param beats          detected beats in order, as they would have been passed to {@link BeatObserver}'s
+ * @param segments       no beat and silence segments in order
+ * @param sections       detected section changes in order, the file starts as {@link Section#NORMAL}
+ * @param onsets         provisional onsets in order, only reported if fast onset detection is enabled
+ */
+public record BeatAnalysis(Path file, long durationMillis, List<Beat> beats, List<Segment> segments,
+                           List<SectionChange> sections, List<Onset> onsets) {
+
+    /**
+     * Estimates the tempo from the median time between two consecutive beats.
+     *
+     * @return estimated beats per minute, or 0 if less than two beats were detected
+     */
+    public double getBeatsPerMinute() {
+        if (beats.size() < 2) {
+            return 0d;
+        }
+
+        long[] intervals = new long[beats.size() - 1];
+        for (int i = 1; i < beats.size(); i++) {
+            intervals[i - 1] = beats.get(i).timeMillis() - beats.get(i - 1).timeMillis();
+        }
+        Arrays.sort(intervals);
+
+        int middle = intervals.length / 2;
+        double median = intervals.length % 2 == 0 ? (intervals[middle - 1] + intervals[middle]) / 2d : intervals[middle];
+        return median > 0d ? 60000d / median : 0d;
+    }
+
+    /**
+     * Amount of detected beats per minute of audio. Compared to {@link #getBeatsPerMinute()} this
+     * shows how many beats were missed, for example during breakdowns.
+     *
+     * @return detected beats per minute of audio
+     */
+    public double getBeatDensity() {
+        return durationMillis > 0 ? beats.size() * 60000d / durationMillis : 0d;
+    }
+
+    /**
+     * @param type of segments to sum up
+     * @return total length of all segments of the given type
+     */
+    public long getSegmentMillis(Segment.Type type) {
+        return segments.stream()
+                .filter(segment -> segment.type() == type)
+                .mapToLong(segment -> segment.endMillis() - segment.startMillis())
+                .sum();
+    }
+
+
+    /**
+     * A beat that was detected, see {@link BeatEvent}.
+     */
+    public record Beat(long timeMillis, double amplitude, double average, int beatInBar, long bar, boolean synthetic) {}
+
+    /**
+     * Change to a new {@link Section}, which lasts until the next change or the end of the file.
+     */
+    public record SectionChange(long timeMillis, Section section) {}
+
+    /**
+     * Provisional onset of a beat, see {@link BeatObserver#onsetDetected(BeatEvent)}.
+     * Onsets that were not retracted were confirmed by the next beat.
+     */
+    public record Onset(long timeMillis, boolean retracted) {}
+
+    /**
+     * Time span without beats. Starts when the {@link BeatObserver} callback was issued
+     * and lasts until the next callback or the end of the file.
+     */
+    public record Segment(Type type, long startMillis, long endMillis) {
+
+        public enum Type {
+            NO_BEAT,
+            SILENCE
+        }
+    }
+}
@@ -2,15 +2,25 @@ package pw.wunderlich.lightbeat.audio;
 
 /**
  * Event called by a {@link BeatEventManager} to be passed to all {@link BeatObserver}'s.
+ * Beats carry their estimated position in a 4/4 bar, see {@link #beatInBar()} and {@link #bar()}.
+ * Beats that were generated on the tempo grid while no beats were detected are flagged as {@link #synthetic()}.
  */
-public record BeatEvent(double triggeringAmplitude, double average) {
+public record BeatEvent(double triggeringAmplitude, double average, int beatInBar, long bar, boolean synthetic) {
+
+    public static final int BEATS_PER_BAR = 4;
+    public static final int BARS_PER_PHRASE = 4;
+
+    /**
+     * Value of {@link #beatInBar()} and {@link #bar()} if the position of the beat is unknown.
+     */
+    public static final int UNKNOWN_POSITION = -1;
 
     /**
      * Construct a BeatEvent consisting of silence.
      * Calling {@link #isSilence()} or {@link #isNoBeat()} will always return true.
      */
     BeatEvent() {
-        this(0d, 0d);
+        this(0d, 0d, UNKNOWN_POSITION, UNKNOWN_POSITION);
     }
 
     /**
@@ -20,7 +30,17 @@ public record BeatEvent(double triggeringAmplitude, double average) {
      * @param average current amplitude average as normalized double value
      */
     BeatEvent(double average) {
-        this(0d, average);
+        this(0d, average, UNKNOWN_POSITION, UNKNOWN_POSITION);
+    }
+
+    /**
+     * Construct a BeatEvent when a beat was detected, without a position in the bar.
+     *
+     * @param triggeringAmplitude beat amplitude as normalized double value
+     * @param average             amplitude average when the beat was detected as normalized double value
+     */
+    public BeatEvent(double triggeringAmplitude, double average) {
+        this(triggeringAmplitude, average, UNKNOWN_POSITION, UNKNOWN_POSITION);
     }
 
     /**
@@ -28,6 +48,21 @@ public record BeatEvent(double triggeringAmplitude, double average) {
      *
      * @param triggeringAmplitude beat amplitude as normalized double value
      * @param average             amplitude average when the beat was detected as normalized double value
+     * @param beatInBar           position of the beat in the current bar, starting at 0 for the downbeat
+     * @param bar                 amount of bars since the beat detection started or silence was detected
+     */
+    public BeatEvent(double triggeringAmplitude, double average, int beatInBar, long bar) {
+        this(triggeringAmplitude, average, beatInBar, bar, false);
+    }
+
+    /**
+     * Construct a BeatEvent when a beat was detected or generated.
+     *
+     * @param triggeringAmplitude beat amplitude as normalized double value
+     * @param average             amplitude average when the beat was detected as normalized double value
+     * @param beatInBar           position of the beat in the current bar, starting at 0 for the downbeat
+     * @param bar                 amount of bars since the beat detection started or silence was detected
+     * @param synthetic           true if the beat was generated on the tempo grid instead of detected
      */
     public BeatEvent {
     }
@@ -48,6 +83,46 @@ public record BeatEvent(double triggeringAmplitude, double average) {
         return average;
     }
 
+    /**
+     * @return index of the beat in the current bar between 0 and {@link #BEATS_PER_BAR} exclusive,
+     * where 0 is the downbeat, or {@link #UNKNOWN_POSITION}
+     */
+    @Override
+    public int beatInBar() {
+        return beatInBar;
+    }
+
+    /**
+     * @return amount of bars counted before the current one, or {@link #UNKNOWN_POSITION}
+     */
+    @Override
+    public long bar() {
+        return bar;
+    }
+
+    /**
+     * @return true if this beat was not detected, but generated on the tempo grid of the previous beats,
+     * the amplitude is then the average amplitude of previous beats
+     */
+    @Override
+    public boolean synthetic() {
+        return synthetic;
+    }
+
+    /**
+     * @return true if this beat is the first beat of a bar
+     */
+    public boolean isDownbeat() {
+        return beatInBar == 0;
+    }
+
+    /**
+     * @return true if this beat is the first beat of a phrase, which spans {@link #BARS_PER_PHRASE} bars
+     */
+    public boolean isPhraseStart() {
+        return isDownbeat() && bar % BARS_PER_PHRASE == 0;
+    }
+
     boolean isSilence() {
         return triggeringAmplitude == 0d && average == 0d;
     }
@@ -0,0 +1,270 @@
+package pw.wunderlich.lightbeat.audio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dispatches the callbacks of {@link BeatObserver}'s in the order they were published, on a single consumer thread.
+ * Producers, usually the audio thread, never block: events are put into a bounded queue with a sequence number,
+ * if the queue is full the event is dropped and counted instead. The consumer passes every event to the observers
+ * that were registered when it was published, registrations are copy-on-write and don't affect queued events.
+ * <p>
+ * If coalescing is enabled and the consumer falls behind, stale events are skipped: a no beat event is skipped if
+ * another no beat or silence event is already queued behind it, a silence event if another silence event is.
+ * Beats, onsets, sections and stops are always dispatched.
+ * <p>
+ * Buses created via {@link #createDirect()} don't have a queue or thread, events are dispatched on the publishing
+ * thread instead, which is used for offline analysis.
+ */
+public class BeatEventBus implements BeatEventManager, AutoCloseable {
+
+    static final int DEFAULT_CAPACITY = 256;
+    private static final long STOP_TIMEOUT_MILLIS = 1000L;
+    private static final BeatObserver[] NO_OBSERVERS = new BeatObserver[0];
+
+    private static final Logger logger = LoggerFactory.getLogger(BeatEventBus.class);
+
+    private final BlockingQueue<Event> queue;
+    private final boolean coalesce;
+    private final Thread consumerThread;
+
+    private final Object publishLock = new Object();
+    private volatile BeatObserver[] observers = NO_OBSERVERS;
+    private long nextSequence = 0L;
+    private long lastDispatchedSequence = -1L;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong latencySumNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+
+    /**
+     * Creates a bus and starts its consumer thread.
+     *
+     * @param capacity amount of events that can be queued before new events are dropped
+     * @param coalesce true to skip stale no beat and silence events if the consumer falls behind
+     */
+    public BeatEventBus(int capacity, boolean coalesce) {
+        this(new ArrayBlockingQueue<>(capacity), coalesce);
+        consumerThread.start();
+    }
+
+    private BeatEventBus(BlockingQueue<Event> queue, boolean coalesce) {
+        this.queue = queue;
+        this.coalesce = coalesce;
+        if (queue != null) {
+            this.consumerThread = new Thread(this::consume, "BeatEventBus");
+            this.consumerThread.setDaemon(true);
+        } else {
+            this.consumerThread = null;
+        }
+    }
+
+    /**
+     * @return bus that dispatches events directly on the publishing thread
+     */
+    static BeatEventBus createDirect() {
+        return new BeatEventBus(null, false);
+    }
+
+    @Override
+    public void registerBeatObserver(BeatObserver beatObserver) {
+        synchronized (publishLock) {
+            BeatObserver[] newObservers = Arrays.copyOf(observers, observers.length + 1);
+            newObservers[observers.length] = beatObserver;
+            observers = newObservers;
+        }
+    }
+
+    public void publishOnset(BeatEvent onsetEvent) {
+        publish(Type.ONSET, onsetEvent, null, null);
+    }
+
+    public void publishOnsetRetracted() {
+        publish(Type.ONSET_RETRACTED, null, null, null);
+    }
+
+    public void publishSection(Section section) {
+        publish(Type.SECTION, null, section, null);
+    }
+
+    /**
+     * @param beatEvent beat, no beat or silence event
+     */
+    public void publishBeatEvent(BeatEvent beatEvent) {
+        Type type = beatEvent.isSilence() ? Type.SILENCE : beatEvent.isNoBeat() ? Type.NO_BEAT : Type.BEAT;
+        publish(type, beatEvent, null, null);
+    }
+
+    /**
+     * Publishes the stop to all registered observers and unregisters them. Observers registered after this call
+     * will not receive this stop. Unlike other events this waits shortly for space if the queue is full.
+     *
+     * @param status to pass to {@link BeatObserver#audioReaderStopped(BeatObserver.StopStatus)}
+     */
+    public void publishStopped(BeatObserver.StopStatus status) {
+        publish(Type.STOPPED, null, null, status);
+    }
+
+    private void publish(Type type, BeatEvent beatEvent, Section section, BeatObserver.StopStatus status) {
+        published.incrementAndGet();
+        if (queue == null) {
+            Event event;
+            synchronized (publishLock) {
+                event = new Event(nextSequence++, System.nanoTime(), type, beatEvent, section, status, observers);
+                if (type == Type.STOPPED) {
+                    observers = NO_OBSERVERS;
+                }
+            }
+            dispatch(event);
+            return;
+        }
+
+        boolean isQueued;
+        synchronized (publishLock) {
+            Event event = new Event(nextSequence, System.nanoTime(), type, beatEvent, section, status, observers);
+            isQueued = queue.offer(event);
+            if (!isQueued && type == Type.STOPPED) {
+                try {
+                    isQueued = queue.offer(event, STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (isQueued) {
+                nextSequence++;
+            }
+            if (type == Type.STOPPED) {
+                observers = NO_OBSERVERS;
+            }
+        }
+
+        if (isQueued) {
+            maxQueueDepth.accumulateAndGet(queue.size(), Math::max);
+        } else {
+            long droppedCount = dropped.incrementAndGet();
+            if (droppedCount == 1L || droppedCount % 100L == 0L) {
+                logger.warn("Beat event queue is full, dropped {} event ({} dropped in total)", type, droppedCount);
+            }
+        }
+    }
+
+    private void consume() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Event event;
+            try {
+                event = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (coalesce && isStale(event, queue.peek())) {
+                coalesced.incrementAndGet();
+                lastDispatchedSequence = event.sequence();
+                continue;
+            }
+            dispatch(event);
+        }
+    }
+
+    private static boolean isStale(Event event, Event next) {
+        if (next == null) {
+            return false;
+        }
+        return switch (event.type()) {
+            case NO_BEAT -> next.type() == Type.NO_BEAT || next.type() == Type.SILENCE;
+            case SILENCE -> next.type() == Type.SILENCE;
+            default -> false;
+        };
+    }
+
+    private void dispatch(Event event) {
+        if (event.sequence() <= lastDispatchedSequence) {
+            logger.warn("Beat event {} dispatched out of order, last dispatched was {}", event.sequence(), lastDispatchedSequence);
+        }
+        lastDispatchedSequence = event.sequence();
+
+        long latencyNanos = System.nanoTime() - event.publishedNanos();
+        latencySumNanos.addAndGet(latencyNanos);
+        maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+
+        for (BeatObserver observer : event.observers()) {
+            try {
+                switch (event.type()) {
+                    case ONSET -> observer.onsetDetected(event.beatEvent());
+                    case ONSET_RETRACTED -> observer.onsetRetracted();
+                    case SECTION -> observer.sectionChanged(event.section());
+                    case BEAT -> observer.beatReceived(event.beatEvent());
+                    case NO_BEAT -> observer.noBeatReceived();
+                    case SILENCE -> observer.silenceDetected();
+                    case STOPPED -> observer.audioReaderStopped(event.status());
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Beat observer {} failed to handle {} event", observer.getClass().getSimpleName(), event.type(), e);
+            }
+        }
+        dispatched.incrementAndGet();
+    }
+
+    public Metrics getMetrics() {
+        long dispatchedCount = dispatched.get();
+        double meanLatencyMillis = dispatchedCount > 0 ? latencySumNanos.get() / 1_000_000d / dispatchedCount : 0d;
+        return new Metrics(published.get(), dispatchedCount, coalesced.get(), dropped.get(),
+                queue != null ? queue.size() : 0, maxQueueDepth.get(),
+                meanLatencyMillis, maxLatencyNanos.get() / 1_000_000d);
+    }
+
+    /**
+     * Stops the consumer thread, events that are still queued are not dispatched.
+     */
+    @Override
+    public void close() {
+        if (consumerThread != null) {
+            consumerThread.interrupt();
+        }
+    }
+
+
+    private enum Type {
+        ONSET,
+        ONSET_RETRACTED,
+        SECTION,
+        BEAT,
+        NO_BEAT,
+        SILENCE,
+        STOPPED
+    }
+
+    /**
+     * Queued event, containing the observers that were registered when it was published.
+     */
+    private record Event(long sequence, long publishedNanos, Type type, BeatEvent beatEvent, Section section,
+                         BeatObserver.StopStatus status, BeatObserver[] observers) {}
+
+    /**
+     * Counters and latency of the bus since it was created.
+     *
+     * @param published          events that were published, including dropped ones
+     * @param dispatched         events that were passed to the observers
+     * @param coalesced          stale events that were skipped
+     * @param dropped            events that were dropped because the queue was full
+     * @param queueDepth         events that are currently queued
+     * @param maxQueueDepth      highest amount of events that were queued at once
+     * @param meanLatencyMillis  average time between publishing and dispatching an event
+     * @param maxLatencyMillis   highest time between publishing and dispatching an event
+     */
+    public record Metrics(long published, long dispatched, long coalesced, long dropped, int queueDepth,
+                          int maxQueueDepth, double meanLatencyMillis, double maxLatencyMillis) {}
+}
@@ -0,0 +1,80 @@
+package pw.wunderlich.lightbeat.audio;
+
+import static pw.wunderlich.lightbeat.audio.BeatEvent.BEATS_PER_BAR;
+
+/**
+ * Generates beats on the tempo grid of the last detected beats while the beat detection doesn't find any,
+ * for example during breakdowns where the kicks are missing but the track continues in the same tempo.
+ * Generated beats are placed at multiples of the last confident beat interval after the last detected beat,
+ * starting with the second one, so that a late detected beat still takes precedence. Generation stops after
+ * a given amount of bars, or as soon as a beat was detected again.
+ * <p>
+ * The flywheel has no timer of its own, it is advanced with every audio chunk via {@link #update(long, int)},
+ * and generates beats in the chunk that is closest to their time.
+ */
+class BeatFlywheel {
+
+    private static final double MIN_TEMPO_CONFIDENCE = 0.5d;
+
+    private final TempoTracker tempoTracker;
+    private final long halfUpdateMillis;
+
+    private double beatMillis = 0d;
+    private long lastBeatMillis = -1L;
+    private int generatedBeats = 0;
+
+
+    BeatFlywheel(TempoTracker tempoTracker, int updatesPerSecond) {
+        this.tempoTracker = tempoTracker;
+        this.halfUpdateMillis = 500L / updatesPerSecond;
+    }
+
+    /**
+     * Hands control back to the beat detection, the next beats are generated relative to this beat.
+     * The tempo is only taken over if the {@link TempoTracker} is confident, otherwise the previous tempo is kept.
+     *
+     * @param timeMillis time of the detected beat
+     */
+    void beatAccepted(long timeMillis) {
+        lastBeatMillis = timeMillis;
+        generatedBeats = 0;
+        if (tempoTracker.getConfidence() >= MIN_TEMPO_CONFIDENCE) {
+            beatMillis = 60000d / tempoTracker.getBeatsPerMinute();
+        }
+    }
+
+    /**
+     * @param timeMillis current time
+     * @param maxBars    maximum amount of bars to generate beats for, 0 to disable the flywheel
+     * @return true if a beat should be generated now
+     */
+    boolean update(long timeMillis, int maxBars) {
+        if (!isRunning(maxBars)) {
+            return false;
+        }
+
+        long nextBeatMillis = lastBeatMillis + Math.round((generatedBeats + 2) * beatMillis);
+        if (timeMillis + halfUpdateMillis < nextBeatMillis) {
+            return false;
+        }
+
+        generatedBeats++;
+        return true;
+    }
+
+    /**
+     * @param maxBars maximum amount of bars to generate beats for
+     * @return true if beats will be generated if no beat is detected
+     */
+    boolean isRunning(int maxBars) {
+        return lastBeatMillis >= 0L && beatMillis > 0d && generatedBeats < maxBars * BEATS_PER_BAR;
+    }
+
+    /**
+     * Stops generating beats until the next beat was detected, for example after silence was detected.
+     */
+    void reset() {
+        lastBeatMillis = -1L;
+        generatedBeats = 0;
+    }
+}
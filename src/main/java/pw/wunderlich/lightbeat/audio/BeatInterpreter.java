@@ -1,21 +1,31 @@
 package pw.wunderlich.lightbeat.audio;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import pw.wunderlich.lightbeat.config.Config;
-import pw.wunderlich.lightbeat.config.ConfigNode;
-import pw.wunderlich.lightbeat.util.DoubleAverageBuffer;
+import pw.wunderlich.lightbeat.config.ConfigSnapshot;
+import pw.wunderlich.lightbeat.util.Clock;
+import pw.wunderlich.lightbeat.util.DoubleStatisticsBuffer;
+import pw.wunderlich.lightbeat.util.EventJournal;
 import pw.wunderlich.lightbeat.util.TimeThreshold;
 
 /**
  * Interprets a stream of audio amplitudes (RMS) to detect beat events.
  * Uses a hybrid dual-threshold model to improve detection consistency.
  * A beat must be both relatively louder than the average and a significant fraction
- * of the last major peak's amplitude.
+ * of the last major peak's amplitude. Beats following the previous beat closer than the configured
+ * minimum time between beats are rejected.
+ * <p>
+ * The multiplier for the average either follows the configured sensitivity, or is tuned continuously by
+ * a {@link SensitivityTuner} towards one beat per beat of the tempo estimated by a {@link TempoTracker}.
+ * The position of accepted beats in the bar is estimated by a {@link BarTracker}.
+ * <p>
+ * Provisional onsets reported by a {@link FastOnsetDetector} before their chunk is complete are passed to
+ * {@link #interpretOnset()}, they are confirmed if one of the next chunks contains a beat and retracted otherwise.
+ * While no beats are detected, a {@link BeatFlywheel} keeps generating beats on the tempo grid for the configured
+ * amount of bars. A peak closely following a generated beat belongs to it and hands control back to the detection.
  */
 class BeatInterpreter {
 
-    private static final Logger logger = LoggerFactory.getLogger(BeatInterpreter.class);
+    private static final EventJournal journal = EventJournal.get();
 
     private static final long AVERAGE_WINDOW_MS = 3000L;
     private static final long NO_BEAT_RECEIVED_MILLIS = 2000L;
@@ -24,24 +34,53 @@ class BeatInterpreter {
     private static final double MAX_MULTIPLIER = 1.50; // Corresponds to sensitivity 1
     private static final double MIN_MULTIPLIER = 1.30; // Corresponds to sensitivity 10
 
+    private static final double MIN_TEMPO_CONFIDENCE = 0.5d;
+    private static final double DEFAULT_BEATS_PER_SECOND = 2d;
+
     private static final double PEAK_DECAY_RATE_PER_MS = 0.00015;
     private static final double PEAK_DECAY_MULTIPLIER = 1.2d;
 
+    // the onset may be found before the chunk preceding it is complete, and its peak may be in the chunk after it
+    private static final int ONSET_CONFIRM_CHUNKS = 3;
+    private static final double BEAT_AMPLITUDE_SMOOTHING = 0.2d;
+
     private final Config config;
+    private final Clock clock;
 
-    private final DoubleAverageBuffer amplitudeHistory;
+    private final DoubleStatisticsBuffer amplitudeHistory;
     private boolean isSilent = true;
 
-    private final TimeThreshold noBeatThreshold = new TimeThreshold();
-    private final TimeThreshold silenceThreshold = new TimeThreshold();
+    private final TimeThreshold noBeatThreshold;
+    private final TimeThreshold silenceThreshold;
+    private final TimeThreshold nextBeatThreshold;
+
+    private final TempoTracker tempoTracker = new TempoTracker();
+    private final BarTracker barTracker = new BarTracker(tempoTracker);
+    private final BeatFlywheel flywheel;
+    private final SensitivityTuner sensitivityTuner;
 
     private double peakGateThreshold = 0d;
     private long lastUpdateTime = 0L;
 
+    private double beatAmplitudeAverage = 0d;
+    private int pendingOnsetChunks = 0;
+    private boolean isOnsetRetracted = false;
+    private boolean isLastBeatGenerated = false;
+
 
     BeatInterpreter(Config config, int updatesPerSecond) {
+        this(config, updatesPerSecond, Clock.SYSTEM);
+    }
+
+    BeatInterpreter(Config config, int updatesPerSecond, Clock clock) {
         this.config = config;
-        this.amplitudeHistory = new DoubleAverageBuffer((int) (AVERAGE_WINDOW_MS / 1000 * updatesPerSecond), false);
+        this.clock = clock;
+        this.noBeatThreshold = new TimeThreshold(clock);
+        this.silenceThreshold = new TimeThreshold(clock);
+        this.nextBeatThreshold = new TimeThreshold(clock, 1000L);
+        this.flywheel = new BeatFlywheel(tempoTracker, updatesPerSecond);
+        this.sensitivityTuner = new SensitivityTuner(updatesPerSecond, getManualMultiplier(config.getSnapshot()));
+        this.amplitudeHistory = new DoubleStatisticsBuffer((int) (AVERAGE_WINDOW_MS / 1000 * updatesPerSecond));
     }
 
     /**
@@ -52,7 +91,58 @@ class BeatInterpreter {
      * @return A BeatEvent if detected, otherwise null.
      */
     BeatEvent interpretValue(double amplitude) {
-        long currentTime = System.currentTimeMillis();
+        return interpretValue(amplitude, amplitude);
+    }
+
+    /**
+     * Processes a new amplitude value and returns a BeatEvent if a beat, silence,
+     * or no-beat timeout is detected.
+     *
+     * @param amplitude     The new RMS amplitude value.
+     * @param bassAmplitude The RMS amplitude of the low frequency band, used to tell accented beats apart.
+     * @return A BeatEvent if detected, otherwise null.
+     */
+    BeatEvent interpretValue(double amplitude, double bassAmplitude) {
+        BeatEvent event = interpretChunk(amplitude, bassAmplitude);
+        if (pendingOnsetChunks > 0) {
+            if (event != null && !event.isNoBeat()) {
+                pendingOnsetChunks = 0;
+            } else if (--pendingOnsetChunks == 0) {
+                isOnsetRetracted = true;
+                journal.record(EventJournal.Type.ONSET_RETRACTED);
+            }
+        }
+        return event;
+    }
+
+    /**
+     * Processes a provisional onset that was detected before the chunk containing it is complete.
+     * Onsets are only accepted while a beat could be accepted, and after the first beat was accepted,
+     * as its amplitude can only be estimated from previous beats.
+     *
+     * @return provisional BeatEvent with the expected amplitude and position in the bar, or null if ignored
+     */
+    BeatEvent interpretOnset() {
+        if (isSilent || pendingOnsetChunks > 0 || beatAmplitudeAverage == 0d || !nextBeatThreshold.isMet()) {
+            return null;
+        }
+
+        pendingOnsetChunks = ONSET_CONFIRM_CHUNKS;
+        journal.record(EventJournal.Type.ONSET);
+        return barTracker.predictBeat(clock.currentTimeMillis(), beatAmplitudeAverage, amplitudeHistory.getCurrentAverage());
+    }
+
+    /**
+     * @return true if the last provisional onset was not confirmed by a beat, only returns true once per onset
+     */
+    boolean pollRetractedOnset() {
+        boolean isRetracted = isOnsetRetracted;
+        isOnsetRetracted = false;
+        return isRetracted;
+    }
+
+    private BeatEvent interpretChunk(double amplitude, double bassAmplitude) {
+        long currentTime = clock.currentTimeMillis();
         long timeDelta = (lastUpdateTime == 0) ? 0 : currentTime - lastUpdateTime;
         lastUpdateTime = currentTime;
 
@@ -63,25 +153,60 @@ class BeatInterpreter {
         amplitudeHistory.add(amplitude);
         double average = amplitudeHistory.getCurrentAverage();
 
-        double normalizedSensitivity = (config.getInt(ConfigNode.BEAT_SENSITIVITY) - 1) / 9d;
-        double beatMultiplier = MAX_MULTIPLIER - (normalizedSensitivity * (MAX_MULTIPLIER - MIN_MULTIPLIER));
+        ConfigSnapshot snapshot = config.getSnapshot();
+        double beatMultiplier = snapshot.beatSensitivityAuto() ? sensitivityTuner.getMultiplier() : getManualMultiplier(snapshot);
         double dynamicThreshold = average * beatMultiplier;
 
-        if (amplitude > dynamicThreshold && amplitude > peakGateThreshold) {
+        boolean isPeak = amplitude > dynamicThreshold && amplitude > peakGateThreshold;
+        updateSensitivity(snapshot, isPeak);
+
+        if (isPeak) {
             noBeatThreshold.setCurrentThreshold(NO_BEAT_RECEIVED_MILLIS);
             disableSilenceThreshold();
 
-            peakGateThreshold = amplitude * PEAK_DECAY_MULTIPLIER;
-            logger.info("Beat detected at {} (avg {}, dynThresh: {}, peakThresh: {})",
-                    fD(amplitude), fD(average), fD(dynamicThreshold), fD(peakGateThreshold));
-            return new BeatEvent(amplitude, average);
+            // multipliers below the manual range, which only occur with automatic sensitivity, also relax the peak gate
+            peakGateThreshold = amplitude * PEAK_DECAY_MULTIPLIER * Math.min(1d, beatMultiplier / MIN_MULTIPLIER);
+            if (!nextBeatThreshold.isMet()) {
+                if (isLastBeatGenerated) {
+                    // the generated beat was already passed on for this peak, only the detection takes over again
+                    isLastBeatGenerated = false;
+                    tempoTracker.resync(currentTime);
+                    flywheel.beatAccepted(currentTime);
+                }
+                journal.record(EventJournal.Type.BEAT_SKIPPED);
+                return null;
+            }
+
+            nextBeatThreshold.setCurrentThreshold(snapshot.beatMinTimeBetween());
+            if (isLastBeatGenerated) {
+                isLastBeatGenerated = false;
+                tempoTracker.resync(currentTime);
+            } else {
+                tempoTracker.beatAccepted(currentTime);
+            }
+            flywheel.beatAccepted(currentTime);
+            barTracker.beatAccepted(currentTime, amplitude, bassAmplitude);
+            beatAmplitudeAverage = beatAmplitudeAverage == 0d
+                    ? amplitude
+                    : beatAmplitudeAverage + BEAT_AMPLITUDE_SMOOTHING * (amplitude - beatAmplitudeAverage);
+            journal.record(EventJournal.Type.BEAT, 0, amplitude, average, dynamicThreshold, peakGateThreshold);
+            return new BeatEvent(amplitude, average, barTracker.getBeatInBar(), barTracker.getBar());
         }
 
         if (amplitude > 0d) {
             disableSilenceThreshold();
-            if (noBeatThreshold.isMet()) {
+            if (flywheel.update(currentTime, snapshot.beatFlywheelBars())) {
+                isLastBeatGenerated = true;
+                nextBeatThreshold.setCurrentThreshold(snapshot.beatMinTimeBetween());
+                barTracker.beatGenerated(currentTime);
+                journal.record(EventJournal.Type.BEAT_GENERATED);
+                return new BeatEvent(beatAmplitudeAverage, average, barTracker.getBeatInBar(), barTracker.getBar(), true);
+            }
+
+            // no beat is only reported once the flywheel stopped generating beats
+            if (noBeatThreshold.isMet() && !flywheel.isRunning(snapshot.beatFlywheelBars())) {
                 noBeatThreshold.disable();
-                logger.info("No beat detected (dynThresh: {})", fD(dynamicThreshold));
+                journal.record(EventJournal.Type.NO_BEAT, 0, dynamicThreshold);
                 return new BeatEvent(average);
             }
         } else if (silenceThreshold.isEnabled()) {
@@ -89,7 +214,10 @@ class BeatInterpreter {
                 silenceThreshold.disable();
                 noBeatThreshold.disable();
                 isSilent = true;
-                logger.info("Silence detected");
+                isLastBeatGenerated = false;
+                barTracker.reset();
+                flywheel.reset();
+                journal.record(EventJournal.Type.SILENCE);
                 return new BeatEvent(); // Silence event
             }
         } else if (!isSilent) {
@@ -99,12 +227,33 @@ class BeatInterpreter {
         return null;
     }
 
+    /**
+     * Feeds the sensitivity tuner with the current chunk, or resets it to the manual multiplier if automatic
+     * sensitivity is disabled. Only chunks that are neither silent nor part of a section without beats are counted.
+     */
+    private void updateSensitivity(ConfigSnapshot snapshot, boolean isPeak) {
+        if (!snapshot.beatSensitivityAuto()) {
+            sensitivityTuner.reset(getManualMultiplier(snapshot));
+            return;
+        }
+
+        boolean isActive = isPeak || (!isSilent && noBeatThreshold.isEnabled() && !noBeatThreshold.isMet());
+        double targetBeatsPerSecond = tempoTracker.getConfidence() >= MIN_TEMPO_CONFIDENCE
+                ? tempoTracker.getBeatsPerMinute() / 60d
+                : DEFAULT_BEATS_PER_SECOND;
+        // don't aim for more beats than are allowed to pass
+        targetBeatsPerSecond = Math.min(targetBeatsPerSecond, 1000d / Math.max(1, snapshot.beatMinTimeBetween()));
+
+        sensitivityTuner.update(isPeak ? 1 : 0, isActive, targetBeatsPerSecond);
+    }
+
+    private static double getManualMultiplier(ConfigSnapshot snapshot) {
+        double normalizedSensitivity = (snapshot.beatSensitivity() - 1) / 9d;
+        return MAX_MULTIPLIER - (normalizedSensitivity * (MAX_MULTIPLIER - MIN_MULTIPLIER));
+    }
+
     private void disableSilenceThreshold() {
         silenceThreshold.disable();
         isSilent = false;
     }
-
-    private static String fD(double value) {
-        return String.format("%.4f", value);
-    }
 }
@@ -3,17 +3,34 @@ package pw.wunderlich.lightbeat.audio;
 /**
  * Implementing class receives callbacks whenever a peak in the audio data was read.
  * Additional methods {@link #noBeatReceived()} and {@link #silenceDetected()} are issued when there
- * was no peak or there was no audible audio data anymore.
+ * was no peak or there was no audible audio data anymore. Changes of the high level {@link Section}
+ * are passed to {@link #sectionChanged(Section)}. If fast onset detection is enabled, beats may be announced
+ * early via {@link #onsetDetected(BeatEvent)}.
  */
 public interface BeatObserver {
 
     /**
-     * Called when a beat was received.
+     * Called when a beat was received. Beats generated on the tempo grid while no beats are detected
+     * are flagged via {@link BeatEvent#synthetic()}.
      *
      * @param event containing data about the current beat
      */
     void beatReceived(BeatEvent event);
 
+    /**
+     * Called when the onset of a beat was detected before the audio it is in was fully analyzed.
+     * The onset is either confirmed by the next call to {@link #beatReceived(BeatEvent)}, which is issued for
+     * the same beat, or retracted by a call to {@link #onsetRetracted()}.
+     *
+     * @param event provisional beat, containing the expected amplitude and position in the bar
+     */
+    void onsetDetected(BeatEvent event);
+
+    /**
+     * Called when the last detected onset was not confirmed as a beat.
+     */
+    void onsetRetracted();
+
     /**
      * Called when no beat was received for a certain amount of times.
      */
@@ -24,6 +41,14 @@ public interface BeatObserver {
      */
     void silenceDetected();
 
+    /**
+     * Called when a new section of the track was detected, before the beat that was received at the same time.
+     * Sections start as {@link Section#NORMAL} and are reset to it once silence was detected.
+     *
+     * @param section the new section
+     */
+    void sectionChanged(Section section);
+
     /**
      * Called when the audio reader is no longer listening to audio input.
      *
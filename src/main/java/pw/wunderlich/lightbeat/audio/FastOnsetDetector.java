@@ -0,0 +1,84 @@
+package pw.wunderlich.lightbeat.audio;
+
+/**
+ * Per sample envelope follower on the low frequency band, used to report the onset of kicks before the audio chunk
+ * they are in is complete. The envelope rises with a short attack and falls with a long release, an onset is
+ * reported once it exceeds a multiple of its own slow moving average. Another onset can only be reported once
+ * the envelope fell back close to the average.
+ * <p>
+ * Onsets are provisional, they are confirmed or retracted by the chunk based decision of the {@link BeatInterpreter}.
+ * Every sample is processed in constant time.
+ */
+class FastOnsetDetector {
+
+    private static final double ATTACK_MILLIS = 1d;
+    private static final double RELEASE_MILLIS = 80d;
+    private static final double REFERENCE_MILLIS = 1500d;
+
+    private static final double ONSET_RATIO = 2d;
+    private static final double REARM_RATIO = 1.2d;
+    private static final double MIN_ENVELOPE = 0.005d;
+
+    private final double filterCoefficient;
+    private final double attackCoefficient;
+    private final double releaseCoefficient;
+    private final double referenceCoefficient;
+
+    private double filterState1;
+    private double filterState2;
+    private double envelope;
+    private double reference;
+    private boolean isArmed;
+
+
+    /**
+     * @param sampleRate samples per second of the audio that will be processed
+     * @param cutoffHz   cutoff of the two pole low-pass filter that isolates the low frequency band
+     */
+    FastOnsetDetector(double sampleRate, double cutoffHz) {
+        this.filterCoefficient = getCoefficient(sampleRate, 1000d / (2d * Math.PI * cutoffHz));
+        this.attackCoefficient = getCoefficient(sampleRate, ATTACK_MILLIS);
+        this.releaseCoefficient = getCoefficient(sampleRate, RELEASE_MILLIS);
+        this.referenceCoefficient = getCoefficient(sampleRate, REFERENCE_MILLIS);
+        reset();
+    }
+
+    /**
+     * @param sample normalized sample between -1 and 1
+     * @return true if an onset was detected at this sample
+     */
+    boolean process(double sample) {
+        filterState1 += filterCoefficient * (sample - filterState1);
+        filterState2 += filterCoefficient * (filterState1 - filterState2);
+
+        double level = Math.abs(filterState2);
+        envelope += (level > envelope ? attackCoefficient : releaseCoefficient) * (level - envelope);
+        reference += referenceCoefficient * (envelope - reference);
+
+        if (!isArmed) {
+            isArmed = envelope < reference * REARM_RATIO;
+            return false;
+        }
+
+        if (envelope > reference * ONSET_RATIO && envelope > MIN_ENVELOPE) {
+            isArmed = false;
+            return true;
+        }
+        return false;
+    }
+
+    void reset() {
+        filterState1 = 0d;
+        filterState2 = 0d;
+        envelope = 0d;
+        reference = 0d;
+        isArmed = true;
+    }
+
+    /**
+     * @return smoothing coefficient of a one pole filter with the given time constant
+     */
+    private static double getCoefficient(double sampleRate, double timeConstantMillis) {
+        return 1d - Math.exp(-1000d / (timeConstantMillis * sampleRate));
+    }
+}
@@ -5,9 +5,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pw.wunderlich.lightbeat.AppTaskOrchestrator;
 import pw.wunderlich.lightbeat.audio.device.*;
+import pw.wunderlich.lightbeat.audio.device.provider.*;
 import pw.wunderlich.lightbeat.config.Config;
-import pw.wunderlich.lightbeat.config.ConfigNode;
-import pw.wunderlich.lightbeat.util.TimeThreshold;
+import pw.wunderlich.lightbeat.util.Clock;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -21,26 +21,35 @@ import java.util.stream.Collectors;
 /**
  * Default {@link AudioReader} implementation that also serves as an {@link BeatEventManager}.
  * This implementation uses a listener-based approach to process audio data as it becomes available.
- * It can filter frequencies for bass detection and notifies registered {@link BeatObserver}s when a beat is detected.
+ * It can filter frequencies for bass detection and notifies registered {@link BeatObserver}s when a beat is detected,
+ * or when the {@link SectionDetector} detected a new section. If fast onset detection is enabled, new data is
+ * run through a {@link FastOnsetDetector} as soon as it arrives, to report onsets before their chunk is complete.
+ * Observers are notified in order via a {@link BeatEventBus}, without blocking the audio thread.
+ * <p>
+ * Readers created for offline analysis use a custom {@link Clock} and notify observers directly on the
+ * reading thread, see {@link OfflineBeatAnalyzer}.
  */
 public class LBAudioReader implements BeatEventManager, AudioReader {
 
-    private static final int AMPLITUDES_PER_SECOND = 50;
+    static final int AMPLITUDES_PER_SECOND = 50;
     private static final double BASS_CUTOFF_HZ = 200.0;
+    private static final double BASS_BAND_CUTOFF_HZ = 120.0;
     private static final double MINIMUM_AMPLITUDE = 0.005d;
+    private static final boolean DUMP_ALL_DEVICES = Boolean.getBoolean("lightbeat.audio.dumpAll");
 
     private static final Logger logger = LoggerFactory.getLogger(LBAudioReader.class);
 
     private final Config config;
     private final AppTaskOrchestrator taskOrchestrator;
+    private final BeatEventBus eventBus;
+    private final Clock clock;
 
     private final List<DeviceProvider> deviceProviders;
 
-    private final List<BeatObserver> beatEventObservers = new ArrayList<>();
-
     private AudioDevice audioDevice;
     private BeatInterpreter beatInterpreter;
-    private TimeThreshold nextBeatThreshold;
+    private SectionDetector sectionDetector;
+    private FastOnsetDetector fastOnsetDetector;
     private ScheduledFuture<?> healthCheckFuture;
 
     private ByteBuffer remainderBuffer;
@@ -48,12 +57,39 @@ public class LBAudioReader implements BeatEventManager, AudioReader {
     private int bytesPerChunk;
     private int samplesPerChunk;
 
+    // two pole low-pass to estimate the bass amplitude without an FFT while not in bass only mode
+    private double bassFilterCoefficient;
+    private double bassFilterState1;
+    private double bassFilterState2;
+
 
     public LBAudioReader(Config config, AppTaskOrchestrator taskOrchestrator) {
+        this(config, taskOrchestrator, new BeatEventBus(BeatEventBus.DEFAULT_CAPACITY, true),
+                taskOrchestrator.getClock(), createDeviceProviders(taskOrchestrator));
+    }
+
+    /**
+     * Creates a reader for offline analysis, which doesn't provide any devices and doesn't run a health check.
+     * Observers are notified directly on the reading thread, which keeps the {@link Clock} in sync with events.
+     *
+     * @param config to read the beat detection settings from
+     * @param clock  clock used for beat detection, for example the position in the analyzed file
+     */
+    LBAudioReader(Config config, Clock clock) {
+        this(config, null, BeatEventBus.createDirect(), clock, List.of());
+    }
+
+    private LBAudioReader(Config config, AppTaskOrchestrator taskOrchestrator, BeatEventBus eventBus,
+                          Clock clock, List<DeviceProvider> deviceProviders) {
         this.config = config;
         this.taskOrchestrator = taskOrchestrator;
+        this.eventBus = eventBus;
+        this.clock = clock;
+        this.deviceProviders = deviceProviders;
+    }
 
-        this.deviceProviders = new ArrayList<>();
+    private static List<DeviceProvider> createDeviceProviders(AppTaskOrchestrator taskOrchestrator) {
+        List<DeviceProvider> deviceProviders = new ArrayList<>();
         if (WASAPIDeviceProvider.isWindows()) {
             deviceProviders.add(new WASAPIDeviceProvider(taskOrchestrator));
         } else if (CoreAudioDeviceProvider.isMac()) {
@@ -64,6 +100,7 @@ public class LBAudioReader implements BeatEventManager, AudioReader {
         // fallbacks, first port audio (also libjitsi wrapped), then java audio
         deviceProviders.add(new PortAudioDeviceProvider(taskOrchestrator));
         deviceProviders.add(new JavaAudioDeviceProvider(taskOrchestrator));
+        return deviceProviders;
     }
 
     @Override
@@ -103,13 +140,17 @@ public class LBAudioReader implements BeatEventManager, AudioReader {
             return false;
         }
 
-        this.beatInterpreter = new BeatInterpreter(config, AMPLITUDES_PER_SECOND);
-        this.nextBeatThreshold = new TimeThreshold(TimeUnit.SECONDS.toMillis(1));
+        this.beatInterpreter = new BeatInterpreter(config, AMPLITUDES_PER_SECOND, clock);
+        this.sectionDetector = new SectionDetector(AMPLITUDES_PER_SECOND);
         this.audioFormat = audioDevice.getAudioFormat();
+        this.fastOnsetDetector = new FastOnsetDetector(audioFormat.sampleRate(), BASS_BAND_CUTOFF_HZ);
 
         int bytesPerSecond = (int) (audioFormat.sampleRate() * audioFormat.getBytesPerFrame());
         this.bytesPerChunk = bytesPerSecond / AMPLITUDES_PER_SECOND;
         this.samplesPerChunk = bytesPerChunk / audioFormat.getBytesPerFrame();
+        this.bassFilterCoefficient = 1d - Math.exp(-2d * Math.PI * BASS_BAND_CUTOFF_HZ / audioFormat.sampleRate());
+        this.bassFilterState1 = 0d;
+        this.bassFilterState2 = 0d;
 
         // Initialize a buffer to hold unprocessed data between listener calls.
         // Its size is exactly one chunk, as it will only hold trailing data smaller than a chunk.
@@ -117,13 +158,15 @@ public class LBAudioReader implements BeatEventManager, AudioReader {
         this.remainderBuffer.order(audioFormat.littleEndian() ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
 
         // Start a health check to ensure the device remains open.
-        healthCheckFuture = taskOrchestrator.schedulePeriodicTask(() -> {
-            if (audioDevice.isOpen()) {
-                return;
-            }
-            logger.error("Audio stream '{}' is no longer available. Stopping reader.", audioDevice.getName());
-            stop();
-        }, 1, 1, TimeUnit.SECONDS);
+        if (taskOrchestrator != null) {
+            healthCheckFuture = taskOrchestrator.schedulePeriodicTask(() -> {
+                if (audioDevice.isOpen()) {
+                    return;
+                }
+                logger.error("Audio stream '{}' is no longer available. Stopping reader.", audioDevice.getName());
+                stop();
+            }, 1, 1, TimeUnit.SECONDS);
+        }
 
         logger.info("Now listening to audio input from device {} ({})", audioDevice.getName(), audioFormat);
         return true;
@@ -137,8 +180,17 @@ public class LBAudioReader implements BeatEventManager, AudioReader {
         // Create a read-only buffer for the new data to process it without copying everything.
         ByteBuffer newData = ByteBuffer.wrap(data, 0, length).order(remainderBuffer.order());
 
+        if (config.getSnapshot().beatFastOnset()) {
+            BeatEvent onsetEvent = detectOnset(newData);
+            if (onsetEvent != null) {
+                eventBus.publishOnset(onsetEvent);
+            }
+        }
+
         byte[] chunkData = new byte[bytesPerChunk];
         BeatEvent beatEvent = null;
+        Section section = null;
+        boolean isOnsetRetracted = false;
 
         // Process chunks as long as we have enough combined data (remainder and new data).
         while (remainderBuffer.position() + newData.remaining() >= bytesPerChunk) {
@@ -158,16 +210,16 @@ public class LBAudioReader implements BeatEventManager, AudioReader {
                     .order(audioFormat.littleEndian() ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
 
             double[] normalizedAudioBuffer = new double[samplesPerChunk];
+            int zeroCrossings = 0;
             for (int i = 0; i < normalizedAudioBuffer.length; i++) {
-                int bytePosition = i * audioFormat.bytesPerSample();
-                if (audioFormat.bytesPerSample() == 2) {
-                    normalizedAudioBuffer[i] = chunkByteBuffer.getShort(bytePosition) / (double) Short.MAX_VALUE;
-                } else {
-                    normalizedAudioBuffer[i] = chunkByteBuffer.get(bytePosition) / (double) Byte.MAX_VALUE;
+                normalizedAudioBuffer[i] = readSample(chunkByteBuffer, i * audioFormat.bytesPerSample());
+                if (i > 0 && (normalizedAudioBuffer[i] >= 0d) != (normalizedAudioBuffer[i - 1] >= 0d)) {
+                    zeroCrossings++;
                 }
             }
 
-            if (config.getBoolean(ConfigNode.BEAT_BASS_ONLY_MODE)) {
+            boolean bassOnlyMode = config.getSnapshot().beatBassOnlyMode();
+            if (bassOnlyMode) {
                 lowPassFilter(normalizedAudioBuffer, audioFormat);
             }
 
@@ -177,44 +229,106 @@ public class LBAudioReader implements BeatEventManager, AudioReader {
                     .orElse(0d);
             rms = Math.sqrt(rms);
 
-            var beatEventInner = beatInterpreter.interpretValue(rms >= MINIMUM_AMPLITUDE ? rms : 0d);
+            double bassRms = bassOnlyMode ? rms : getBassRms(normalizedAudioBuffer);
+            var beatEventInner = beatInterpreter.interpretValue(rms >= MINIMUM_AMPLITUDE ? rms : 0d, bassRms);
             if (beatEventInner != null) {
                 beatEvent = beatEventInner;
             }
+            isOnsetRetracted |= beatInterpreter.pollRetractedOnset();
+
+            Section sectionInner;
+            if (beatEventInner != null && beatEventInner.isSilence()) {
+                sectionInner = sectionDetector.getSection() != Section.NORMAL ? Section.NORMAL : null;
+                sectionDetector.reset();
+            } else {
+                // the zero crossing rate is a cheap estimate of the spectral centroid
+                double centroidHz = zeroCrossings * audioFormat.sampleRate() / (2d * samplesPerChunk);
+                boolean isBeat = beatEventInner != null && !beatEventInner.isNoBeat();
+                sectionInner = sectionDetector.update(rms, bassRms, centroidHz, isBeat);
+            }
+            if (sectionInner != null) {
+                section = sectionInner;
+            }
         }
 
         if (newData.hasRemaining()) {
             remainderBuffer.put(newData);
         }
 
+        if (section != null) {
+            logger.info("Section changed to {}", section);
+        }
+        if (beatEvent != null || section != null || isOnsetRetracted) {
+            notifyObservers(isOnsetRetracted, section, beatEvent);
+        }
+    }
+
+    /**
+     * Runs the new data through the {@link FastOnsetDetector}, without consuming it.
+     *
+     * @return provisional beat event if an onset was detected and accepted by the {@link BeatInterpreter}, otherwise null
+     */
+    private BeatEvent detectOnset(ByteBuffer newData) {
+        boolean isOnset = false;
+        int bytesPerFrame = audioFormat.getBytesPerFrame();
+        for (int position = newData.position(); position + bytesPerFrame <= newData.limit(); position += bytesPerFrame) {
+            isOnset |= fastOnsetDetector.process(readSample(newData, position));
+        }
+        return isOnset ? beatInterpreter.interpretOnset() : null;
+    }
+
+    private double readSample(ByteBuffer buffer, int bytePosition) {
+        if (audioFormat.bytesPerSample() == 2) {
+            return buffer.getShort(bytePosition) / (double) Short.MAX_VALUE;
+        }
+        return buffer.get(bytePosition) / (double) Byte.MAX_VALUE;
+    }
+
+    /**
+     * Notifies registered observers about a retracted onset, a section change and a detected beat event,
+     * in that order. The events are queued on the event bus to avoid blocking the audio thread.
+     *
+     * @param isOnsetRetracted true if the last provisional onset was not confirmed
+     * @param section          new section or null if it didn't change
+     * @param beatEvent        detected beat event or null if there was none
+     */
+    private void notifyObservers(final boolean isOnsetRetracted, final Section section, final BeatEvent beatEvent) {
+        if (isOnsetRetracted) {
+            eventBus.publishOnsetRetracted();
+        }
+        if (section != null) {
+            eventBus.publishSection(section);
+        }
         if (beatEvent != null) {
-            notifyObservers(beatEvent);
+            eventBus.publishBeatEvent(beatEvent);
         }
     }
 
     /**
-     * Notifies registered observers about a detected beat event.
-     * This is dispatched on the task orchestrator to avoid blocking the audio thread.
+     * Runs the samples through a cheap two pole low-pass filter with the cutoff at BASS_BAND_CUTOFF_HZ,
+     * which is lower than BASS_CUTOFF_HZ to make up for the flat slope of the filter.
+     * The filter state is kept between chunks.
+     *
+     * @return RMS of the filtered samples, the samples are not modified
      */
-    private void notifyObservers(final BeatEvent beatEvent) {
-        taskOrchestrator.dispatch(() -> {
-            if (beatEvent.isSilence()) {
-                beatEventObservers.forEach(BeatObserver::silenceDetected);
-            } else if (beatEvent.isNoBeat()) {
-                beatEventObservers.forEach(BeatObserver::noBeatReceived);
-            } else if (nextBeatThreshold.isMet()) {
-                nextBeatThreshold.setCurrentThreshold(config.getInt(ConfigNode.BEAT_MIN_TIME_BETWEEN));
-                beatEventObservers.forEach(toNotify -> toNotify.beatReceived(beatEvent));
-            } else {
-                logger.info("Beat received, but it was skipped due to BEAT_MIN_TIME_BETWEEN");
-            }
-        });
+    private double getBassRms(double[] normalizedSampleArray) {
+        double state1 = bassFilterState1;
+        double state2 = bassFilterState2;
+        double sum = 0d;
+        for (double sample : normalizedSampleArray) {
+            state1 += bassFilterCoefficient * (sample - state1);
+            state2 += bassFilterCoefficient * (state1 - state2);
+            sum += state2 * state2;
+        }
+        bassFilterState1 = state1;
+        bassFilterState2 = state2;
+        return normalizedSampleArray.length > 0 ? Math.sqrt(sum / normalizedSampleArray.length) : 0d;
     }
 
     /**
      * Applies a low-pass filter using FFT, cutting off frequencies above BASS_CUTOFF_HZ.
      */
-    private void lowPassFilter(double[] normalizedSampleArray, LBAudioFormat format) {
+    static void lowPassFilter(double[] normalizedSampleArray, LBAudioFormat format) {
         int sampleCount = normalizedSampleArray.length;
         if (sampleCount == 0) return;
 
@@ -255,16 +369,13 @@ public class LBAudioReader implements BeatEventManager, AudioReader {
         audioDevice = null;
         remainderBuffer = null;
 
-        // Dispatch the final notification to observers to ensure thread safety
-        taskOrchestrator.dispatch(() -> {
-            beatEventObservers.forEach(beatObserver -> beatObserver.audioReaderStopped(status));
-            beatEventObservers.clear();
-        });
-        logger.info("No longer listening to audio input");
+        // observers are unregistered right away, new observers can already be registered for the next start
+        eventBus.publishStopped(status);
+        logger.info("No longer listening to audio input ({})", eventBus.getMetrics());
     }
 
     @Override
     public void registerBeatObserver(BeatObserver beatObserver) {
-        beatEventObservers.add(beatObserver);
+        eventBus.registerBeatObserver(beatObserver);
     }
 }
@@ -0,0 +1,126 @@
+package pw.wunderlich.lightbeat.audio;
+
+import pw.wunderlich.lightbeat.audio.device.FileAudioDevice;
+import pw.wunderlich.lightbeat.config.Config;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs audio files through the same {@link LBAudioReader} and {@link BeatInterpreter} pipeline that is used
+ * for live input. Detection is driven by the position in the file instead of the system time, so files are
+ * analyzed as fast as they can be decoded. Every call to {@link #analyze(Path)} uses its own reader,
+ * so multiple files can be analyzed concurrently.
+ */
+public class OfflineBeatAnalyzer {
+
+    private final Config config;
+
+
+    public OfflineBeatAnalyzer(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * Analyzes the given file on the calling thread.
+     *
+     * @param file audio file supported by the Java sound API
+     * @return analysis result
+     * @throws IOException if the file couldn't be opened or read
+     */
+    public BeatAnalysis analyze(Path file) throws IOException {
+        FileAudioDevice device = new FileAudioDevice(file);
+
+        // observers are notified directly, so the clock still matches the chunk that caused the event
+        LBAudioReader audioReader = new LBAudioReader(config, device::getPositionMillis);
+        AnalysisObserver observer = new AnalysisObserver(device);
+        audioReader.registerBeatObserver(observer);
+
+        if (!audioReader.start(device)) {
+            throw new IOException("Couldn't open audio file " + file);
+        }
+
+        try {
+            device.readAll();
+        } finally {
+            audioReader.stop();
+        }
+
+        long durationMillis = device.getPositionMillis();
+        observer.closeSegment(durationMillis);
+        return new BeatAnalysis(file, durationMillis, List.copyOf(observer.beats), List.copyOf(observer.segments),
+                List.copyOf(observer.sections), List.copyOf(observer.onsets));
+    }
+
+
+    private static class AnalysisObserver implements BeatObserver {
+
+        private final FileAudioDevice device;
+
+        private final List<BeatAnalysis.Beat> beats = new ArrayList<>();
+        private final List<BeatAnalysis.Segment> segments = new ArrayList<>();
+        private final List<BeatAnalysis.SectionChange> sections = new ArrayList<>();
+        private final List<BeatAnalysis.Onset> onsets = new ArrayList<>();
+
+        private BeatAnalysis.Segment.Type openSegmentType;
+        private long openSegmentStart;
+
+
+        private AnalysisObserver(FileAudioDevice device) {
+            this.device = device;
+        }
+
+        @Override
+        public void beatReceived(BeatEvent event) {
+            long time = device.getPositionMillis();
+            closeSegment(time);
+            beats.add(new BeatAnalysis.Beat(time, event.triggeringAmplitude(), event.average(), event.beatInBar(), event.bar(),
+                    event.synthetic()));
+        }
+
+        @Override
+        public void onsetDetected(BeatEvent event) {
+            onsets.add(new BeatAnalysis.Onset(device.getPositionMillis(), false));
+        }
+
+        @Override
+        public void onsetRetracted() {
+            int last = onsets.size() - 1;
+            onsets.set(last, new BeatAnalysis.Onset(onsets.get(last).timeMillis(), true));
+        }
+
+        @Override
+        public void noBeatReceived() {
+            openSegment(BeatAnalysis.Segment.Type.NO_BEAT);
+        }
+
+        @Override
+        public void silenceDetected() {
+            openSegment(BeatAnalysis.Segment.Type.SILENCE);
+        }
+
+        @Override
+        public void sectionChanged(Section section) {
+            sections.add(new BeatAnalysis.SectionChange(device.getPositionMillis(), section));
+        }
+
+        @Override
+        public void audioReaderStopped(StopStatus status) {}
+
+        private void openSegment(BeatAnalysis.Segment.Type type) {
+            long time = device.getPositionMillis();
+            closeSegment(time);
+            openSegmentType = type;
+            openSegmentStart = time;
+        }
+
+        private void closeSegment(long time) {
+            if (openSegmentType != null) {
+                segments.add(new BeatAnalysis.Segment(openSegmentType, openSegmentStart, time));
+                openSegmentType = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package pw.wunderlich.lightbeat.audio;
+
+/**
+ * High level section of a track, as estimated from long term trends of the audio data.
+ * Passed to {@link BeatObserver#sectionChanged(Section)}.
+ */
+public enum Section {
+
+    /**
+     * Regular part of the track, also the section after the detection started or silence was detected.
+     */
+    NORMAL,
+
+    /**
+     * Energy, brightness or beat density are rising, usually towards a drop.
+     */
+    BUILD_UP,
+
+    /**
+     * Sudden rise of the low band energy, the most intense part of a track.
+     */
+    DROP,
+
+    /**
+     * Low band energy and beat density fell well below their long term average.
+     */
+    BREAKDOWN
+}
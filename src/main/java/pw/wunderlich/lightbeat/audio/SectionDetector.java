@@ -0,0 +1,202 @@
+package pw.wunderlich.lightbeat.audio;
+
+import java.util.Arrays;
+
+/**
+ * Streaming detector for high level {@link Section}'s of a track. Audio chunks are aggregated into one value
+ * per second for energy, low band energy, spectral centroid and beat density, which are kept for the last
+ * {@link #HISTORY_SECONDS} seconds in fixed size ring buffers. Once per second the short term values and trends
+ * are compared against the long term averages:
+ * <ul>
+ *     <li>{@link Section#DROP} if the low band energy of the last seconds jumped well above the seconds before,
+ *     while beats are present</li>
+ *     <li>{@link Section#BUILD_UP} if the energy rises steadily, together with the centroid or beat density</li>
+ *     <li>{@link Section#BREAKDOWN} if the low band energy and beat density fell well below their long term average</li>
+ * </ul>
+ * Sections last at least a few seconds, except for drops, which interrupt any other section.
+ */
+class SectionDetector {
+
+    private static final int HISTORY_SECONDS = 32;
+    private static final int MIN_HISTORY_SECONDS = 12;
+    private static final int SHORT_SECONDS = 4;
+    private static final int TREND_SECONDS = 8;
+    private static final int DROP_SECONDS = 2;
+    private static final int MIN_SECTION_SECONDS = 4;
+    private static final int MAX_DROP_SECONDS = 16;
+
+    private static final double DROP_BASS_RATIO = 1.6d;
+    private static final double DROP_MIN_BEATS_PER_SECOND = 1d;
+    private static final double BUILD_UP_MIN_SLOPE = 0.03d;
+    private static final double BREAKDOWN_BASS_RATIO = 0.7d;
+    private static final double BREAKDOWN_DENSITY_RATIO = 0.5d;
+    private static final double BREAKDOWN_RECOVERY_BASS_RATIO = 0.9d;
+    private static final double BREAKDOWN_RECOVERY_DENSITY_RATIO = 0.8d;
+
+    private final int updatesPerSecond;
+
+    private final double[] energy = new double[HISTORY_SECONDS];
+    private final double[] bass = new double[HISTORY_SECONDS];
+    private final double[] centroid = new double[HISTORY_SECONDS];
+    private final double[] beats = new double[HISTORY_SECONDS];
+    private int head = 0;
+    private int seconds = 0;
+
+    private int chunks = 0;
+    private double energySum = 0d;
+    private double bassSum = 0d;
+    private double centroidSum = 0d;
+    private int beatCount = 0;
+
+    private Section section = Section.NORMAL;
+    private int sectionSeconds = 0;
+
+
+    SectionDetector(int updatesPerSecond) {
+        this.updatesPerSecond = updatesPerSecond;
+    }
+
+    /**
+     * Adds the values of an audio chunk, sections are only evaluated once a second is full.
+     *
+     * @param amplitude     RMS of the chunk
+     * @param bassAmplitude RMS of the low frequency band of the chunk
+     * @param centroidHz    estimated spectral centroid of the chunk
+     * @param beat          true if a beat was accepted in this chunk
+     * @return the new section if it changed, otherwise null
+     */
+    Section update(double amplitude, double bassAmplitude, double centroidHz, boolean beat) {
+        energySum += amplitude;
+        bassSum += bassAmplitude;
+        centroidSum += centroidHz * amplitude;
+        if (beat) {
+            beatCount++;
+        }
+
+        if (++chunks < updatesPerSecond) {
+            return null;
+        }
+
+        energy[head] = energySum / chunks;
+        bass[head] = bassSum / chunks;
+        // weighted by amplitude, so quiet chunks dominated by noise don't distort the centroid
+        centroid[head] = energySum > 0d ? centroidSum / energySum : 0d;
+        beats[head] = beatCount;
+        head = (head + 1) % HISTORY_SECONDS;
+        seconds = Math.min(seconds + 1, HISTORY_SECONDS);
+
+        chunks = 0;
+        energySum = 0d;
+        bassSum = 0d;
+        centroidSum = 0d;
+        beatCount = 0;
+
+        return evaluate();
+    }
+
+    /**
+     * Clears the history, for example after silence was detected. The section is reset to {@link Section#NORMAL}.
+     */
+    void reset() {
+        Arrays.fill(energy, 0d);
+        Arrays.fill(bass, 0d);
+        Arrays.fill(centroid, 0d);
+        Arrays.fill(beats, 0d);
+        head = 0;
+        seconds = 0;
+        chunks = 0;
+        energySum = 0d;
+        bassSum = 0d;
+        centroidSum = 0d;
+        beatCount = 0;
+        section = Section.NORMAL;
+        sectionSeconds = 0;
+    }
+
+    Section getSection() {
+        return section;
+    }
+
+    private Section evaluate() {
+        sectionSeconds++;
+        if (seconds < MIN_HISTORY_SECONDS) {
+            return null;
+        }
+
+        double bassLong = mean(bass, 0, seconds);
+        double densityLong = mean(beats, 0, seconds);
+        double bassShort = mean(bass, 0, SHORT_SECONDS);
+        double densityShort = mean(beats, 0, SHORT_SECONDS);
+
+        boolean isDrop = mean(bass, 0, DROP_SECONDS) > mean(bass, DROP_SECONDS, TREND_SECONDS) * DROP_BASS_RATIO
+                && mean(beats, 0, DROP_SECONDS) >= DROP_MIN_BEATS_PER_SECOND;
+        boolean isBuildUp = slope(energy, TREND_SECONDS) > BUILD_UP_MIN_SLOPE
+                && (slope(centroid, TREND_SECONDS) > 0d || slope(beats, TREND_SECONDS) > 0d);
+        boolean isBreakdown = section == Section.BREAKDOWN
+                ? bassShort < bassLong * BREAKDOWN_RECOVERY_BASS_RATIO && densityShort < densityLong * BREAKDOWN_RECOVERY_DENSITY_RATIO
+                : bassShort < bassLong * BREAKDOWN_BASS_RATIO && densityShort < densityLong * BREAKDOWN_DENSITY_RATIO;
+
+        Section next;
+        if (section == Section.DROP) {
+            next = sectionSeconds < MAX_DROP_SECONDS ? Section.DROP : isBreakdown ? Section.BREAKDOWN : Section.NORMAL;
+        } else if (isDrop) {
+            next = Section.DROP;
+        } else if (isBuildUp) {
+            next = Section.BUILD_UP;
+        } else if (isBreakdown) {
+            next = Section.BREAKDOWN;
+        } else {
+            next = Section.NORMAL;
+        }
+
+        if (next == section || (next != Section.DROP && sectionSeconds < MIN_SECTION_SECONDS)) {
+            return null;
+        }
+
+        section = next;
+        sectionSeconds = 0;
+        return next;
+    }
+
+    /**
+     * @param values      ring buffer to read from
+     * @param secondsAgo  seconds to skip, 0 to start with the latest second
+     * @param count       amount of seconds to average
+     * @return average of the given seconds
+     */
+    private double mean(double[] values, int secondsAgo, int count) {
+        count = Math.min(count, seconds - secondsAgo);
+        if (count <= 0) {
+            return 0d;
+        }
+
+        double sum = 0d;
+        for (int i = secondsAgo; i < secondsAgo + count; i++) {
+            sum += values[Math.floorMod(head - 1 - i, HISTORY_SECONDS)];
+        }
+        return sum / count;
+    }
+
+    /**
+     * Least squares slope of the last seconds, relative to their mean.
+     *
+     * @return relative change per second, 0 if the mean is 0
+     */
+    private double slope(double[] values, int count) {
+        count = Math.min(count, seconds);
+        double meanX = (count - 1) / 2d;
+        double meanY = mean(values, 0, count);
+        if (meanY <= 0d) {
+            return 0d;
+        }
+
+        double covariance = 0d;
+        double variance = 0d;
+        for (int x = 0; x < count; x++) {
+            double y = values[Math.floorMod(head - count + x, HISTORY_SECONDS)];
+            covariance += (x - meanX) * (y - meanY);
+            variance += (x - meanX) * (x - meanX);
+        }
+        return variance > 0d ? covariance / variance / meanY : 0d;
+    }
+}
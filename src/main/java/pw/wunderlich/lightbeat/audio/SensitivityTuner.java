@@ -0,0 +1,86 @@
+package pw.wunderlich.lightbeat.audio;
+
+/**
+ * Closed loop controller for the beat threshold multiplier used by {@link BeatInterpreter}, if automatic sensitivity
+ * is enabled. Compares the recent rate of detected beats, including beats that were rejected for following
+ * the previous beat too closely, against a target rate and moves the multiplier in bounded steps,
+ * a higher multiplier means fewer detected beats. Updated once per audio chunk, all state is kept incrementally.
+ */
+class SensitivityTuner {
+
+    static final double MIN_MULTIPLIER = 1.10d;
+    static final double MAX_MULTIPLIER = 1.80d;
+
+    private static final double RATE_WINDOW_SECONDS = 8d;
+    private static final double DEADBAND = 0.1d;
+    private static final double GAIN = 0.002d;
+    private static final double MAX_STEP = 0.0005d;
+
+    private final int updatesPerSecond;
+    private final int rateWindowUpdates;
+
+    private double multiplier;
+    private double beatsPerSecond = 0d;
+    private int activeUpdates = 0;
+
+
+    SensitivityTuner(int updatesPerSecond, double initialMultiplier) {
+        this.updatesPerSecond = updatesPerSecond;
+        this.rateWindowUpdates = (int) (RATE_WINDOW_SECONDS * updatesPerSecond);
+        this.multiplier = clamp(initialMultiplier);
+    }
+
+    /**
+     * Updates the beat rate with the current chunk and adjusts the multiplier towards the target rate.
+     * Chunks during silence or breakdowns should not be counted as active, as the lack of beats there
+     * is no reason to raise the sensitivity.
+     *
+     * @param detectedBeats        beats detected in this chunk, accepted or rejected
+     * @param isActive             true if music with beats is currently playing
+     * @param targetBeatsPerSecond rate to aim for
+     * @return the new multiplier
+     */
+    double update(int detectedBeats, boolean isActive, double targetBeatsPerSecond) {
+        if (!isActive || targetBeatsPerSecond <= 0d) {
+            return multiplier;
+        }
+
+        // cumulative mean until the window is filled, the multiplier is only adjusted after that,
+        // as a few beats are not enough to tell the rate apart from the target
+        activeUpdates++;
+        double smoothing = 1d / Math.min(activeUpdates, rateWindowUpdates);
+        beatsPerSecond += smoothing * (detectedBeats * updatesPerSecond - beatsPerSecond);
+        if (activeUpdates < rateWindowUpdates) {
+            return multiplier;
+        }
+
+        double error = (beatsPerSecond - targetBeatsPerSecond) / targetBeatsPerSecond;
+        if (Math.abs(error) > DEADBAND) {
+            double step = Math.max(-MAX_STEP, Math.min(MAX_STEP, GAIN * error));
+            multiplier = clamp(multiplier + step);
+        }
+        return multiplier;
+    }
+
+    /**
+     * Sets the multiplier, for example to follow the manual sensitivity while automatic sensitivity is disabled.
+     * The next automatic adjustment starts from this value.
+     */
+    void reset(double multiplier) {
+        this.multiplier = clamp(multiplier);
+        this.beatsPerSecond = 0d;
+        this.activeUpdates = 0;
+    }
+
+    double getMultiplier() {
+        return multiplier;
+    }
+
+    double getBeatsPerSecond() {
+        return beatsPerSecond;
+    }
+
+    private static double clamp(double multiplier) {
+        return Math.max(MIN_MULTIPLIER, Math.min(MAX_MULTIPLIER, multiplier));
+    }
+}
@@ -0,0 +1,123 @@
+package pw.wunderlich.lightbeat.audio;
+
+/**
+ * Estimates the tempo from the intervals between accepted beats. Intervals are folded by octaves into
+ * the range of {@link #MIN_BPM} to {@link #MAX_BPM}, so that detecting only every second kick or additional
+ * off beats still counts towards the same tempo, and collected in a histogram that decays with every beat.
+ * Updates are constant time, the histogram only has a few dozen bins.
+ */
+class TempoTracker {
+
+    static final double MIN_BPM = 90d;
+    static final double MAX_BPM = 180d;
+
+    private static final double MIN_INTERVAL_MILLIS = 60000d / MAX_BPM;
+    private static final double MAX_INTERVAL_MILLIS = 60000d / MIN_BPM;
+    private static final long MAX_BEAT_GAP_MILLIS = 2000L;
+    private static final double BIN_MILLIS = 10d;
+    private static final double DECAY_PER_BEAT = 0.95d;
+
+    private final double[] histogram = new double[(int) Math.ceil((MAX_INTERVAL_MILLIS - MIN_INTERVAL_MILLIS) / BIN_MILLIS) + 1];
+    private double histogramSum = 0d;
+
+    private long lastBeatMillis = -1L;
+
+
+    /**
+     * Adds the interval to the previous beat to the histogram. Gaps longer than two seconds, like after
+     * a breakdown, are not counted as interval.
+     *
+     * @param timeMillis time of the accepted beat
+     */
+    void beatAccepted(long timeMillis) {
+        long interval = timeMillis - lastBeatMillis;
+        boolean hasPrevious = lastBeatMillis >= 0L;
+        lastBeatMillis = timeMillis;
+        if (!hasPrevious || interval <= 0L || interval > MAX_BEAT_GAP_MILLIS) {
+            return;
+        }
+
+        histogramSum = 0d;
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] *= DECAY_PER_BEAT;
+            histogramSum += histogram[i];
+        }
+
+        histogram[getBin(foldInterval(interval))] += 1d;
+        histogramSum += 1d;
+    }
+
+    /**
+     * Sets the time of the previous beat without counting an interval, for beats whose interval to
+     * the previous detected beat is unknown, like the first beat after generated beats.
+     *
+     * @param timeMillis time of the beat
+     */
+    void resync(long timeMillis) {
+        lastBeatMillis = timeMillis;
+    }
+
+    /**
+     * @return estimated tempo within {@link #MIN_BPM} and {@link #MAX_BPM}, or 0 if no interval was recorded yet
+     */
+    double getBeatsPerMinute() {
+        int peak = getPeakBin();
+        if (peak < 0) {
+            return 0d;
+        }
+
+        // weighted mean of the peak and its neighbours, for a resolution finer than the bin size
+        double weightSum = 0d;
+        double intervalSum = 0d;
+        for (int i = Math.max(0, peak - 1); i <= Math.min(histogram.length - 1, peak + 1); i++) {
+            weightSum += histogram[i];
+            intervalSum += histogram[i] * (MIN_INTERVAL_MILLIS + (i + 0.5d) * BIN_MILLIS);
+        }
+
+        double interval = Math.min(MAX_INTERVAL_MILLIS, Math.max(MIN_INTERVAL_MILLIS, intervalSum / weightSum));
+        return 60000d / interval;
+    }
+
+    /**
+     * @return share of the recent intervals that agree with the estimated tempo, between 0 and 1
+     */
+    double getConfidence() {
+        int peak = getPeakBin();
+        if (peak < 0) {
+            return 0d;
+        }
+
+        double peakSum = 0d;
+        for (int i = Math.max(0, peak - 1); i <= Math.min(histogram.length - 1, peak + 1); i++) {
+            peakSum += histogram[i];
+        }
+        return Math.min(1d, peakSum / histogramSum);
+    }
+
+    private int getPeakBin() {
+        int peak = -1;
+        double peakValue = 0d;
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] > peakValue) {
+                peakValue = histogram[i];
+                peak = i;
+            }
+        }
+        return peak;
+    }
+
+    private int getBin(double intervalMillis) {
+        int bin = (int) ((intervalMillis - MIN_INTERVAL_MILLIS) / BIN_MILLIS);
+        return Math.min(histogram.length - 1, Math.max(0, bin));
+    }
+
+    private static double foldInterval(double intervalMillis) {
+        while (intervalMillis < MIN_INTERVAL_MILLIS) {
+            intervalMillis *= 2d;
+        }
+        while (intervalMillis > MAX_INTERVAL_MILLIS) {
+            intervalMillis /= 2d;
+        }
+        return intervalMillis;
+    }
+}
@@ -0,0 +1,144 @@
+package pw.wunderlich.lightbeat.audio.device;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * {@link AudioDevice} that reads an audio file supported by the Java sound API, used for offline analysis.
+ * Starting the device only opens the file, the data is passed to the listener on the calling thread
+ * via {@link #readAll()}, in blocks of {@link #BLOCK_MILLIS}. Audio is converted to mono 16 bit PCM.
+ * <p>
+ * {@link #getPositionMillis()} returns the position of the data that was passed to the listener so far,
+ * and serves as clock while the file is analyzed faster than real time.
+ */
+public class FileAudioDevice implements AudioDevice {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileAudioDevice.class);
+
+    /**
+     * Small blocks keep the position close to the data that is currently being analyzed.
+     */
+    private static final int BLOCK_MILLIS = 5;
+    private static final int BYTES_PER_SAMPLE = 2;
+
+    private final Path file;
+
+    private AudioInputStream stream;
+    private LBAudioFormat audioFormat;
+    private AudioDataListener listener;
+    private int channels;
+    private long framesRead;
+
+
+    public FileAudioDevice(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public String getName() {
+        return "File: " + file.getFileName();
+    }
+
+    @Override
+    public LBAudioFormat getAudioFormat() {
+        return audioFormat;
+    }
+
+    @Override
+    public void setAudioListener(AudioDataListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public boolean start() {
+        try {
+            AudioInputStream sourceStream = AudioSystem.getAudioInputStream(file.toFile());
+            AudioFormat sourceFormat = sourceStream.getFormat();
+            AudioFormat pcmFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sourceFormat.getSampleRate(),
+                    BYTES_PER_SAMPLE * 8, sourceFormat.getChannels(), sourceFormat.getChannels() * BYTES_PER_SAMPLE,
+                    sourceFormat.getSampleRate(), false);
+
+            this.stream = AudioSystem.getAudioInputStream(pcmFormat, sourceStream);
+            this.channels = pcmFormat.getChannels();
+            this.audioFormat = new LBAudioFormat(pcmFormat.getSampleRate(), true, 1, BYTES_PER_SAMPLE);
+            this.framesRead = 0L;
+            return true;
+        } catch (UnsupportedAudioFileException | IOException | IllegalArgumentException e) {
+            logger.warn("Couldn't open audio file {}", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads the whole file on the calling thread and passes the data to the registered listener.
+     * Returns once the end of the file was reached or the device was stopped.
+     *
+     * @throws IOException if the file could not be read
+     */
+    public void readAll() throws IOException {
+        if (!isOpen()) {
+            throw new IllegalStateException("Device " + getName() + " was not started");
+        }
+
+        int framesPerBlock = Math.max(1, (int) (audioFormat.sampleRate() * BLOCK_MILLIS / 1000));
+        int inputFrameSize = channels * BYTES_PER_SAMPLE;
+        byte[] inputBuffer = new byte[framesPerBlock * inputFrameSize];
+        byte[] outputBuffer = new byte[framesPerBlock * BYTES_PER_SAMPLE];
+
+        int bytesRead;
+        while (isOpen() && (bytesRead = stream.readNBytes(inputBuffer, 0, inputBuffer.length)) > 0) {
+            int frames = bytesRead / inputFrameSize;
+            for (int frame = 0; frame < frames; frame++) {
+                // mix down to mono
+                int sum = 0;
+                for (int channel = 0; channel < channels; channel++) {
+                    int index = (frame * channels + channel) * BYTES_PER_SAMPLE;
+                    sum += (short) ((inputBuffer[index] & 0xFF) | (inputBuffer[index + 1] << 8));
+                }
+                int sample = sum / channels;
+                outputBuffer[frame * BYTES_PER_SAMPLE] = (byte) sample;
+                outputBuffer[frame * BYTES_PER_SAMPLE + 1] = (byte) (sample >> 8);
+            }
+
+            framesRead += frames;
+            AudioDataListener currentListener = listener;
+            if (currentListener != null) {
+                currentListener.onDataAvailable(outputBuffer, frames * BYTES_PER_SAMPLE);
+            }
+        }
+    }
+
+    /**
+     * @return position in milliseconds of the data that was passed to the listener so far
+     */
+    public long getPositionMillis() {
+        return audioFormat != null ? (long) (framesRead * 1000d / audioFormat.sampleRate()) : 0L;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return stream != null;
+    }
+
+    @Override
+    public boolean stop() {
+        if (stream == null) {
+            return false;
+        }
+
+        try {
+            stream.close();
+        } catch (IOException e) {
+            logger.warn("Couldn't close audio file {}", file, e);
+        }
+        stream = null;
+        return true;
+    }
+}
@@ -32,4 +32,12 @@ public interface Config {
     void putList(ConfigNode node, List<?> list);
 
     void remove(ConfigNode node);
+
+    /**
+     * Get the current snapshot of config values that are read frequently. Prefer this over the
+     * get methods on hot paths, as it doesn't access the backing store.
+     *
+     * @return current snapshot, replaced whenever a contained value changes
+     */
+    ConfigSnapshot getSnapshot();
 }
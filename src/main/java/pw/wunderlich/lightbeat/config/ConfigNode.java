@@ -8,10 +8,14 @@ public enum ConfigNode {
     AUTOSTART("autostart"),
     BEAT_MIN_TIME_BETWEEN("beat.mintimebetween"),
     BEAT_SENSITIVITY("beat.sensitivity"),
+    BEAT_SENSITIVITY_AUTO("beat.sensitivity.auto"),
     BEAT_BASS_ONLY_MODE("beat.bassonlymode"),
+    BEAT_FAST_ONSET("beat.fastonset"),
+    BEAT_FLYWHEEL_BARS("beat.flywheelbars"),
     BRIDGE_USERNAME_LEGACY("bridge.username"),
     BRIDGE_IPADDRESS_LEGACY("bridge.ipaddress"),
     BRIDGE_LIST("bridge.list"),
+    BRIDGE_ADDITIONAL("bridge.additional"),
     BRIGHTNESS_FADE_DIFFERENCE("brightness.fade.difference"),
     BRIGHTNESS_FADE_MAX_TIME("brightness.fade.maxtime"),
     BRIGHTNESS_MIN("brightness.min"),
@@ -24,9 +28,18 @@ public enum ConfigNode {
     EFFECT_ALERT("effect.alert"),
     EFFECT_COLOR_STROBE("effect.colorstrobe"),
     EFFECT_STROBE("effect.strobe"),
+    ENTERTAINMENT_ADDRESS("entertainment.address"),
+    ENTERTAINMENT_AREA("entertainment.area"),
+    ENTERTAINMENT_ENABLED("entertainment.enabled"),
+    ENTERTAINMENT_FRAME_RATE("entertainment.framerate"),
     LAST_AUDIO_SOURCE("frame.lastaudiosource"),
     LIGHT_AMOUNT_PROBABILITY("lights.amountprobability"),
+    LIGHTS_ASYNC_REQUESTS("lights.asyncrequests"),
+    LIGHTS_COALESCE_UPDATES("lights.coalesce"),
+    LIGHTS_COMMAND_RATE("lights.commandrate"),
     LIGHTS_DISABLED("lights.disabled"),
+    LIGHTS_FRAME_RATE("lights.framerate"),
+    LIGHTS_GROUP_BATCHING("lights.groupbatching"),
     SHOW_ADVANCED_SETTINGS("frame.showadvanced"),
     UPDATE_DISABLE_NOTIFICATION("frame.updatedisablenotification"),
     WINDOW_LOCATION("window.location"),
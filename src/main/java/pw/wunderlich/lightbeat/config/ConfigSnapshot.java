@@ -0,0 +1,45 @@
+package pw.wunderlich.lightbeat.config;
+
+/**
+ * Immutable view of the config values that are read on hot paths, like for every audio chunk or beat.
+ * The current snapshot is obtained via {@link Config#getSnapshot()} and replaced as a whole once any
+ * value changes, so the fields of a single snapshot are always consistent with each other.
+ */
+public record ConfigSnapshot(int beatSensitivity,
+                             boolean beatSensitivityAuto,
+                             int beatMinTimeBetween,
+                             boolean beatBassOnlyMode,
+                             boolean beatFastOnset,
+                             int beatFlywheelBars,
+                             int brightnessMin,
+                             int brightnessMax,
+                             int brightnessFadeDifference,
+                             int brightnessFadeMaxTime,
+                             int colorRandomizationRange,
+                             int lightAmountProbability,
+                             String colorSetSelected) {
+
+    /**
+     * Reads all values of a snapshot from the given config.
+     *
+     * @param config to read the values from
+     * @return new snapshot
+     */
+    public static ConfigSnapshot of(Config config) {
+        return new ConfigSnapshot(
+                config.getInt(ConfigNode.BEAT_SENSITIVITY),
+                config.getBoolean(ConfigNode.BEAT_SENSITIVITY_AUTO),
+                config.getInt(ConfigNode.BEAT_MIN_TIME_BETWEEN),
+                config.getBoolean(ConfigNode.BEAT_BASS_ONLY_MODE),
+                config.getBoolean(ConfigNode.BEAT_FAST_ONSET),
+                config.getInt(ConfigNode.BEAT_FLYWHEEL_BARS),
+                config.getInt(ConfigNode.BRIGHTNESS_MIN),
+                config.getInt(ConfigNode.BRIGHTNESS_MAX),
+                config.getInt(ConfigNode.BRIGHTNESS_FADE_DIFFERENCE),
+                config.getInt(ConfigNode.BRIGHTNESS_FADE_MAX_TIME),
+                config.getInt(ConfigNode.COLOR_RANDOMIZATION_RANGE),
+                config.getInt(ConfigNode.LIGHT_AMOUNT_PROBABILITY),
+                config.get(ConfigNode.COLOR_SET_SELECTED)
+        );
+    }
+}
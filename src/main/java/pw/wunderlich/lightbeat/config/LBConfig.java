@@ -9,7 +9,8 @@ import java.util.prefs.Preferences;
 
 /**
  * Configuration handler for application. Access data via various get methods.
- * Also contains static default values if no other value is stored.
+ * Also contains static default values if no other value is stored. Keeps a {@link ConfigSnapshot}
+ * that is rebuilt from a {@link java.util.prefs.PreferenceChangeListener} whenever a preference changes.
  */
 public class LBConfig implements Config {
 
@@ -23,6 +24,8 @@ public class LBConfig implements Config {
     private final Map<String, Integer> defaultInts = new HashMap<>();
     private final Map<String, Boolean> defaultBools = new HashMap<>();
 
+    private volatile ConfigSnapshot snapshot;
+
 
     public LBConfig() {
         preferences = Preferences.userNodeForPackage(getClass());
@@ -54,16 +57,23 @@ public class LBConfig implements Config {
 
         defaultInts.put(ConfigNode.BEAT_SENSITIVITY.getKey(), 5);
         defaultInts.put(ConfigNode.BEAT_MIN_TIME_BETWEEN.getKey(), 200);
+        defaultInts.put(ConfigNode.BEAT_FLYWHEEL_BARS.getKey(), 0);
         defaultInts.put(ConfigNode.BRIGHTNESS_FADE_DIFFERENCE.getKey(), 5);
         defaultInts.put(ConfigNode.BRIGHTNESS_FADE_MAX_TIME.getKey(), 5);
         defaultInts.put(ConfigNode.BRIGHTNESS_MIN.getKey(), 1);
         defaultInts.put(ConfigNode.BRIGHTNESS_MAX.getKey(), 254);
         defaultInts.put(ConfigNode.COLOR_RANDOMIZATION_RANGE.getKey(), 5);
         defaultInts.put(ConfigNode.LIGHT_AMOUNT_PROBABILITY.getKey(), 3);
+        defaultInts.put(ConfigNode.LIGHTS_FRAME_RATE.getKey(), 0);
+        defaultInts.put(ConfigNode.LIGHTS_COMMAND_RATE.getKey(), 0);
+        defaultInts.put(ConfigNode.ENTERTAINMENT_FRAME_RATE.getKey(), 50);
 
         defaultBools.put(ConfigNode.EFFECT_ALERT.getKey(), true);
         defaultBools.put(ConfigNode.EFFECT_COLOR_STROBE.getKey(), true);
         defaultBools.put(ConfigNode.EFFECT_STROBE.getKey(), true);
+        defaultBools.put(ConfigNode.LIGHTS_COALESCE_UPDATES.getKey(), false);
+        defaultBools.put(ConfigNode.LIGHTS_ASYNC_REQUESTS.getKey(), false);
+        defaultBools.put(ConfigNode.ENTERTAINMENT_ENABLED.getKey(), false);
 
         // hardcoded color presets
         defaults.put(ConfigNode.COLOR_SET_PRESET_LIST.getKey(), "Rainbow■Club■Saturation Gradient■Flashing■Light Colors■Very Light");
@@ -73,6 +83,10 @@ public class LBConfig implements Config {
         defaults.put("color.sets.Flashing", "-65536■-35210■-23808■-19891■-1442048■-983216■-14483712■-7405722■-16711740■-10879029■-16741121■-10898177■-6160129■-3971329■-65327■-40729■-65486■-44935");
         defaults.put("color.sets.Light_Colors", "-8988417■-5505162■-35124■-8978452■-35181■-2359434■-887041■-4746■-28042■-9003521■-65674■-6815882");
         defaults.put("color.sets.Very_Light", "-6496769■-6503937■-6508033■-5268225■-17764■-6488156■-6501121■-3433217■-25422■-21092■-25345■-25371■-11364■-25439■-25438■-5046372■-7340129");
+
+        // register after defaults are set, as listeners are notified from a different thread
+        snapshot = ConfigSnapshot.of(this);
+        preferences.addPreferenceChangeListener(evt -> snapshot = ConfigSnapshot.of(this));
     }
 
     @Override
@@ -166,4 +180,9 @@ public class LBConfig implements Config {
     public void remove(ConfigNode node) {
         preferences.remove(node.getKey());
     }
+
+    @Override
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
+    }
 }
\ No newline at end of file
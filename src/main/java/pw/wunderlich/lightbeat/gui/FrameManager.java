@@ -111,6 +111,16 @@ public class FrameManager implements HueStateObserver {
         showConnectFrame().disconnected();
     }
 
+    @Override
+    public void additionalBridgeUnavailable(String ip, String reason) {
+        SwingUtilities.invokeLater(() -> {
+            HueFrame frame = currentFrame;
+            JOptionPane.showMessageDialog(frame != null ? frame.getJFrame() : null,
+                    "The additional bridge at " + ip + " is not used, " + reason + ".",
+                    "Additional Bridge", JOptionPane.WARNING_MESSAGE);
+        });
+    }
+
     private HueStateObserver showConnectFrame() {
         synchronized (frameLock) {
             if (currentFrame instanceof ConnectFrame) {
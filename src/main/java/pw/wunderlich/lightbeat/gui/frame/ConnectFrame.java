@@ -213,6 +213,9 @@ public class ConnectFrame extends AbstractFrame implements HueStateObserver {
         toggleButtonAndDropdown(true, "Bridge disconnected");
     }
 
+    @Override
+    public void additionalBridgeUnavailable(String ip, String reason) {}
+
     private void setBridgeList(List<AccessPoint> bridges) {
         currentAccessPoints = bridges;
         runOnSwingThread(() -> {
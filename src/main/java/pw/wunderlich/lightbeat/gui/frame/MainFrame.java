@@ -10,6 +10,7 @@ import pw.wunderlich.lightbeat.audio.AudioReader;
 import pw.wunderlich.lightbeat.audio.BeatEvent;
 import pw.wunderlich.lightbeat.audio.BeatEventManager;
 import pw.wunderlich.lightbeat.audio.BeatObserver;
+import pw.wunderlich.lightbeat.audio.Section;
 import pw.wunderlich.lightbeat.audio.device.AudioDevice;
 import pw.wunderlich.lightbeat.config.Config;
 import pw.wunderlich.lightbeat.config.ConfigNode;
@@ -77,6 +78,13 @@ public class MainFrame extends AbstractFrame implements BeatObserver {
     private JConfigCheckBox glowCheckBox;
     private JConfigCheckBox bassOnlyModeCheckBox;
     private JConfigSlider beatSensitivitySlider;
+    private JConfigCheckBox beatSensitivityAutoCheckBox;
+    private JConfigCheckBox fastOnsetCheckBox;
+    private JConfigSlider flywheelBarsSlider;
+    private JConfigSlider frameRateSlider;
+    private JConfigCheckBox groupBatchingCheckBox;
+    private JConfigSlider commandRateSlider;
+    private JConfigCheckBox coalesceUpdatesCheckBox;
     private JConfigSlider colorRandomizationSlider;
     private JConfigSlider fadeBrightnessSlider;
     private JConfigSlider maxTransitionTimeSlider;
@@ -237,6 +245,13 @@ public class MainFrame extends AbstractFrame implements BeatObserver {
         glowCheckBox = new JConfigCheckBox(config, ConfigNode.EFFECT_ALERT);
         bassOnlyModeCheckBox = new JConfigCheckBox(config, ConfigNode.BEAT_BASS_ONLY_MODE);
         beatSensitivitySlider = new JConfigSlider(config, ConfigNode.BEAT_SENSITIVITY, value -> value * 10 + "%");
+        beatSensitivityAutoCheckBox = new JConfigCheckBox(config, ConfigNode.BEAT_SENSITIVITY_AUTO);
+        fastOnsetCheckBox = new JConfigCheckBox(config, ConfigNode.BEAT_FAST_ONSET);
+        flywheelBarsSlider = new JConfigSlider(config, ConfigNode.BEAT_FLYWHEEL_BARS, value -> value == 0 ? "Off" : value + " bars");
+        frameRateSlider = new JConfigSlider(config, ConfigNode.LIGHTS_FRAME_RATE, value -> value == 0 ? "Off" : value + " Hz");
+        groupBatchingCheckBox = new JConfigCheckBox(config, ConfigNode.LIGHTS_GROUP_BATCHING);
+        commandRateSlider = new JConfigSlider(config, ConfigNode.LIGHTS_COMMAND_RATE, value -> value == 0 ? "Off" : value + " per second");
+        coalesceUpdatesCheckBox = new JConfigCheckBox(config, ConfigNode.LIGHTS_COALESCE_UPDATES);
         colorRandomizationSlider = new JConfigSlider(config, ConfigNode.COLOR_RANDOMIZATION_RANGE, value -> value * 2 + "%");
         fadeBrightnessSlider = new JConfigSlider(config, ConfigNode.BRIGHTNESS_FADE_DIFFERENCE, value -> value * 8 + "%");
         maxTransitionTimeSlider = new JConfigSlider(config, ConfigNode.BRIGHTNESS_FADE_MAX_TIME, value -> value * 100 + " millis");
@@ -275,12 +290,21 @@ public class MainFrame extends AbstractFrame implements BeatObserver {
         taskOrchestrator.schedule(() -> runOnSwingThread(() -> bannerLabel.flipIcon()), 100, TimeUnit.MILLISECONDS);
     }
 
+    @Override
+    public void onsetDetected(BeatEvent event) {}
+
+    @Override
+    public void onsetRetracted() {}
+
     @Override
     public void noBeatReceived() {}
 
     @Override
     public void silenceDetected() {}
 
+    @Override
+    public void sectionChanged(Section section) {}
+
     @Override
     public void audioReaderStopped(StopStatus status) {
         runOnSwingThread(() -> {
@@ -459,6 +483,10 @@ public class MainFrame extends AbstractFrame implements BeatObserver {
         strobeCheckBox.setEnabled(enabled);
         colorStrobeCheckbox.setEnabled(enabled);
         glowCheckBox.setEnabled(enabled);
+        frameRateSlider.setEnabled(enabled);
+        groupBatchingCheckBox.setEnabled(enabled);
+        commandRateSlider.setEnabled(enabled);
+        coalesceUpdatesCheckBox.setEnabled(enabled);
     }
 
     private void refreshDeviceSelector() {
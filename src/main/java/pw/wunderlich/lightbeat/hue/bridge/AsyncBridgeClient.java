@@ -0,0 +1,160 @@
+package pw.wunderlich.lightbeat.hue.bridge;
+
+import io.github.zeroone3010.yahueapi.AlertType;
+import io.github.zeroone3010.yahueapi.State;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends light commands to the REST API of a bridge without blocking a thread for the round trip, based on
+ * {@link HttpClient#sendAsync(HttpRequest, HttpResponse.BodyHandler)}. Requests contain the key of the bridge and are
+ * therefore sent via HTTPS, only to the bridge whose certificate was stored when it was paired. The client keeps its
+ * connections to the bridge alive and reuses them for the following commands, the amount of commands in flight is
+ * limited by the caller,
+ * see {@link pw.wunderlich.lightbeat.AppTaskOrchestrator#dispatchAsyncBridgeCommand(String, java.util.function.Supplier)}.
+ * <p>
+ * The bridge confirms a command with status 200 even if it was rejected, in which case the body contains an error.
+ * Such requests complete exceptionally with an {@link IOException}. Resources that are only available via the CLIP v2
+ * API, like entertainment areas, can be read via {@link #getResource(String)}.
+ */
+public class AsyncBridgeClient {
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5L);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(5L);
+
+    private final URI apiUri;
+    private final String applicationKey;
+    private final HttpClient httpClient;
+
+
+    /**
+     * Creates a client that talks to the bridge via HTTPS and only trusts its stored certificate.
+     *
+     * @param apiUri          base address of the API including the key, for example {@code https://192.168.0.2/api/key/}
+     * @param certificateHash SHA-256 hash of the certificate of the bridge, see {@link PinnedTrustManager}
+     */
+    public AsyncBridgeClient(URI apiUri, String certificateHash) {
+        if (!"https".equals(apiUri.getScheme())) {
+            throw new IllegalArgumentException("Bridge API must be accessed via HTTPS, got " + apiUri.getScheme());
+        }
+
+        this.apiUri = apiUri;
+        // the key is the last segment of the v1 API path, the v2 API expects it as header
+        String path = apiUri.getPath();
+        this.applicationKey = path.substring(path.lastIndexOf('/', path.length() - 2) + 1, path.length() - 1);
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .sslContext(PinnedTrustManager.createContext(certificateHash))
+                .build();
+    }
+
+    /**
+     * @param lightId id of the light to update
+     * @param state   values to set
+     * @return future that completes once the bridge accepted the command
+     */
+    public CompletableFuture<Void> setLightState(String lightId, State state) {
+        return put("lights/" + lightId + "/state", toJson(state));
+    }
+
+    /**
+     * Requests the configuration of the bridge, which is a small response regardless of the amount of lights,
+     * to check that the bridge is reachable and accepts the key.
+     *
+     * @return future that completes once the bridge responded
+     */
+    public CompletableFuture<Void> checkConnection() {
+        return send(HttpRequest.newBuilder(apiUri.resolve("config")).GET());
+    }
+
+    /**
+     * Reads a resource of the CLIP v2 API, which is authenticated via header instead of the path.
+     *
+     * @param resource type of the resource, optionally followed by its id, for example {@code light}
+     * @return future that completes with the response body
+     */
+    public CompletableFuture<String> getResource(String resource) {
+        HttpRequest request = HttpRequest.newBuilder(apiUri.resolve("/clip/v2/resource/" + resource))
+                .header("hue-application-key", applicationKey)
+                .timeout(REQUEST_TIMEOUT)
+                .GET()
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenCompose(response -> {
+                    if (response.statusCode() != 200) {
+                        return CompletableFuture.failedFuture(new IOException("Bridge rejected " + request.uri().getPath()
+                                + " (status " + response.statusCode() + "): " + response.body()));
+                    }
+                    return CompletableFuture.completedFuture(response.body());
+                });
+    }
+
+    private CompletableFuture<Void> put(String path, String body) {
+        return send(HttpRequest.newBuilder(apiUri.resolve(path))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString(body)));
+    }
+
+    private CompletableFuture<Void> send(HttpRequest.Builder requestBuilder) {
+        HttpRequest request = requestBuilder.timeout(REQUEST_TIMEOUT).build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenCompose(response -> {
+                    if (response.statusCode() != 200 || response.body().contains("\"error\"")) {
+                        return CompletableFuture.failedFuture(new IOException("Bridge rejected " + request.uri().getPath()
+                                + " (status " + response.statusCode() + "): " + response.body()));
+                    }
+                    return CompletableFuture.completedFuture(null);
+                });
+    }
+
+    /**
+     * @return body of a state request containing all values of the given state
+     */
+    static String toJson(State state) {
+        StringJoiner json = new StringJoiner(",", "{", "}");
+        if (state.getOn() != null) {
+            json.add("\"on\":" + state.getOn());
+        }
+        if (state.getBri() != null) {
+            json.add("\"bri\":" + state.getBri());
+        }
+        if (state.getHue() != null) {
+            json.add("\"hue\":" + state.getHue());
+        }
+        if (state.getSat() != null) {
+            json.add("\"sat\":" + state.getSat());
+        }
+        List<Float> xy = state.getXy();
+        if (xy != null && xy.size() == 2) {
+            json.add(String.format(Locale.ROOT, "\"xy\":[%.4f,%.4f]", xy.get(0), xy.get(1)));
+        }
+        if (state.getCt() != null) {
+            json.add("\"ct\":" + state.getCt());
+        }
+        if (state.getAlert() != null) {
+            json.add("\"alert\":\"" + toJson(state.getAlert()) + "\"");
+        }
+        if (state.getTransitiontime() != null) {
+            json.add("\"transitiontime\":" + state.getTransitiontime());
+        }
+        return json.toString();
+    }
+
+    private static String toJson(AlertType alert) {
+        return switch (alert) {
+            case SHORT_ALERT -> "select";
+            case LONG_ALERT -> "lselect";
+            default -> "none";
+        };
+    }
+}
@@ -1,17 +1,22 @@
 package pw.wunderlich.lightbeat.hue.bridge;
 
+import io.github.zeroone3010.yahueapi.Group;
 import io.github.zeroone3010.yahueapi.Hue;
 import io.github.zeroone3010.yahueapi.Light;
 import io.github.zeroone3010.yahueapi.LightType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pw.wunderlich.lightbeat.AppTaskOrchestrator;
+import pw.wunderlich.lightbeat.util.Clock;
 
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Class handling a connection to a bridge.
@@ -21,25 +26,44 @@ import java.util.stream.Collectors;
  * implementing the {@link ConnectionListener} interface.
  * <p>
  * Bridge state is cached, which allows for state non-blocking state retrieval on {@link Light} objects.
+ * The heartbeat only requests the bridge configuration, which is a small response regardless of the amount of lights.
+ * It is sent via the {@link AsyncBridgeClient} of this connection, which like the Hue library only talks HTTPS to the
+ * bridge with the stored certificate, whether or not light commands are sent through it. If the configuration can't
+ * be requested, the full state is refreshed before the connection is considered lost.
+ * The full bridge state is fetched once connected, every {@link #FULL_REFRESH_SECONDS} while a refresh listener is
+ * set and when the lights are requested via {@link #refreshIfStale()}. The light and group lists are built once per
+ * refresh and served from memory.
  */
 public class BridgeConnection {
 
     private static final Logger logger = LoggerFactory.getLogger(BridgeConnection.class);
     private static final String APP_NAME = "LightBeat";
     private static final int CONNECTION_CHECK_SECONDS = 10;
+    private static final int FULL_REFRESH_SECONDS = 60;
 
+    private final String ip;
     private final AppTaskOrchestrator taskOrchestrator;
     private final ConnectionListener connectionListener;
+    private final Clock clock;
 
     private Hue hue;
+    private AsyncBridgeClient bridgeClient;
+
+    private volatile List<Light> lights = List.of();
+    private volatile List<Group> groups = List.of();
+    // guarded by this
+    private long lastRefreshMillis;
 
     private ScheduledFuture<?> heartbeatTask;
-    private boolean isConnected = false;
+    private volatile boolean isConnected = false;
+    private volatile Runnable refreshListener;
 
 
     public BridgeConnection(AccessPoint accessPoint, AppTaskOrchestrator taskOrchestrator, ConnectionListener listener) {
 
+        this.ip = accessPoint.ip();
         this.taskOrchestrator = taskOrchestrator;
+        this.clock = taskOrchestrator.getClock();
         this.connectionListener = listener;
 
         // check if is bridge
@@ -100,11 +124,21 @@ public class BridgeConnection {
         }
 
         this.hue = new Hue(accessPoint.ip(), accessPoint.key());
+        this.bridgeClient = new AsyncBridgeClient(URI.create("https://" + accessPoint.ip() + "/api/" + accessPoint.key() + "/"),
+                certificateHash);
         hue.setCaching(true);
 
         heartbeatTask = taskOrchestrator.schedulePeriodicTask(() -> {
+            boolean isRefreshed;
             try {
-                hue.refresh();
+                isRefreshed = !isConnected || (refreshListener != null && isStateOlderThan(FULL_REFRESH_SECONDS));
+                if (isRefreshed) {
+                    refresh();
+                } else {
+                    isRefreshed = !checkConnection();
+                }
+            } catch (InterruptedException e) {
+                return;
             } catch (Exception e) {
                 if (isConnected) {
                     connectionListener.connectionError(accessPoint, ConnectionListener.Error.CONNECTION_LOST);
@@ -116,6 +150,11 @@ public class BridgeConnection {
                 return;
             }
 
+            Runnable listener = refreshListener;
+            if (isRefreshed && listener != null) {
+                listener.run();
+            }
+
             if (!isConnected) {
                 isConnected = true;
                 if (getLights().isEmpty()) {
@@ -127,6 +166,37 @@ public class BridgeConnection {
         }, 0, CONNECTION_CHECK_SECONDS, TimeUnit.SECONDS);
     }
 
+    /**
+     * Requests the bridge configuration, falling back to a full refresh if that fails.
+     *
+     * @return true if the configuration was received, false if the full state was refreshed instead
+     * @throws InterruptedException if interrupted while waiting for the bridge
+     */
+    private boolean checkConnection() throws InterruptedException {
+        try {
+            bridgeClient.checkConnection().get(CONNECTION_CHECK_SECONDS, TimeUnit.SECONDS);
+            return true;
+        } catch (ExecutionException | TimeoutException e) {
+            logger.info("Connection check failed, refreshing full bridge state ({})", e.toString());
+            refresh();
+            return false;
+        }
+    }
+
+    /**
+     * @return address of the bridge, which identifies it for {@link AppTaskOrchestrator#dispatchBridgeCommand(String, Runnable)}
+     */
+    public String getIp() {
+        return ip;
+    }
+
+    /**
+     * @return true once the first heartbeat succeeded, until the connection is lost
+     */
+    public boolean isConnected() {
+        return isConnected && !heartbeatTask.isDone();
+    }
+
     public String getName() {
         return hue.getRaw().getConfig().getName();
     }
@@ -138,18 +208,67 @@ public class BridgeConnection {
         if (!isConnected) {
             throw new IllegalStateException("Not connected to bridge");
         }
-        return hue.getAllLights().getLights()
+        return lights;
+    }
+
+    /**
+     * @return groups that update multiple lights at once, which are the group containing all lights, rooms and zones
+     */
+    public List<Group> getGroups() {
+        if (!isConnected) {
+            throw new IllegalStateException("Not connected to bridge");
+        }
+        return groups;
+    }
+
+    /**
+     * Returns the client that sends light commands without blocking a thread. The client uses HTTPS and only trusts
+     * the certificate the bridge presented when connecting, which was checked against the stored certificate.
+     *
+     * @return client for the REST API of this bridge
+     */
+    public AsyncBridgeClient getAsyncClient() {
+        if (!isConnected) {
+            throw new IllegalStateException("Not connected to bridge");
+        }
+        return bridgeClient;
+    }
+
+    /**
+     * Refreshes bridge light state in cache, unless it was refreshed within the last heartbeat interval.
+     */
+    synchronized void refreshIfStale() {
+        if (isStateOlderThan(CONNECTION_CHECK_SECONDS)) {
+            refresh();
+        }
+    }
+
+    private synchronized boolean isStateOlderThan(int seconds) {
+        return clock.currentTimeMillis() - lastRefreshMillis >= TimeUnit.SECONDS.toMillis(seconds);
+    }
+
+    private synchronized void refresh() {
+        hue.refresh();
+        lastRefreshMillis = clock.currentTimeMillis();
+
+        lights = hue.getAllLights().getLights()
                 .stream()
                 .filter(light -> !light.getType().equals(LightType.ON_OFF_PLUGIN_UNIT) && !light.getType().equals(LightType.ON_OFF_LIGHT))
                 .sorted((light1, light2) -> light2.getId().compareTo(light1.getId()))
-                .collect(Collectors.toList());
+                .toList();
+
+        List<Group> refreshedGroups = new ArrayList<>();
+        refreshedGroups.add(hue.getAllLights());
+        refreshedGroups.addAll(hue.getRooms());
+        refreshedGroups.addAll(hue.getZones());
+        groups = List.copyOf(refreshedGroups);
     }
 
     /**
-     * Refreshes bridge light state in cache.
+     * @param refreshListener called after every heartbeat that refreshed the full bridge state, or null to remove it
      */
-    void refresh() {
-        hue.refresh();
+    void setRefreshListener(Runnable refreshListener) {
+        this.refreshListener = refreshListener;
     }
 
     /**
@@ -11,13 +11,15 @@ import java.util.List;
 public interface HueManager {
 
     /**
-     * @return connection to current bridge
+     * @return connection to the bridge that was connected to via {@link #setAttemptConnection(AccessPoint)}
      */
     BridgeConnection getBridge();
 
     /**
+     * Creates new lights for a visualization, lights that were returned previously should no longer be used.
+     *
      * @param disabledLights true if disabled lights should be omitted
-     * @return list containing all currently connected lights
+     * @return list containing all currently connected lights, of all connected bridges
      */
     List<Light> getLights(boolean disabledLights);
 
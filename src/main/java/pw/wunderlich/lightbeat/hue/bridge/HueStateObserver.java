@@ -23,4 +23,12 @@ public interface HueStateObserver {
     void connectionWasLost(AccessPoint accessPoint, BridgeConnection.ConnectionListener.Error error);
 
     void disconnected();
+
+    /**
+     * Called if a configured additional bridge can't be used, while the lights of the other bridges are still used.
+     *
+     * @param ip     address of the additional bridge
+     * @param reason why the bridge can't be used
+     */
+    void additionalBridgeUnavailable(String ip, String reason);
 }
@@ -7,27 +7,71 @@ import org.slf4j.LoggerFactory;
 import pw.wunderlich.lightbeat.AppTaskOrchestrator;
 import pw.wunderlich.lightbeat.config.Config;
 import pw.wunderlich.lightbeat.config.ConfigNode;
+import pw.wunderlich.lightbeat.hue.bridge.entertainment.EntertainmentArea;
+import pw.wunderlich.lightbeat.hue.bridge.entertainment.EntertainmentChannel;
+import pw.wunderlich.lightbeat.hue.bridge.entertainment.EntertainmentStreamer;
+import pw.wunderlich.lightbeat.hue.bridge.entertainment.HueStreamEncoder;
+import pw.wunderlich.lightbeat.hue.bridge.entertainment.UdpFrameTransport;
+import pw.wunderlich.lightbeat.hue.bridge.light.CommandBudget;
+import pw.wunderlich.lightbeat.hue.bridge.light.FrameRenderer;
+import pw.wunderlich.lightbeat.hue.bridge.light.GroupBatcher;
 import pw.wunderlich.lightbeat.hue.bridge.light.LBLight;
+import pw.wunderlich.lightbeat.hue.bridge.light.LatencyCompensator;
 import pw.wunderlich.lightbeat.hue.bridge.light.Light;
+import pw.wunderlich.lightbeat.hue.bridge.light.UpdateSettings;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 /**
- * Default {@link HueManager} implementation.
+ * Default {@link HueManager} implementation. If a light frame rate is configured, the lights are updated by a
+ * {@link FrameRenderer} at that rate instead of sending every update right away. If group batching is enabled,
+ * identical updates of several lights are sent as a group action via a {@link GroupBatcher}. If a command rate is
+ * configured, the light commands sent to the bridge are limited by a {@link CommandBudget}, updates that queue up
+ * can be merged per light. If asynchronous requests are enabled, light commands are sent via an
+ * {@link AsyncBridgeClient} instead of blocking a thread per command.
+ * <p>
+ * Streaming via the Entertainment API is experimental and must be enabled explicitly, by setting
+ * {@code entertainment.enabled} and configuring the id of an entertainment area and the address of a stream receiver.
+ * LightBeat neither starts the area nor encrypts the stream, the receiver must be a DTLS proxy that starts the area
+ * with its own client key and forwards the frames to the bridge, see {@link UdpFrameTransport}. The colors of the
+ * lights in the area are then streamed via an {@link EntertainmentStreamer} to the channels the area assigns to
+ * them, as read via the CLIP v2 API. Lights outside the area and lights beyond the channel limit keep using
+ * light requests.
+ * <p>
+ * Once connected, the manager also connects to the additional bridges that are configured, which must have been
+ * connected to before so that their key is known. Entries of unknown bridges and bridges that can't be connected to
+ * are skipped and reported via {@link HueStateObserver#additionalBridgeUnavailable(String, String)}. The lights of
+ * all connected bridges are returned as a single list. Every bridge has its own command pipeline, consisting of its concurrency limit, command budget and group
+ * batcher, while a {@link LatencyCompensator} delays the updates of faster bridges so that all lights change at
+ * the same time. The entertainment area and the disabled lights only apply to the bridge connected via the interface.
  */
 public class LBHueManager implements HueManager {
 
     private static final Logger logger = LoggerFactory.getLogger(LBHueManager.class);
     private static final String CONFIG_BRIDGE_PREFIX = "bridge.entry.";
+    private static final long ENTERTAINMENT_AREA_TIMEOUT_SECONDS = 10L;
 
     private final Config config;
     private final AppTaskOrchestrator taskOrchestrator;
+    private final List<BridgeConnection> additionalBridges = new CopyOnWriteArrayList<>();
 
     private BridgeConnection bridgeConnection;
+    private FrameRenderer frameRenderer;
+    private EntertainmentStreamer entertainmentStreamer;
+    private EntertainmentArea entertainmentArea;
     private ManagerState currentState = ManagerState.NOT_CONNECTED;
 
     private HueStateObserver stateObserver;
@@ -45,14 +89,167 @@ public class LBHueManager implements HueManager {
 
     @Override
     public List<Light> getLights(boolean disabledLights) {
-        bridgeConnection.refresh();
-        var disabledLightsList = config.getStringList(ConfigNode.LIGHTS_DISABLED);
+        stopOutputs();
+        entertainmentStreamer = createEntertainmentStreamer();
+        if (entertainmentStreamer == null) {
+            int frameRate = config.getInt(ConfigNode.LIGHTS_FRAME_RATE);
+            if (frameRate > 0) {
+                frameRenderer = new FrameRenderer(taskOrchestrator, frameRate);
+            }
+        }
 
-        return bridgeConnection.getLights()
-                .stream()
-                .filter(light -> !disabledLights || !disabledLightsList.contains(light.getId()))
-                .map((light -> new LBLight(light, taskOrchestrator)))
-                .collect(Collectors.toUnmodifiableList());
+        List<BridgeConnection> bridges = new ArrayList<>();
+        bridges.add(bridgeConnection);
+        for (BridgeConnection bridge : additionalBridges) {
+            if (bridge.isConnected()) {
+                bridges.add(bridge);
+            } else {
+                logger.warn("Additional bridge at {} is not connected, its lights are not used", bridge.getIp());
+            }
+        }
+        var latencyCompensator = bridges.size() > 1 ? new LatencyCompensator() : null;
+
+        List<LBLight> lights = new ArrayList<>();
+        for (BridgeConnection bridge : bridges) {
+            // light ids are only unique per bridge, the disabled lights are set for the bridge connected via the interface
+            List<String> disabledLightIds = disabledLights && bridge == bridgeConnection
+                    ? config.getStringList(ConfigNode.LIGHTS_DISABLED)
+                    : Collections.emptyList();
+            lights.addAll(createLights(bridge, disabledLightIds, latencyCompensator));
+        }
+
+        if (entertainmentStreamer != null) {
+            if (entertainmentStreamer.getRemainingChannels() == HueStreamEncoder.MAX_CHANNELS) {
+                logger.warn("None of the enabled lights is part of entertainment area {}, not streaming", entertainmentArea.getId());
+                // the transport is closed once the stopped streamer was started
+                entertainmentStreamer.stop();
+            }
+            entertainmentStreamer.start();
+        }
+        if (bridges.size() > 1) {
+            logger.info("Controlling {} lights on {} bridges", lights.size(), bridges.size());
+        }
+        return Collections.unmodifiableList(lights);
+    }
+
+    /**
+     * Creates the lights of a bridge with their own command pipeline.
+     */
+    private List<LBLight> createLights(BridgeConnection bridge, List<String> disabledLightIds,
+                                       LatencyCompensator latencyCompensator) {
+        bridge.refreshIfStale();
+        var bridgeId = bridge.getIp();
+        int commandRate = config.getInt(ConfigNode.LIGHTS_COMMAND_RATE);
+        var commandBudget = commandRate > 0 ? new CommandBudget(taskOrchestrator, commandRate) : null;
+        var bridgeClient = config.getBoolean(ConfigNode.LIGHTS_ASYNC_REQUESTS) ? bridge.getAsyncClient() : null;
+        var updateSettings = new UpdateSettings(bridgeId, commandBudget, bridgeClient,
+                config.getBoolean(ConfigNode.LIGHTS_COALESCE_UPDATES), latencyCompensator);
+        GroupBatcher groupBatcher = null;
+        if (entertainmentStreamer == null && config.getBoolean(ConfigNode.LIGHTS_GROUP_BATCHING)) {
+            groupBatcher = new GroupBatcher(taskOrchestrator, bridgeId, bridge.getGroups());
+        }
+        boolean isStreamed = entertainmentStreamer != null && bridge == bridgeConnection;
+
+        List<LBLight> lights = new ArrayList<>();
+        for (var apiLight : bridge.getLights()) {
+            if (disabledLightIds.contains(apiLight.getId())) {
+                continue;
+            }
+
+            EntertainmentChannel channel = null;
+            if (isStreamed) {
+                List<Integer> channelIds = entertainmentArea.getChannelIds(apiLight.getId());
+                if (!channelIds.isEmpty() && channelIds.size() <= entertainmentStreamer.getRemainingChannels()) {
+                    channel = entertainmentStreamer.createChannel(channelIds.stream().mapToInt(Integer::intValue).toArray());
+                }
+            }
+            lights.add(new LBLight(apiLight, taskOrchestrator, updateSettings, frameRenderer, groupBatcher, channel));
+        }
+
+        bridge.setRefreshListener(() -> lights.forEach(LBLight::stateRefreshed));
+        return lights;
+    }
+
+    /**
+     * @return streamer for the configured entertainment area, or null if streaming is not enabled or not possible
+     */
+    private EntertainmentStreamer createEntertainmentStreamer() {
+        String area = config.get(ConfigNode.ENTERTAINMENT_AREA);
+        String address = config.get(ConfigNode.ENTERTAINMENT_ADDRESS);
+        if (!config.getBoolean(ConfigNode.ENTERTAINMENT_ENABLED)) {
+            if (area != null && !area.isBlank()) {
+                logger.info("Entertainment area {} is configured, but streaming is not enabled", area);
+            }
+            return null;
+        }
+        if (area == null || area.isBlank() || address == null || address.isBlank()) {
+            logger.warn("Streaming is enabled, but the entertainment area or the address of the DTLS proxy is missing");
+            return null;
+        }
+
+        try {
+            entertainmentArea = loadEntertainmentArea(area.trim());
+            if (!entertainmentArea.isActive()) {
+                logger.warn("Entertainment area {} is not active, the DTLS proxy at {} must start it", area, address);
+            }
+
+            int portIndex = address.lastIndexOf(':');
+            var socketAddress = new InetSocketAddress(address.substring(0, portIndex), Integer.parseInt(address.substring(portIndex + 1)));
+            var transport = new UdpFrameTransport(socketAddress);
+            try {
+                return new EntertainmentStreamer(entertainmentArea.getId(), transport, taskOrchestrator.getClock(),
+                        config.getInt(ConfigNode.ENTERTAINMENT_FRAME_RATE));
+            } catch (IllegalArgumentException e) {
+                transport.close();
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (IOException | ExecutionException | TimeoutException | RuntimeException e) {
+            logger.warn("Could not stream to entertainment area {} via {}, falling back to light requests", area, address, e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the channels of an entertainment area and the lights they belong to.
+     */
+    private EntertainmentArea loadEntertainmentArea(String areaId)
+            throws InterruptedException, ExecutionException, TimeoutException {
+
+        var bridgeClient = bridgeConnection.getAsyncClient();
+        CompletableFuture<String> configuration = bridgeClient.getResource("entertainment_configuration/" + areaId);
+        CompletableFuture<String> services = bridgeClient.getResource("entertainment");
+        CompletableFuture<String> lights = bridgeClient.getResource("light");
+        CompletableFuture.allOf(configuration, services, lights).get(ENTERTAINMENT_AREA_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        var entertainmentArea = EntertainmentArea.parse(areaId, configuration.join(), services.join(), lights.join());
+        logger.info("Entertainment area {} contains lights {}", areaId, entertainmentArea.getLightIds());
+        return entertainmentArea;
+    }
+
+    /**
+     * Releases the outputs of the lights that were returned last, which also stops refreshing their state.
+     */
+    private void stopOutputs() {
+        if (bridgeConnection != null) {
+            bridgeConnection.setRefreshListener(null);
+        }
+        additionalBridges.forEach(bridge -> bridge.setRefreshListener(null));
+        stopFrameRenderer();
+        if (entertainmentStreamer != null) {
+            entertainmentStreamer.stop();
+            entertainmentStreamer = null;
+        }
+        entertainmentArea = null;
+    }
+
+    private void stopFrameRenderer() {
+        if (frameRenderer != null) {
+            frameRenderer.stop();
+            frameRenderer = null;
+        }
     }
 
     @Override
@@ -133,6 +330,7 @@ public class LBHueManager implements HueManager {
 
                 currentState = ManagerState.CONNECTED;
                 stateObserver.hasConnected();
+                connectAdditionalBridges(bridgeIp);
             }
 
             @Override
@@ -164,8 +362,67 @@ public class LBHueManager implements HueManager {
         bridgeConnection = new BridgeConnection(accessPoint, taskOrchestrator, listener);
     }
 
+    /**
+     * Connects to the configured additional bridges, which are used alongside the given bridge. Entries of bridges
+     * that were never connected to, and bridges that can't be connected to, are reported to the state observer.
+     */
+    private void connectAdditionalBridges(String bridgeIp) {
+        disconnectAdditionalBridges();
+        Map<String, AccessPoint> pairedBridges = new HashMap<>();
+        getPreviousBridges().forEach(accessPoint -> pairedBridges.put(accessPoint.ip(), accessPoint));
+
+        for (String entry : config.getStringList(ConfigNode.BRIDGE_ADDITIONAL)) {
+            String ip = entry.trim();
+            if (ip.isEmpty() || ip.equals(bridgeIp)) {
+                continue;
+            }
+
+            AccessPoint accessPoint = pairedBridges.get(ip);
+            if (accessPoint == null || !accessPoint.hasKey()) {
+                logger.warn("Additional bridge {} was never connected to, connect to it once via the interface", ip);
+                stateObserver.additionalBridgeUnavailable(ip, "connect to it once via the interface to pair it");
+                continue;
+            }
+
+            logger.info("Connecting to additional bridge at {}", ip);
+            additionalBridges.add(new BridgeConnection(accessPoint, taskOrchestrator, new BridgeConnection.ConnectionListener() {
+                @Override
+                public void connectionSuccess(String key, String name, String certificateHash) {
+                    logger.info("Connected to additional bridge {} at {}", name, ip);
+                }
+
+                @Override
+                public void connectionError(AccessPoint ap, Error error) {
+                    logger.warn("Connection to additional bridge at {} failed (Error {})", ip, error);
+                    if (additionalBridges.removeIf(bridge -> bridge.getIp().equals(ip))) {
+                        stateObserver.additionalBridgeUnavailable(ip, error == Error.CONNECTION_LOST
+                                ? "the connection was lost"
+                                : "it could not be connected to (" + error + ")");
+                    }
+                }
+
+                @Override
+                public void pushlinkRequired() {
+                    logger.warn("Additional bridge at {} requires authentication, connect to it once via the interface", ip);
+                    additionalBridges.removeIf(bridge -> bridge.getIp().equals(ip));
+                    stateObserver.additionalBridgeUnavailable(ip, "it requires authentication, connect to it once via the interface");
+                }
+
+                @Override
+                public void pushlinkFailed() {}
+            }));
+        }
+    }
+
+    private void disconnectAdditionalBridges() {
+        additionalBridges.forEach(BridgeConnection::disconnect);
+        additionalBridges.clear();
+    }
+
     @Override
     public void disconnect() {
+        stopOutputs();
+        disconnectAdditionalBridges();
         if (currentState.equals(ManagerState.CONNECTED)) {
             bridgeConnection.disconnect();
             logger.info("Disconnected from bridge");
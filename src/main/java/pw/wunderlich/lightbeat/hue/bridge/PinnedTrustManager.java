@@ -0,0 +1,97 @@
+package pw.wunderlich.lightbeat.hue.bridge;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Locale;
+
+/**
+ * Trusts a bridge only if it presents the certificate whose SHA-256 hash was stored when it was first connected to,
+ * see {@link AccessPoint#certificateHash()}. The certificate of a bridge is issued for its id instead of its address,
+ * the hostname is therefore not verified, the pinned certificate identifies the bridge instead.
+ */
+class PinnedTrustManager extends X509ExtendedTrustManager {
+
+    private final String certificateHash;
+
+
+    /**
+     * @param certificateHash SHA-256 hash of the certificate of the bridge, as hex with optional colons or as Base64
+     */
+    PinnedTrustManager(String certificateHash) {
+        this.certificateHash = certificateHash.trim();
+    }
+
+    /**
+     * @param certificateHash SHA-256 hash of the certificate of the bridge
+     * @return TLS context that only trusts the given certificate
+     */
+    static SSLContext createContext(String certificateHash) {
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, new PinnedTrustManager[]{new PinnedTrustManager(certificateHash)}, null);
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("TLS is not available", e);
+        }
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        if (chain == null || chain.length == 0 || !matches(chain[0])) {
+            throw new CertificateException("Bridge certificate does not match the stored certificate");
+        }
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+        checkServerTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+        checkServerTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        throw new CertificateException("Client certificates are not accepted");
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+        checkClientTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+        checkClientTrusted(chain, authType);
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return new X509Certificate[0];
+    }
+
+    private boolean matches(X509Certificate certificate) throws CertificateEncodingException {
+        byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(certificate.getEncoded());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        String hexHash = HexFormat.of().formatHex(hash);
+        return hexHash.equals(certificateHash.replace(":", "").toLowerCase(Locale.ROOT))
+                || Base64.getEncoder().encodeToString(hash).equals(certificateHash);
+    }
+}
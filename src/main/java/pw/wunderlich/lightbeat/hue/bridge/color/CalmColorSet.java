@@ -0,0 +1,39 @@
+package pw.wunderlich.lightbeat.hue.bridge.color;
+
+import java.util.List;
+
+/**
+ * Wraps another {@link ColorSet} and returns its colors with reduced saturation,
+ * used for calm sections of a track like breakdowns.
+ */
+public class CalmColorSet implements ColorSet {
+
+    private static final float SATURATION_MULTIPLIER = 0.5f;
+
+    private final ColorSet colorSet;
+
+
+    public CalmColorSet(ColorSet colorSet) {
+        this.colorSet = colorSet;
+    }
+
+    @Override
+    public Color getNextColor() {
+        return calm(colorSet.getNextColor());
+    }
+
+    @Override
+    public Color getNextColor(Color differentFrom) {
+        return calm(colorSet.getNextColor(differentFrom));
+    }
+
+    @Override
+    public List<Color> getColors() {
+        List<Color> colors = colorSet.getColors();
+        return colors != null ? colors.stream().map(CalmColorSet::calm).toList() : null;
+    }
+
+    private static Color calm(Color color) {
+        return new LBColor(color.getHue(), color.getSaturation() * SATURATION_MULTIPLIER);
+    }
+}
@@ -71,7 +71,7 @@ public class CustomColorSet implements ColorSet {
     }
 
     private double getColorRandomizationRange() {
-        return (double) config.getInt(ConfigNode.COLOR_RANDOMIZATION_RANGE) / 100d;
+        return (double) config.getSnapshot().colorRandomizationRange() / 100d;
     }
 
     @Override
@@ -0,0 +1,125 @@
+package pw.wunderlich.lightbeat.hue.bridge.entertainment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Channels of an entertainment area and the lights they belong to, read from the CLIP v2 resources of the bridge.
+ * A channel is rendered by an entertainment service, which belongs to a light, while lights with several segments,
+ * like gradient strips, have a channel per segment. Lights are identified by their v1 id, which is the id used by
+ * the REST API. Only the lights of an area can be streamed to, with the channel ids given by the area.
+ */
+public class EntertainmentArea {
+
+    private final String id;
+    private final boolean isActive;
+    private final Map<String, List<Integer>> channelIdsByLightId;
+
+
+    EntertainmentArea(String id, boolean isActive, Map<String, List<Integer>> channelIdsByLightId) {
+        this.id = id;
+        this.isActive = isActive;
+        this.channelIdsByLightId = channelIdsByLightId;
+    }
+
+    /**
+     * @param id                         id of the entertainment configuration
+     * @param entertainmentConfiguration response to {@code GET /clip/v2/resource/entertainment_configuration/<id>}
+     * @param entertainmentServices      response to {@code GET /clip/v2/resource/entertainment}
+     * @param lights                     response to {@code GET /clip/v2/resource/light}
+     * @return area with the channels of all lights that could be resolved
+     * @throws IllegalArgumentException if a response is not valid or doesn't contain the area
+     */
+    public static EntertainmentArea parse(String id, String entertainmentConfiguration, String entertainmentServices,
+                                          String lights) {
+
+        Map<String, String> v1IdByLightId = new HashMap<>();
+        Map<String, String> lightIdByDeviceId = new HashMap<>();
+        for (Object light : getData(lights)) {
+            String v1Id = getString(light, "id_v1");
+            String lightId = getString(light, "id");
+            if (v1Id != null && lightId != null) {
+                v1IdByLightId.put(lightId, v1Id.substring(v1Id.lastIndexOf('/') + 1));
+                lightIdByDeviceId.put(getString(Json.get(light, "owner"), "rid"), lightId);
+            }
+        }
+
+        // older bridges don't reference the light rendering a service, it is then resolved via the device
+        Map<String, String> lightIdByServiceId = new HashMap<>();
+        for (Object service : getData(entertainmentServices)) {
+            String lightId = getString(Json.get(service, "renderer_reference"), "rid");
+            if (lightId == null) {
+                lightId = lightIdByDeviceId.get(getString(Json.get(service, "owner"), "rid"));
+            }
+            if (lightId != null) {
+                lightIdByServiceId.put(getString(service, "id"), lightId);
+            }
+        }
+
+        Object configuration = getData(entertainmentConfiguration).stream()
+                .filter(data -> id.equals(getString(data, "id")))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Entertainment area " + id + " not found"));
+
+        Map<String, List<Integer>> channelIdsByLightId = new LinkedHashMap<>();
+        for (Object channel : Json.list(Json.get(configuration, "channels"))) {
+            if (!(Json.get(channel, "channel_id") instanceof Double channelId)) {
+                continue;
+            }
+
+            for (Object member : Json.list(Json.get(channel, "members"))) {
+                String lightId = lightIdByServiceId.get(getString(Json.get(member, "service"), "rid"));
+                String v1Id = v1IdByLightId.get(lightId);
+                if (v1Id != null) {
+                    List<Integer> channelIds = channelIdsByLightId.computeIfAbsent(v1Id, k -> new ArrayList<>());
+                    if (!channelIds.contains(channelId.intValue())) {
+                        channelIds.add(channelId.intValue());
+                    }
+                }
+            }
+        }
+
+        channelIdsByLightId.replaceAll((lightId, channelIds) -> List.copyOf(channelIds));
+        return new EntertainmentArea(id, "active".equals(getString(configuration, "status")),
+                Collections.unmodifiableMap(channelIdsByLightId));
+    }
+
+    private static List<?> getData(String response) {
+        return Json.list(Json.get(Json.parse(response), "data"));
+    }
+
+    private static String getString(Object object, String name) {
+        return Json.get(object, name) instanceof String value ? value : null;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return true if the area was started for streaming when it was read
+     */
+    public boolean isActive() {
+        return isActive;
+    }
+
+    /**
+     * @param lightId v1 id of the light
+     * @return ids of the channels rendered by the light, empty if the light is not part of the area
+     */
+    public List<Integer> getChannelIds(String lightId) {
+        return channelIdsByLightId.getOrDefault(lightId, List.of());
+    }
+
+    /**
+     * @return v1 ids of all lights in the area
+     */
+    public Set<String> getLightIds() {
+        return channelIdsByLightId.keySet();
+    }
+}
@@ -0,0 +1,108 @@
+package pw.wunderlich.lightbeat.hue.bridge.entertainment;
+
+import pw.wunderlich.lightbeat.hue.bridge.color.Color;
+import pw.wunderlich.lightbeat.util.Clock;
+
+import static java.awt.Color.HSBtoRGB;
+
+/**
+ * Color of a light streamed by an {@link EntertainmentStreamer}, which is sent to all channels of the light. Updates behave like the light state of the REST API:
+ * every value is optional and keeps its previous value if omitted, a transition time fades from the color the channel
+ * currently shows to the new color. The streamer samples the color once per frame. Thread safe.
+ * <p>
+ * Once a channel is no longer used it must be released via {@link #release()}, the streamer stops once all
+ * of its channels were released.
+ */
+public class EntertainmentChannel {
+
+    private static final int MAX_BRIGHTNESS = 254;
+
+    private final EntertainmentStreamer streamer;
+    private final int[] channelIds;
+    private final Clock clock;
+
+    // guarded by this
+    private float hue = 0f;
+    private float saturation = 0f;
+    private int brightness = MAX_BRIGHTNESS;
+    private boolean isOn = true;
+
+    private final int[] startRgb = new int[3];
+    private final int[] targetRgb = new int[3];
+    private long transitionStartNanos;
+    private long transitionNanos = 0L;
+
+
+    EntertainmentChannel(EntertainmentStreamer streamer, int[] channelIds, Clock clock) {
+        this.streamer = streamer;
+        this.channelIds = channelIds;
+        this.clock = clock;
+    }
+
+    /**
+     * @return ids of the channels in the entertainment configuration, more than one for lights with several segments
+     */
+    int[] getChannelIds() {
+        return channelIds;
+    }
+
+    /**
+     * @param color            new color, or null to keep the current color
+     * @param brightness       new brightness between 0 and 254, or a negative value to keep the current brightness
+     * @param on               whether the channel is on, or null to keep the current state
+     * @param transitionMillis time to fade to the new color
+     */
+    public synchronized void setState(Color color, int brightness, Boolean on, long transitionMillis) {
+        long nowNanos = clock.nanoTime();
+        getColorAt(nowNanos, startRgb);
+
+        if (color != null) {
+            this.hue = color.getHue();
+            this.saturation = color.getSaturation();
+        }
+        if (brightness >= 0) {
+            this.brightness = Math.min(brightness, MAX_BRIGHTNESS);
+        }
+        if (on != null) {
+            this.isOn = on;
+        }
+
+        int rgb = isOn ? HSBtoRGB(hue, saturation, this.brightness / (float) MAX_BRIGHTNESS) : 0;
+        targetRgb[0] = to16Bit(rgb >> 16);
+        targetRgb[1] = to16Bit(rgb >> 8);
+        targetRgb[2] = to16Bit(rgb);
+        transitionStartNanos = nowNanos;
+        transitionNanos = Math.max(transitionMillis, 0L) * 1_000_000L;
+    }
+
+    /**
+     * Removes this channel from the stream.
+     */
+    public void release() {
+        streamer.releaseChannel(this);
+    }
+
+    private static int to16Bit(int component) {
+        return (component & 0xFF) * 257;
+    }
+
+    /**
+     * @param rgb array of length 3 to write the current red, green and blue values to, between 0 and 65535
+     */
+    synchronized void getColor(int[] rgb) {
+        getColorAt(clock.nanoTime(), rgb);
+    }
+
+    private void getColorAt(long nowNanos, int[] rgb) {
+        long elapsedNanos = nowNanos - transitionStartNanos;
+        if (elapsedNanos >= transitionNanos) {
+            System.arraycopy(targetRgb, 0, rgb, 0, 3);
+            return;
+        }
+
+        double progress = Math.max(elapsedNanos, 0L) / (double) transitionNanos;
+        for (int i = 0; i < 3; i++) {
+            rgb[i] = (int) Math.round(startRgb[i] + (targetRgb[i] - startRgb[i]) * progress);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package pw.wunderlich.lightbeat.hue.bridge.entertainment;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pw.wunderlich.lightbeat.util.Clock;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams the colors of its {@link EntertainmentChannel}s to an entertainment area at a fixed frame rate,
+ * which is not limited by the amount of REST requests the bridge can handle. Lights write their state into their
+ * channel, a dedicated sender thread samples all channels once per frame, encodes them with a
+ * {@link HueStreamEncoder} and sends the frame via a {@link FrameTransport}. Frames that were missed because the
+ * thread was delayed are skipped instead of sent in a burst. The streamer stops once all channels were released.
+ * <p>
+ * The streamer neither starts the entertainment area on the bridge nor performs the DTLS handshake, both must be
+ * done by the receiver of the frames, see {@link UdpFrameTransport}.
+ */
+public class EntertainmentStreamer {
+
+    private static final Logger logger = LoggerFactory.getLogger(EntertainmentStreamer.class);
+
+    private static final int LOG_FAILED_FRAME_EVERY = 100;
+
+    private final HueStreamEncoder encoder;
+    private final FrameTransport transport;
+    private final Clock clock;
+    private final long framePeriodNanos;
+
+    private final List<EntertainmentChannel> channels = new CopyOnWriteArrayList<>();
+    private final int[] rgb = new int[3];
+    private final Thread senderThread;
+    // guarded by this
+    private int channelCount = 0;
+
+    private volatile boolean isStopped = false;
+    private volatile long framesSent = 0L;
+    private volatile long framesFailed = 0L;
+
+
+    /**
+     * @param entertainmentConfigurationId id of the entertainment area to stream to
+     * @param transport                    to send the frames with, closed once the streamer stopped
+     * @param clock                        to fade the channel colors with
+     * @param framesPerSecond              amount of frames to send per second
+     */
+    public EntertainmentStreamer(String entertainmentConfigurationId, FrameTransport transport, Clock clock,
+                                 int framesPerSecond) {
+        if (framesPerSecond <= 0) {
+            throw new IllegalArgumentException("Frame rate must be positive");
+        }
+
+        this.encoder = new HueStreamEncoder(entertainmentConfigurationId);
+        this.transport = transport;
+        this.clock = clock;
+        this.framePeriodNanos = TimeUnit.SECONDS.toNanos(1L) / framesPerSecond;
+
+        this.senderThread = new Thread(this::runSender, "EntertainmentStreamer");
+        this.senderThread.setDaemon(true);
+    }
+
+    /**
+     * @param channelIds ids of the channels of a light in the entertainment configuration, see
+     *                   {@link EntertainmentArea#getChannelIds(String)}
+     * @return channel to set the color of
+     * @throws IllegalStateException if the streamer would have more than {@link HueStreamEncoder#MAX_CHANNELS} channels
+     */
+    public synchronized EntertainmentChannel createChannel(int... channelIds) {
+        if (channelIds.length == 0) {
+            throw new IllegalArgumentException("At least one channel id is required");
+        }
+        if (channelCount + channelIds.length > HueStreamEncoder.MAX_CHANNELS) {
+            throw new IllegalStateException("Cannot stream to more than " + HueStreamEncoder.MAX_CHANNELS + " channels");
+        }
+
+        EntertainmentChannel channel = new EntertainmentChannel(this, channelIds.clone(), clock);
+        channelCount += channelIds.length;
+        channels.add(channel);
+        return channel;
+    }
+
+    /**
+     * @return amount of channels that can still be created
+     */
+    public synchronized int getRemainingChannels() {
+        return HueStreamEncoder.MAX_CHANNELS - channelCount;
+    }
+
+    public void start() {
+        senderThread.start();
+        logger.info("Streaming to entertainment area {} with {} channels at {} frames per second",
+                encoder.getConfigurationId(), channels.size(), TimeUnit.SECONDS.toNanos(1L) / framePeriodNanos);
+    }
+
+    synchronized void releaseChannel(EntertainmentChannel channel) {
+        if (!channels.remove(channel)) {
+            return;
+        }
+
+        channelCount -= channel.getChannelIds().length;
+        if (channels.isEmpty()) {
+            stop();
+        }
+    }
+
+    /**
+     * Stops the sender thread and closes the transport once the current frame was sent.
+     */
+    public void stop() {
+        isStopped = true;
+        LockSupport.unpark(senderThread);
+    }
+
+    /**
+     * Waits for the sender thread to finish after {@link #stop()} was called.
+     *
+     * @return true if the thread finished in time
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        senderThread.join(unit.toMillis(timeout));
+        return !senderThread.isAlive();
+    }
+
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    public long getFramesFailed() {
+        return framesFailed;
+    }
+
+    private void runSender() {
+        int sequence = 0;
+        long nextFrameNanos = System.nanoTime();
+        while (!isStopped) {
+            sendFrame(sequence++);
+
+            nextFrameNanos += framePeriodNanos;
+            long sleepNanos = nextFrameNanos - System.nanoTime();
+            if (sleepNanos > 0L) {
+                LockSupport.parkNanos(this, sleepNanos);
+            } else if (-sleepNanos > framePeriodNanos) {
+                // skip the frames that were missed
+                nextFrameNanos = System.nanoTime();
+            }
+        }
+
+        try {
+            transport.close();
+        } catch (IOException e) {
+            logger.warn("Could not close entertainment stream", e);
+        }
+        logger.info("Stopped entertainment stream after {} frames ({} failed)", framesSent, framesFailed);
+    }
+
+    private void sendFrame(int sequence) {
+        encoder.beginFrame(sequence);
+        for (EntertainmentChannel channel : channels) {
+            channel.getColor(rgb);
+            for (int channelId : channel.getChannelIds()) {
+                encoder.putChannel(channelId, rgb[0], rgb[1], rgb[2]);
+            }
+        }
+        ByteBuffer frame = encoder.endFrame();
+
+        try {
+            transport.send(frame);
+            framesSent++;
+        } catch (IOException e) {
+            framesFailed++;
+            if (framesFailed % LOG_FAILED_FRAME_EVERY == 1) {
+                logger.warn("Could not send entertainment frame ({} failed so far)", framesFailed, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package pw.wunderlich.lightbeat.hue.bridge.entertainment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Sends encoded frames of the {@link EntertainmentStreamer} to the receiver.
+ */
+public interface FrameTransport extends Closeable {
+
+    /**
+     * @param frame encoded frame between its position and limit, must not be retained after returning
+     * @throws IOException if the frame could not be sent
+     */
+    void send(ByteBuffer frame) throws IOException;
+}
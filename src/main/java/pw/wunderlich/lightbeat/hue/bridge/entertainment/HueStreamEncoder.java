@@ -0,0 +1,96 @@
+package pw.wunderlich.lightbeat.hue.bridge.entertainment;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes frames of the Hue Entertainment streaming protocol (HueStream version 2) with RGB colors.
+ * A frame consists of a 52 byte header, which contains the protocol name, version, sequence number, color space
+ * and the id of the entertainment configuration, followed by 7 bytes per channel: the channel id and the red,
+ * green and blue value with 16 bits each, big endian.
+ * <p>
+ * The buffer is allocated once for the maximum amount of channels and reused for every frame, the header is only
+ * written once, which makes encoding a frame allocation free. Not thread safe.
+ */
+public class HueStreamEncoder {
+
+    public static final int MAX_CHANNELS = 20;
+    static final int HEADER_SIZE = 52;
+    static final int CHANNEL_SIZE = 7;
+
+    private static final byte[] PROTOCOL_NAME = "HueStream".getBytes(StandardCharsets.US_ASCII);
+    private static final int SEQUENCE_OFFSET = 11;
+    private static final int CONFIGURATION_ID_OFFSET = 16;
+    private static final int CONFIGURATION_ID_LENGTH = 36;
+    private static final byte COLOR_SPACE_RGB = 0x00;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + MAX_CHANNELS * CHANNEL_SIZE);
+
+
+    /**
+     * @param entertainmentConfigurationId id of the entertainment area to stream to, a UUID with 36 characters
+     */
+    public HueStreamEncoder(String entertainmentConfigurationId) {
+        byte[] configurationId = entertainmentConfigurationId.getBytes(StandardCharsets.US_ASCII);
+        if (configurationId.length != CONFIGURATION_ID_LENGTH) {
+            throw new IllegalArgumentException("Entertainment configuration id must have "
+                    + CONFIGURATION_ID_LENGTH + " characters: " + entertainmentConfigurationId);
+        }
+
+        buffer.put(PROTOCOL_NAME)
+                .put((byte) 0x02).put((byte) 0x00) // version 2.0
+                .put((byte) 0x00) // sequence number
+                .put((byte) 0x00).put((byte) 0x00) // reserved
+                .put(COLOR_SPACE_RGB)
+                .put((byte) 0x00) // reserved
+                .put(configurationId);
+    }
+
+    /**
+     * Starts a new frame, discarding the channels of the previous frame.
+     *
+     * @param sequence sequence number of the frame, only the lowest 8 bits are used
+     */
+    public void beginFrame(int sequence) {
+        buffer.clear();
+        buffer.put(SEQUENCE_OFFSET, (byte) sequence);
+        buffer.position(HEADER_SIZE);
+    }
+
+    /**
+     * Adds the color of a channel to the current frame.
+     *
+     * @param channelId id of the channel in the entertainment configuration
+     * @param red       red value between 0 and 65535
+     * @param green     green value between 0 and 65535
+     * @param blue      blue value between 0 and 65535
+     * @throws IllegalStateException if the frame already contains {@link #MAX_CHANNELS} channels
+     */
+    public void putChannel(int channelId, int red, int green, int blue) {
+        if (buffer.remaining() < CHANNEL_SIZE) {
+            throw new IllegalStateException("Frame cannot contain more than " + MAX_CHANNELS + " channels");
+        }
+
+        buffer.put((byte) channelId)
+                .putShort((short) red)
+                .putShort((short) green)
+                .putShort((short) blue);
+    }
+
+    /**
+     * Finishes the current frame. The returned buffer is only valid until the next call to {@link #beginFrame(int)}.
+     *
+     * @return buffer containing the encoded frame between its position and limit
+     */
+    public ByteBuffer endFrame() {
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return id of the entertainment configuration frames are encoded for
+     */
+    String getConfigurationId() {
+        return new String(buffer.array(), CONFIGURATION_ID_OFFSET, CONFIGURATION_ID_LENGTH, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,40 @@
+package pw.wunderlich.lightbeat.hue.bridge.entertainment;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Sends every frame as a single UDP datagram to a fixed address.
+ * <p>
+ * Hue bridges only accept entertainment streams that are encrypted with DTLS 1.2 using a pre-shared key, which the
+ * JDK doesn't support. This transport therefore sends unencrypted datagrams, as expected by a local DTLS proxy
+ * that holds the client key of the bridge or by receivers used for testing. The bridge only accepts the stream
+ * of the application that started the entertainment area, the proxy must therefore start the area with the
+ * application key its client key belongs to, before forwarding the frames.
+ */
+public class UdpFrameTransport implements FrameTransport {
+
+    private final DatagramChannel channel;
+
+
+    /**
+     * @param address to send the frames to
+     * @throws IOException if the socket could not be opened
+     */
+    public UdpFrameTransport(InetSocketAddress address) throws IOException {
+        this.channel = DatagramChannel.open();
+        this.channel.connect(address);
+    }
+
+    @Override
+    public void send(ByteBuffer frame) throws IOException {
+        channel.write(frame);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
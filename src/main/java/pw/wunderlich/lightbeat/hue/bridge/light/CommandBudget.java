@@ -0,0 +1,169 @@
+package pw.wunderlich.lightbeat.hue.bridge.light;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pw.wunderlich.lightbeat.AppTaskOrchestrator;
+import pw.wunderlich.lightbeat.util.Clock;
+
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket that limits the light commands sent to a bridge, as the bridge only processes about
+ * 10 light commands per second. Every {@link UpdateQueue} of the bridge acquires a token before sending
+ * an update. The bucket holds up to one second of commands, so that the updates of a beat can be sent at once.
+ * <br>
+ * Once the budget is exhausted, requests wait until a token is available. Waiting requests are granted by their
+ * {@link UpdatePriority} first and in the order they were made second. Every light waits with at most one request
+ * at a time and requests again after its command was sent, which distributes the budget evenly across all lights.
+ * Group commands are limited separately by the {@link GroupBatcher}.
+ */
+public class CommandBudget {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommandBudget.class);
+
+    private final AppTaskOrchestrator taskOrchestrator;
+    private final Clock clock;
+    private final double tokensPerNano;
+    private final double capacity;
+
+    // guarded by this
+    private final Map<UpdatePriority, Map<Object, Runnable>> waitingRequests = new EnumMap<>(UpdatePriority.class);
+    private final Map<Object, UpdatePriority> waitingPriorities = new HashMap<>();
+    private double tokens;
+    private long lastRefillNanos;
+    private boolean isGrantScheduled = false;
+
+
+    /**
+     * @param taskOrchestrator  to grant waiting requests on
+     * @param commandsPerSecond amount of light commands the bridge may receive per second
+     */
+    public CommandBudget(AppTaskOrchestrator taskOrchestrator, int commandsPerSecond) {
+        if (commandsPerSecond <= 0) {
+            throw new IllegalArgumentException("Command rate must be positive");
+        }
+
+        this.taskOrchestrator = taskOrchestrator;
+        this.clock = taskOrchestrator.getClock();
+        this.tokensPerNano = commandsPerSecond / (double) TimeUnit.SECONDS.toNanos(1L);
+        this.capacity = commandsPerSecond;
+        this.tokens = capacity;
+        this.lastRefillNanos = clock.nanoTime();
+        for (UpdatePriority priority : UpdatePriority.values()) {
+            waitingRequests.put(priority, new LinkedHashMap<>());
+        }
+        logger.info("Limiting light commands to {} per second", commandsPerSecond);
+    }
+
+    /**
+     * Takes a token if one is available and no other request is waiting, otherwise the request waits until
+     * it is granted. A requester that is already waiting replaces its request and keeps its place, unless it
+     * raises the priority.
+     *
+     * @param requester identifies the light the request is made for
+     * @param priority  priority of the update that will be sent
+     * @param onGrant   called once a waiting request was granted, on a thread of the task orchestrator
+     * @return true if a token was taken right away, in which case onGrant is not called
+     */
+    public boolean acquire(Object requester, UpdatePriority priority, Runnable onGrant) {
+        if (taskOrchestrator.isShutdown()) {
+            // no waiting while shutting down, restored states must still be sent
+            return true;
+        }
+
+        synchronized (this) {
+            refill();
+            UpdatePriority waitingPriority = waitingPriorities.get(requester);
+            if (waitingPriority == null && waitingPriorities.isEmpty() && tokens >= 1d) {
+                tokens--;
+                return true;
+            }
+
+            if (waitingPriority == null || priority.isHigherThan(waitingPriority)) {
+                if (waitingPriority != null) {
+                    waitingRequests.get(waitingPriority).remove(requester);
+                }
+                waitingPriorities.put(requester, priority);
+            } else {
+                priority = waitingPriority;
+            }
+            waitingRequests.get(priority).put(requester, onGrant);
+
+            if (isGrantScheduled) {
+                return false;
+            }
+            isGrantScheduled = true;
+        }
+
+        scheduleGrant();
+        return false;
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void refill() {
+        long nowNanos = clock.nanoTime();
+        tokens = Math.min(capacity, tokens + (nowNanos - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = nowNanos;
+    }
+
+    private void scheduleGrant() {
+        long delayNanos;
+        synchronized (this) {
+            delayNanos = tokens >= 1d ? 0L : (long) Math.ceil((1d - tokens) / tokensPerNano);
+        }
+
+        try {
+            taskOrchestrator.schedule(this::grant, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down, grant everything that is waiting
+            List<Runnable> granted = new ArrayList<>();
+            synchronized (this) {
+                waitingRequests.values().forEach(requests -> {
+                    granted.addAll(requests.values());
+                    requests.clear();
+                });
+                waitingPriorities.clear();
+                isGrantScheduled = false;
+            }
+            granted.forEach(Runnable::run);
+        }
+    }
+
+    private void grant() {
+        List<Runnable> granted = new ArrayList<>();
+        boolean isStillWaiting;
+        synchronized (this) {
+            refill();
+            for (Map<Object, Runnable> requests : waitingRequests.values()) {
+                Iterator<Map.Entry<Object, Runnable>> iterator = requests.entrySet().iterator();
+                while (tokens >= 1d && iterator.hasNext()) {
+                    Map.Entry<Object, Runnable> request = iterator.next();
+                    iterator.remove();
+                    waitingPriorities.remove(request.getKey());
+                    granted.add(request.getValue());
+                    tokens--;
+                }
+            }
+
+            isStillWaiting = !waitingPriorities.isEmpty();
+            isGrantScheduled = isStillWaiting;
+        }
+
+        // requesters are called without holding the lock, as they acquire while holding their own lock
+        for (Runnable onGrant : granted) {
+            try {
+                onGrant.run();
+            } catch (Exception e) {
+                logger.warn("Could not run granted light command", e);
+            }
+        }
+
+        if (isStillWaiting) {
+            scheduleGrant();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package pw.wunderlich.lightbeat.hue.bridge.light;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pw.wunderlich.lightbeat.AppTaskOrchestrator;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flushes the {@link LightFrame} of every registered light at a fixed rate. Effects, strobes and color strobes
+ * update the lights whenever they need to, the renderer sends at most one update per light and frame, which
+ * caps the amount of commands sent to the bridge and smooths bursts of updates.
+ */
+public class FrameRenderer {
+
+    private static final Logger logger = LoggerFactory.getLogger(FrameRenderer.class);
+
+    private final List<LBLight> lights = new CopyOnWriteArrayList<>();
+    private final ScheduledFuture<?> renderTask;
+
+
+    /**
+     * @param taskOrchestrator to run the render loop on
+     * @param framesPerSecond  amount of frames to flush per second
+     */
+    public FrameRenderer(AppTaskOrchestrator taskOrchestrator, int framesPerSecond) {
+        if (framesPerSecond <= 0) {
+            throw new IllegalArgumentException("Frame rate must be positive");
+        }
+
+        long framePeriodMillis = Math.max(1000L / framesPerSecond, 1L);
+        this.renderTask = taskOrchestrator.schedulePeriodicTask(this::renderFrame,
+                framePeriodMillis, framePeriodMillis, TimeUnit.MILLISECONDS);
+        logger.info("Rendering light updates at {} frames per second", framesPerSecond);
+    }
+
+    void register(LBLight light) {
+        lights.add(light);
+    }
+
+    /**
+     * Stops the render loop, updates that weren't flushed yet are discarded.
+     */
+    public void stop() {
+        renderTask.cancel(false);
+        lights.clear();
+    }
+
+    private void renderFrame() {
+        for (LBLight light : lights) {
+            try {
+                light.renderFrame();
+            } catch (Exception e) {
+                logger.warn("Could not render frame of light {}", light.getBase().getName(), e);
+            }
+        }
+    }
+}
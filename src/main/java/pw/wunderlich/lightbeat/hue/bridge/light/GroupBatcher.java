@@ -0,0 +1,206 @@
+package pw.wunderlich.lightbeat.hue.bridge.light;
+
+import io.github.zeroone3010.yahueapi.Group;
+import io.github.zeroone3010.yahueapi.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pw.wunderlich.lightbeat.AppTaskOrchestrator;
+import pw.wunderlich.lightbeat.util.Clock;
+
+import java.util.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the updates of all lights of a bridge for a short window and sends a single group action instead of
+ * one request per light, if several lights received the same updates. Only groups that exist on the bridge are
+ * used, which are the group containing all lights, rooms and zones. A group is only used if all of its lights
+ * received the same updates, lights that are not covered by a group are updated individually via their
+ * {@link UpdateQueue}.
+ * <br>
+ * The bridge only processes about one group action per second, group actions are therefore rate limited to
+ * {@link #GROUP_COMMAND_INTERVAL_MILLIS}, if the limit is reached the updates are sent individually.
+ * Lights that still have updates in their queue and essential updates are always updated individually,
+ * to keep the order of the updates of every light. Lights are busy until the group actions containing them were
+ * accepted, their queues hold newer updates back until then. If a group action fails, the remaining actions are
+ * not sent and the lights send their next update in full, as it is unknown which state they are in.
+ */
+public class GroupBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroupBatcher.class);
+
+    private static final long BATCH_WINDOW_MILLIS = 10L;
+    private static final long GROUP_COMMAND_INTERVAL_MILLIS = 1000L;
+    static final int MIN_GROUP_SIZE = 3;
+
+    private final AppTaskOrchestrator taskOrchestrator;
+    private final String bridgeId;
+    private final Clock clock;
+    private final List<Group> groups;
+    private final List<Set<String>> groupLightIds;
+
+    // guarded by this
+    private Map<LBLight, List<PendingUpdate>> pendingUpdates = new LinkedHashMap<>();
+    private long nextGroupCommandMillis = Long.MIN_VALUE;
+
+
+    /**
+     * @param taskOrchestrator to run the batch window and send the group actions on
+     * @param bridgeId         identifies the bridge, see {@link AppTaskOrchestrator#dispatchBridgeCommand(String, Runnable)}
+     * @param groups           groups of the bridge that may be used
+     */
+    public GroupBatcher(AppTaskOrchestrator taskOrchestrator, String bridgeId, Collection<Group> groups) {
+        this.taskOrchestrator = taskOrchestrator;
+        this.bridgeId = bridgeId;
+        this.clock = taskOrchestrator.getClock();
+
+        // prefer large groups, as they replace the most requests
+        this.groups = groups.stream()
+                .filter(group -> group.getLights().size() >= MIN_GROUP_SIZE)
+                .sorted(Comparator.comparingInt((Group group) -> group.getLights().size()).reversed())
+                .toList();
+        this.groupLightIds = this.groups.stream()
+                .map(group -> {
+                    Set<String> lightIds = new HashSet<>();
+                    group.getLights().forEach(light -> lightIds.add(light.getId()));
+                    return lightIds;
+                })
+                .toList();
+        logger.info("Batching light updates of bridge {} with {} groups", bridgeId, this.groups.size());
+    }
+
+    void addUpdate(LBLight light, LightStateBuilder state, UpdatePriority priority, boolean isEssential) {
+        boolean isWindowStart;
+        synchronized (this) {
+            isWindowStart = pendingUpdates.isEmpty();
+            pendingUpdates.computeIfAbsent(light, l -> new ArrayList<>()).add(new PendingUpdate(state, priority, isEssential));
+        }
+
+        if (isWindowStart) {
+            try {
+                taskOrchestrator.schedule(this::flush, BATCH_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // shutting down, send right away
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Discards the updates of the given light that weren't sent yet.
+     */
+    synchronized void discard(LBLight light) {
+        pendingUpdates.remove(light);
+    }
+
+    private void flush() {
+        Map<LBLight, List<PendingUpdate>> updates;
+        synchronized (this) {
+            updates = pendingUpdates;
+            pendingUpdates = new LinkedHashMap<>();
+        }
+
+        // lights that can be updated via a group, keyed by their updates
+        Map<List<LightStateBuilder.StateKey>, Map<String, LBLight>> lightsByUpdates = new HashMap<>();
+        updates.forEach((light, lightUpdates) -> {
+            if (light.isIdle() && lightUpdates.stream().noneMatch(PendingUpdate::isEssential)) {
+                List<LightStateBuilder.StateKey> keys = lightUpdates.stream()
+                        .map(update -> update.state().getStateKey())
+                        .toList();
+                lightsByUpdates.computeIfAbsent(keys, k -> new HashMap<>()).put(light.getBase().getId(), light);
+            }
+        });
+
+        Set<LBLight> batchedLights = new HashSet<>();
+        lightsByUpdates.forEach((keys, lights) -> {
+            if (lights.size() < MIN_GROUP_SIZE) {
+                return;
+            }
+
+            List<LightStateBuilder> states = updates.get(lights.values().iterator().next())
+                    .stream()
+                    .map(PendingUpdate::state)
+                    .toList();
+            for (int groupIndex : selectGroups(lights.keySet(), groupLightIds)) {
+                if (!acquireGroupCommands(states.size())) {
+                    break;
+                }
+
+                List<LBLight> groupLights = groupLightIds.get(groupIndex).stream().map(lights::get).toList();
+                batchedLights.addAll(groupLights);
+                groupLights.forEach(light -> states.forEach(state -> light.groupCommandStarted()));
+                sendGroupUpdate(groups.get(groupIndex), groupLights, states, 0);
+            }
+        });
+
+        updates.forEach((light, lightUpdates) -> {
+            if (!batchedLights.contains(light)) {
+                lightUpdates.forEach(update -> light.sendUpdate(update.state(), update.priority(), update.isEssential()));
+            }
+        });
+    }
+
+    /**
+     * Selects disjoint groups whose lights are all contained in the given lights, largest groups first.
+     *
+     * @param lightIds     lights that receive the same updates
+     * @param groupLightIds lights of every group, ordered by size descending
+     * @return indices of the selected groups
+     */
+    static List<Integer> selectGroups(Set<String> lightIds, List<Set<String>> groupLightIds) {
+        Set<String> remainingLightIds = new HashSet<>(lightIds);
+        List<Integer> selectedGroups = new ArrayList<>();
+        for (int i = 0; i < groupLightIds.size() && remainingLightIds.size() >= MIN_GROUP_SIZE; i++) {
+            Set<String> lightsOfGroup = groupLightIds.get(i);
+            if (lightsOfGroup.size() >= MIN_GROUP_SIZE && remainingLightIds.containsAll(lightsOfGroup)) {
+                remainingLightIds.removeAll(lightsOfGroup);
+                selectedGroups.add(i);
+            }
+        }
+        return selectedGroups;
+    }
+
+    private synchronized boolean acquireGroupCommands(int commands) {
+        long currentTime = clock.currentTimeMillis();
+        if (currentTime < nextGroupCommandMillis) {
+            return false;
+        }
+        nextGroupCommandMillis = currentTime + commands * GROUP_COMMAND_INTERVAL_MILLIS;
+        return true;
+    }
+
+    /**
+     * Sends the updates one after another, every update as its own bridge command. Every update finishes one
+     * group command of the lights, see {@link LBLight#groupCommandStarted()}.
+     */
+    private void sendGroupUpdate(Group group, List<LBLight> lights, List<LightStateBuilder> states, int index) {
+        Future<?> cmdFuture = taskOrchestrator.dispatchBridgeCommand(bridgeId, () -> {
+            State state = states.get(index).getLightState();
+            try {
+                group.setState(state);
+            } catch (RuntimeException e) {
+                cancelGroupUpdate(lights, states, index);
+                throw e;
+            }
+            lights.forEach(light -> light.groupCommandFinished(state));
+
+            if (index + 1 < states.size()) {
+                sendGroupUpdate(group, lights, states, index + 1);
+            }
+        });
+
+        if (cmdFuture == null) {
+            cancelGroupUpdate(lights, states, index);
+        }
+    }
+
+    private void cancelGroupUpdate(List<LBLight> lights, List<LightStateBuilder> states, int fromIndex) {
+        for (int i = fromIndex; i < states.size(); i++) {
+            lights.forEach(light -> light.groupCommandFinished(null));
+        }
+    }
+
+
+    private record PendingUpdate(LightStateBuilder state, UpdatePriority priority, boolean isEssential) {}
+}
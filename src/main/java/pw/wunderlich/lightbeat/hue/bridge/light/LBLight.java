@@ -2,18 +2,26 @@ package pw.wunderlich.lightbeat.hue.bridge.light;
 
 import io.github.zeroone3010.yahueapi.State;
 import pw.wunderlich.lightbeat.AppTaskOrchestrator;
+import pw.wunderlich.lightbeat.hue.bridge.entertainment.EntertainmentChannel;
 import pw.wunderlich.lightbeat.hue.bridge.light.controller.BrightnessController;
 import pw.wunderlich.lightbeat.hue.bridge.light.controller.ColorController;
 import pw.wunderlich.lightbeat.hue.bridge.light.controller.StrobeController;
 
 
 /**
- * Default and thread safe {@link Light} implementation.
+ * Default and thread safe {@link Light} implementation. Updates are either sent right away or, if the light
+ * was registered with a {@link FrameRenderer}, written into a {@link LightFrame} that is flushed by the renderer.
+ * Updates that are sent are passed to the {@link GroupBatcher} of the bridge, if batching is enabled.
+ * Lights that stream to an entertainment area write their updates into their {@link EntertainmentChannel} instead.
  */
 public class LBLight implements Light {
 
     private final io.github.zeroone3010.yahueapi.Light light;
+    private final String bridgeId;
     private final UpdateQueue updateQueue;
+    private final LightFrame frame;
+    private final GroupBatcher groupBatcher;
+    private final EntertainmentChannel entertainmentChannel;
 
     private final ColorController colorController;
     private final BrightnessController brightnessController;
@@ -27,9 +35,31 @@ public class LBLight implements Light {
     private volatile State storedState = null;
 
 
-    public LBLight(io.github.zeroone3010.yahueapi.Light apiLight, AppTaskOrchestrator taskOrchestrator) {
+    /**
+     * @param apiLight         light to control
+     * @param taskOrchestrator to send updates and run strobes on
+     * @param bridgeId         identifies the bridge the light is connected to, see {@link UpdateQueue}
+     */
+    public LBLight(io.github.zeroone3010.yahueapi.Light apiLight, AppTaskOrchestrator taskOrchestrator, String bridgeId) {
+        this(apiLight, taskOrchestrator, UpdateSettings.of(bridgeId), null, null, null);
+    }
+
+    /**
+     * @param apiLight             light to control
+     * @param taskOrchestrator     to send updates and run strobes on
+     * @param updateSettings       of the bridge the light is connected to, see {@link UpdateQueue}
+     * @param frameRenderer        to flush the updates of this light, or null to send them right away
+     * @param groupBatcher         to batch updates with other lights of the bridge, or null to send them individually
+     * @param entertainmentChannel to stream the updates to, or null to send them via the REST API
+     */
+    public LBLight(io.github.zeroone3010.yahueapi.Light apiLight, AppTaskOrchestrator taskOrchestrator,
+                   UpdateSettings updateSettings, FrameRenderer frameRenderer, GroupBatcher groupBatcher,
+                   EntertainmentChannel entertainmentChannel) {
         this.light = apiLight;
-        this.updateQueue = new UpdateQueue(apiLight, taskOrchestrator);
+        this.bridgeId = updateSettings.bridgeId();
+        this.groupBatcher = groupBatcher;
+        this.entertainmentChannel = entertainmentChannel;
+        this.updateQueue = new UpdateQueue(apiLight, taskOrchestrator, updateSettings);
 
         this.colorController = new ColorController(this);
         this.brightnessController = new BrightnessController(this);
@@ -39,6 +69,11 @@ public class LBLight implements Light {
         this.builderToCopyAfterTurningOn = LightStateBuilder.create();
 
         this.isOn = apiLight.getState().getOn();
+
+        this.frame = frameRenderer != null ? new LightFrame() : null;
+        if (frameRenderer != null) {
+            frameRenderer.register(this);
+        }
     }
 
     @Override
@@ -102,7 +137,7 @@ public class LBLight implements Light {
 
         if (!currentBuilder.isDefault() || brightnessController.isBrightnessWasIncreased()) {
             brightnessController.applyUpdates();
-            updateQueue.addUpdate(currentBuilder.getLightState(), forceOnStateNextUpdate);
+            sendState(currentBuilder, forceOnStateNextUpdate);
             forceOnStateNextUpdate = false;
         }
 
@@ -113,13 +148,94 @@ public class LBLight implements Light {
             brightnessController.applyFadeUpdates();
 
             if (!currentBuilder.isDefault()) {
-                updateQueue.addUpdate(currentBuilder.getLightState(), false);
+                sendFade(currentBuilder);
             }
         }
 
         this.currentBuilder = LightStateBuilder.create();
     }
 
+    private void sendState(LightStateBuilder state, boolean isEssential) {
+        if (entertainmentChannel != null) {
+            streamUpdate(state);
+        } else if (frame != null) {
+            frame.setState(state, isEssential);
+        } else {
+            queueUpdate(state, UpdatePriority.BEAT, isEssential);
+        }
+    }
+
+    private void sendFade(LightStateBuilder fade) {
+        if (entertainmentChannel != null) {
+            streamUpdate(fade);
+        } else if (frame != null) {
+            frame.setFade(fade);
+        } else {
+            queueUpdate(fade, UpdatePriority.FADE, false);
+        }
+    }
+
+    /**
+     * Alerts are not streamed, as they are an effect of the bridge.
+     */
+    private void streamUpdate(LightStateBuilder state) {
+        entertainmentChannel.setState(state.getColor(), state.getBrightness(), state.getOn(), state.getTransitionTime() * 100L);
+    }
+
+    private void queueUpdate(LightStateBuilder state, UpdatePriority priority, boolean isEssential) {
+        if (groupBatcher != null) {
+            groupBatcher.addUpdate(this, state, priority, isEssential);
+        } else {
+            sendUpdate(state, priority, isEssential);
+        }
+    }
+
+    /**
+     * Sends an update via the {@link UpdateQueue} of this light.
+     */
+    void sendUpdate(LightStateBuilder state, UpdatePriority priority, boolean isEssential) {
+        updateQueue.addUpdate(state.getLightState(), priority, isEssential);
+    }
+
+    /**
+     * @return true if no update of this light is queued or being sent
+     */
+    boolean isIdle() {
+        return updateQueue.isIdle();
+    }
+
+    /**
+     * Marks the light as busy until {@link #groupCommandFinished(State)} is called, see {@link GroupBatcher}.
+     */
+    void groupCommandStarted() {
+        updateQueue.groupCommandStarted();
+    }
+
+    /**
+     * @param state that was sent to a group containing this light, or null if sending it failed
+     */
+    void groupCommandFinished(State state) {
+        updateQueue.groupCommandFinished(state);
+    }
+
+    /**
+     * Called once the cached state of the light was refreshed from the bridge, so that updates are sent in full
+     * again if the light was changed externally.
+     */
+    public void stateRefreshed() {
+        updateQueue.checkReportedState(light.getState());
+    }
+
+    /**
+     * Sends the changes of the current frame, called by the {@link FrameRenderer}.
+     */
+    void renderFrame() {
+        LightFrame.Update update = frame.render();
+        if (update != null) {
+            queueUpdate(update.state(), update.priority(), update.isEssential());
+        }
+    }
+
     @Override
     public void storeState() {
         this.storedState = light.getState();
@@ -128,19 +244,33 @@ public class LBLight implements Light {
 
     @Override
     public void restoreState() {
+        if (entertainmentChannel != null) {
+            entertainmentChannel.release();
+        }
         if (storedState != null) {
-            updateQueue.addUpdate(storedState, true);
+            // pending updates must not override the restored state
+            if (frame != null) {
+                frame.clear();
+            }
+            if (groupBatcher != null) {
+                groupBatcher.discard(this);
+            }
+            updateQueue.addUpdate(storedState, UpdatePriority.RESTORE, true);
             storedState = null;
         }
     }
 
+    /**
+     * Light ids are only unique per bridge, so lights of different bridges with the same id are not equal.
+     */
     @Override
     public boolean equals(Object o) {
-        return this == o || o instanceof LBLight && this.light.getId().equals(((LBLight) o).light.getId());
+        return this == o || o instanceof LBLight other
+                && this.light.getId().equals(other.light.getId()) && this.bridgeId.equals(other.bridgeId);
     }
 
     @Override
     public int hashCode() {
-        return light.getId().hashCode();
+        return 31 * bridgeId.hashCode() + light.getId().hashCode();
     }
 }
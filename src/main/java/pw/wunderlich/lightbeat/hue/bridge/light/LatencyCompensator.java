@@ -0,0 +1,52 @@
+package pw.wunderlich.lightbeat.hue.bridge.light;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delays the updates of lights on bridges that respond faster than the slowest bridge, so that the lights of
+ * all bridges change at the same time. The latency of every bridge is the moving average of the time its light
+ * commands took, as recorded by the {@link UpdateQueue}s. An update that starts a burst of commands is delayed by
+ * the difference between the latency of the slowest bridge and the latency of its own bridge, capped at
+ * {@link #MAX_DELAY_MILLIS}. Shared by the update queues of all bridges. Thread safe.
+ * <p>
+ * The recorded latency is the time until the bridge accepted a command via HTTP, which is used as an estimate of
+ * the time until the light changed. The time a bridge needs to forward an accepted command to the light via Zigbee
+ * is not reported by the bridge and therefore not compensated, it is assumed to be similar for all bridges.
+ * The latency is measured per bridge instead of taken from the orchestrator's bridge execution time,
+ * which is shared by all bridges.
+ */
+public class LatencyCompensator {
+
+    static final long MAX_DELAY_MILLIS = 250L;
+    private static final double SMOOTHING_FACTOR = 0.1d;
+
+    // guarded by this
+    private final Map<String, Double> latencyMillis = new HashMap<>();
+
+
+    /**
+     * @param bridgeId     bridge that executed the command
+     * @param latencyNanos time until the bridge accepted the command
+     */
+    public synchronized void recordLatency(String bridgeId, long latencyNanos) {
+        double sampleMillis = latencyNanos / (double) TimeUnit.MILLISECONDS.toNanos(1L);
+        latencyMillis.merge(bridgeId, sampleMillis,
+                (average, sample) -> average + SMOOTHING_FACTOR * (sample - average));
+    }
+
+    /**
+     * @param bridgeId bridge to get the delay for
+     * @return time to delay an update of the given bridge by, 0 if no latency was recorded for it yet
+     */
+    public synchronized long getDelayMillis(String bridgeId) {
+        Double ownLatency = latencyMillis.get(bridgeId);
+        if (ownLatency == null) {
+            return 0L;
+        }
+
+        double maxLatency = latencyMillis.values().stream().mapToDouble(Double::doubleValue).max().orElse(0d);
+        return Math.min(MAX_DELAY_MILLIS, Math.round(maxLatency - ownLatency));
+    }
+}
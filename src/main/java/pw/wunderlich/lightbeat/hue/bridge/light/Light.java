@@ -40,7 +40,8 @@ public interface Light {
     /**
      * Adds controller update information to this light's builder (retrieved with {@link #getStateBuilder()})
      * and updates the light accordingly. Will only send the update if resulting light state would cause an update.
-     * Resets the builder for the next call of this method.
+     * Resets the builder for the next call of this method. If the light renders frames, the update is sent
+     * with the next frame instead, see {@link FrameRenderer}.
      *
      * @param transitionTime if transitionTime > 0, will cause a light fade as well in 100 ms steps
      *                       (fadeTime of 2 would be 200ms fade)
@@ -0,0 +1,100 @@
+package pw.wunderlich.lightbeat.hue.bridge.light;
+
+/**
+ * Frame buffer of a single light that is flushed by a {@link FrameRenderer}. Updates of the light are merged
+ * into the frame instead of being sent directly, once per frame only the values that differ from the state
+ * that was sent last are flushed as a single update.
+ * <br>
+ * A fade that follows an update, see {@link Light#doLightUpdate(int)}, is flushed in the frame after the update,
+ * so that the update is visible for at least one frame. If another update is written before the fade was flushed,
+ * the fade is merged into that update.
+ */
+class LightFrame {
+
+    // guarded by this
+    private LightStateBuilder sentState = LightStateBuilder.create();
+    private LightStateBuilder pendingState;
+    private LightStateBuilder pendingFade;
+    private boolean isEssential;
+
+
+    /**
+     * Merges an update into the frame.
+     *
+     * @param state       values to update
+     * @param isEssential true if the update must be sent, including its on state
+     */
+    synchronized void setState(LightStateBuilder state, boolean isEssential) {
+        if (pendingState == null) {
+            pendingState = LightStateBuilder.create();
+        }
+        if (pendingFade != null) {
+            pendingState.copyFromBuilder(pendingFade);
+            pendingFade = null;
+        }
+        pendingState.copyFromBuilder(state);
+        this.isEssential |= isEssential;
+    }
+
+    /**
+     * Merges a fade into the frame, which is flushed after the pending update.
+     *
+     * @param fade values to fade to
+     */
+    synchronized void setFade(LightStateBuilder fade) {
+        if (pendingFade == null) {
+            pendingFade = LightStateBuilder.create();
+        }
+        pendingFade.copyFromBuilder(fade);
+    }
+
+    /**
+     * Discards all pending values and forgets the state that was sent last, for example because the light
+     * state was changed without this frame.
+     */
+    synchronized void clear() {
+        pendingState = null;
+        pendingFade = null;
+        isEssential = false;
+        sentState = LightStateBuilder.create();
+    }
+
+    /**
+     * Takes the next update of this frame and marks it as sent.
+     *
+     * @return update containing only the changed values, or null if nothing changed
+     */
+    synchronized Update render() {
+        while (pendingState != null || pendingFade != null) {
+            LightStateBuilder next;
+            boolean isEssentialUpdate = false;
+            boolean isFade = false;
+            if (pendingState != null) {
+                next = pendingState;
+                isEssentialUpdate = isEssential;
+                pendingState = null;
+                isEssential = false;
+            } else {
+                next = pendingFade;
+                pendingFade = null;
+                isFade = true;
+            }
+
+            next.removeSentValues(sentState, isEssentialUpdate);
+            if (!next.isDefault()) {
+                return new Update(next, isFade ? UpdatePriority.FADE : UpdatePriority.BEAT, isEssentialUpdate);
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Changed values of a frame.
+     *
+     * @param state       values to send
+     * @param priority    {@link UpdatePriority#FADE} if the update only contains a fade
+     * @param isEssential true if the update must not be discarded, see {@link UpdateQueue}
+     */
+    record Update(LightStateBuilder state, UpdatePriority priority, boolean isEssential) {}
+}
@@ -75,6 +75,63 @@ public class LightStateBuilder {
         return this;
     }
 
+    /**
+     * Removes all values that are equal to the values of the given builder, which holds the state that was
+     * sent last, and stores the remaining values in it. Alerts are never removed, as they are an action
+     * instead of a state.
+     *
+     * @param sentState   state that was sent last, updated with the values of this builder
+     * @param keepOnState true if the on state must be sent even if it didn't change
+     */
+    void removeSentValues(LightStateBuilder sentState, boolean keepOnState) {
+        if (brightness >= 0) {
+            if (brightness == sentState.brightness) {
+                brightness = Integer.MIN_VALUE;
+            } else {
+                sentState.brightness = brightness;
+            }
+        }
+
+        if (color != null) {
+            if (color.equals(sentState.color)) {
+                color = null;
+            } else {
+                sentState.color = color;
+            }
+        }
+
+        if (setOn != null) {
+            if (setOn.equals(sentState.setOn) && !keepOnState) {
+                setOn = null;
+            } else {
+                sentState.setOn = setOn;
+            }
+        }
+    }
+
+    /**
+     * @return values of this builder, equal for builders that result in the same state
+     */
+    StateKey getStateKey() {
+        return new StateKey(transitionTime, brightness, color, setOn, alert);
+    }
+
+    int getTransitionTime() {
+        return transitionTime;
+    }
+
+    int getBrightness() {
+        return brightness;
+    }
+
+    Color getColor() {
+        return color;
+    }
+
+    Boolean getOn() {
+        return setOn;
+    }
+
     boolean isDefault() {
         return brightness < 0
                 && color == null
@@ -110,4 +167,10 @@ public class LightStateBuilder {
 
         return newLightState.build();
     }
+
+
+    /**
+     * Values of a builder at the time it was taken, see {@link #getStateKey()}.
+     */
+    record StateKey(int transitionTime, int brightness, Color color, Boolean setOn, Boolean alert) {}
 }
@@ -0,0 +1,104 @@
+package pw.wunderlich.lightbeat.hue.bridge.light;
+
+import io.github.zeroone3010.yahueapi.AlertType;
+import io.github.zeroone3010.yahueapi.State;
+
+import java.util.Objects;
+
+/**
+ * Last state of a light that was accepted by the bridge, values that are unknown are null. Allows sending only the
+ * values of an update that differ from the state of the light, see {@link #getDelta(State)}. Must be invalidated
+ * once the state of the light is no longer known, for example because a command failed or the light was changed
+ * by another app. Thread safe.
+ */
+class StateShadow {
+
+    // guarded by this
+    private Boolean on;
+    private Integer brightness;
+    private Integer hue;
+    private Integer saturation;
+
+
+    /**
+     * @param state update to send
+     * @return update containing only the values that differ from the shadow, the transition time and alert,
+     * or null if the update doesn't change the state of the light
+     */
+    synchronized State getDelta(State state) {
+        boolean isChanged = false;
+        State.Builder delta = new State.Builder();
+        if (state.getTransitiontime() != null) {
+            delta.transitionTime(state.getTransitiontime());
+        }
+
+        if (state.getOn() != null && !state.getOn().equals(on)) {
+            delta.on(state.getOn());
+            isChanged = true;
+        }
+        if (state.getBri() != null && !state.getBri().equals(brightness)) {
+            delta.brightness(state.getBri());
+            isChanged = true;
+        }
+        if (state.getHue() != null && !state.getHue().equals(hue)) {
+            delta.hue(state.getHue());
+            isChanged = true;
+        }
+        if (state.getSat() != null && !state.getSat().equals(saturation)) {
+            delta.saturation(state.getSat());
+            isChanged = true;
+        }
+        if (state.getAlert() != null && !state.getAlert().equals(AlertType.NONE)) {
+            // alerts are an action instead of a state
+            delta.alert(state.getAlert());
+            isChanged = true;
+        }
+
+        return isChanged ? delta.build() : null;
+    }
+
+    /**
+     * @param state update that was accepted by the bridge
+     */
+    synchronized void apply(State state) {
+        if (state.getOn() != null) {
+            on = state.getOn();
+        }
+        if (state.getBri() != null) {
+            brightness = state.getBri();
+        }
+        if (state.getXy() != null || state.getCt() != null) {
+            // color is no longer defined by hue and saturation
+            hue = null;
+            saturation = null;
+        }
+        if (state.getHue() != null) {
+            hue = state.getHue();
+        }
+        if (state.getSat() != null) {
+            saturation = state.getSat();
+        }
+    }
+
+    /**
+     * @param reportedState state of the light as reported by the bridge
+     * @return true if the known values of the shadow match the reported state
+     */
+    synchronized boolean matches(State reportedState) {
+        return matches(on, reportedState.getOn())
+                && matches(brightness, reportedState.getBri())
+                && matches(hue, reportedState.getHue())
+                && matches(saturation, reportedState.getSat());
+    }
+
+    private static boolean matches(Object shadowValue, Object reportedValue) {
+        return shadowValue == null || Objects.equals(shadowValue, reportedValue);
+    }
+
+    synchronized void invalidate() {
+        on = null;
+        brightness = null;
+        hue = null;
+        saturation = null;
+    }
+}
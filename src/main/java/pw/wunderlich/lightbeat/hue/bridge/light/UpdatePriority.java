@@ -0,0 +1,25 @@
+package pw.wunderlich.lightbeat.hue.bridge.light;
+
+/**
+ * Priority of a light update, used by the {@link CommandBudget} to decide which light may send next
+ * once the command budget of the bridge is exhausted. Declared from highest to lowest priority.
+ */
+public enum UpdatePriority {
+
+    /**
+     * Update caused by a beat, which should reach the light while the beat is still audible.
+     */
+    BEAT,
+    /**
+     * Fade following a beat update, see {@link Light#doLightUpdate(int)}.
+     */
+    FADE,
+    /**
+     * Restores the state of the light once the visualization stopped.
+     */
+    RESTORE;
+
+    boolean isHigherThan(UpdatePriority other) {
+        return ordinal() < other.ordinal();
+    }
+}
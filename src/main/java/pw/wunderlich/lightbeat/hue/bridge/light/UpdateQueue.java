@@ -3,108 +3,476 @@ package pw.wunderlich.lightbeat.hue.bridge.light;
 import io.github.zeroone3010.yahueapi.AlertType;
 import io.github.zeroone3010.yahueapi.Light;
 import io.github.zeroone3010.yahueapi.State;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import pw.wunderlich.lightbeat.AppTaskOrchestrator;
+import pw.wunderlich.lightbeat.hue.bridge.AsyncBridgeClient;
+import pw.wunderlich.lightbeat.util.Clock;
+import pw.wunderlich.lightbeat.util.EventJournal;
 import pw.wunderlich.lightbeat.util.TimeThreshold;
 
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.Queue;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Sends light updates in a synchronized queue, while waiting for callbacks from the bridge
- * and logging received errors. Every light has its own UpdateQueue instance.
+ * and recording sent updates in the {@link EventJournal}. Every light has its own UpdateQueue instance.
  * <br>
  * Will discard updates that are older than {@link #STALE_THRESHOLD_MS}. The bridge itself
  * does not reply when an update has successfully propagated through the ZigBee network and
- * instead only confirms the acceptance of the update. Calling {@link #addUpdate(State, boolean)}
+ * instead only confirms the acceptance of the update. Calling {@link #addUpdate(State, UpdatePriority, boolean)}
  * with {@code isEssential = true} will ensure the update will be sent.
+ * <br>
+ * Every bridge command sends a single update, so that the adaptive concurrency limit of the bridge can use its
+ * duration as latency. Commands of the same light never run concurrently, the next command is dispatched once
+ * the previous one finished, which also keeps the updates in order. If the bridge has an {@link AsyncBridgeClient},
+ * updates are sent with it, which doesn't occupy a thread while waiting for the limiter or the response.
+ * <br>
+ * If the bridge has a {@link CommandBudget}, every command waits for a token of the budget first. While waiting,
+ * a new update discards the queued fades that weren't sent yet, as the newer update supersedes them, instead of
+ * sending them once they are almost stale.
+ * <br>
+ * If updates are coalesced, a non-essential update that is queued behind another non-essential update that wasn't
+ * sent yet is merged into it value by value, so that only the latest values are sent once the bridge accepts the
+ * next command, instead of every obsolete intermediate state. Essential updates are never merged, updates before
+ * and after an essential update are sent in order. Fades are then merged instead of discarded while waiting for
+ * the command budget.
+ * <br>
+ * Non-essential updates only contain the values that differ from the last state the bridge accepted, which is
+ * kept in a {@link StateShadow}, updates that wouldn't change the light are not sent at all. Essential updates
+ * are always sent in full. The shadow is invalidated if a command fails or if the light was changed externally,
+ * see {@link #checkReportedState(State)}.
+ * <br>
+ * While the light is part of a group action that was not accepted yet, see {@link #groupCommandStarted()}, the queue
+ * is not idle and holds its updates back, so that they cannot overtake the older state of the group.
+ * <br>
+ * If lights of several bridges are used, the latency of every sent update is recorded in a {@link LatencyCompensator},
+ * a non-essential update that arrives while the queue is idle waits for the delay of its bridge before it is sent.
  */
 public class UpdateQueue {
 
-    private static final Logger logger = LoggerFactory.getLogger(UpdateQueue.class);
+    private static final EventJournal journal = EventJournal.get();
 
     private static final long STALE_THRESHOLD_MS = 250;
 
     private final Light apiLight;
     private final AppTaskOrchestrator taskOrchestrator;
+    private final String bridgeId;
+    private final CommandBudget commandBudget;
+    private final AsyncBridgeClient bridgeClient;
+    private final boolean coalesceUpdates;
+    private final LatencyCompensator latencyCompensator;
+    private final Clock clock;
+
+    private final Deque<QueueEntry> queue;
+    private final StateShadow shadow = new StateShadow();
+    private final int journalSource;
 
-    private final Queue<QueueEntry> queue;
+    // guarded by queue
+    private boolean isProcessing = false;
+    private boolean isWaitingForBudget = false;
+    private int pendingGroupCommands = 0;
 
 
-    public UpdateQueue(Light apiLight, AppTaskOrchestrator taskOrchestrator) {
+    public UpdateQueue(Light apiLight, AppTaskOrchestrator taskOrchestrator, String bridgeId) {
+        this(apiLight, taskOrchestrator, UpdateSettings.of(bridgeId));
+    }
+
+    /**
+     * @param apiLight         light to send the updates to
+     * @param taskOrchestrator to send the updates on
+     * @param settings         of the bridge the light is connected to
+     */
+    public UpdateQueue(Light apiLight, AppTaskOrchestrator taskOrchestrator, UpdateSettings settings) {
         this.apiLight = apiLight;
         this.taskOrchestrator = taskOrchestrator;
+        this.bridgeId = settings.bridgeId();
+        this.commandBudget = settings.commandBudget();
+        this.bridgeClient = settings.bridgeClient();
+        this.coalesceUpdates = settings.coalesceUpdates();
+        this.latencyCompensator = settings.latencyCompensator();
+        this.clock = taskOrchestrator.getClock();
         this.queue = new LinkedList<>();
+        this.journalSource = journal.registerSource(apiLight.getName());
+    }
+
+    /**
+     * @return true if no update is queued or being sent
+     */
+    public boolean isIdle() {
+        synchronized (queue) {
+            return !isProcessing && pendingGroupCommands == 0 && queue.isEmpty();
+        }
+    }
+
+    /**
+     * Holds the updates of this queue back until {@link #groupCommandFinished(State)} was called,
+     * must be called before a group action containing this light is dispatched.
+     */
+    public void groupCommandStarted() {
+        synchronized (queue) {
+            pendingGroupCommands++;
+        }
+    }
+
+    /**
+     * Sends the updates that were held back while the group action was in flight.
+     *
+     * @param state that was accepted by the bridge, or null if the group action failed, as it is then unknown
+     *              if the update was applied
+     */
+    public void groupCommandFinished(State state) {
+        if (state != null) {
+            recordSent(state);
+        } else {
+            shadow.invalidate();
+        }
+
+        synchronized (queue) {
+            pendingGroupCommands--;
+            if (pendingGroupCommands == 0 && !isProcessing && !queue.isEmpty()) {
+                isProcessing = true;
+                acquireBudget();
+            }
+        }
     }
 
-    public void addUpdate(State state, boolean isEssential) {
+    /**
+     * Records an update that was accepted by the bridge, also called for updates that were sent to this light
+     * without this queue, for example as part of a group.
+     *
+     * @param state that was sent
+     */
+    public void recordSent(State state) {
+        shadow.apply(state);
+        boolean isAlert = isAlert(state.getAlert());
+
+        double colorMode = Double.NaN;
+        double color = Double.NaN;
+        List<Float> xy = state.getXy();
+        if (state.getHue() != null || state.getSat() != null) {
+            colorMode = EventJournal.COLOR_HUE_SAT;
+            color = EventJournal.packHueSat(Objects.requireNonNullElse(state.getHue(), 0),
+                    Objects.requireNonNullElse(state.getSat(), 0));
+        } else if (xy != null && xy.size() == 2) {
+            colorMode = EventJournal.COLOR_XY;
+            color = EventJournal.packXy(xy.get(0), xy.get(1));
+        } else if (state.getCt() != null) {
+            colorMode = EventJournal.COLOR_CT;
+            color = state.getCt();
+        }
+
+        journal.record(EventJournal.Type.LIGHT_UPDATED, journalSource,
+                toValue(state.getTransitiontime()),
+                toValue(state.getBri()),
+                colorMode,
+                color,
+                isAlert ? 1d : 0d,
+                state.getOn() != null ? (state.getOn() ? 1d : 0d) : Double.NaN);
+    }
+
+    /**
+     * Forgets the state that was sent last if it doesn't match the state reported by the bridge,
+     * for example because the light was changed by another app.
+     *
+     * @param reportedState current state of the light, as reported by the bridge
+     */
+    public void checkReportedState(State reportedState) {
+        if (reportedState != null && !shadow.matches(reportedState)) {
+            shadow.invalidate();
+        }
+    }
+
+    /**
+     * @param state       to send
+     * @param priority    of the update, see {@link CommandBudget}
+     * @param isEssential true if the update must not be discarded
+     */
+    public void addUpdate(State state, UpdatePriority priority, boolean isEssential) {
         if (state == null) {
             return;
         }
         synchronized (queue) {
-            boolean wasEmpty = queue.isEmpty();
-            queue.add(new QueueEntry(state, isEssential));
-            if (wasEmpty) {
-                var cmdFuture = taskOrchestrator.dispatchBridgeCommand(this::processQueue);
-                if (cmdFuture == null && isEssential) {
+            QueueEntry lastEntry = queue.peekLast();
+            if (coalesceUpdates && !isEssential && lastEntry != null && !lastEntry.isEssential) {
+                queue.removeLast();
+                queue.add(new QueueEntry(mergeStates(lastEntry.state, state),
+                        priority.isHigherThan(lastEntry.priority) ? priority : lastEntry.priority, false));
+            } else {
+                if (isWaitingForBudget && !coalesceUpdates) {
+                    discardSupersededFades();
+                }
+                queue.add(new QueueEntry(state, priority, isEssential));
+            }
+            if (isWaitingForBudget) {
+                // may raise the priority of the pending request
+                acquireBudget();
+            } else if (!isProcessing && pendingGroupCommands == 0) {
+                isProcessing = true;
+                long delayMillis = latencyCompensator != null && !isEssential ? latencyCompensator.getDelayMillis(bridgeId) : 0L;
+                if (delayMillis > 0L) {
+                    scheduleStart(delayMillis);
+                    return;
+                }
+                acquireBudget();
+                if (!isProcessing && isEssential) {
                     // task orchestrator shut down, just do it on the current thread as we are shutting down
-                    processQueue();
+                    while (sendNext()) {
+                        // send until the queue is empty
+                    }
                 }
             }
         }
     }
 
-    private void processQueue() {
+    /**
+     * Must be called while holding the queue lock.
+     */
+    private void scheduleStart(long delayMillis) {
+        try {
+            taskOrchestrator.schedule(() -> {
+                synchronized (queue) {
+                    acquireBudget();
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            acquireBudget();
+        }
+    }
+
+    /**
+     * Dispatches the next update once a token of the budget was taken, must be called while holding the queue lock.
+     */
+    private void acquireBudget() {
+        if (commandBudget == null) {
+            dispatchNext();
+            return;
+        }
+
+        UpdatePriority priority = queue.stream()
+                .map(entry -> entry.priority)
+                .min(Comparator.naturalOrder())
+                .orElse(UpdatePriority.RESTORE);
+        if (commandBudget.acquire(this, priority, this::budgetGranted)) {
+            isWaitingForBudget = false;
+            dispatchNext();
+        } else {
+            isWaitingForBudget = true;
+        }
+    }
+
+    private void budgetGranted() {
+        synchronized (queue) {
+            if (!isWaitingForBudget) {
+                // a token was already taken by a later request
+                return;
+            }
+            isWaitingForBudget = false;
+            dispatchNext();
+        }
+    }
+
+    /**
+     * Must be called while holding the queue lock.
+     */
+    private void discardSupersededFades() {
+        Iterator<QueueEntry> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            QueueEntry entry = iterator.next();
+            if (entry.priority == UpdatePriority.FADE && !entry.isEssential) {
+                iterator.remove();
+                journal.record(EventJournal.Type.LIGHT_UPDATE_SUPERSEDED, journalSource);
+            }
+        }
+    }
+
+    /**
+     * Dispatches a bridge command that sends the next update, must be called while holding the queue lock.
+     */
+    private void dispatchNext() {
+        Future<?> cmdFuture;
+        if (bridgeClient != null) {
+            var asyncFuture = taskOrchestrator.dispatchAsyncBridgeCommand(bridgeId, this::sendNextAsync);
+            if (asyncFuture != null) {
+                // continue on a new thread, as the command may complete on the thread that holds the queue lock
+                asyncFuture.whenCompleteAsync((result, throwable) -> commandFinished(), taskOrchestrator);
+            }
+            cmdFuture = asyncFuture;
+        } else {
+            cmdFuture = taskOrchestrator.dispatchBridgeCommand(bridgeId, this::processNext);
+        }
+
+        if (cmdFuture == null) {
+            isProcessing = false;
+        }
+    }
+
+    private void processNext() {
+        try {
+            sendNext();
+        } finally {
+            commandFinished();
+        }
+    }
+
+    private void commandFinished() {
+        synchronized (queue) {
+            if (queue.isEmpty()) {
+                isProcessing = false;
+            } else {
+                acquireBudget();
+            }
+        }
+    }
+
+    /**
+     * @return true if an update was sent, false if the queue is empty
+     */
+    private boolean sendNext() {
+        State state = pollNextState();
+        if (state == null) {
+            return false;
+        }
+
+        long startNanos = clock.nanoTime();
+        try {
+            apiLight.setState(state);
+        } catch (RuntimeException e) {
+            // unknown if the update was applied
+            shadow.invalidate();
+            throw e;
+        }
+        recordLatency(startNanos);
+        recordSent(state);
+        return true;
+    }
+
+    /**
+     * @return future that completes once the bridge accepted the next update, or right away if the queue is empty
+     */
+    private CompletableFuture<Void> sendNextAsync() {
+        State state = pollNextState();
+        if (state == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        long startNanos = clock.nanoTime();
+        return bridgeClient.setLightState(apiLight.getId(), state)
+                .whenComplete((result, throwable) -> {
+                    if (throwable == null) {
+                        recordLatency(startNanos);
+                        recordSent(state);
+                    } else {
+                        // unknown if the update was applied
+                        shadow.invalidate();
+                    }
+                });
+    }
+
+    private void recordLatency(long startNanos) {
+        if (latencyCompensator != null) {
+            latencyCompensator.recordLatency(bridgeId, clock.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Discards stale updates and updates that don't change the light.
+     *
+     * @return next update to send, or null if the queue is empty
+     */
+    private State pollNextState() {
         while (true) {
             final QueueEntry entryToProcess;
             synchronized (queue) {
                 entryToProcess = queue.poll();
                 if (entryToProcess == null) {
-                    break;
+                    return null;
                 }
             }
 
             if (entryToProcess.staleThreshold.isMet()) {
-                long age = entryToProcess.staleThreshold.getCurrentThreshold() - STALE_THRESHOLD_MS;
-                logger.warn("Discarding stale light update for {} (age: {}ms).", entryToProcess.getLightInfo(), age);
+                long age = clock.currentTimeMillis() - entryToProcess.staleThreshold.getCurrentThreshold() + STALE_THRESHOLD_MS;
+                journal.record(EventJournal.Type.LIGHT_UPDATE_DISCARDED, journalSource, age);
             } else {
-                apiLight.setState(entryToProcess.state);
-                logger.info("Updated light {}", entryToProcess.getLightInfo());
+                State state = entryToProcess.isEssential ? entryToProcess.state : shadow.getDelta(entryToProcess.state);
+                if (state != null) {
+                    return state;
+                }
+                // light is already in this state
             }
         }
     }
 
-    private class QueueEntry {
-        private final State state;
-        private final TimeThreshold staleThreshold;
+    /**
+     * @return state containing the values of the newer state and the values of the older state that
+     *         the newer state doesn't contain
+     */
+    static State mergeStates(State older, State newer) {
+        State.Builder merged = new State.Builder();
+        // without a transition time the bridge uses its default fade, which must not be replaced by an instant change
+        Integer transitionTime = latest(older.getTransitiontime(), newer.getTransitiontime());
+        if (transitionTime != null) {
+            merged.transitionTime(transitionTime);
+        }
 
-        QueueEntry(State state, boolean isEssential) {
-            this.state = state;
-            this.staleThreshold = isEssential ? new TimeThreshold() : new TimeThreshold(STALE_THRESHOLD_MS);
+        Integer brightness = latest(older.getBri(), newer.getBri());
+        if (brightness != null) {
+            merged.brightness(brightness);
         }
 
-        private String getLightInfo() {
-            String mode = "null";
-            if (state.getAlert() != null && !state.getAlert().equals(AlertType.NONE)) {
-                mode = state.getAlert().toString();
-            }
+        // hue and saturation form the color and are taken from the same state
+        boolean newerHasColor = newer.getHue() != null || newer.getSat() != null;
+        State colorState = newerHasColor ? newer : older;
+        if (colorState.getHue() != null) {
+            merged.hue(colorState.getHue());
+        }
+        if (colorState.getSat() != null) {
+            merged.saturation(colorState.getSat());
+        }
 
-            String color = "null";
-            if (state.getHue() != null) {
-                color = "hue/sat " + state.getHue() + "/" + state.getSat();
-            } else if (state.getXy() != null) {
-                color = "x/y " + state.getXy().get(0) + "/" + state.getXy().get(1);
-            } else if (state.getCt() != null) {
-                color = "ct " + state.getCt();
-            }
+        Boolean on = latest(older.getOn(), newer.getOn());
+        if (on != null) {
+            merged.on(on);
+        }
+
+        // an alert is an action instead of a state, keep it if either state contains one
+        AlertType alert = isAlert(newer.getAlert()) ? newer.getAlert() : isAlert(older.getAlert()) ? older.getAlert() : null;
+        if (alert != null) {
+            merged.alert(alert);
+        }
 
-            return apiLight.getName()
-                    + " (time " + state.getTransitiontime()
-                    + " | bri " + state.getBri()
-                    + " | color " + color
-                    + " | mode " + mode
-                    + " | on " + state.getOn() + ")";
+        return merged.build();
+    }
+
+    private static <T> T latest(T older, T newer) {
+        return newer != null ? newer : older;
+    }
+
+    private static boolean isAlert(AlertType alert) {
+        return alert != null && !alert.equals(AlertType.NONE);
+    }
+
+    private static double toValue(Integer value) {
+        return value != null ? value : Double.NaN;
+    }
+
+    private class QueueEntry {
+        private final State state;
+        private final UpdatePriority priority;
+        private final boolean isEssential;
+        private final TimeThreshold staleThreshold;
+
+        QueueEntry(State state, UpdatePriority priority, boolean isEssential) {
+            this.state = state;
+            this.priority = priority;
+            this.isEssential = isEssential;
+            this.staleThreshold = isEssential ? new TimeThreshold(clock) : new TimeThreshold(clock, STALE_THRESHOLD_MS);
         }
     }
 }
@@ -0,0 +1,25 @@
+package pw.wunderlich.lightbeat.hue.bridge.light;
+
+import pw.wunderlich.lightbeat.AppTaskOrchestrator;
+import pw.wunderlich.lightbeat.hue.bridge.AsyncBridgeClient;
+
+/**
+ * Settings of a bridge that determine how the {@link UpdateQueue}s of its lights send their updates.
+ *
+ * @param bridgeId        identifies the bridge, see {@link AppTaskOrchestrator#dispatchBridgeCommand(String, Runnable)}
+ * @param commandBudget   budget of the bridge to take a token from for every update, or null to not limit updates
+ * @param bridgeClient    to send updates without blocking a thread, or null to send them via the light objects
+ * @param coalesceUpdates true to merge queued non-essential updates into a single update
+ * @param latencyCompensator to align the updates with the lights of other bridges, or null if there is only one bridge
+ */
+public record UpdateSettings(String bridgeId, CommandBudget commandBudget, AsyncBridgeClient bridgeClient,
+                             boolean coalesceUpdates, LatencyCompensator latencyCompensator) {
+
+    /**
+     * @param bridgeId identifies the bridge
+     * @return settings that send every update right away, blocking a thread until the bridge replied
+     */
+    public static UpdateSettings of(String bridgeId) {
+        return new UpdateSettings(bridgeId, null, null, false, null);
+    }
+}
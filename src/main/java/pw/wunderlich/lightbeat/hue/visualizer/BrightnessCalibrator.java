@@ -1,7 +1,7 @@
 package pw.wunderlich.lightbeat.hue.visualizer;
 
 import pw.wunderlich.lightbeat.config.Config;
-import pw.wunderlich.lightbeat.config.ConfigNode;
+import pw.wunderlich.lightbeat.config.ConfigSnapshot;
 import pw.wunderlich.lightbeat.util.DoubleAverageBuffer;
 
 /**
@@ -28,6 +28,7 @@ class BrightnessCalibrator {
     private static final int BUFFER_SIZE = 150;
 
     private final Config config;
+    private ConfigSnapshot configSnapshot;
 
     private int brightnessMin = -1;
     private int brightnessRange = -1;
@@ -47,9 +48,15 @@ class BrightnessCalibrator {
     }
 
     private boolean updateConfigValues() {
-        int newBrightnessMin = config.getInt(ConfigNode.BRIGHTNESS_MIN);
-        int newBrightnessMax = config.getInt(ConfigNode.BRIGHTNESS_MAX);
-        int newFadeDifference = config.getInt(ConfigNode.BRIGHTNESS_FADE_DIFFERENCE);
+        ConfigSnapshot snapshot = config.getSnapshot();
+        if (snapshot == configSnapshot) {
+            return false;
+        }
+        configSnapshot = snapshot;
+
+        int newBrightnessMin = snapshot.brightnessMin();
+        int newBrightnessMax = snapshot.brightnessMax();
+        int newFadeDifference = snapshot.brightnessFadeDifference();
         int newBrightnessRange = newBrightnessMax - newBrightnessMin;
         double newBrightnessFadeDifference = newFadeDifference * BRIGHTNESS_DIFFERENCE_PERCENTAGE_BASE;
         // Check if any of the configuration values have changed
@@ -5,13 +5,16 @@ import org.slf4j.LoggerFactory;
 import pw.wunderlich.lightbeat.AppTaskOrchestrator;
 import pw.wunderlich.lightbeat.audio.BeatEvent;
 import pw.wunderlich.lightbeat.audio.BeatObserver;
+import pw.wunderlich.lightbeat.audio.Section;
 import pw.wunderlich.lightbeat.config.Config;
 import pw.wunderlich.lightbeat.config.ConfigNode;
+import pw.wunderlich.lightbeat.hue.bridge.color.CalmColorSet;
 import pw.wunderlich.lightbeat.hue.bridge.color.ColorSet;
 import pw.wunderlich.lightbeat.hue.bridge.color.CustomColorSet;
 import pw.wunderlich.lightbeat.hue.bridge.color.RandomColorSet;
 import pw.wunderlich.lightbeat.hue.bridge.light.Light;
 import pw.wunderlich.lightbeat.hue.visualizer.effect.*;
+import pw.wunderlich.lightbeat.util.Clock;
 import pw.wunderlich.lightbeat.util.DoubleAverageBuffer;
 
 import java.util.ArrayList;
@@ -23,6 +26,9 @@ import java.util.Objects;
  * Receives {@link BeatEvent}'s dispatched by the audio module.
  * Determines brightness changes and passes the data through its
  * effect pipe, which will then update selected lights accordingly.
+ * Strobes are started on drops, while breakdowns use a calm palette without strobes.
+ * Provisional onsets already run the effect pipe, the beat confirming them is not passed through it again.
+ * Time is taken from the {@link Clock} of the {@link AppTaskOrchestrator}.
  */
 public class HueBeatObserver implements BeatObserver {
 
@@ -30,6 +36,7 @@ public class HueBeatObserver implements BeatObserver {
     private static final int AMPLITUDE_HISTORY_SIZE = 75;
 
     private final Config config;
+    private final Clock clock;
     private ColorSet colorSet;
     private String colorSetString = "";
 
@@ -41,24 +48,30 @@ public class HueBeatObserver implements BeatObserver {
 
     private final DoubleAverageBuffer amplitudeHistory = new DoubleAverageBuffer(AMPLITUDE_HISTORY_SIZE, false);
 
-    private long lastBeatTimeStamp = System.currentTimeMillis();
+    private long lastBeatTimeStamp;
+    private boolean isOnsetPending = false;
+
+    private volatile Section section = Section.NORMAL;
+    private volatile boolean isSectionStart = false;
 
 
     public HueBeatObserver(Config config, AppTaskOrchestrator taskOrchestrator, List<Light> lights) {
 
         this.config = config;
+        this.clock = taskOrchestrator.getClock();
         this.lights = lights;
         this.lights.forEach(Light::storeState);
 
         this.brightnessCalibrator = new BrightnessCalibrator(config);
         this.transitionTimeCalibrator = new TransitionTimeCalibrator(config);
+        this.lastBeatTimeStamp = clock.currentTimeMillis();
 
         // effects at the end of pipe have the highest priority
         effectPipe = new ArrayList<>();
         effectPipe.add(new DefaultEffect());
 
         if (config.getBoolean(ConfigNode.EFFECT_ALERT)) {
-            effectPipe.add(new AlertEffect(0.8d, 0.4d, 0.05d));
+            effectPipe.add(new AlertEffect(clock, 0.8d, 0.4d, 0.05d));
         }
 
         if (config.getBoolean(ConfigNode.EFFECT_COLOR_STROBE)) {
@@ -77,29 +90,44 @@ public class HueBeatObserver implements BeatObserver {
 
     @Override
     public void beatReceived(BeatEvent event) {
+        if (isOnsetPending) {
+            isOnsetPending = false;
+            return;
+        }
+        processBeat(event);
+    }
 
-        amplitudeHistory.add(event.triggeringAmplitude());
-
-        double amplitudeDifference = event.triggeringAmplitude() - amplitudeHistory.getCurrentAverage();
-        BrightnessCalibrator.BrightnessData data = brightnessCalibrator.getBrightness(amplitudeDifference);
+    @Override
+    public void onsetDetected(BeatEvent event) {
+        processBeat(event);
+        isOnsetPending = true;
+    }
 
-        passDataToEffectPipe(data, true);
-        lastBeatTimeStamp = System.currentTimeMillis();
+    @Override
+    public void onsetRetracted() {
+        isOnsetPending = false;
     }
 
     @Override
     public void noBeatReceived() {
-        passDataToEffectPipe(brightnessCalibrator.getLowestBrightnessData(), false);
+        passDataToEffectPipe(brightnessCalibrator.getLowestBrightnessData(), null);
     }
 
     @Override
     public void silenceDetected() {
         noBeatReceived();
+        isOnsetPending = false;
         amplitudeHistory.clear();
         brightnessCalibrator.clearHistory();
         transitionTimeCalibrator.clearHistory();
     }
 
+    @Override
+    public void sectionChanged(Section section) {
+        this.section = section;
+        this.isSectionStart = true;
+    }
+
     @Override
     public void audioReaderStopped(StopStatus status) {
         // gracefully disable effects that may still be running scheduler threads
@@ -107,17 +135,45 @@ public class HueBeatObserver implements BeatObserver {
         lights.forEach(Light::restoreState);
     }
 
-    private void passDataToEffectPipe(BrightnessCalibrator.BrightnessData data, boolean receivedBeat) {
+    private void processBeat(BeatEvent event) {
+        amplitudeHistory.add(event.triggeringAmplitude());
+
+        double amplitudeDifference = event.triggeringAmplitude() - amplitudeHistory.getCurrentAverage();
+        BrightnessCalibrator.BrightnessData data = brightnessCalibrator.getBrightness(amplitudeDifference);
+
+        passDataToEffectPipe(data, event);
+        lastBeatTimeStamp = clock.currentTimeMillis();
+    }
+
+    /**
+     * @param event beat that was received, or null if no beat was received
+     */
+    private void passDataToEffectPipe(BrightnessCalibrator.BrightnessData data, BeatEvent event) {
+
+        boolean receivedBeat = event != null;
 
         List<Light> shuffledLights = new ArrayList<>(lights);
         Collections.shuffle(shuffledLights);
 
+        Section section = this.section;
+        boolean isSectionStart = receivedBeat && this.isSectionStart;
+        if (isSectionStart) {
+            this.isSectionStart = false;
+        }
+
         ColorSet colorSet = updateColorSet();
-        long timeSinceLastBeat = System.currentTimeMillis() - lastBeatTimeStamp;
+        if (section == Section.BREAKDOWN) {
+            colorSet = new CalmColorSet(colorSet);
+        }
+        long timeSinceLastBeat = clock.currentTimeMillis() - lastBeatTimeStamp;
         int transitionTime = transitionTimeCalibrator.getTransitionTime(timeSinceLastBeat);
 
+        int beatInBar = receivedBeat ? event.beatInBar() : BeatEvent.UNKNOWN_POSITION;
+        long bar = receivedBeat ? event.bar() : BeatEvent.UNKNOWN_POSITION;
+        boolean isGeneratedBeat = receivedBeat && event.synthetic();
         LightUpdate lightUpdate = new LightUpdate(
-                config, shuffledLights, colorSet, data, timeSinceLastBeat, transitionTime
+                config, shuffledLights, colorSet, data, timeSinceLastBeat, transitionTime, beatInBar, bar,
+                section, isSectionStart, isGeneratedBeat
         );
 
         try {
@@ -135,7 +191,7 @@ public class HueBeatObserver implements BeatObserver {
     }
 
     private ColorSet updateColorSet() {
-        String selectedColorSet = config.get(ConfigNode.COLOR_SET_SELECTED);
+        String selectedColorSet = config.getSnapshot().colorSetSelected();
         if (!Objects.equals(this.colorSetString, selectedColorSet)) {
             this.colorSetString = selectedColorSet;
             if (selectedColorSet == null || selectedColorSet.equals("Random")) {
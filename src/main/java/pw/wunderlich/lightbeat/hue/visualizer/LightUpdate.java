@@ -1,7 +1,8 @@
 package pw.wunderlich.lightbeat.hue.visualizer;
 
+import pw.wunderlich.lightbeat.audio.BeatEvent;
+import pw.wunderlich.lightbeat.audio.Section;
 import pw.wunderlich.lightbeat.config.Config;
-import pw.wunderlich.lightbeat.config.ConfigNode;
 import pw.wunderlich.lightbeat.hue.bridge.color.ColorSet;
 import pw.wunderlich.lightbeat.hue.bridge.light.Light;
 
@@ -12,6 +13,8 @@ import java.util.List;
  * Stores the current beats light update information while passing through effects.
  * Get the lights to update via {@link #getLights()} and {@link #getLightsTurnedOn()} to change
  * their settings. The updates can then be applied via {@link #execute()}.
+ * Effects can use the position of the beat in the bar to change on bar or phrase boundaries,
+ * and the current {@link Section} to react to drops and breakdowns.
  */
 public class LightUpdate {
 
@@ -26,10 +29,16 @@ public class LightUpdate {
     private final boolean doBrightnessChange;
     private final long timeSinceLastBeat;
     private final int transitionTime;
+    private final int beatInBar;
+    private final long bar;
+    private final Section section;
+    private final boolean isSectionStart;
+    private final boolean isGeneratedBeat;
 
 
     LightUpdate(Config config, List<Light> lights, ColorSet colorSet,
-                BrightnessCalibrator.BrightnessData brightnessData, long timeSinceLastBeat, int transitionTime) {
+                BrightnessCalibrator.BrightnessData brightnessData, long timeSinceLastBeat, int transitionTime,
+                int beatInBar, long bar, Section section, boolean isSectionStart, boolean isGeneratedBeat) {
 
         this.lights = lights;
         this.lightsTurnedOn = new ArrayList<>(lights);
@@ -38,7 +47,7 @@ public class LightUpdate {
         this.mainLights = new ArrayList<>();
         mainLights.add(lights.getFirst());
 
-        double randomThreshold = (double) config.getInt(ConfigNode.LIGHT_AMOUNT_PROBABILITY) / 10d;
+        double randomThreshold = (double) config.getSnapshot().lightAmountProbability() / 10d;
         for (int i = 1; i < lights.size() && Math.random() < randomThreshold; i++) {
             mainLights.add(lights.get(i));
         }
@@ -50,6 +59,11 @@ public class LightUpdate {
         this.doBrightnessChange = brightnessData.isBrightnessChange();
         this.timeSinceLastBeat = timeSinceLastBeat;
         this.transitionTime = transitionTime;
+        this.beatInBar = beatInBar;
+        this.bar = bar;
+        this.section = section;
+        this.isSectionStart = isSectionStart;
+        this.isGeneratedBeat = isGeneratedBeat;
     }
 
     void execute() {
@@ -96,4 +110,45 @@ public class LightUpdate {
     public long getTimeSinceLastBeat() {
         return timeSinceLastBeat;
     }
+
+    /**
+     * @return true if the position of the beat in the bar is known, see {@link BeatEvent#beatInBar()}
+     */
+    public boolean hasBarPosition() {
+        return beatInBar != BeatEvent.UNKNOWN_POSITION;
+    }
+
+    public int getBeatInBar() {
+        return beatInBar;
+    }
+
+    public long getBar() {
+        return bar;
+    }
+
+    public boolean isDownbeat() {
+        return beatInBar == 0;
+    }
+
+    public boolean isPhraseStart() {
+        return isDownbeat() && bar % BeatEvent.BARS_PER_PHRASE == 0;
+    }
+
+    public Section getSection() {
+        return section;
+    }
+
+    /**
+     * @return true if this is the first beat since the section changed
+     */
+    public boolean isSectionStart() {
+        return isSectionStart;
+    }
+
+    /**
+     * @return true if the beat was generated on the tempo grid instead of detected, see {@link BeatEvent#synthetic()}
+     */
+    public boolean isGeneratedBeat() {
+        return isGeneratedBeat;
+    }
 }
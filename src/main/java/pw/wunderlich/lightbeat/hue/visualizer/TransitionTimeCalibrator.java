@@ -1,7 +1,6 @@
 package pw.wunderlich.lightbeat.hue.visualizer;
 
 import pw.wunderlich.lightbeat.config.Config;
-import pw.wunderlich.lightbeat.config.ConfigNode;
 import pw.wunderlich.lightbeat.util.DoubleAverageBuffer;
 
 /**
@@ -38,7 +37,7 @@ class TransitionTimeCalibrator {
      */
     int getTransitionTime(long timeSinceLastBeat) {
 
-        int maxTransitionTime = config.getInt(ConfigNode.BRIGHTNESS_FADE_MAX_TIME);
+        int maxTransitionTime = config.getSnapshot().brightnessFadeMaxTime();
 
         buffer.add(timeSinceLastBeat);
 
@@ -1,17 +1,15 @@
 package pw.wunderlich.lightbeat.hue.visualizer.effect;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import pw.wunderlich.lightbeat.hue.visualizer.LightUpdate;
+import pw.wunderlich.lightbeat.util.EventJournal;
 
 /**
  * Adds a random probability parameter to an effect that will only be checked
- * if the {@link AbstractThresholdEffect} is not active at the moment.
+ * if the {@link AbstractThresholdEffect} is not active at the moment, the effect is not calmed and the beat
+ * was not generated.
  */
 public abstract class AbstractRandomEffect extends AbstractThresholdEffect {
 
-    private static final Logger logger = LoggerFactory.getLogger(AbstractRandomEffect.class);
-
     private final double randomProbability;
 
 
@@ -24,9 +22,9 @@ public abstract class AbstractRandomEffect extends AbstractThresholdEffect {
     public void beatReceived(LightUpdate lightUpdate) {
         boolean isActive = super.isActive;
         super.beatReceived(lightUpdate);
-        if (!isActive) {
+        if (!isActive && !isCalmed(lightUpdate) && !lightUpdate.isGeneratedBeat()) {
             if (rnd.nextDouble() < randomProbability) {
-                logger.info("{} was executed once", this);
+                journal.record(EventJournal.Type.EFFECT_EXECUTED_ONCE, journalSource);
                 executeEffectOnceRandomly(lightUpdate);
             }
         }
@@ -1,8 +1,8 @@
 package pw.wunderlich.lightbeat.hue.visualizer.effect;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import pw.wunderlich.lightbeat.audio.Section;
 import pw.wunderlich.lightbeat.hue.visualizer.LightUpdate;
+import pw.wunderlich.lightbeat.util.EventJournal;
 
 /**
  * Adds custom brightness threshold and, if met, activation probability parameters
@@ -10,13 +10,27 @@ import pw.wunderlich.lightbeat.hue.visualizer.LightUpdate;
  * brightness falls below the given threshold. Will also
  * deactivate the effect if no beat was received for a while. Calls {@link #executionDone(LightUpdate)}
  * to allow effects to clean up.
+ * <p>
+ * Intense effects can opt out of {@link Section#BREAKDOWN}'s via {@link #isCalmedInBreakdown()},
+ * and into being started on the first beat of a {@link Section#DROP} via {@link #isStartedOnDrop()}.
+ * Effects are not started on generated beats, but keep running through them.
  */
 public abstract class AbstractThresholdEffect extends AbstractEffect {
 
-    private static final Logger logger = LoggerFactory.getLogger(AbstractThresholdEffect.class);
+    static final EventJournal journal = EventJournal.get();
+    /**
+     * Journal source per effect class, so that effects that are recreated share the source of their class.
+     */
+    private static final ClassValue<Integer> journalSources = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return journal.registerSource(type.getSimpleName());
+        }
+    };
 
     private final double brightnessThreshold;
     private final double activationProbability;
+    final int journalSource;
 
     private double brightnessDeactivationThreshold;
     boolean isActive = false;
@@ -27,18 +41,31 @@ public abstract class AbstractThresholdEffect extends AbstractEffect {
         this.brightnessThreshold = brightnessThreshold;
         this.activationProbability = activationProbability;
         this.brightnessDeactivationThreshold = brightnessThreshold;
+        this.journalSource = journalSources.get(getClass());
     }
 
     @Override
     public void beatReceived(LightUpdate lightUpdate) {
 
+        if (isCalmed(lightUpdate)) {
+            if (isActive) {
+                setActive(false, lightUpdate);
+            }
+            return;
+        }
+
+        if (!isActive && isStartedOnDrop() && lightUpdate.getSection() == Section.DROP && lightUpdate.isSectionStart()) {
+            setActive(true, lightUpdate);
+            return;
+        }
+
         if (isActive) {
             if (lightUpdate.isBrightnessChange() && lightUpdate.getBrightnessPercentage() < brightnessDeactivationThreshold) {
                 setActive(false, lightUpdate);
             } else {
                 execute(lightUpdate);
             }
-        } else {
+        } else if (!lightUpdate.isGeneratedBeat()) {
             if (lightUpdate.isBrightnessChange()
                     && lightUpdate.getBrightnessPercentage() > brightnessThreshold
                     && rnd.nextDouble() < activationProbability) {
@@ -54,6 +81,24 @@ public abstract class AbstractThresholdEffect extends AbstractEffect {
         }
     }
 
+    /**
+     * @return true if the effect should not run during breakdowns
+     */
+    boolean isCalmedInBreakdown() {
+        return false;
+    }
+
+    /**
+     * @return true if the effect should be started on the first beat of a drop, regardless of brightness and probability
+     */
+    boolean isStartedOnDrop() {
+        return false;
+    }
+
+    boolean isCalmed(LightUpdate lightUpdate) {
+        return isCalmedInBreakdown() && lightUpdate.getSection() == Section.BREAKDOWN;
+    }
+
     void setBrightnessDeactivationThreshold(double newThreshold) {
         this.brightnessDeactivationThreshold = newThreshold;
     }
@@ -67,12 +112,12 @@ public abstract class AbstractThresholdEffect extends AbstractEffect {
     private void setActive(boolean active, LightUpdate lightUpdate) {
         this.isActive = active;
         if (active) {
-            logger.info("{} was started", this);
+            journal.record(EventJournal.Type.EFFECT_STARTED, journalSource);
             initialize(lightUpdate);
             execute(lightUpdate);
         } else {
             executionDone(lightUpdate);
-            logger.info("{} was stopped", this);
+            journal.record(EventJournal.Type.EFFECT_STOPPED, journalSource);
         }
     }
 }
@@ -2,6 +2,7 @@ package pw.wunderlich.lightbeat.hue.visualizer.effect;
 
 import pw.wunderlich.lightbeat.hue.bridge.light.Light;
 import pw.wunderlich.lightbeat.hue.visualizer.LightUpdate;
+import pw.wunderlich.lightbeat.util.Clock;
 import pw.wunderlich.lightbeat.util.TimeThreshold;
 
 import java.util.List;
@@ -17,16 +18,23 @@ public class AlertEffect extends AbstractRandomEffect {
      */
     private static final long ALERT_THRESHOLD_MILLIS = 500L;
 
+    private final Clock clock;
     private TimeThreshold alertThreshold;
 
 
-    public AlertEffect(double brightnessThreshold, double activationProbability, double randomProbability) {
+    public AlertEffect(Clock clock, double brightnessThreshold, double activationProbability, double randomProbability) {
         super(brightnessThreshold, activationProbability, randomProbability);
+        this.clock = clock;
     }
 
     @Override
     void initialize(LightUpdate lightUpdate) {
-        alertThreshold = new TimeThreshold(0);
+        alertThreshold = new TimeThreshold(clock, 0L);
+    }
+
+    @Override
+    boolean isCalmedInBreakdown() {
+        return true;
     }
 
     @Override
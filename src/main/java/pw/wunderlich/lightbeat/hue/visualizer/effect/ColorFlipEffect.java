@@ -9,7 +9,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 /**
- * Flips selected lights between two colors and switches colors every couple beats.
+ * Flips selected lights between two colors and switches colors on every bar, or every couple beats
+ * if the position in the bar is unknown.
  */
 public class ColorFlipEffect extends AbstractThresholdEffect {
 
@@ -56,7 +57,8 @@ public class ColorFlipEffect extends AbstractThresholdEffect {
             }
         }
 
-        if (--nextColorsInBeats <= 0) {
+        boolean nextColors = lightUpdate.hasBarPosition() ? lightUpdate.isDownbeat() : --nextColorsInBeats <= 0;
+        if (nextColors) {
 
             nextColorsInBeats = 4 + rnd.nextInt(4);
 
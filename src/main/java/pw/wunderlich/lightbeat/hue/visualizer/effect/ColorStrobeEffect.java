@@ -20,7 +20,7 @@ public class ColorStrobeEffect extends AbstractThresholdEffect {
     private static final long MAXIMUM_STROBE_DELAY_MILLIS = 1000L;
 
     private final AppTaskOrchestrator taskOrchestrator;
-    private final TimeThreshold newColorThreshold = new TimeThreshold();
+    private final TimeThreshold newColorThreshold;
     private Color[] colors;
 
     private Future<?> currentFuture;
@@ -30,6 +30,7 @@ public class ColorStrobeEffect extends AbstractThresholdEffect {
     public ColorStrobeEffect(AppTaskOrchestrator taskOrchestrator, double brightnessThreshold, double activationProbability) {
         super(brightnessThreshold, activationProbability);
         this.taskOrchestrator = taskOrchestrator;
+        this.newColorThreshold = new TimeThreshold(taskOrchestrator.getClock());
     }
 
     @Override
@@ -37,6 +38,16 @@ public class ColorStrobeEffect extends AbstractThresholdEffect {
         newColorThreshold.setCurrentThreshold(0);
     }
 
+    @Override
+    boolean isCalmedInBreakdown() {
+        return true;
+    }
+
+    @Override
+    boolean isStartedOnDrop() {
+        return true;
+    }
+
     @Override
     void execute(LightUpdate lightUpdate) {
 
@@ -27,6 +27,11 @@ public class StrobeChainEffect extends AbstractThresholdEffect {
         currentIndex = 0;
     }
 
+    @Override
+    boolean isCalmedInBreakdown() {
+        return true;
+    }
+
     @Override
     void execute(LightUpdate lightUpdate) {
 
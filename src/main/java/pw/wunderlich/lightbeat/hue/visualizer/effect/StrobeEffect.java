@@ -8,7 +8,8 @@ import java.util.List;
 
 /**
  * Effect to add a strobing, while turning all but one lights off and strobing the main lights for the current update.
- * The strobe will be synchronized to the beat. May also randomly turn one light off and on.
+ * The strobe will be synchronized to the beat and the active light switches every two bars, or every couple beats
+ * if the position in the bar is unknown. May also randomly turn one light off and on.
  */
 public class StrobeEffect extends AbstractRandomEffect {
 
@@ -27,6 +28,16 @@ public class StrobeEffect extends AbstractRandomEffect {
         nextLightInBeats = 0;
     }
 
+    @Override
+    boolean isCalmedInBreakdown() {
+        return true;
+    }
+
+    @Override
+    boolean isStartedOnDrop() {
+        return true;
+    }
+
     @Override
     public void execute(LightUpdate lightUpdate) {
 
@@ -41,7 +52,10 @@ public class StrobeEffect extends AbstractRandomEffect {
             return;
         }
 
-        if (nextLightInBeats-- <= 0) {
+        boolean nextLight = lightUpdate.hasBarPosition()
+                ? lightUpdate.isDownbeat() && lightUpdate.getBar() % 2 == 0
+                : nextLightInBeats-- <= 0;
+        if (activeLight == null || nextLight) {
 
             if (activeLight != null) {
                 // turn currently active light off
@@ -0,0 +1,212 @@
+package pw.wunderlich.lightbeat.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit that adapts to the latency of the guarded resource, similar to the congestion control of
+ * TCP Vegas. Latencies of finished requests are collected in windows of at least as many requests as the
+ * current limit. After every window the average latency is compared to the baseline latency, which follows
+ * the lowest latencies that were seen:
+ * <ul>
+ *     <li>the limit is halved if a request failed</li>
+ *     <li>the limit is reduced by a quarter if the average latency is more than twice the baseline,
+ *     which means that requests queue up at the resource</li>
+ *     <li>the limit is raised by one if the latency stayed near the baseline and the limit was fully used</li>
+ * </ul>
+ * The baseline drops immediately to lower latencies, but only rises slowly, so that a permanently slower
+ * resource doesn't keep the limit at its minimum.
+ */
+public class AdaptiveLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveLimiter.class);
+
+    private static final double LATENCY_TOLERANCE = 2d;
+    private static final double LATENCY_BACKOFF_RATIO = 0.75d;
+    private static final double ERROR_BACKOFF_RATIO = 0.5d;
+    private static final double BASELINE_RISE_RATIO = 0.1d;
+    private static final int MIN_WINDOW_SAMPLES = 8;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotAvailable = lock.newCondition();
+
+    private int limit;
+    private int inFlight = 0;
+
+    private long baselineNanos = -1L;
+    private long lastAverageNanos = -1L;
+    private int windowSamples = 0;
+    private long windowLatencySum = 0L;
+    private long windowMinLatency = Long.MAX_VALUE;
+    private int windowMaxInFlight = 0;
+    private boolean windowError = false;
+
+
+    /**
+     * @param name         used for logging, for example the address of the guarded resource
+     * @param initialLimit limit to start with
+     * @param minLimit     lowest limit, at least 1
+     * @param maxLimit     highest limit
+     */
+    public AdaptiveLimiter(String name, int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max");
+        }
+
+        this.name = name;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Waits until fewer requests than the current limit are in flight. Every call must be followed by exactly one
+     * call to {@link #release(long, boolean)}.
+     *
+     * @throws InterruptedException if interrupted while waiting, no slot was acquired in this case
+     */
+    public void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= limit) {
+                slotAvailable.await();
+            }
+            inFlight++;
+            windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a slot if fewer requests than the current limit are in flight, without waiting. If true is returned,
+     * the call must be followed by exactly one call to {@link #release(long, boolean)}.
+     *
+     * @return true if a slot was taken
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight >= limit) {
+                return false;
+            }
+            inFlight++;
+            windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees the slot of a finished request and adapts the limit once the window is full.
+     *
+     * @param latencyNanos time the request took
+     * @param isSuccess    false if the request failed
+     */
+    public void release(long latencyNanos, boolean isSuccess) {
+        lock.lock();
+        try {
+            inFlight--;
+
+            windowSamples++;
+            windowLatencySum += latencyNanos;
+            windowMinLatency = Math.min(windowMinLatency, latencyNanos);
+            windowError |= !isSuccess;
+
+            if (windowError || windowSamples >= Math.max(limit, MIN_WINDOW_SAMPLES)) {
+                updateLimit();
+            }
+            slotAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees a slot that was taken without sending a request, without counting it as a sample.
+     */
+    public void cancel() {
+        lock.lock();
+        try {
+            inFlight--;
+            slotAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void updateLimit() {
+        long averageNanos = windowLatencySum / windowSamples;
+        if (baselineNanos < 0L || windowMinLatency < baselineNanos) {
+            baselineNanos = windowMinLatency;
+        } else {
+            baselineNanos += (long) ((windowMinLatency - baselineNanos) * BASELINE_RISE_RATIO);
+        }
+
+        int newLimit = limit;
+        if (windowError) {
+            newLimit = (int) (limit * ERROR_BACKOFF_RATIO);
+        } else if (averageNanos > baselineNanos * LATENCY_TOLERANCE) {
+            newLimit = (int) (limit * LATENCY_BACKOFF_RATIO);
+        } else if (windowMaxInFlight >= limit) {
+            newLimit = limit + 1;
+        }
+        newLimit = Math.max(minLimit, Math.min(newLimit, maxLimit));
+
+        if (newLimit != limit) {
+            logger.debug("Concurrency limit of {} changed from {} to {} (latency {}ms, baseline {}ms{})",
+                    name, limit, newLimit, TimeUnit.NANOSECONDS.toMillis(averageNanos),
+                    TimeUnit.NANOSECONDS.toMillis(baselineNanos), windowError ? ", error" : "");
+            limit = newLimit;
+        }
+
+        lastAverageNanos = averageNanos;
+        windowSamples = 0;
+        windowLatencySum = 0L;
+        windowMinLatency = Long.MAX_VALUE;
+        windowMaxInFlight = inFlight;
+        windowError = false;
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Snapshot snapshot() {
+        lock.lock();
+        try {
+            return new Snapshot(limit, inFlight, toMillis(baselineNanos), toMillis(lastAverageNanos));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos >= 0L ? nanos / 1_000_000d : 0d;
+    }
+
+
+    /**
+     * State of a limiter at the time it was taken.
+     *
+     * @param limit          current concurrency limit
+     * @param inFlight       requests that currently hold a slot
+     * @param baselineMillis latency the limiter considers normal, 0 if no request finished yet
+     * @param averageMillis  average latency of the last completed window, 0 if no window completed yet
+     */
+    public record Snapshot(int limit, int inFlight, double baselineMillis, double averageMillis) {}
+}
@@ -0,0 +1,39 @@
+package pw.wunderlich.lightbeat.util;
+
+/**
+ * Source of the current time in milliseconds. Time dependent classes like {@link TimeThreshold}
+ * use {@link #SYSTEM} by default, but can be driven by a different clock, for example the playback
+ * position of an audio file that is analyzed faster than real time, or a {@link VirtualClock}
+ * that is advanced manually.
+ */
+@FunctionalInterface
+public interface Clock {
+
+    Clock SYSTEM = new Clock() {
+
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * @return current time of this clock in milliseconds
+     */
+    long currentTimeMillis();
+
+    /**
+     * Time source to measure durations with, only the difference between two values is meaningful.
+     * Clocks that only offer millisecond precision derive it from {@link #currentTimeMillis()}.
+     *
+     * @return current value of this clock in nanoseconds
+     */
+    default long nanoTime() {
+        return currentTimeMillis() * 1_000_000L;
+    }
+}
@@ -0,0 +1,217 @@
+package pw.wunderlich.lightbeat.util;
+
+import java.util.Arrays;
+
+/**
+ * Ring buffer that keeps running statistics (average, variance and standard deviation) of its window
+ * in O(1) per added value, without accumulating rounding drift over long runs.
+ * <p>
+ * The window sum is kept with Neumaier compensated summation and the variance with a sliding window
+ * variant of Welford's algorithm. Both are recomputed exactly from the buffer contents once every
+ * {@link #RESYNC_WINDOWS} full windows, which amortizes to O(1) per value. Use {@link #addAll(double[], int, int)}
+ * to add whole chunks of values at once.
+ */
+public class DoubleStatisticsBuffer {
+
+    /**
+     * Amount of complete window rotations after which sum and variance are recomputed from the buffer.
+     */
+    static final int RESYNC_WINDOWS = 4;
+
+    private final double[] ringBuffer;
+    private final int resyncInterval;
+
+    private int headIndex;
+    private int size;
+    private int updatesSinceResync;
+
+    private double sum;
+    private double sumCompensation;
+    private double m2;
+
+
+    public DoubleStatisticsBuffer(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Buffer size must be greater than 0");
+        }
+        ringBuffer = new double[size];
+        resyncInterval = size * RESYNC_WINDOWS;
+    }
+
+    public void add(double toAdd) {
+        insert(toAdd);
+        if (++updatesSinceResync >= resyncInterval) {
+            resync();
+        }
+    }
+
+    /**
+     * Adds a range of values in order, as if {@link #add(double)} was called for every one of them.
+     * If the range is at least as long as the buffer, only its tail is copied and the statistics
+     * are computed directly.
+     *
+     * @param values array containing the values to add
+     * @param offset index of the first value to add
+     * @param length amount of values to add
+     */
+    public void addAll(double[] values, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > values.length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + (offset + length) + ") out of bounds for length " + values.length);
+        }
+
+        int capacity = ringBuffer.length;
+        if (length >= capacity) {
+            System.arraycopy(values, offset + length - capacity, ringBuffer, 0, capacity);
+            headIndex = 0;
+            size = capacity;
+            resync();
+            return;
+        }
+
+        // same steps as insert(double), but working on locals to keep the loop tight
+        double[] buffer = ringBuffer;
+        int head = headIndex;
+        int count = size;
+        double s = sum;
+        double c = sumCompensation;
+        double m = m2;
+
+        for (int i = offset; i < offset + length; i++) {
+            double toAdd = values[i];
+            double oldMean = count == 0 ? 0d : (s + c) / count;
+
+            double toRemove = 0d;
+            boolean isFull = count == capacity;
+            if (!isFull) {
+                count++;
+            } else {
+                toRemove = buffer[head];
+            }
+
+            double t = s + toAdd;
+            c += Math.abs(s) >= Math.abs(toAdd) ? (s - t) + toAdd : (toAdd - t) + s;
+            s = t;
+            if (isFull) {
+                t = s - toRemove;
+                c += Math.abs(s) >= Math.abs(toRemove) ? (s - t) - toRemove : (-toRemove - t) + s;
+                s = t;
+            }
+
+            double newMean = (s + c) / count;
+            if (isFull) {
+                m += (toAdd - toRemove) * (toAdd - newMean + toRemove - oldMean);
+            } else {
+                m += (toAdd - oldMean) * (toAdd - newMean);
+            }
+
+            buffer[head] = toAdd;
+            if (++head >= capacity) {
+                head = 0;
+            }
+        }
+
+        headIndex = head;
+        size = count;
+        sum = s;
+        sumCompensation = c;
+        m2 = m;
+
+        updatesSinceResync += length;
+        if (updatesSinceResync >= resyncInterval) {
+            resync();
+        }
+    }
+
+    private void insert(double toAdd) {
+        double oldMean = getCurrentAverage();
+
+        if (size < ringBuffer.length) {
+            size++;
+            addToSum(toAdd);
+            double delta = toAdd - oldMean;
+            m2 += delta * (toAdd - getCurrentAverage());
+        } else {
+            double toRemove = ringBuffer[headIndex];
+            addToSum(toAdd);
+            addToSum(-toRemove);
+            m2 += (toAdd - toRemove) * (toAdd - getCurrentAverage() + toRemove - oldMean);
+        }
+
+        ringBuffer[headIndex] = toAdd;
+        if (++headIndex >= ringBuffer.length) {
+            headIndex = 0;
+        }
+    }
+
+    /**
+     * Neumaier's variant of Kahan summation, which also compensates if the added value
+     * is larger in magnitude than the running sum.
+     */
+    private void addToSum(double value) {
+        double newSum = sum + value;
+        if (Math.abs(sum) >= Math.abs(value)) {
+            sumCompensation += (sum - newSum) + value;
+        } else {
+            sumCompensation += (value - newSum) + sum;
+        }
+        sum = newSum;
+    }
+
+    /**
+     * Recomputes sum and variance exactly from the buffered values.
+     */
+    private void resync() {
+        updatesSinceResync = 0;
+
+        sum = 0d;
+        sumCompensation = 0d;
+        for (int i = 0; i < size; i++) {
+            addToSum(ringBuffer[i]);
+        }
+
+        double mean = getCurrentAverage();
+        double newM2 = 0d;
+        for (int i = 0; i < size; i++) {
+            double delta = ringBuffer[i] - mean;
+            newM2 += delta * delta;
+        }
+        m2 = newM2;
+    }
+
+    public double[] getBuffer() {
+        return ringBuffer;
+    }
+
+    public double getCurrentAverage() {
+        return size == 0 ? 0d : (sum + sumCompensation) / size;
+    }
+
+    /**
+     * @return population variance of the values currently in the buffer
+     */
+    public double getVariance() {
+        return size == 0 ? 0d : Math.max(m2, 0d) / size;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == ringBuffer.length;
+    }
+
+    public void clear() {
+        Arrays.fill(ringBuffer, 0.0d);
+        headIndex = 0;
+        size = 0;
+        updatesSinceResync = 0;
+        sum = 0d;
+        sumCompensation = 0d;
+        m2 = 0d;
+    }
+}
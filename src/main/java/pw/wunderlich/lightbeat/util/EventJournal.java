@@ -0,0 +1,398 @@
+package pw.wunderlich.lightbeat.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Preallocated in-memory ring of primitive event records, to be used instead of logging on hot paths.
+ * Recording an event claims a slot with a single atomic increment and stores its timestamp, {@link Type},
+ * source and values without locking, formatting or allocating. If the ring wraps before it was drained,
+ * the oldest records are overwritten and counted as lost.
+ * <p>
+ * Records are formatted only when draining, either explicitly via {@link #drain(RecordHandler)},
+ * {@link #drainToLog()} and {@link #drainToFile(Path)}, or periodically by the background thread started
+ * with {@link #startDrainThread()}. The background thread writes to the file given with system property
+ * {@systemProperty lightbeat.journal.file}, or to the log if it is not set.
+ */
+public class EventJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventJournal.class);
+
+    private static final int CAPACITY = 1 << 14;
+    private static final int VALUES_PER_RECORD = 6;
+    private static final long DRAIN_INTERVAL_MILLIS = 1000L;
+    private static final String JOURNAL_FILE = System.getProperty("lightbeat.journal.file");
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+    /**
+     * Color modes of {@link Type#LIGHT_UPDATED} records, followed by the color packed into a single value.
+     */
+    public static final double COLOR_HUE_SAT = 1d;
+    public static final double COLOR_XY = 2d;
+    public static final double COLOR_CT = 3d;
+    private static final double HUE_SAT_FACTOR = 1000d;
+    private static final double XY_FACTOR = 10000d;
+    private static final EventJournal INSTANCE = new EventJournal(CAPACITY);
+
+    public static EventJournal get() {
+        return INSTANCE;
+    }
+
+    private final int mask;
+    private final long[] timestamps;
+    private final Type[] types;
+    private final int[] sources;
+    private final double[] values;
+
+    /**
+     * Holds the sequence number of the record stored in a slot once it is fully written,
+     * or {@link #SLOT_BEING_WRITTEN} while a producer writes to it.
+     */
+    private final AtomicLongArray published;
+    private static final long SLOT_BEING_WRITTEN = -2L;
+
+    private final AtomicLong writeSequence = new AtomicLong();
+    private long readSequence = 0L;
+    private long lostRecords = 0L;
+
+    private final List<String> sourceNames = new CopyOnWriteArrayList<>();
+    // guarded by this
+    private final Map<String, Integer> sourceIds = new HashMap<>();
+
+    private Thread drainThread;
+
+
+    EventJournal(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+
+        this.mask = capacity - 1;
+        this.timestamps = new long[capacity];
+        this.types = new Type[capacity];
+        this.sources = new int[capacity];
+        this.values = new double[capacity * VALUES_PER_RECORD];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1L);
+        }
+
+        registerSource("");
+    }
+
+    /**
+     * Registers a name to be printed for records of the returned source id. Not to be called on hot paths,
+     * but once during initialization of the recording object. Registering the same name again returns the same id.
+     *
+     * @param name of the source, for example a lights name
+     * @return source id to pass to the record methods
+     */
+    public synchronized int registerSource(String name) {
+        return sourceIds.computeIfAbsent(name, key -> {
+            sourceNames.add(key);
+            return sourceNames.size() - 1;
+        });
+    }
+
+    public void record(Type type) {
+        record(type, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    public void record(Type type, int source) {
+        record(type, source, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    public void record(Type type, int source, double v0) {
+        record(type, source, v0, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    public void record(Type type, int source, double v0, double v1, double v2, double v3) {
+        record(type, source, v0, v1, v2, v3, Double.NaN, Double.NaN);
+    }
+
+    public void record(Type type, int source, double v0, double v1, double v2, double v3, double v4, double v5) {
+        long sequence = writeSequence.getAndIncrement();
+        int slot = (int) (sequence & mask);
+
+        published.set(slot, SLOT_BEING_WRITTEN);
+        VarHandle.storeStoreFence();
+
+        timestamps[slot] = System.currentTimeMillis();
+        types[slot] = type;
+        sources[slot] = source;
+        int valueIndex = slot * VALUES_PER_RECORD;
+        values[valueIndex] = v0;
+        values[valueIndex + 1] = v1;
+        values[valueIndex + 2] = v2;
+        values[valueIndex + 3] = v3;
+        values[valueIndex + 4] = v4;
+        values[valueIndex + 5] = v5;
+
+        published.setRelease(slot, sequence);
+    }
+
+    /**
+     * Passes all published records in order to the given handler and removes them from the journal.
+     * Stops at the first record that is still being written, it will be passed on the next call.
+     *
+     * @param handler to pass the records to
+     * @return amount of records passed to the handler
+     */
+    public synchronized int drain(RecordHandler handler) {
+
+        long head = writeSequence.get();
+        if (head - readSequence > mask + 1) {
+            long skipped = head - (mask + 1) - readSequence;
+            lostRecords += skipped;
+            readSequence += skipped;
+        }
+
+        int drained = 0;
+        double[] recordValues = new double[VALUES_PER_RECORD];
+        while (readSequence < head) {
+            int slot = (int) (readSequence & mask);
+            long publishedSequence = published.getAcquire(slot);
+            if (publishedSequence > readSequence) {
+                // overwritten by a producer that wrapped around
+                lostRecords++;
+                readSequence++;
+                continue;
+            }
+            if (publishedSequence != readSequence) {
+                break;
+            }
+
+            long timestamp = timestamps[slot];
+            Type type = types[slot];
+            int source = sources[slot];
+            System.arraycopy(values, slot * VALUES_PER_RECORD, recordValues, 0, VALUES_PER_RECORD);
+
+            VarHandle.loadLoadFence();
+            if (published.get(slot) != publishedSequence) {
+                // overwritten while reading
+                lostRecords++;
+                readSequence++;
+                continue;
+            }
+
+            handler.handle(timestamp, type, sourceNames.get(source), recordValues);
+            readSequence++;
+            drained++;
+        }
+
+        return drained;
+    }
+
+    /**
+     * @return amount of records that were overwritten before they could be drained
+     */
+    public synchronized long getLostRecords() {
+        return lostRecords;
+    }
+
+    public int drainToLog() {
+        long lostBefore = getLostRecords();
+        int drained = drain((timestamp, type, source, values) -> {
+            String message = format(timestamp, type, source, values);
+            if (type.isWarning()) {
+                logger.warn(message);
+            } else {
+                logger.info(message);
+            }
+        });
+
+        long lost = getLostRecords() - lostBefore;
+        if (lost > 0) {
+            logger.warn("Event journal overflowed, {} records were lost", lost);
+        }
+        return drained;
+    }
+
+    /**
+     * Appends all published records as text lines to the given file.
+     *
+     * @param file to append to, will be created if it doesn't exist
+     * @return amount of records written
+     * @throws IOException if the file could not be written
+     */
+    public synchronized int drainToFile(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+
+            IOException[] exception = new IOException[1];
+            int drained = drain((timestamp, type, source, values) -> {
+                if (exception[0] != null) {
+                    return;
+                }
+                try {
+                    writer.write(format(timestamp, type, source, values));
+                    writer.newLine();
+                } catch (IOException e) {
+                    exception[0] = e;
+                }
+            });
+
+            if (exception[0] != null) {
+                throw exception[0];
+            }
+            return drained;
+        }
+    }
+
+    /**
+     * Starts a daemon thread that drains the journal periodically and once more on JVM shutdown.
+     * Does nothing if the thread was already started.
+     */
+    public synchronized void startDrainThread() {
+        if (drainThread != null) {
+            return;
+        }
+
+        Path file = JOURNAL_FILE != null ? Path.of(JOURNAL_FILE) : null;
+        Runnable drainTask = () -> {
+            if (file == null) {
+                drainToLog();
+                return;
+            }
+            try {
+                drainToFile(file);
+            } catch (IOException e) {
+                logger.warn("Could not write event journal to {}", file, e);
+            }
+        };
+
+        drainThread = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(DRAIN_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                drainTask.run();
+            }
+        }, "EventJournal-drain");
+        drainThread.setDaemon(true);
+        drainThread.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(drainTask, "EventJournal-shutdown"));
+    }
+
+    /**
+     * @return hue and saturation packed into a value for {@link #COLOR_HUE_SAT}
+     */
+    public static double packHueSat(int hue, int saturation) {
+        return hue * HUE_SAT_FACTOR + saturation;
+    }
+
+    /**
+     * @return CIE coordinates packed into a value for {@link #COLOR_XY}, with a precision of 4 decimal places
+     */
+    public static double packXy(double x, double y) {
+        return Math.round(x * XY_FACTOR) * XY_FACTOR + Math.round(y * XY_FACTOR);
+    }
+
+    static String format(long timestamp, Type type, String source, double[] values) {
+        String time = LocalTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()).format(TIME_FORMAT);
+        return "[" + time + "] " + type.format(source, values);
+    }
+
+
+    /**
+     * Receives drained records. The values array is reused between calls.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+        void handle(long timestamp, Type type, String source, double[] values);
+    }
+
+    /**
+     * Types of records, containing the format used when the record is drained.
+     * Values that were not passed while recording are {@link Double#NaN}.
+     */
+    public enum Type {
+        BEAT("Beat detected at %.4f (avg %.4f, dynThresh: %.4f, peakThresh: %.4f)"),
+        BEAT_SKIPPED("Beat received, but it was skipped due to BEAT_MIN_TIME_BETWEEN"),
+        BEAT_GENERATED("Beat generated on the tempo grid"),
+        NO_BEAT("No beat detected (dynThresh: %.4f)"),
+        SILENCE("Silence detected"),
+        ONSET("Onset detected before the end of the chunk"),
+        ONSET_RETRACTED("Onset was not followed by a beat and was retracted"),
+        EFFECT_STARTED("%s was started"),
+        EFFECT_STOPPED("%s was stopped"),
+        EFFECT_EXECUTED_ONCE("%s was executed once"),
+        LIGHT_UPDATED("Updated light %s (time %s | bri %s | color %s | alert %s | on %s)"),
+        LIGHT_UPDATE_DISCARDED("Discarding stale light update for %s (age: %sms)", true),
+        LIGHT_UPDATE_SUPERSEDED("Discarding fade of %s, as it was superseded while waiting for the command budget", true);
+
+        private final String format;
+        private final boolean isWarning;
+
+        Type(String format) {
+            this(format, false);
+        }
+
+        Type(String format, boolean isWarning) {
+            this.format = format;
+            this.isWarning = isWarning;
+        }
+
+        public boolean isWarning() {
+            return isWarning;
+        }
+
+        String format(String source, double[] values) {
+            return switch (this) {
+                case BEAT, NO_BEAT -> String.format(Locale.ROOT, format, values[0], values[1], values[2], values[3]);
+                case BEAT_SKIPPED, BEAT_GENERATED, SILENCE, ONSET, ONSET_RETRACTED -> format;
+                case EFFECT_STARTED, EFFECT_STOPPED, EFFECT_EXECUTED_ONCE, LIGHT_UPDATE_SUPERSEDED ->
+                        String.format(format, source);
+                case LIGHT_UPDATED -> String.format(format, source, integer(values[0]), integer(values[1]),
+                        color(values[2], values[3]), bool(values[4]), bool(values[5]));
+                case LIGHT_UPDATE_DISCARDED -> String.format(format, source, integer(values[0]));
+            };
+        }
+
+        private static String integer(double value) {
+            return Double.isNaN(value) ? "null" : Long.toString((long) value);
+        }
+
+        private static String color(double mode, double packedColor) {
+            if (mode == COLOR_HUE_SAT) {
+                long hue = (long) (packedColor / HUE_SAT_FACTOR);
+                return "hue/sat " + hue + "/" + (long) (packedColor - hue * HUE_SAT_FACTOR);
+            } else if (mode == COLOR_XY) {
+                long x = (long) (packedColor / XY_FACTOR);
+                long y = (long) (packedColor - x * XY_FACTOR);
+                return String.format(Locale.ROOT, "x/y %.4f/%.4f", x / XY_FACTOR, y / XY_FACTOR);
+            } else if (mode == COLOR_CT) {
+                return "ct " + integer(packedColor);
+            }
+            return "null";
+        }
+
+        private static String bool(double value) {
+            return Double.isNaN(value) ? "null" : Boolean.toString(value != 0d);
+        }
+    }
+}
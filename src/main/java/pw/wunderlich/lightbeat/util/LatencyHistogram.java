@@ -0,0 +1,84 @@
+package pw.wunderlich.lightbeat.util;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations, with one bucket per power of two microseconds. Recording is a few atomic
+ * increments and can be done from any thread, percentiles are estimated from the bucket bounds and are therefore
+ * accurate to a factor of two, which is sufficient to tell scheduling noise from blocking.
+ * Negative durations, for example tasks that started before their planned time, are recorded as 0.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sumNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+
+    public void record(long nanos) {
+        nanos = Math.max(nanos, 0L);
+        long micros = nanos / 1000L;
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+
+        buckets.incrementAndGet(bucket);
+        sumNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+
+        double maxMillis = maxNanos.get() / 1_000_000d;
+        double meanMillis = total > 0L ? sumNanos.get() / 1_000_000d / total : 0d;
+        return new Snapshot(total, meanMillis, percentile(counts, total, 0.5d, maxMillis),
+                percentile(counts, total, 0.99d, maxMillis), maxMillis);
+    }
+
+    /**
+     * @return upper bound of the bucket the percentile falls into, but at most the maximum
+     */
+    private static double percentile(long[] counts, long total, double percentile, double maxMillis) {
+        if (total == 0L) {
+            return 0d;
+        }
+
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // bucket i holds durations below 2^i microseconds
+                return Math.min((1L << i) / 1000d, maxMillis);
+            }
+        }
+        return maxMillis;
+    }
+
+
+    /**
+     * State of a histogram at the time it was taken.
+     *
+     * @param count      amount of recorded durations
+     * @param meanMillis average duration
+     * @param p50Millis  estimated median
+     * @param p99Millis  estimated 99th percentile
+     * @param maxMillis  longest recorded duration
+     */
+    public record Snapshot(long count, double meanMillis, double p50Millis, double p99Millis, double maxMillis) {
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "n=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms",
+                    count, meanMillis, p50Millis, p99Millis, maxMillis);
+        }
+    }
+}
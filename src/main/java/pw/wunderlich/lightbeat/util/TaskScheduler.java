@@ -0,0 +1,55 @@
+package pw.wunderlich.lightbeat.util;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks after a delay or periodically. Implemented by the {@link TimerWheel}, which follows the system time,
+ * and by the {@link VirtualClock}, which runs its tasks once it is advanced manually.
+ */
+public interface TaskScheduler {
+
+    /**
+     * Schedules a one-shot task.
+     *
+     * @param task  the task to execute
+     * @param delay the time from now to delay execution
+     * @param unit  the time unit of the delay parameter
+     * @return a ScheduledFuture that is done once the task ran, which can be used to cancel it
+     * @throws RejectedExecutionException if the scheduler was stopped
+     */
+    ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * Schedules a periodic task at a fixed rate. The next execution is scheduled once the previous one finished,
+     * executions never overlap.
+     *
+     * @param task         the task to execute
+     * @param initialDelay the time to delay first execution
+     * @param period       the period between successive executions
+     * @param unit         the time unit of the initialDelay and period parameters
+     * @return a ScheduledFuture that can be used to cancel the periodic execution
+     * @throws RejectedExecutionException if the scheduler was stopped
+     */
+    ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit);
+
+    /**
+     * @return amount of tasks that were scheduled and neither ran nor were removed after cancellation yet
+     */
+    int getScheduledCount();
+
+    /**
+     * Stops the scheduler and cancels all tasks that didn't run yet. Tasks that are already running are not interrupted.
+     */
+    void stop();
+
+    boolean isStopped();
+
+    /**
+     * Waits for the scheduler to finish after {@link #stop()} was called.
+     *
+     * @return true if the scheduler finished in time
+     */
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException;
+}
@@ -4,14 +4,22 @@ package pw.wunderlich.lightbeat.util;
  * Helper class offering methods to compare time easily and check if a given time threshold has been passed.
  * Can be disabled with {@link #disable()}, in which case {@link #isMet()} will always return false.
  * Will be enabled if threshold is set with {@link #setCurrentThreshold(long)} or initialized with threshold.
+ * Uses the system time, unless a different {@link Clock} is supplied.
  */
 public class TimeThreshold {
 
+    private final Clock clock;
+
     private long currentThreshold;
     private boolean isEnabled;
 
 
     public TimeThreshold() {
+        this(Clock.SYSTEM);
+    }
+
+    public TimeThreshold(Clock clock) {
+        this.clock = clock;
         currentThreshold = Long.MAX_VALUE;
         isEnabled = false;
     }
@@ -21,7 +29,17 @@ public class TimeThreshold {
      * @param initMillis time in millis until {@link #isMet()} will return true
      */
     public TimeThreshold(long initMillis) {
-        currentThreshold = System.currentTimeMillis() + initMillis;
+        this(Clock.SYSTEM, initMillis);
+    }
+
+    /**
+     * Initialize with threshold.
+     * @param clock to determine the current time with
+     * @param initMillis time in millis until {@link #isMet()} will return true
+     */
+    public TimeThreshold(Clock clock, long initMillis) {
+        this.clock = clock;
+        currentThreshold = clock.currentTimeMillis() + initMillis;
         isEnabled = true;
     }
 
@@ -34,8 +52,9 @@ public class TimeThreshold {
             throw new IllegalArgumentException("Threshold must be greater than 0");
         }
 
-        long newThreshold = System.currentTimeMillis() + thresholdMillis;
-        this.currentThreshold = newThreshold < System.currentTimeMillis() ? Long.MAX_VALUE : newThreshold;
+        long currentTime = clock.currentTimeMillis();
+        long newThreshold = currentTime + thresholdMillis;
+        this.currentThreshold = newThreshold < currentTime ? Long.MAX_VALUE : newThreshold;
         isEnabled = true;
     }
 
@@ -50,7 +69,7 @@ public class TimeThreshold {
     }
 
     public boolean isMet() {
-        return isEnabled() && currentThreshold <= System.currentTimeMillis();
+        return isEnabled() && currentThreshold <= clock.currentTimeMillis();
     }
 
     public long getCurrentThreshold() {
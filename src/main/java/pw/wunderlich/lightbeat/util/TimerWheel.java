@@ -0,0 +1,381 @@
+package pw.wunderlich.lightbeat.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel with millisecond ticks, for large amounts of short-lived timers such as strobes.
+ * Timeouts are hashed into one of a fixed amount of buckets by their deadline tick, timeouts that are more than
+ * one rotation away additionally count down the rotations left. Scheduling and cancelling are O(1): both only
+ * append to a lock-free queue, which the wheel thread drains on its next tick, and cancelled timeouts are unlinked
+ * from their bucket right away instead of remaining in a heap until their deadline.
+ * <p>
+ * The wheel thread only advances the wheel, expired tasks are run on the given executor. Timeouts fire at most one
+ * tick late under normal load, never early. Between deadlines the thread is parked until the earliest deadline,
+ * and indefinitely while no timeouts are scheduled. Scheduling an earlier timeout or cancelling one wakes it up.
+ */
+public class TimerWheel implements TaskScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimerWheel.class);
+
+    static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int DEFAULT_WHEEL_SIZE = 1024;
+
+    private final Executor executor;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startNanos;
+    private final Thread workerThread;
+
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Amount of timeouts that are pending or linked into a bucket.
+     */
+    private final AtomicInteger scheduledTimeouts = new AtomicInteger();
+    private volatile boolean isStopped = false;
+    /**
+     * Elapsed time the parked wheel thread wakes up at, {@link Long#MAX_VALUE} if it parks indefinitely and
+     * {@link Long#MIN_VALUE} while it is awake.
+     */
+    private volatile long wakeupNanos = Long.MIN_VALUE;
+    private volatile long wakeups = 0L;
+
+    // only accessed by the wheel thread
+    private long tick = 0L;
+
+
+    /**
+     * @param executor to run expired tasks on
+     */
+    public TimerWheel(Executor executor) {
+        this(executor, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param executor  to run expired tasks on
+     * @param wheelSize amount of buckets, must be a power of two
+     */
+    TimerWheel(Executor executor, int wheelSize) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size must be a power of two");
+        }
+
+        this.executor = executor;
+        this.wheel = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = wheelSize - 1;
+        this.startNanos = System.nanoTime();
+
+        this.workerThread = new Thread(this::runWheel, "TimerWheel");
+        this.workerThread.setDaemon(true);
+        this.workerThread.start();
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return add(new Timeout(task, elapsedNanos() + unit.toNanos(delay), 0L));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0L) {
+            throw new IllegalArgumentException("Period must be positive");
+        }
+        return add(new Timeout(task, elapsedNanos() + unit.toNanos(initialDelay), unit.toNanos(period)));
+    }
+
+    @Override
+    public int getScheduledCount() {
+        return scheduledTimeouts.get();
+    }
+
+    /**
+     * Stops the wheel thread and cancels all timeouts that didn't expire yet. Tasks that are already running
+     * on the executor are not interrupted.
+     */
+    @Override
+    public void stop() {
+        isStopped = true;
+        LockSupport.unpark(workerThread);
+    }
+
+    @Override
+    public boolean isStopped() {
+        return isStopped;
+    }
+
+    /**
+     * Waits for the wheel thread to finish after {@link #stop()} was called.
+     *
+     * @return true if the thread finished in time
+     */
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        workerThread.join(unit.toMillis(timeout));
+        return !workerThread.isAlive();
+    }
+
+    private Timeout add(Timeout timeout) {
+        if (isStopped) {
+            throw new RejectedExecutionException("Timer wheel was stopped");
+        }
+
+        pendingTimeouts.add(timeout);
+        scheduledTimeouts.incrementAndGet();
+        if (timeout.deadlineNanos < wakeupNanos) {
+            LockSupport.unpark(workerThread);
+        }
+        return timeout;
+    }
+
+    /**
+     * @return how often the wheel thread woke up to advance the wheel
+     */
+    long getWakeups() {
+        return wakeups;
+    }
+
+    private long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    private void runWheel() {
+        while (!isStopped) {
+            long currentTick = elapsedNanos() / TICK_NANOS;
+            while (tick <= currentTick && !isStopped) {
+                removeCancelled();
+                transferPending();
+                expireBucket();
+                tick++;
+            }
+
+            removeCancelled();
+            transferPending();
+            long nextTick = findNextDeadlineTick();
+            if (nextTick == Long.MAX_VALUE) {
+                park(Long.MAX_VALUE);
+                // the buckets are empty, no need to catch up with the ticks that passed while parked
+                tick = Math.max(tick, elapsedNanos() / TICK_NANOS);
+            } else {
+                park(nextTick * TICK_NANOS);
+            }
+        }
+
+        cancelRemaining();
+    }
+
+    /**
+     * Parks the wheel thread until the given elapsed time, unless timeouts were scheduled or cancelled in the meantime.
+     */
+    private void park(long untilNanos) {
+        wakeupNanos = untilNanos;
+        // checked after publishing the wakeup time, so that add and cancel either see it and unpark, or are seen here
+        if (pendingTimeouts.isEmpty() && cancelledTimeouts.isEmpty() && !isStopped) {
+            if (untilNanos == Long.MAX_VALUE) {
+                LockSupport.park(this);
+            } else {
+                long sleepNanos = untilNanos - elapsedNanos();
+                if (sleepNanos > 0L) {
+                    LockSupport.parkNanos(this, sleepNanos);
+                }
+            }
+        }
+        wakeupNanos = Long.MIN_VALUE;
+        wakeups++;
+    }
+
+    /**
+     * @return tick of the earliest deadline of the timeouts linked into the wheel, {@link Long#MAX_VALUE} if empty
+     */
+    private long findNextDeadlineTick() {
+        long nextTick = Long.MAX_VALUE;
+        for (int i = 0; i < wheel.length; i++) {
+            for (Timeout timeout = wheel[(int) ((tick + i) & mask)].head; timeout != null; timeout = timeout.next) {
+                if (timeout.remainingRounds <= 0L) {
+                    // buckets are visited in tick order, no later bucket expires earlier within this rotation
+                    return tick + i;
+                }
+                nextTick = Math.min(nextTick, timeout.deadlineTick);
+            }
+        }
+        return nextTick;
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+                scheduledTimeouts.decrementAndGet();
+            }
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            if (timeout.isCancelled()) {
+                scheduledTimeouts.decrementAndGet();
+                continue;
+            }
+
+            // round up, so that timeouts never fire early, and don't schedule into ticks that already passed
+            long deadlineTick = Math.max((timeout.deadlineNanos + TICK_NANOS - 1) / TICK_NANOS, tick);
+            timeout.deadlineTick = deadlineTick;
+            timeout.remainingRounds = (deadlineTick - tick) / wheel.length;
+            wheel[(int) (deadlineTick & mask)].add(timeout);
+        }
+    }
+
+    private void expireBucket() {
+        Bucket bucket = wheel[(int) (tick & mask)];
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.isCancelled() || timeout.remainingRounds <= 0L) {
+                bucket.remove(timeout);
+                scheduledTimeouts.decrementAndGet();
+                if (!timeout.isCancelled()) {
+                    timeout.expire();
+                }
+            } else {
+                timeout.remainingRounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    private void cancelRemaining() {
+        for (Bucket bucket : wheel) {
+            while (bucket.head != null) {
+                Timeout timeout = bucket.head;
+                bucket.remove(timeout);
+                timeout.cancel(false);
+            }
+        }
+
+        Timeout timeout;
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            timeout.cancel(false);
+        }
+        cancelledTimeouts.clear();
+        scheduledTimeouts.set(0);
+    }
+
+
+    /**
+     * Doubly linked list of the timeouts hashed to the same tick, only accessed by the wheel thread.
+     */
+    private static class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+
+    /**
+     * Scheduled task, either one-shot or periodic if the period is greater than 0.
+     */
+    private class Timeout extends FutureTask<Void> implements ScheduledFuture<Void> {
+
+        private final long periodNanos;
+        private volatile long deadlineNanos;
+
+        // only accessed by the wheel thread
+        private long deadlineTick;
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+
+        Timeout(Runnable task, long deadlineNanos, long periodNanos) {
+            super(task, null);
+            this.deadlineNanos = deadlineNanos;
+            this.periodNanos = periodNanos;
+        }
+
+        void expire() {
+            try {
+                executor.execute(this::runTask);
+            } catch (RejectedExecutionException e) {
+                logger.debug("Executor rejected expired timer task", e);
+                cancel(false);
+            }
+        }
+
+        private void runTask() {
+            if (periodNanos <= 0L) {
+                run();
+                return;
+            }
+
+            if (runAndReset() && !isStopped) {
+                deadlineNanos += periodNanos;
+                try {
+                    add(this);
+                } catch (RejectedExecutionException e) {
+                    cancel(false);
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean isCancelled = super.cancel(mayInterruptIfRunning);
+            if (isCancelled) {
+                cancelledTimeouts.add(this);
+                if (wakeupNanos != Long.MIN_VALUE) {
+                    LockSupport.unpark(workerThread);
+                }
+            }
+            return isCancelled;
+        }
+
+        @Override
+        public long getDelay(@NotNull TimeUnit unit) {
+            return unit.convert(deadlineNanos - elapsedNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(@NotNull Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
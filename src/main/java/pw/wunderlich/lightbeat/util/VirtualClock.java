@@ -0,0 +1,287 @@
+package pw.wunderlich.lightbeat.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.*;
+
+/**
+ * Clock that only moves when it is advanced manually, together with a scheduler and an executor that run their
+ * tasks on the thread that advances the clock. Advancing runs all tasks that are due in order of their deadline,
+ * tasks with the same deadline in the order they were added, and sets the time to the deadline of every task
+ * before it runs, so that a task sees the time it was scheduled for. Tasks added by running tasks are run during
+ * the same advance if they are due.
+ * <p>
+ * Makes runs that depend on time deterministic and allows simulating hours of beats, strobes and timers in seconds,
+ * for example by creating an {@link pw.wunderlich.lightbeat.AppTaskOrchestrator} with a virtual clock.
+ * Tasks may be scheduled from any thread, but only one thread should advance the clock.
+ */
+public class VirtualClock implements Clock, TaskScheduler {
+
+    private final Object lock = new Object();
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>(
+            Comparator.<Task>comparingLong(task -> task.deadlineMillis).thenComparingLong(task -> task.sequence));
+    private final ExecutorService executor = new VirtualExecutor();
+
+    private volatile long currentTimeMillis;
+
+    // guarded by lock
+    private long nextSequence = 0L;
+    private int cancelledTasks = 0;
+    private boolean isStopped = false;
+
+
+    public VirtualClock() {
+        this(0L);
+    }
+
+    /**
+     * @param startMillis time the clock starts at
+     */
+    public VirtualClock(long startMillis) {
+        this.currentTimeMillis = startMillis;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return currentTimeMillis;
+    }
+
+    /**
+     * @return executor that runs its tasks at the current time, once the clock is advanced or
+     * {@link #runPending()} is called
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Advances the clock, running all tasks that become due on the way.
+     *
+     * @param duration time to advance by
+     * @param unit     the time unit of the duration parameter
+     * @return amount of tasks that were run
+     */
+    public int advance(long duration, TimeUnit unit) {
+        if (duration < 0L) {
+            throw new IllegalArgumentException("Cannot go back in time");
+        }
+        return advanceTo(currentTimeMillis + unit.toMillis(duration));
+    }
+
+    /**
+     * Runs all tasks that are due at the current time, without advancing the clock.
+     *
+     * @return amount of tasks that were run
+     */
+    public int runPending() {
+        return advanceTo(currentTimeMillis);
+    }
+
+    private int advanceTo(long targetMillis) {
+        int ranTasks = 0;
+        while (true) {
+            Task task;
+            synchronized (lock) {
+                task = tasks.peek();
+                if (task == null || task.deadlineMillis > targetMillis) {
+                    currentTimeMillis = Math.max(currentTimeMillis, targetMillis);
+                    return ranTasks;
+                }
+
+                tasks.poll();
+                task.isQueued = false;
+                if (task.isCancelled()) {
+                    cancelledTasks--;
+                    continue;
+                }
+                currentTimeMillis = Math.max(currentTimeMillis, task.deadlineMillis);
+            }
+
+            task.runTask();
+            ranTasks++;
+        }
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return add(new Task(task, currentTimeMillis + toMillisRoundedUp(delay, unit), 0L));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0L) {
+            throw new IllegalArgumentException("Period must be positive");
+        }
+        return add(new Task(task, currentTimeMillis + toMillisRoundedUp(initialDelay, unit),
+                Math.max(toMillisRoundedUp(period, unit), 1L)));
+    }
+
+    /**
+     * Tasks never run early, delays below a millisecond are therefore rounded up.
+     */
+    private static long toMillisRoundedUp(long duration, TimeUnit unit) {
+        long nanos = Math.max(unit.toNanos(duration), 0L);
+        return (nanos + 999_999L) / 1_000_000L;
+    }
+
+    private Task add(Task task) {
+        synchronized (lock) {
+            if (isStopped) {
+                throw new RejectedExecutionException("Virtual clock was stopped");
+            }
+            task.sequence = nextSequence++;
+            task.isQueued = true;
+            tasks.add(task);
+        }
+        return task;
+    }
+
+    @Override
+    public int getScheduledCount() {
+        synchronized (lock) {
+            return tasks.size() - cancelledTasks;
+        }
+    }
+
+    /**
+     * Cancels all tasks that didn't run yet and rejects new tasks, including tasks for the executor.
+     */
+    @Override
+    public void stop() {
+        List<Task> remainingTasks;
+        synchronized (lock) {
+            isStopped = true;
+            remainingTasks = new ArrayList<>(tasks);
+        }
+        remainingTasks.forEach(task -> task.cancel(false));
+        synchronized (lock) {
+            tasks.clear();
+            cancelledTasks = 0;
+        }
+    }
+
+    @Override
+    public boolean isStopped() {
+        synchronized (lock) {
+            return isStopped;
+        }
+    }
+
+    /**
+     * Tasks only run while the clock is advanced, there is nothing to wait for.
+     *
+     * @return true
+     */
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return true;
+    }
+
+
+    /**
+     * Scheduled task, either one-shot or periodic if the period is greater than 0.
+     */
+    private class Task extends FutureTask<Void> implements ScheduledFuture<Void> {
+
+        private final long periodMillis;
+        private volatile long deadlineMillis;
+
+        // guarded by lock
+        private long sequence;
+        private boolean isQueued;
+
+
+        Task(Runnable task, long deadlineMillis, long periodMillis) {
+            super(task, null);
+            this.deadlineMillis = deadlineMillis;
+            this.periodMillis = periodMillis;
+        }
+
+        private void runTask() {
+            if (periodMillis <= 0L) {
+                run();
+                return;
+            }
+
+            if (runAndReset()) {
+                deadlineMillis += periodMillis;
+                try {
+                    add(this);
+                } catch (RejectedExecutionException e) {
+                    cancel(false);
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean isCancelled = super.cancel(mayInterruptIfRunning);
+            if (isCancelled) {
+                synchronized (lock) {
+                    // removed lazily once due, removing from the middle of the queue is linear
+                    if (isQueued) {
+                        cancelledTasks++;
+                    }
+                }
+            }
+            return isCancelled;
+        }
+
+        @Override
+        public long getDelay(@NotNull TimeUnit unit) {
+            return unit.convert(deadlineMillis - currentTimeMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(@NotNull Delayed other) {
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Runs submitted tasks at the current time of the clock, in the order they were submitted.
+     */
+    private class VirtualExecutor extends AbstractExecutorService {
+
+        private volatile boolean isShutdown = false;
+
+        @Override
+        public void execute(@NotNull Runnable command) {
+            if (isShutdown) {
+                throw new RejectedExecutionException("Executor was shut down");
+            }
+            add(new Task(command, currentTimeMillis, 0L));
+        }
+
+        @Override
+        public void shutdown() {
+            isShutdown = true;
+        }
+
+        @NotNull
+        @Override
+        public List<Runnable> shutdownNow() {
+            isShutdown = true;
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return isShutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return isShutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, @NotNull TimeUnit unit) {
+            return true;
+        }
+    }
+}
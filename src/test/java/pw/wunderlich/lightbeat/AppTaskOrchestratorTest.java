@@ -0,0 +1,262 @@
+package pw.wunderlich.lightbeat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pw.wunderlich.lightbeat.util.VirtualClock;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AppTaskOrchestratorTest {
+
+    private static final String BRIDGE_ID = "192.168.0.2";
+
+    private AppTaskOrchestrator taskOrchestrator;
+
+
+    @BeforeEach
+    void setUp() {
+        taskOrchestrator = new AppTaskOrchestrator();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (!taskOrchestrator.isShutdown()) {
+            taskOrchestrator.shutdown();
+        }
+    }
+
+    @Test
+    void dispatchedTasksAreCounted() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            taskOrchestrator.dispatch(() -> {}).get(5L, TimeUnit.SECONDS);
+        }
+
+        TaskMetrics.Snapshot metrics = taskOrchestrator.getMetrics();
+        assertEquals(10L, metrics.dispatchedTasks());
+        assertEquals(10L, metrics.dispatchQueueTime().count());
+        assertEquals(10L, metrics.dispatchExecutionTime().count());
+        awaitTasksDone();
+    }
+
+    @Test
+    void bridgeWaitIsSeparatedFromExecution() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 9; i++) {
+            taskOrchestrator.dispatchBridgeCommand(BRIDGE_ID, () -> await(release));
+        }
+
+        // the ninth command waits for the limiter
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (taskOrchestrator.getMetrics().bridgeCommandsWaiting() < 1 && System.nanoTime() < deadline) {
+            Thread.sleep(1L);
+        }
+        TaskMetrics.Snapshot metrics = taskOrchestrator.getMetrics();
+        assertEquals(1, metrics.bridgeCommandsWaiting());
+        assertEquals(8, metrics.bridgeCommandsInFlight());
+
+        Thread.sleep(20L);
+        release.countDown();
+        while (taskOrchestrator.getMetrics().bridgeCommands() < 9 && System.nanoTime() < deadline) {
+            Thread.sleep(1L);
+        }
+        awaitTasksDone();
+
+        metrics = taskOrchestrator.getMetrics();
+        assertEquals(9L, metrics.bridgeCommands());
+        assertEquals(9L, metrics.bridgeWaitTime().count());
+        assertTrue(metrics.bridgeWaitTime().maxMillis() >= 20d, "Max wait was " + metrics.bridgeWaitTime().maxMillis());
+        assertTrue(metrics.bridgeExecutionTime().maxMillis() >= 20d);
+    }
+
+    @Test
+    void bridgesHaveSeparateLimits() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 8; i++) {
+            taskOrchestrator.dispatchBridgeCommand(BRIDGE_ID, () -> await(release));
+        }
+        // not limited by the commands of the first bridge
+        taskOrchestrator.dispatchBridgeCommand("192.168.0.3", () -> {}).get(5L, TimeUnit.SECONDS);
+
+        var limiters = taskOrchestrator.getMetrics().bridgeLimiters();
+        release.countDown();
+        assertEquals(2, limiters.size());
+        assertEquals(8, limiters.get(BRIDGE_ID).limit());
+    }
+
+    @Test
+    void failingBridgeCommandsAreCounted() throws Exception {
+        taskOrchestrator.dispatchBridgeCommand(BRIDGE_ID, () -> {
+            throw new IllegalStateException("test");
+        }).get(5L, TimeUnit.SECONDS);
+        assertEquals(1L, taskOrchestrator.getMetrics().failedBridgeCommands());
+    }
+
+    @Test
+    void asyncBridgeCommandsShareTheLimit() throws Exception {
+        List<CompletableFuture<Void>> responses = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<Void>> commands = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            commands.add(taskOrchestrator.dispatchAsyncBridgeCommand(BRIDGE_ID, () -> {
+                var response = new CompletableFuture<Void>();
+                responses.add(response);
+                return response;
+            }));
+        }
+
+        // the ninth command waits without a thread
+        awaitCondition(() -> responses.size() == 8 && taskOrchestrator.getMetrics().tasksInFlight() == 0);
+        TaskMetrics.Snapshot metrics = taskOrchestrator.getMetrics();
+        assertEquals(8, responses.size());
+        assertEquals(8, metrics.bridgeCommandsInFlight());
+        assertEquals(1, metrics.bridgeCommandsWaiting());
+
+        responses.get(0).complete(null);
+        assertTrue(commands.get(0).isDone());
+        awaitCondition(() -> responses.size() == 9);
+
+        for (int i = 1; i < responses.size(); i++) {
+            responses.get(i).completeExceptionally(new IllegalStateException("test"));
+        }
+        commands.get(8).handle((result, throwable) -> null).get(5L, TimeUnit.SECONDS);
+        metrics = taskOrchestrator.getMetrics();
+        assertEquals(9L, metrics.bridgeCommands());
+        assertEquals(8L, metrics.failedBridgeCommands());
+        assertEquals(0, metrics.bridgeCommandsInFlight());
+        assertEquals(9L, metrics.bridgeExecutionTime().count());
+    }
+
+    @Test
+    void asyncBridgeCommandsDontRunOnCallingThread() throws Exception {
+        Object lock = new Object();
+        List<CompletableFuture<Void>> commands = new ArrayList<>();
+        synchronized (lock) {
+            for (int i = 0; i < 20; i++) {
+                commands.add(taskOrchestrator.dispatchAsyncBridgeCommand(BRIDGE_ID, () -> {
+                    // would deadlock if run while the dispatching thread holds the lock
+                    synchronized (lock) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                }));
+            }
+        }
+
+        CompletableFuture.allOf(commands.toArray(CompletableFuture[]::new)).get(5L, TimeUnit.SECONDS);
+        assertEquals(20L, taskOrchestrator.getMetrics().bridgeCommands());
+    }
+
+    @Test
+    void failingAsyncBridgeCommandsDontRecurse() throws Exception {
+        List<CompletableFuture<Void>> commands = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            commands.add(taskOrchestrator.dispatchAsyncBridgeCommand(BRIDGE_ID, () -> null));
+        }
+
+        CompletableFuture.allOf(commands.toArray(CompletableFuture[]::new))
+                .handle((result, throwable) -> null)
+                .get(30L, TimeUnit.SECONDS);
+        assertTrue(commands.stream().allMatch(CompletableFuture::isCompletedExceptionally));
+        assertEquals(5000L, taskOrchestrator.getMetrics().failedBridgeCommands());
+    }
+
+    @Test
+    void scheduleLatenessIsRecorded() throws Exception {
+        taskOrchestrator.schedule(() -> {}, 20L, TimeUnit.MILLISECONDS).get(5L, TimeUnit.SECONDS);
+
+        TaskMetrics.Snapshot metrics = taskOrchestrator.getMetrics();
+        assertEquals(1L, metrics.scheduleLateness().count());
+        assertTrue(metrics.scheduleLateness().maxMillis() < 1000d);
+        assertEquals(0, metrics.scheduledTasks());
+    }
+
+    @Test
+    void periodicDriftIsRecorded() throws Exception {
+        CountDownLatch executions = new CountDownLatch(5);
+        ScheduledFuture<?> future = taskOrchestrator.schedulePeriodicTask(executions::countDown, 0L, 10L, TimeUnit.MILLISECONDS);
+        assertTrue(executions.await(5L, TimeUnit.SECONDS));
+        future.cancel(false);
+
+        assertTrue(taskOrchestrator.getMetrics().periodicDrift().count() >= 5L);
+    }
+
+    @Test
+    void rejectedTasksAreCounted() {
+        taskOrchestrator.shutdown();
+        assertThrows(RejectedExecutionException.class, () -> taskOrchestrator.dispatch(() -> {}));
+        assertThrows(RejectedExecutionException.class, () -> taskOrchestrator.schedule(() -> {}, 1L, TimeUnit.SECONDS));
+        assertEquals(2L, taskOrchestrator.getMetrics().rejectedTasks());
+        assertEquals(0, taskOrchestrator.getMetrics().tasksInFlight());
+    }
+
+    @Test
+    void metricsAreReadableViaJmx() throws Exception {
+        taskOrchestrator.registerMXBean();
+        taskOrchestrator.dispatch(() -> {}).get(5L, TimeUnit.SECONDS);
+
+        var server = ManagementFactory.getPlatformMBeanServer();
+        var objectName = new ObjectName(TaskMetrics.OBJECT_NAME);
+        assertEquals(1L, server.getAttribute(objectName, "DispatchedTasks"));
+        assertNotNull(server.getAttribute(objectName, "BridgeConcurrencyLimits"));
+
+        taskOrchestrator.shutdown();
+        assertFalse(server.isRegistered(objectName));
+    }
+
+    @Test
+    void virtualClockRunsAllTasksWhenAdvanced() {
+        taskOrchestrator.shutdown();
+        VirtualClock clock = new VirtualClock();
+        taskOrchestrator = new AppTaskOrchestrator(clock);
+        assertSame(clock, taskOrchestrator.getClock());
+
+        List<String> runs = new ArrayList<>();
+        taskOrchestrator.schedulePeriodicTask(() -> runs.add("beat@" + clock.currentTimeMillis()), 0L, 500L, TimeUnit.MILLISECONDS);
+        taskOrchestrator.schedule(() -> taskOrchestrator.dispatchBridgeCommand(BRIDGE_ID,
+                () -> runs.add("command@" + clock.currentTimeMillis())), 750L, TimeUnit.MILLISECONDS);
+        assertTrue(runs.isEmpty());
+
+        clock.advance(1L, TimeUnit.SECONDS);
+        assertEquals(List.of("beat@0", "beat@500", "command@750", "beat@1000"), runs);
+
+        clock.advance(1L, TimeUnit.HOURS);
+        TaskMetrics.Snapshot metrics = taskOrchestrator.getMetrics();
+        assertEquals(7204, runs.size());
+        assertEquals(1L, metrics.bridgeCommands());
+        assertEquals(0d, metrics.periodicDrift().maxMillis());
+        assertEquals(0d, metrics.scheduleLateness().maxMillis());
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(1L);
+        }
+    }
+
+    private void awaitTasksDone() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (taskOrchestrator.getMetrics().tasksInFlight() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1L);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package pw.wunderlich.lightbeat.audio;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BarTrackerTest {
+
+    private static final long BEAT_MILLIS = 500L;
+    private static final double[] ACCENTS = {0.6d, 0.6d, 1d, 0.6d};
+
+    private TempoTracker tempoTracker;
+    private BarTracker barTracker;
+    private long time;
+
+    @BeforeEach
+    void setUp() {
+        tempoTracker = new TempoTracker();
+        barTracker = new BarTracker(tempoTracker);
+        time = 0L;
+    }
+
+    @Test
+    void firstBeatIsDownbeat() {
+        beat(1d);
+        assertEquals(0, barTracker.getBeatInBar());
+        assertEquals(0L, barTracker.getBar());
+
+        beat(1d);
+        assertEquals(1, barTracker.getBeatInBar());
+        assertEquals(0L, barTracker.getBar());
+    }
+
+    @Test
+    void accentedBeatBecomesDownbeat() {
+        for (int i = 0; i < 32; i++) {
+            beat(ACCENTS[i % ACCENTS.length]);
+        }
+
+        // the accent is on the third beat of the pattern
+        for (int i = 0; i < 8; i++) {
+            beat(ACCENTS[i % ACCENTS.length]);
+            assertEquals(Math.floorMod(i - 2, 4), barTracker.getBeatInBar());
+        }
+    }
+
+    @Test
+    void barsAreCounted() {
+        long previousBar = -1L;
+        for (int i = 0; i < 40; i++) {
+            beat(ACCENTS[(i + 2) % ACCENTS.length]);
+            if (barTracker.getBeatInBar() == 0) {
+                assertEquals(previousBar + 1, barTracker.getBar());
+                previousBar = barTracker.getBar();
+            } else {
+                assertEquals(previousBar, barTracker.getBar());
+            }
+        }
+        assertEquals(9L, previousBar);
+    }
+
+    @Test
+    void missedBeatsAreCounted() {
+        for (int i = 0; i < 16; i++) {
+            beat(ACCENTS[(i + 2) % ACCENTS.length]);
+        }
+        assertEquals(3, barTracker.getBeatInBar());
+
+        // skip two beats
+        time += 2 * BEAT_MILLIS;
+        beat(0.6d);
+        assertEquals(2, barTracker.getBeatInBar());
+    }
+
+    @Test
+    void gapStartsPhrase() {
+        for (int i = 0; i < 22; i++) {
+            beat(ACCENTS[(i + 2) % ACCENTS.length]);
+        }
+        assertEquals(5L, barTracker.getBar());
+        assertEquals(1, barTracker.getBeatInBar());
+
+        time += 8000L;
+        beat(1d);
+        assertEquals(0, barTracker.getBeatInBar());
+        assertEquals(8L, barTracker.getBar());
+    }
+
+    @Test
+    void resetRestartsCounting() {
+        for (int i = 0; i < 10; i++) {
+            beat(1d);
+        }
+        barTracker.reset();
+        beat(1d);
+        assertEquals(0, barTracker.getBeatInBar());
+        assertEquals(0L, barTracker.getBar());
+    }
+
+    @Test
+    void predictedBeatMatchesAcceptedBeat() {
+        // without accents and once the accents of all phases settled, as the accent of a beat may move the downbeat
+        for (int i = 0; i < 40; i++) {
+            beat(1d);
+        }
+
+        for (int i = 0; i < 40; i++) {
+            long nextTime = time + (i == 20 ? 2 * BEAT_MILLIS : i == 30 ? 8000L : BEAT_MILLIS);
+            BeatEvent predicted = barTracker.predictBeat(nextTime, 0.2d, 0.1d);
+
+            time = nextTime - BEAT_MILLIS;
+            beat(1d);
+            assertEquals(barTracker.getBeatInBar(), predicted.beatInBar());
+            assertEquals(barTracker.getBar(), predicted.bar());
+        }
+    }
+
+    private void beat(double accent) {
+        time += BEAT_MILLIS;
+        tempoTracker.beatAccepted(time);
+        barTracker.beatAccepted(time, 0.2d * accent, 0.1d * accent);
+    }
+}
@@ -0,0 +1,328 @@
+package pw.wunderlich.lightbeat.audio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+import pw.wunderlich.lightbeat.config.Config;
+import pw.wunderlich.lightbeat.config.ConfigSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs annotated signals through the detection pipeline and checks precision, recall and timing error
+ * against fixed bounds, to catch detection regressions. The bounds are set slightly below the current results,
+ * raise them when detection improves. Additional annotated recordings can be evaluated by
+ * setting system property {@code lightbeat.detection.dir} to a directory containing wave files, each with
+ * a text file of the same name that lists the onset times in seconds, one per line. Recordings are checked against
+ * looser bounds, the results of every recording are part of the assertion messages.
+ */
+class BeatDetectionQualityTest {
+
+    private static final long TOLERANCE_MILLIS = 70L;
+    private static final long DOWNBEAT_SETTLE_MILLIS = 10000L;
+    private static final double RECORDING_MIN_PRECISION = 0.9d;
+    private static final double RECORDING_MIN_RECALL = 0.6d;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void steadyKicks() throws IOException {
+        SyntheticSignal signal = SyntheticSignal.builder()
+                .kicks(120, 30, 0.5)
+                .build();
+
+        DetectionQuality quality = evaluate("steady kicks", signal, false, false);
+        assertQuality("steady kicks", quality, 0.95, 0.95, 30);
+    }
+
+    @Test
+    void fastKicks() throws IOException {
+        SyntheticSignal signal = SyntheticSignal.builder()
+                .kicks(174, 30, 0.5)
+                .build();
+
+        DetectionQuality quality = evaluate("fast kicks", signal, false, false);
+        assertQuality("fast kicks", quality, 0.95, 0.65, 30);
+    }
+
+    @Test
+    void accentedKicksOverPad() throws IOException {
+        SyntheticSignal signal = SyntheticSignal.builder()
+                .noise(0.02)
+                .pad(0.08)
+                .accents(1, 0.6, 0.8, 0.6)
+                .kicks(128, 30, 0.5)
+                .build();
+
+        DetectionQuality quality = evaluate("accented kicks over pad", signal, false, false);
+        assertQuality("accented kicks over pad", quality, 0.95, 0.6, 30);
+    }
+
+    @Test
+    void breakdownWithoutKicks() throws IOException {
+        SyntheticSignal signal = SyntheticSignal.builder()
+                .pad(0.08)
+                .kicks(124, 12, 0.5)
+                .rest(8)
+                .kicks(124, 12, 0.5)
+                .build();
+
+        DetectionQuality quality = evaluate("breakdown", signal, false, false);
+        assertQuality("breakdown", quality, 0.95, 0.8, 30);
+    }
+
+    @Test
+    void bassOnlyModeIgnoresHats() throws IOException {
+        SyntheticSignal signal = SyntheticSignal.builder()
+                .hats(0.4)
+                .kicks(126, 20, 0.5)
+                .build();
+
+        DetectionQuality quality = evaluate("kicks with hats, bass only", signal, true, false);
+        assertQuality("kicks with hats, bass only", quality, 0.95, 0.75, 30);
+    }
+
+    @Test
+    void autoSensitivity() throws IOException {
+        SyntheticSignal signal = SyntheticSignal.builder()
+                .kicks(174, 60, 0.5)
+                .build();
+        DetectionQuality quality = evaluate("fast kicks, auto sensitivity", signal, false, true);
+        assertQuality("fast kicks, auto sensitivity", quality, 0.95, 0.85, 30);
+
+        signal = SyntheticSignal.builder()
+                .noise(0.02)
+                .pad(0.08)
+                .accents(1, 0.6, 0.8, 0.6)
+                .kicks(128, 60, 0.5)
+                .build();
+        quality = evaluate("accented kicks over pad, auto sensitivity", signal, false, true);
+        assertQuality("accented kicks over pad, auto sensitivity", quality, 0.95, 0.7, 30);
+
+        signal = SyntheticSignal.builder()
+                .pad(0.08)
+                .kicks(124, 30, 0.5)
+                .rest(8)
+                .kicks(124, 30, 0.5)
+                .build();
+        quality = evaluate("breakdown, auto sensitivity", signal, false, true);
+        assertQuality("breakdown, auto sensitivity", quality, 0.95, 0.9, 30);
+
+        signal = SyntheticSignal.builder()
+                .hats(0.4)
+                .kicks(126, 60, 0.5)
+                .build();
+        quality = evaluate("kicks with hats, auto sensitivity", signal, false, true);
+        assertQuality("kicks with hats, auto sensitivity", quality, 0.95, 0.85, 30);
+    }
+
+    @Test
+    void downbeatsOfAccentedKicks() throws IOException {
+        SyntheticSignal signal = SyntheticSignal.builder()
+                .noise(0.02)
+                .pad(0.08)
+                .accents(1, 0.6, 0.8, 0.6)
+                .kicks(128, 60, 0.5)
+                .build();
+
+        for (boolean sensitivityAuto : new boolean[]{false, true}) {
+            Path file = signal.writeWave(tempDir.resolve("downbeats_" + sensitivityAuto + ".wav"));
+            BeatAnalysis analysis = new OfflineBeatAnalyzer(createConfig(false, sensitivityAuto)).analyze(file);
+
+            double accuracy = getDownbeatAccuracy(signal.getOnsetMillis(), analysis.beats(), DOWNBEAT_SETTLE_MILLIS);
+            assertTrue(accuracy >= 0.95, "Downbeat accuracy regressed with auto sensitivity " + sensitivityAuto + ": " + accuracy);
+        }
+    }
+
+    @Test
+    void sectionsOfBreakdownAndDrop() throws IOException {
+        SyntheticSignal signal = SyntheticSignal.builder()
+                .pad(0.08)
+                .kicks(126, 30, 0.3)
+                .rest(10)
+                .riser(8, 0.2)
+                .kicks(126, 20, 0.6)
+                .build();
+
+        Path file = signal.writeWave(tempDir.resolve("sections.wav"));
+        BeatAnalysis analysis = new OfflineBeatAnalyzer(createConfig(false, false)).analyze(file);
+        List<Section> sections = analysis.sections().stream().map(BeatAnalysis.SectionChange::section).toList();
+        assertEquals(List.of(Section.BREAKDOWN, Section.BUILD_UP, Section.DROP), sections.subList(0, Math.min(3, sections.size())),
+                "Detected sections: " + analysis.sections());
+        assertSectionTime(analysis.sections().get(0), 30000L, 6000L);
+        assertSectionTime(analysis.sections().get(1), 40000L, 6000L);
+        assertSectionTime(analysis.sections().get(2), 48000L, 2500L);
+    }
+
+    @Test
+    void fastOnsetOfKicks() throws IOException {
+        for (boolean withPad : new boolean[]{false, true}) {
+            SyntheticSignal.Builder builder = SyntheticSignal.builder();
+            if (withPad) {
+                builder.noise(0.02).pad(0.08).accents(1, 0.6, 0.8, 0.6);
+            }
+            SyntheticSignal signal = builder.kicks(126, 30, 0.5).build();
+            Path file = signal.writeWave(tempDir.resolve("fast_onset_" + withPad + ".wav"));
+
+            BeatAnalysis reference = new OfflineBeatAnalyzer(createConfig(false, false)).analyze(file);
+            BeatAnalysis analysis = new OfflineBeatAnalyzer(createConfig(false, false, true, 0)).analyze(file);
+            List<Long> onsetTimes = analysis.onsets().stream()
+                    .filter(onset -> !onset.retracted())
+                    .map(BeatAnalysis.Onset::timeMillis)
+                    .toList();
+
+            List<Long> allOnsetTimes = analysis.onsets().stream().map(BeatAnalysis.Onset::timeMillis).toList();
+
+            DetectionQuality beatQuality = DetectionQuality.evaluate(signal.getOnsetMillis(), getBeatTimes(analysis), TOLERANCE_MILLIS);
+            DetectionQuality onsetQuality = DetectionQuality.evaluate(signal.getOnsetMillis(), onsetTimes, TOLERANCE_MILLIS);
+            DetectionQuality allOnsetQuality = DetectionQuality.evaluate(signal.getOnsetMillis(), allOnsetTimes, TOLERANCE_MILLIS);
+
+            // onsets are only reported in addition, beats don't change
+            assertEquals(getBeatTimes(reference), getBeatTimes(analysis));
+            assertTrue(onsetQuality.recall() >= beatQuality.recall() * 0.9, "Onset recall regressed: " + onsetQuality);
+            assertTrue(onsetQuality.meanAbsoluteErrorMillis() <= beatQuality.meanAbsoluteErrorMillis() - 10d,
+                    "Onsets are not reported earlier than beats: " + onsetQuality + ", " + beatQuality);
+            // retracted onsets may still be kicks the chunk based detection missed, but should not be noise
+            assertTrue(allOnsetQuality.precision() >= 0.95, "Onset precision regressed: " + allOnsetQuality);
+        }
+    }
+
+    @Test
+    void flywheelThroughBreakdown() throws IOException {
+        SyntheticSignal signal = SyntheticSignal.builder()
+                .pad(0.08)
+                .kicks(120, 16, 0.5)
+                .rest(4)
+                .kicks(120, 10, 0.5)
+                .build();
+        Path file = signal.writeWave(tempDir.resolve("flywheel.wav"));
+
+        BeatAnalysis reference = new OfflineBeatAnalyzer(createConfig(false, false)).analyze(file);
+        BeatAnalysis analysis = new OfflineBeatAnalyzer(createConfig(false, false, false, 4)).analyze(file);
+
+        // the first missing kick is left to the detection, the following ones are generated
+        List<Long> gridMillis = LongStream.rangeClosed(1, 7).map(beat -> 16000L + beat * 500L).boxed().toList();
+        List<Long> generatedMillis = analysis.beats().stream()
+                .filter(BeatAnalysis.Beat::synthetic)
+                .map(BeatAnalysis.Beat::timeMillis)
+                .toList();
+        DetectionQuality generatedQuality = DetectionQuality.evaluate(gridMillis, generatedMillis, TOLERANCE_MILLIS);
+        assertQuality("generated beats", generatedQuality, 1d, 1d, 30);
+
+        // detected beats take over again without doubled beats
+        List<Long> expectedMillis = Stream.concat(signal.getOnsetMillis().stream(), gridMillis.stream()).sorted().toList();
+        DetectionQuality quality = DetectionQuality.evaluate(expectedMillis, getBeatTimes(analysis), TOLERANCE_MILLIS);
+        assertQuality("beats with flywheel", quality, 1d, 0.95, 30);
+
+        assertTrue(reference.getSegmentMillis(BeatAnalysis.Segment.Type.NO_BEAT) > 0L);
+        assertEquals(0L, analysis.getSegmentMillis(BeatAnalysis.Segment.Type.NO_BEAT));
+    }
+
+    @Test
+    void annotatedRecordings() throws IOException {
+        String directory = System.getProperty("lightbeat.detection.dir");
+        assumeTrue(directory != null, "No annotated recordings configured");
+
+        OfflineBeatAnalyzer analyzer = new OfflineBeatAnalyzer(createConfig(false, false));
+        List<Executable> checks = new ArrayList<>();
+        try (Stream<Path> files = Files.list(Path.of(directory))) {
+            for (Path file : files.filter(file -> file.toString().endsWith(".wav")).sorted().toList()) {
+                Path annotationFile = file.resolveSibling(file.getFileName().toString().replaceAll("\\.wav$", ".txt"));
+                if (!Files.exists(annotationFile)) {
+                    continue;
+                }
+
+                List<Long> onsets = Files.readAllLines(annotationFile).stream()
+                        .map(String::trim)
+                        .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                        .map(line -> (long) (Double.parseDouble(line.split("\\s+")[0]) * 1000d))
+                        .toList();
+
+                BeatAnalysis analysis = analyzer.analyze(file);
+                String name = file.getFileName().toString();
+                DetectionQuality quality = DetectionQuality.evaluate(onsets, getBeatTimes(analysis), TOLERANCE_MILLIS);
+                checks.add(() -> assertQuality(name, quality, RECORDING_MIN_PRECISION, RECORDING_MIN_RECALL, TOLERANCE_MILLIS));
+            }
+        }
+        assertAll(checks.stream());
+    }
+
+    private DetectionQuality evaluate(String name, SyntheticSignal signal, boolean bassOnlyMode, boolean sensitivityAuto) throws IOException {
+        Path file = signal.writeWave(tempDir.resolve(name.replace(' ', '_').replace(",", "") + ".wav"));
+        OfflineBeatAnalyzer analyzer = new OfflineBeatAnalyzer(createConfig(bassOnlyMode, sensitivityAuto));
+
+        BeatAnalysis analysis = analyzer.analyze(file);
+        return DetectionQuality.evaluate(signal.getOnsetMillis(), getBeatTimes(analysis), TOLERANCE_MILLIS);
+    }
+
+    private static Config createConfig(boolean bassOnlyMode, boolean sensitivityAuto) {
+        return createConfig(bassOnlyMode, sensitivityAuto, false, 0);
+    }
+
+    private static Config createConfig(boolean bassOnlyMode, boolean sensitivityAuto, boolean fastOnset, int flywheelBars) {
+        Config config = mock(Config.class);
+        when(config.getSnapshot()).thenReturn(
+                new ConfigSnapshot(5, sensitivityAuto, 200, bassOnlyMode, fastOnset, flywheelBars, 1, 254, 5, 5, 5, 3, null));
+        return config;
+    }
+
+    /**
+     * Matches every beat after the settle time to the closest onset and checks if it was marked as downbeat
+     * exactly when the onset is the first of a bar.
+     *
+     * @return share of correctly positioned beats
+     */
+    private static double getDownbeatAccuracy(List<Long> onsetMillis, List<BeatAnalysis.Beat> beats, long settleMillis) {
+        int correct = 0;
+        int total = 0;
+        for (BeatAnalysis.Beat beat : beats) {
+            if (beat.timeMillis() < settleMillis) {
+                continue;
+            }
+
+            int closest = 0;
+            for (int i = 1; i < onsetMillis.size(); i++) {
+                if (Math.abs(onsetMillis.get(i) - beat.timeMillis()) < Math.abs(onsetMillis.get(closest) - beat.timeMillis())) {
+                    closest = i;
+                }
+            }
+
+            total++;
+            if ((closest % BeatEvent.BEATS_PER_BAR == 0) == (beat.beatInBar() == 0)) {
+                correct++;
+            }
+        }
+        return total > 0 ? (double) correct / total : 0d;
+    }
+
+    /**
+     * Sections are detected late, as they are based on trends over multiple seconds.
+     */
+    private static void assertSectionTime(BeatAnalysis.SectionChange change, long startMillis, long maxDelayMillis) {
+        assertTrue(change.timeMillis() >= startMillis && change.timeMillis() <= startMillis + maxDelayMillis,
+                change.section() + " detected at " + change.timeMillis() + "ms, expected at " + startMillis + "ms");
+    }
+
+    private static List<Long> getBeatTimes(BeatAnalysis analysis) {
+        return analysis.beats().stream().map(BeatAnalysis.Beat::timeMillis).toList();
+    }
+
+    private static void assertQuality(String name, DetectionQuality quality, double minPrecision, double minRecall,
+                                      double maxAbsoluteErrorMillis) {
+        assertTrue(quality.precision() >= minPrecision, "Precision regressed for " + name + ": " + quality);
+        assertTrue(quality.recall() >= minRecall, "Recall regressed for " + name + ": " + quality);
+        assertTrue(quality.meanAbsoluteErrorMillis() <= maxAbsoluteErrorMillis, "Timing error regressed for " + name + ": " + quality);
+    }
+}
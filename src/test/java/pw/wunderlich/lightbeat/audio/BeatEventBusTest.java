@@ -0,0 +1,230 @@
+package pw.wunderlich.lightbeat.audio;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BeatEventBusTest {
+
+    private static final BeatEvent BEAT = new BeatEvent(0.5d, 0.2d);
+    private static final BeatEvent NO_BEAT = new BeatEvent(0.2d);
+    private static final BeatEvent SILENCE = new BeatEvent();
+
+    private BeatEventBus bus;
+
+    @AfterEach
+    void tearDown() {
+        if (bus != null) {
+            bus.close();
+        }
+    }
+
+    @Test
+    void eventsAreDispatchedInOrder() throws InterruptedException {
+        bus = new BeatEventBus(1024, false);
+        RecordingObserver observer = new RecordingObserver();
+        bus.registerBeatObserver(observer);
+
+        for (int i = 0; i < 100; i++) {
+            bus.publishBeatEvent(BEAT);
+            bus.publishBeatEvent(NO_BEAT);
+            bus.publishBeatEvent(SILENCE);
+        }
+        bus.publishStopped(BeatObserver.StopStatus.USER);
+        observer.awaitStop();
+
+        assertEquals(301, observer.calls.size());
+        for (int i = 0; i < 300; i += 3) {
+            assertEquals(List.of("beat", "noBeat", "silence"), observer.calls.subList(i, i + 3));
+        }
+        assertEquals("stopped USER", observer.calls.get(300));
+
+        BeatEventBus.Metrics metrics = bus.getMetrics();
+        assertEquals(301, metrics.published());
+        assertEquals(301, metrics.dispatched());
+        assertEquals(0, metrics.dropped());
+        assertEquals(0, metrics.coalesced());
+    }
+
+    @Test
+    void staleEventsAreCoalesced() throws InterruptedException {
+        bus = new BeatEventBus(64, true);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingObserver observer = new RecordingObserver() {
+            @Override
+            public void beatReceived(BeatEvent event) {
+                super.beatReceived(event);
+                if (calls.size() == 1) {
+                    blocked.countDown();
+                    await(release);
+                }
+            }
+        };
+        bus.registerBeatObserver(observer);
+
+        bus.publishBeatEvent(BEAT);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        // queued while the consumer is busy
+        bus.publishBeatEvent(NO_BEAT);
+        bus.publishBeatEvent(NO_BEAT);
+        bus.publishBeatEvent(SILENCE);
+        bus.publishBeatEvent(SILENCE);
+        bus.publishBeatEvent(BEAT);
+        bus.publishBeatEvent(NO_BEAT);
+        bus.publishStopped(BeatObserver.StopStatus.USER);
+        release.countDown();
+        observer.awaitStop();
+
+        assertEquals(List.of("beat", "silence", "beat", "noBeat", "stopped USER"), observer.calls);
+        assertEquals(3, bus.getMetrics().coalesced());
+    }
+
+    @Test
+    void fullQueueDropsEventsWithoutBlocking() throws InterruptedException {
+        bus = new BeatEventBus(4, false);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingObserver observer = new RecordingObserver() {
+            @Override
+            public void beatReceived(BeatEvent event) {
+                super.beatReceived(event);
+                if (calls.size() == 1) {
+                    blocked.countDown();
+                    await(release);
+                }
+            }
+        };
+        bus.registerBeatObserver(observer);
+
+        bus.publishBeatEvent(BEAT);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            bus.publishBeatEvent(NO_BEAT);
+        }
+
+        BeatEventBus.Metrics metrics = bus.getMetrics();
+        assertEquals(6, metrics.dropped());
+        assertEquals(4, metrics.queueDepth());
+        assertEquals(4, metrics.maxQueueDepth());
+
+        release.countDown();
+        bus.publishStopped(BeatObserver.StopStatus.USER);
+        observer.awaitStop();
+        assertEquals(6, observer.calls.size());
+    }
+
+    @Test
+    void stopOnlyReachesObserversRegisteredBefore() throws InterruptedException {
+        bus = new BeatEventBus(16, false);
+        RecordingObserver first = new RecordingObserver();
+        bus.registerBeatObserver(first);
+
+        bus.publishBeatEvent(BEAT);
+        bus.publishStopped(BeatObserver.StopStatus.ERROR);
+        RecordingObserver second = new RecordingObserver();
+        bus.registerBeatObserver(second);
+        bus.publishBeatEvent(BEAT);
+        bus.publishStopped(BeatObserver.StopStatus.USER);
+
+        first.awaitStop();
+        second.awaitStop();
+        assertEquals(List.of("beat", "stopped ERROR"), first.calls);
+        assertEquals(List.of("beat", "stopped USER"), second.calls);
+    }
+
+    @Test
+    void failingObserverDoesNotStopDispatch() throws InterruptedException {
+        bus = new BeatEventBus(16, false);
+        bus.registerBeatObserver(new RecordingObserver() {
+            @Override
+            public void beatReceived(BeatEvent event) {
+                throw new IllegalStateException("test");
+            }
+        });
+        RecordingObserver observer = new RecordingObserver();
+        bus.registerBeatObserver(observer);
+
+        bus.publishBeatEvent(BEAT);
+        bus.publishBeatEvent(BEAT);
+        bus.publishStopped(BeatObserver.StopStatus.USER);
+        observer.awaitStop();
+        assertEquals(List.of("beat", "beat", "stopped USER"), observer.calls);
+    }
+
+    @Test
+    void directBusDispatchesOnPublishingThread() {
+        bus = BeatEventBus.createDirect();
+        RecordingObserver observer = new RecordingObserver();
+        bus.registerBeatObserver(observer);
+
+        bus.publishOnset(BEAT);
+        bus.publishOnsetRetracted();
+        bus.publishSection(Section.DROP);
+        bus.publishBeatEvent(BEAT);
+        assertEquals(List.of("onset", "onsetRetracted", "section DROP", "beat"), observer.calls);
+        assertEquals(4, bus.getMetrics().dispatched());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private static class RecordingObserver implements BeatObserver {
+
+        final List<String> calls = new CopyOnWriteArrayList<>();
+        private final CountDownLatch stopped = new CountDownLatch(1);
+
+        void awaitStop() throws InterruptedException {
+            assertTrue(stopped.await(5, TimeUnit.SECONDS), "Stop was not dispatched");
+        }
+
+        @Override
+        public void beatReceived(BeatEvent event) {
+            calls.add("beat");
+        }
+
+        @Override
+        public void onsetDetected(BeatEvent event) {
+            calls.add("onset");
+        }
+
+        @Override
+        public void onsetRetracted() {
+            calls.add("onsetRetracted");
+        }
+
+        @Override
+        public void noBeatReceived() {
+            calls.add("noBeat");
+        }
+
+        @Override
+        public void silenceDetected() {
+            calls.add("silence");
+        }
+
+        @Override
+        public void sectionChanged(Section section) {
+            calls.add("section " + section);
+        }
+
+        @Override
+        public void audioReaderStopped(StopStatus status) {
+            calls.add("stopped " + status);
+            stopped.countDown();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package pw.wunderlich.lightbeat.audio;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BeatFlywheelTest {
+
+    private static final int UPDATES_PER_SECOND = 50;
+    private static final long UPDATE_MILLIS = 1000L / UPDATES_PER_SECOND;
+    private static final long BEAT_MILLIS = 500L;
+
+    private TempoTracker tempoTracker;
+    private BeatFlywheel flywheel;
+    private long time;
+
+    @BeforeEach
+    void setUp() {
+        tempoTracker = new TempoTracker();
+        flywheel = new BeatFlywheel(tempoTracker, UPDATES_PER_SECOND);
+        time = 0L;
+    }
+
+    @Test
+    void noBeatsWithoutTempo() {
+        beat();
+        assertFalse(flywheel.isRunning(4));
+        assertTrue(run(5000L, 4).isEmpty());
+    }
+
+    @Test
+    void beatsAreGeneratedOnTheGrid() {
+        beats(16);
+        long lastBeat = time;
+
+        List<Long> generated = run(3000L, 4);
+        assertEquals(5, generated.size());
+        for (int i = 0; i < generated.size(); i++) {
+            assertEquals(lastBeat + (i + 2) * BEAT_MILLIS, generated.get(i), UPDATE_MILLIS);
+        }
+    }
+
+    @Test
+    void generationStopsAfterBars() {
+        beats(16);
+        assertEquals(8, run(10000L, 2).size());
+        assertFalse(flywheel.isRunning(2));
+    }
+
+    @Test
+    void zeroBarsDisablesGeneration() {
+        beats(16);
+        assertFalse(flywheel.isRunning(0));
+        assertTrue(run(5000L, 0).isEmpty());
+    }
+
+    @Test
+    void detectedBeatTakesOver() {
+        beats(16);
+        assertEquals(2, run(1800L, 4).size());
+
+        // detected slightly off the generated grid, the next beats follow the detected beat
+        time += 30L;
+        flywheel.beatAccepted(time);
+        long detectedBeat = time;
+        List<Long> generated = run(1200L, 4);
+        assertEquals(1, generated.size());
+        assertEquals(detectedBeat + 2 * BEAT_MILLIS, generated.get(0), UPDATE_MILLIS);
+    }
+
+    @Test
+    void resetStopsGeneration() {
+        beats(16);
+        flywheel.reset();
+        assertTrue(run(5000L, 4).isEmpty());
+    }
+
+    private void beats(int count) {
+        for (int i = 0; i < count; i++) {
+            time += BEAT_MILLIS;
+            beat();
+        }
+    }
+
+    private void beat() {
+        tempoTracker.beatAccepted(time);
+        flywheel.beatAccepted(time);
+    }
+
+    /**
+     * Advances the flywheel in steps of one audio chunk.
+     *
+     * @return times at which beats were generated
+     */
+    private List<Long> run(long millis, int maxBars) {
+        List<Long> generated = new ArrayList<>();
+        long end = time + millis;
+        while (time < end) {
+            time += UPDATE_MILLIS;
+            if (flywheel.update(time, maxBars)) {
+                generated.add(time);
+            }
+        }
+        return generated;
+    }
+}
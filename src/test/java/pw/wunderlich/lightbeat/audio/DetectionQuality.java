@@ -0,0 +1,74 @@
+package pw.wunderlich.lightbeat.audio;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares detected beats with annotated onsets. A detected beat matches the closest unmatched onset
+ * if it is within the tolerance, timing errors are only measured for matched beats.
+ *
+ * @param truePositives    detected beats that match an onset
+ * @param falsePositives   detected beats without matching onset
+ * @param falseNegatives   onsets that were not detected
+ * @param meanErrorMillis  average signed delay of matched beats, positive if detected late
+ * @param meanAbsoluteErrorMillis average absolute delay of matched beats
+ */
+public record DetectionQuality(int truePositives, int falsePositives, int falseNegatives,
+                               double meanErrorMillis, double meanAbsoluteErrorMillis) {
+
+    /**
+     * Onsets and beats before this time are ignored, as the detector is still calibrating.
+     */
+    public static final long CALIBRATION_MILLIS = 2000L;
+
+    public static DetectionQuality evaluate(List<Long> onsetMillis, List<Long> detectedMillis, long toleranceMillis) {
+        List<Long> onsets = onsetMillis.stream().filter(time -> time >= CALIBRATION_MILLIS).toList();
+        List<Long> detected = detectedMillis.stream().filter(time -> time >= CALIBRATION_MILLIS - toleranceMillis).toList();
+
+        int truePositives = 0;
+        long errorSum = 0L;
+        long absoluteErrorSum = 0L;
+
+        // both lists are sorted, so beats are matched in a single pass
+        int onsetIndex = 0;
+        for (long beat : detected) {
+            while (onsetIndex < onsets.size() && onsets.get(onsetIndex) < beat - toleranceMillis) {
+                onsetIndex++;
+            }
+            if (onsetIndex < onsets.size() && Math.abs(beat - onsets.get(onsetIndex)) <= toleranceMillis) {
+                long error = beat - onsets.get(onsetIndex);
+                truePositives++;
+                errorSum += error;
+                absoluteErrorSum += Math.abs(error);
+                onsetIndex++;
+            }
+        }
+
+        int falsePositives = detected.size() - truePositives;
+        int falseNegatives = onsets.size() - truePositives;
+        double meanError = truePositives > 0 ? (double) errorSum / truePositives : 0d;
+        double meanAbsoluteError = truePositives > 0 ? (double) absoluteErrorSum / truePositives : 0d;
+        return new DetectionQuality(truePositives, falsePositives, falseNegatives, meanError, meanAbsoluteError);
+    }
+
+    public double precision() {
+        int detected = truePositives + falsePositives;
+        return detected > 0 ? (double) truePositives / detected : 0d;
+    }
+
+    public double recall() {
+        int onsets = truePositives + falseNegatives;
+        return onsets > 0 ? (double) truePositives / onsets : 0d;
+    }
+
+    public double fMeasure() {
+        double sum = precision() + recall();
+        return sum > 0d ? 2d * precision() * recall() / sum : 0d;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "precision %.3f, recall %.3f, f-measure %.3f, timing error %.1fms (abs %.1fms)",
+                precision(), recall(), fMeasure(), meanErrorMillis, meanAbsoluteErrorMillis);
+    }
+}
@@ -0,0 +1,81 @@
+package pw.wunderlich.lightbeat.audio;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FastOnsetDetectorTest {
+
+    private static final double SAMPLE_RATE = 44100d;
+
+    private FastOnsetDetector detector;
+    private int sampleIndex;
+
+    @BeforeEach
+    void setUp() {
+        detector = new FastOnsetDetector(SAMPLE_RATE, 120d);
+        sampleIndex = 0;
+    }
+
+    @Test
+    void kickOnsetIsDetectedWithinFewMillis() {
+        List<Integer> onsets = new ArrayList<>();
+        onsets.addAll(feed(0d, 0d, 500));
+        int kickStart = sampleIndex;
+        onsets.addAll(feed(55d, 0.5d, 100));
+
+        assertEquals(1, onsets.size());
+        assertTrue(toMillis(onsets.get(0) - kickStart) <= 5d, "Onset after " + toMillis(onsets.get(0) - kickStart) + "ms");
+    }
+
+    @Test
+    void sustainedToneIsOnlyDetectedOnce() {
+        assertEquals(1, feed(55d, 0.5d, 2000).size());
+    }
+
+    @Test
+    void detectorIsArmedAgainAfterDecay() {
+        List<Integer> onsets = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            onsets.addAll(feed(55d, 0.5d, 100));
+            onsets.addAll(feed(0d, 0d, 400));
+        }
+        assertEquals(4, onsets.size());
+    }
+
+    @Test
+    void highFrequenciesAreIgnored() {
+        feed(0d, 0d, 500);
+        assertTrue(feed(4000d, 0.5d, 500).isEmpty());
+    }
+
+    @Test
+    void quietSignalIsIgnored() {
+        feed(0d, 0d, 500);
+        assertTrue(feed(55d, 0.002d, 500).isEmpty());
+    }
+
+    /**
+     * @return indices of the samples that were detected as onset
+     */
+    private List<Integer> feed(double frequency, double amplitude, int millis) {
+        List<Integer> onsets = new ArrayList<>();
+        int samples = (int) (SAMPLE_RATE * millis / 1000d);
+        for (int i = 0; i < samples; i++) {
+            double sample = amplitude * Math.sin(2d * Math.PI * frequency * i / SAMPLE_RATE);
+            if (detector.process(sample)) {
+                onsets.add(sampleIndex);
+            }
+            sampleIndex++;
+        }
+        return onsets;
+    }
+
+    private static double toMillis(int samples) {
+        return samples * 1000d / SAMPLE_RATE;
+    }
+}
@@ -0,0 +1,114 @@
+package pw.wunderlich.lightbeat.audio;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pw.wunderlich.lightbeat.config.Config;
+import pw.wunderlich.lightbeat.config.ConfigSnapshot;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OfflineBeatAnalyzerTest {
+
+    private static final float SAMPLE_RATE = 44100f;
+    private static final int BEAT_INTERVAL_MS = 500;
+
+    @TempDir
+    Path tempDir;
+
+    private OfflineBeatAnalyzer analyzer;
+
+    @BeforeEach
+    void setUp() {
+        Config config = mock(Config.class);
+        when(config.getSnapshot()).thenReturn(new ConfigSnapshot(5, false, 200, false, false, 0, 1, 254, 5, 5, 5, 3, null));
+        analyzer = new OfflineBeatAnalyzer(config);
+    }
+
+    @Test
+    void analyzeDetectsTempo() throws IOException {
+        Path file = writeWave("kicks.wav", 20, 0, 1);
+        BeatAnalysis analysis = analyzer.analyze(file);
+
+        assertEquals(20000L, analysis.durationMillis(), 10L);
+        // detector needs a few seconds to calibrate
+        assertTrue(analysis.beats().size() >= 30, "Detected only " + analysis.beats().size() + " beats");
+        assertEquals(120d, analysis.getBeatsPerMinute(), 2d);
+        assertTrue(analysis.segments().isEmpty());
+    }
+
+    @Test
+    void analyzeStereoFile() throws IOException {
+        Path file = writeWave("kicks_stereo.wav", 10, 0, 2);
+        BeatAnalysis analysis = analyzer.analyze(file);
+
+        assertEquals(10000L, analysis.durationMillis(), 10L);
+        assertEquals(120d, analysis.getBeatsPerMinute(), 2d);
+    }
+
+    @Test
+    void analyzeDetectsSilence() throws IOException {
+        Path file = writeWave("kicks_then_silence.wav", 10, 5, 1);
+        BeatAnalysis analysis = analyzer.analyze(file);
+
+        assertEquals(15000L, analysis.durationMillis(), 10L);
+        assertTrue(analysis.getSegmentMillis(BeatAnalysis.Segment.Type.SILENCE) > 3000L);
+        assertEquals(15000L, analysis.segments().getLast().endMillis(), 10L);
+        analysis.beats().forEach(beat -> assertTrue(beat.timeMillis() <= 10100L));
+    }
+
+    @Test
+    void analyzeUnsupportedFile() throws IOException {
+        Path file = tempDir.resolve("not_audio.wav");
+        Files.writeString(file, "not audio");
+        assertThrows(IOException.class, () -> analyzer.analyze(file));
+    }
+
+    /**
+     * Writes a 16 bit wave file with a 60hz kick every {@link #BEAT_INTERVAL_MS} over low noise,
+     * followed by the given amount of digital silence.
+     */
+    private Path writeWave(String name, int kickSeconds, int silenceSeconds, int channels) throws IOException {
+        Random rnd = new Random(1);
+        int frames = (int) (SAMPLE_RATE * (kickSeconds + silenceSeconds));
+        int kickFrames = (int) (SAMPLE_RATE * kickSeconds);
+        int beatFrames = (int) (SAMPLE_RATE * BEAT_INTERVAL_MS / 1000);
+        int kickLength = (int) (SAMPLE_RATE / 10);
+
+        byte[] data = new byte[frames * channels * 2];
+        for (int frame = 0; frame < kickFrames; frame++) {
+            int sinceKick = frame % beatFrames;
+            double sample = (rnd.nextDouble() - 0.5d) * 0.02d;
+            if (sinceKick < kickLength) {
+                double envelope = 1d - (double) sinceKick / kickLength;
+                sample += 0.3d * envelope * Math.sin(2 * Math.PI * 60d * sinceKick / SAMPLE_RATE);
+            }
+
+            short value = (short) (sample * Short.MAX_VALUE);
+            for (int channel = 0; channel < channels; channel++) {
+                int index = (frame * channels + channel) * 2;
+                data[index] = (byte) value;
+                data[index + 1] = (byte) (value >> 8);
+            }
+        }
+
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, channels, true, false);
+        Path file = tempDir.resolve(name);
+        try (AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(data), format, frames)) {
+            AudioSystem.write(stream, AudioFileFormat.Type.WAVE, file.toFile());
+        }
+        return file;
+    }
+}
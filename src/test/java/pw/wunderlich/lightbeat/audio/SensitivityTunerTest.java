@@ -0,0 +1,75 @@
+package pw.wunderlich.lightbeat.audio;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SensitivityTunerTest {
+
+    private static final int UPDATES_PER_SECOND = 50;
+
+    @Test
+    void tooManyBeatsRaiseMultiplier() {
+        SensitivityTuner tuner = new SensitivityTuner(UPDATES_PER_SECOND, 1.4d);
+        // 5 beats per second, target is 2
+        double multiplier = run(tuner, 10, 12, 2d);
+        assertEquals(5d, tuner.getBeatsPerSecond(), 0.2d);
+        assertTrue(multiplier > 1.4d);
+    }
+
+    @Test
+    void tooFewBeatsLowerMultiplier() {
+        SensitivityTuner tuner = new SensitivityTuner(UPDATES_PER_SECOND, 1.4d);
+        double multiplier = run(tuner, 50, 12, 2d);
+        assertTrue(multiplier < 1.4d);
+    }
+
+    @Test
+    void matchingRateKeepsMultiplier() {
+        SensitivityTuner tuner = new SensitivityTuner(UPDATES_PER_SECOND, 1.4d);
+        assertEquals(1.4d, run(tuner, 25, 30, 2d));
+    }
+
+    @Test
+    void stepsAreBounded() {
+        SensitivityTuner tuner = new SensitivityTuner(UPDATES_PER_SECOND, 1.4d);
+        // beat on every chunk, far above the target
+        double multiplier = run(tuner, 1, 10, 1d);
+        double maxChange = 0.0005d * (UPDATES_PER_SECOND * 2 + 1);
+        assertTrue(multiplier - 1.4d <= maxChange + 1e-9, "Changed by " + (multiplier - 1.4d));
+    }
+
+    @Test
+    void multiplierIsClamped() {
+        SensitivityTuner tuner = new SensitivityTuner(UPDATES_PER_SECOND, 1.4d);
+        assertEquals(SensitivityTuner.MAX_MULTIPLIER, run(tuner, 1, 120, 1d));
+
+        tuner.reset(1.4d);
+        assertEquals(SensitivityTuner.MIN_MULTIPLIER, run(tuner, 500, 120, 3d));
+
+        tuner.reset(5d);
+        assertEquals(SensitivityTuner.MAX_MULTIPLIER, tuner.getMultiplier());
+    }
+
+    @Test
+    void inactiveChunksAreIgnored() {
+        SensitivityTuner tuner = new SensitivityTuner(UPDATES_PER_SECOND, 1.4d);
+        for (int i = 0; i < UPDATES_PER_SECOND * 20; i++) {
+            assertEquals(1.4d, tuner.update(0, false, 2d));
+        }
+        assertEquals(0d, tuner.getBeatsPerSecond());
+    }
+
+    /**
+     * Feeds a beat every given amount of chunks for the given amount of seconds.
+     *
+     * @return the final multiplier
+     */
+    private static double run(SensitivityTuner tuner, int chunksPerBeat, int seconds, double targetBeatsPerSecond) {
+        double multiplier = tuner.getMultiplier();
+        for (int i = 0; i < UPDATES_PER_SECOND * seconds; i++) {
+            multiplier = tuner.update(i % chunksPerBeat == 0 ? 1 : 0, true, targetBeatsPerSecond);
+        }
+        return multiplier;
+    }
+}
@@ -0,0 +1,204 @@
+package pw.wunderlich.lightbeat.audio;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthesized mono test signal with known kick onsets, used as annotated input for detection quality tests
+ * and benchmarks. Built section by section, noise, pad and accent settings apply to all following sections.
+ */
+public class SyntheticSignal {
+
+    public static final float SAMPLE_RATE = 44100f;
+
+    private static final double KICK_FREQUENCY = 55d;
+    private static final double KICK_LENGTH_SECONDS = 0.12d;
+    private static final double[] PAD_FREQUENCIES = {220d, 277.2d, 329.6d};
+
+    private final double[] samples;
+    private final List<Long> onsetMillis;
+
+
+    private SyntheticSignal(double[] samples, List<Long> onsetMillis) {
+        this.samples = samples;
+        this.onsetMillis = onsetMillis;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public long getDurationMillis() {
+        return (long) (samples.length * 1000d / SAMPLE_RATE);
+    }
+
+    /**
+     * @return start times of all kicks in milliseconds
+     */
+    public List<Long> getOnsetMillis() {
+        return onsetMillis;
+    }
+
+    /**
+     * @return signal as little endian signed 16 bit PCM
+     */
+    public byte[] toPcm() {
+        byte[] pcm = new byte[samples.length * 2];
+        for (int i = 0; i < samples.length; i++) {
+            short value = (short) (Math.max(-1d, Math.min(1d, samples[i])) * Short.MAX_VALUE);
+            pcm[i * 2] = (byte) value;
+            pcm[i * 2 + 1] = (byte) (value >> 8);
+        }
+        return pcm;
+    }
+
+    public Path writeWave(Path file) throws IOException {
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+        try (AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(toPcm()), format, samples.length)) {
+            AudioSystem.write(stream, AudioFileFormat.Type.WAVE, file.toFile());
+        }
+        return file;
+    }
+
+
+    public static class Builder {
+
+        private final Random rnd = new Random(1);
+
+        private double[] samples = new double[(int) SAMPLE_RATE * 30];
+        private int length = 0;
+        private final List<Long> onsetMillis = new ArrayList<>();
+
+        private double noiseLevel = 0.01d;
+        private double padLevel = 0d;
+        private double hatLevel = 0d;
+        private double[] accents = {1d};
+
+        private Builder() {}
+
+        /**
+         * @param level amplitude of white noise
+         */
+        public Builder noise(double level) {
+            this.noiseLevel = level;
+            return this;
+        }
+
+        /**
+         * @param level amplitude of a sustained chord above the bass range
+         */
+        public Builder pad(double level) {
+            this.padLevel = level;
+            return this;
+        }
+
+        /**
+         * @param level amplitude of short high frequency noise bursts between kicks
+         */
+        public Builder hats(double level) {
+            this.hatLevel = level;
+            return this;
+        }
+
+        /**
+         * @param accents amplitude multipliers cycled through for consecutive kicks
+         */
+        public Builder accents(double... accents) {
+            this.accents = accents.clone();
+            return this;
+        }
+
+        public Builder kicks(double bpm, double seconds, double amplitude) {
+            int start = length;
+            int end = append(seconds);
+            int beatSamples = (int) Math.round(SAMPLE_RATE * 60d / bpm);
+            int kickSamples = (int) (SAMPLE_RATE * KICK_LENGTH_SECONDS);
+
+            int kick = 0;
+            for (int onset = start; onset < end; onset += beatSamples, kick++) {
+                onsetMillis.add((long) (onset * 1000d / SAMPLE_RATE));
+                double kickAmplitude = amplitude * accents[kick % accents.length];
+                for (int i = 0; i < kickSamples && onset + i < end; i++) {
+                    double envelope = Math.exp(-5d * i / kickSamples);
+                    samples[onset + i] += kickAmplitude * envelope * Math.sin(2 * Math.PI * KICK_FREQUENCY * i / SAMPLE_RATE);
+                }
+
+                // off beat hats, short enough to not mask the next kick
+                int hatStart = onset + beatSamples / 2;
+                for (int i = 0; i < kickSamples / 4 && hatStart + i < end; i++) {
+                    samples[hatStart + i] += hatLevel * (1d - (double) i / (kickSamples / 4)) * (rnd.nextDouble() * 2d - 1d);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Section without kicks, noise and pad continue.
+         */
+        public Builder rest(double seconds) {
+            append(seconds);
+            return this;
+        }
+
+        /**
+         * Section without kicks with noise rising from the current noise level to the given level,
+         * like the riser of a build-up. Noise and pad continue.
+         */
+        public Builder riser(double seconds, double level) {
+            int start = length;
+            int end = append(seconds);
+            for (int i = start; i < end; i++) {
+                double progress = (double) (i - start) / (end - start);
+                samples[i] += progress * (level - noiseLevel) * (rnd.nextDouble() * 2d - 1d);
+            }
+            return this;
+        }
+
+        /**
+         * Section of digital silence.
+         */
+        public Builder silence(double seconds) {
+            int start = length;
+            int end = append(seconds);
+            Arrays.fill(samples, start, end, 0d);
+            return this;
+        }
+
+        public SyntheticSignal build() {
+            return new SyntheticSignal(Arrays.copyOf(samples, length), List.copyOf(onsetMillis));
+        }
+
+        /**
+         * Appends a section containing noise and pad.
+         *
+         * @return end index of the appended section
+         */
+        private int append(double seconds) {
+            int start = length;
+            int end = start + (int) (SAMPLE_RATE * seconds);
+            if (end > samples.length) {
+                samples = Arrays.copyOf(samples, Math.max(end, samples.length * 2));
+            }
+
+            for (int i = start; i < end; i++) {
+                double sample = noiseLevel * (rnd.nextDouble() * 2d - 1d);
+                for (double frequency : PAD_FREQUENCIES) {
+                    sample += padLevel / PAD_FREQUENCIES.length * Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE);
+                }
+                samples[i] = sample;
+            }
+
+            length = end;
+            return end;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package pw.wunderlich.lightbeat.audio;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TempoTrackerTest {
+
+    private TempoTracker tempoTracker;
+
+    @BeforeEach
+    void setUp() {
+        tempoTracker = new TempoTracker();
+    }
+
+    @Test
+    void noBeatsHaveNoTempo() {
+        tempoTracker.beatAccepted(1000L);
+        assertEquals(0d, tempoTracker.getBeatsPerMinute());
+        assertEquals(0d, tempoTracker.getConfidence());
+    }
+
+    @Test
+    void steadyBeatsAreDetected() {
+        addBeats(0L, 500L, 20);
+        assertEquals(120d, tempoTracker.getBeatsPerMinute(), 2d);
+        assertEquals(1d, tempoTracker.getConfidence(), 0.001d);
+    }
+
+    @Test
+    void halfAndDoubleTimeAreFolded() {
+        // every second kick at 128 bpm, then additional off beats
+        long time = addBeats(0L, 60000L / 64, 10);
+        addBeats(time, 60000L / 256, 10);
+        assertEquals(128d, tempoTracker.getBeatsPerMinute(), 3d);
+        assertTrue(tempoTracker.getConfidence() > 0.9d);
+    }
+
+    @Test
+    void tempoChangeIsFollowed() {
+        long time = addBeats(0L, 500L, 30);
+        addBeats(time, 60000L / 140, 60);
+        assertEquals(140d, tempoTracker.getBeatsPerMinute(), 2d);
+    }
+
+    @Test
+    void irregularBeatsHaveLowConfidence() {
+        long[] intervals = {370L, 410L, 450L, 520L, 590L, 640L};
+        long time = 0L;
+        for (int i = 0; i < 30; i++) {
+            time += intervals[i % intervals.length];
+            tempoTracker.beatAccepted(time);
+        }
+        assertTrue(tempoTracker.getConfidence() < 0.5d, "Confidence " + tempoTracker.getConfidence());
+    }
+
+    @Test
+    void longGapsAreIgnored() {
+        long time = addBeats(0L, 500L, 10);
+        tempoTracker.beatAccepted(time + 8000L);
+        assertEquals(1d, tempoTracker.getConfidence(), 0.001d);
+    }
+
+    private long addBeats(long startMillis, long intervalMillis, int count) {
+        long time = startMillis;
+        for (int i = 0; i < count; i++) {
+            time += intervalMillis;
+            tempoTracker.beatAccepted(time);
+        }
+        return time;
+    }
+}
@@ -0,0 +1,145 @@
+package pw.wunderlich.lightbeat.hue.bridge;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpsServer;
+import io.github.zeroone3010.yahueapi.AlertType;
+import io.github.zeroone3010.yahueapi.State;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncBridgeClientTest {
+
+    private final List<String> requests = new ArrayList<>();
+    private final Set<Integer> clientPorts = new HashSet<>();
+
+    private HttpsServer server;
+    private AsyncBridgeClient client;
+    private volatile String responseBody = "[{\"success\":{}}]";
+
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setHttpsConfigurator(TestCertificate.createConfigurator());
+        server.createContext("/api/key/", this::handle);
+        server.createContext("/clip/v2/", this::handle);
+        server.start();
+        client = new AsyncBridgeClient(getApiUri(), TestCertificate.HASH);
+    }
+
+    private URI getApiUri() {
+        return URI.create("https://127.0.0.1:" + server.getAddress().getPort() + "/api/key/");
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        synchronized (requests) {
+            String applicationKey = exchange.getRequestHeaders().getFirst("hue-application-key");
+            requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath() + " " + body
+                    + (applicationKey != null ? "key=" + applicationKey : ""));
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+        }
+
+        byte[] response = responseBody.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, response.length);
+        exchange.getResponseBody().write(response);
+        exchange.close();
+    }
+
+    @Test
+    void stateIsSentToLight() throws Exception {
+        State state = new State.Builder().transitionTime(2).on(true).brightness(100).hue(1000).saturation(254).build();
+        client.setLightState("7", state).get(5L, TimeUnit.SECONDS);
+
+        assertEquals(List.of("PUT /api/key/lights/7/state {\"on\":true,\"bri\":100,\"hue\":1000,\"sat\":254,\"transitiontime\":2}"),
+                requests);
+    }
+
+    @Test
+    void alertIsSentAsAction() {
+        State state = new State.Builder().transitionTime(0).alert(AlertType.SHORT_ALERT).build();
+        assertEquals("{\"alert\":\"select\",\"transitiontime\":0}", AsyncBridgeClient.toJson(state));
+    }
+
+    @Test
+    void rejectedCommandFails() {
+        responseBody = "[{\"error\":{\"type\":201,\"description\":\"parameter, bri, is not modifiable\"}}]";
+        var future = client.setLightState("1", new State.Builder().brightness(1).build());
+
+        var exception = assertThrows(ExecutionException.class, () -> future.get(5L, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, exception.getCause());
+    }
+
+    @Test
+    void connectionCheckRequestsConfig() throws Exception {
+        client.checkConnection().get(5L, TimeUnit.SECONDS);
+        assertEquals(List.of("GET /api/key/config "), requests);
+    }
+
+    @Test
+    void connectionCheckFailsIfBridgeIsUnreachable() {
+        server.stop(0);
+        var future = client.checkConnection();
+        assertThrows(ExecutionException.class, () -> future.get(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void resourceIsRequestedWithKeyHeader() throws Exception {
+        responseBody = "{\"errors\":[],\"data\":[]}";
+        assertEquals(responseBody, client.getResource("light").get(5L, TimeUnit.SECONDS));
+        assertEquals(List.of("GET /clip/v2/resource/light key=key"), requests);
+    }
+
+    @Test
+    void connectionIsReused() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            client.setLightState(Integer.toString(i), new State.Builder().brightness(i).build())
+                    .get(5L, TimeUnit.SECONDS);
+        }
+
+        assertEquals(5, requests.size());
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    void certificateHashMayContainColons() throws Exception {
+        String hash = TestCertificate.HASH.toUpperCase().replaceAll("(..)(?!$)", "$1:");
+        new AsyncBridgeClient(getApiUri(), hash).checkConnection().get(5L, TimeUnit.SECONDS);
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    void bridgeWithOtherCertificateIsNotTrusted() {
+        String otherHash = "00" + TestCertificate.HASH.substring(2);
+        var future = new AsyncBridgeClient(getApiUri(), otherHash).setLightState("1", new State.Builder().brightness(1).build());
+
+        assertThrows(ExecutionException.class, () -> future.get(5L, TimeUnit.SECONDS));
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    void plaintextAddressIsRejected() {
+        URI plaintextUri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/api/key/");
+        assertThrows(IllegalArgumentException.class, () -> new AsyncBridgeClient(plaintextUri, TestCertificate.HASH));
+    }
+}
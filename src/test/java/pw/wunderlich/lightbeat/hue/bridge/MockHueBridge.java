@@ -0,0 +1,511 @@
+package pw.wunderlich.lightbeat.hue.bridge;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpsServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in for a Hue bridge that serves the subset of the v1 REST API used by LightBeat over HTTPS, presenting
+ * the certificate of {@link #CERTIFICATE_HASH}:
+ * the full state, config, lights, light state changes, groups and group actions. Simulates a configurable amount
+ * of color lights and a single room containing all of them, as well as the latency, command rate limit and errors
+ * of a real bridge. Every received command is recorded with timestamps, see {@link #getCommands()}.
+ * <p>
+ * Can be run on its own via {@link #main(String[])}, to point a LightBeat instance or load tests at it.
+ */
+public class MockHueBridge implements AutoCloseable {
+
+    public static final String API_KEY = "lightbeat";
+    public static final String CERTIFICATE_HASH = TestCertificate.HASH;
+
+    private static final Pattern JSON_VALUE = Pattern.compile("\"(\\w+)\"\\s*:\\s*(\\[[^]]*]|\"[^\"]*\"|[^,}\\s]+)");
+
+    private final HttpsServer server;
+    private final ExecutorService executor;
+    private final Map<String, MockLight> lights = new TreeMap<>(Comparator.comparingInt(Integer::parseInt));
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final int commandsPerSecond;
+    private final double errorRate;
+
+    // guarded by this
+    private final List<Command> commands = new ArrayList<>();
+    private final Random random;
+    private double tokens;
+    private long lastRefillNanos;
+
+
+    private MockHueBridge(Builder builder) throws IOException {
+        for (int i = 1; i <= builder.lightCount; i++) {
+            lights.put(Integer.toString(i), new MockLight("Light " + i));
+        }
+        this.latencyMillis = builder.latencyMillis;
+        this.jitterMillis = builder.jitterMillis;
+        this.commandsPerSecond = builder.commandsPerSecond;
+        this.errorRate = builder.errorRate;
+        this.random = new Random(builder.seed);
+        this.tokens = commandsPerSecond;
+        this.lastRefillNanos = System.nanoTime();
+
+        server = HttpsServer.create(new InetSocketAddress(builder.address, builder.port), 0);
+        server.setHttpsConfigurator(TestCertificate.createConfigurator());
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/api", this::handle);
+        server.start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return base address of the API including the key, for example {@code https://127.0.0.1:8080/api/lightbeat/}
+     */
+    public URI getApiUri() {
+        InetSocketAddress address = server.getAddress();
+        return URI.create("https://" + address.getHostString() + ":" + address.getPort() + "/api/" + API_KEY + "/");
+    }
+
+    /**
+     * @return client that sends requests to this bridge and trusts its certificate
+     */
+    public AsyncBridgeClient createClient() {
+        return new AsyncBridgeClient(getApiUri(), CERTIFICATE_HASH);
+    }
+
+    /**
+     * @return all commands received so far, in the order they were answered
+     */
+    public synchronized List<Command> getCommands() {
+        return List.copyOf(commands);
+    }
+
+    public synchronized void clearCommands() {
+        commands.clear();
+    }
+
+    /**
+     * @param lightId id of the light, starting at 1
+     * @return current state of the light in the format of the API
+     */
+    public String getLightState(String lightId) {
+        MockLight light = lights.get(lightId);
+        synchronized (light) {
+            return light.stateJson();
+        }
+    }
+
+    /**
+     * @param lightId id of the light, starting at 1
+     * @return current brightness of the light
+     */
+    public int getBrightness(String lightId) {
+        MockLight light = lights.get(lightId);
+        synchronized (light) {
+            return light.brightness;
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long receivedNanos = System.nanoTime();
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+
+            sleepLatency();
+            String[] segments = path.substring("/api".length()).split("/");
+            Response response;
+            if (segments.length < 2 || !segments[1].equals(API_KEY)) {
+                response = error(200, 1, path, "unauthorized user");
+            } else if (method.equals("GET")) {
+                response = get(Arrays.copyOfRange(segments, 2, segments.length), path);
+            } else if (method.equals("PUT")) {
+                response = put(Arrays.copyOfRange(segments, 2, segments.length), path, body);
+            } else {
+                response = error(405, 4, path, "method, " + method + ", not available for resource, " + path);
+            }
+
+            if (!method.equals("GET")) {
+                synchronized (this) {
+                    commands.add(new Command(receivedNanos, System.nanoTime(), method, path, body, response.isAccepted()));
+                }
+            }
+
+            byte[] responseBytes = response.body().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(response.status(), responseBytes.length);
+            exchange.getResponseBody().write(responseBytes);
+        }
+    }
+
+    private void sleepLatency() {
+        long sleepMillis = latencyMillis;
+        if (jitterMillis > 0) {
+            synchronized (this) {
+                sleepMillis += random.nextLong(jitterMillis + 1);
+            }
+        }
+        if (sleepMillis > 0) {
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Response get(String[] resource, String path) {
+        if (resource.length == 0) {
+            return ok("{\"lights\":" + lightsJson() + ",\"groups\":" + groupsJson() + ",\"config\":" + configJson()
+                    + ",\"schedules\":{},\"scenes\":{},\"rules\":{},\"sensors\":{},\"resourcelinks\":{}}");
+        }
+
+        return switch (resource[0]) {
+            case "config" -> ok(configJson());
+            case "lights" -> {
+                if (resource.length == 1) {
+                    yield ok(lightsJson());
+                }
+                MockLight light = lights.get(resource[1]);
+                yield light != null ? ok(lightJson(light)) : notFound(path);
+            }
+            case "groups" -> {
+                if (resource.length == 1) {
+                    yield ok(groupsJson());
+                }
+                yield switch (resource[1]) {
+                    case "0" -> ok(groupJson("Group 0", "LightGroup"));
+                    case "1" -> ok(groupJson("Room", "Room"));
+                    default -> notFound(path);
+                };
+            }
+            default -> notFound(path);
+        };
+    }
+
+    private Response put(String[] resource, String path, String body) {
+        Collection<MockLight> targets;
+        if (resource.length == 3 && resource[0].equals("lights") && resource[2].equals("state")) {
+            MockLight light = lights.get(resource[1]);
+            if (light == null) {
+                return notFound(path);
+            }
+            targets = List.of(light);
+        } else if (resource.length == 3 && resource[0].equals("groups") && resource[2].equals("action")
+                && (resource[1].equals("0") || resource[1].equals("1"))) {
+            targets = lights.values();
+        } else {
+            return notFound(path);
+        }
+
+        synchronized (this) {
+            if (!acquireToken()) {
+                return error(503, 901, path, "Internal error, 503");
+            }
+            if (errorRate > 0d && random.nextDouble() < errorRate) {
+                return error(200, 901, path, "Internal error, 404");
+            }
+        }
+
+        Map<String, String> values = parse(body);
+        targets.forEach(light -> light.apply(values));
+        StringJoiner success = new StringJoiner(",", "[", "]");
+        values.forEach((key, value) ->
+                success.add("{\"success\":{\"" + path.substring(path.indexOf("/", 5)) + "/" + key + "\":" + value + "}}"));
+        return new Response(200, success.toString(), true);
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private boolean acquireToken() {
+        if (commandsPerSecond <= 0) {
+            return true;
+        }
+
+        long nowNanos = System.nanoTime();
+        tokens = Math.min(commandsPerSecond, tokens + (nowNanos - lastRefillNanos) * commandsPerSecond / 1e9d);
+        lastRefillNanos = nowNanos;
+        if (tokens < 1d) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    private static Map<String, String> parse(String body) {
+        Map<String, String> values = new LinkedHashMap<>();
+        Matcher matcher = JSON_VALUE.matcher(body);
+        while (matcher.find()) {
+            values.put(matcher.group(1), matcher.group(2));
+        }
+        return values;
+    }
+
+    private String configJson() {
+        return "{\"name\":\"Mock Bridge\",\"bridgeid\":\"001788FFFE000000\",\"modelid\":\"BSB002\","
+                + "\"apiversion\":\"1.50.0\",\"swversion\":\"1950207110\",\"mac\":\"00:17:88:00:00:00\","
+                + "\"ipaddress\":\"" + server.getAddress().getHostString() + "\",\"whitelist\":{\"" + API_KEY
+                + "\":{\"name\":\"LightBeat\"}}}";
+    }
+
+    private String lightsJson() {
+        StringJoiner json = new StringJoiner(",", "{", "}");
+        lights.keySet().forEach(id -> json.add("\"" + id + "\":" + lightJson(lights.get(id))));
+        return json.toString();
+    }
+
+    private static String lightJson(MockLight light) {
+        String state;
+        synchronized (light) {
+            state = light.stateJson();
+        }
+        return "{\"state\":" + state + ",\"type\":\"Extended color light\",\"name\":\"" + light.name
+                + "\",\"modelid\":\"LCT015\",\"manufacturername\":\"Signify Netherlands B.V.\",\"swversion\":\"1.88.1\"}";
+    }
+
+    private String groupsJson() {
+        return "{\"1\":" + groupJson("Room", "Room") + "}";
+    }
+
+    private String groupJson(String name, String type) {
+        StringJoiner lightIds = new StringJoiner(",", "[", "]");
+        lights.keySet().forEach(id -> lightIds.add("\"" + id + "\""));
+        return "{\"name\":\"" + name + "\",\"type\":\"" + type + "\",\"class\":\"Living room\",\"lights\":" + lightIds
+                + ",\"sensors\":[],\"state\":{\"all_on\":true,\"any_on\":true},\"action\":{\"on\":true}}";
+    }
+
+    private static Response ok(String body) {
+        return new Response(200, body, true);
+    }
+
+    private static Response notFound(String path) {
+        return error(404, 3, path, "resource, " + path + ", not available");
+    }
+
+    private static Response error(int status, int type, String path, String description) {
+        return new Response(status, "[{\"error\":{\"type\":" + type + ",\"address\":\"" + path
+                + "\",\"description\":\"" + description + "\"}}]", false);
+    }
+
+    /**
+     * Starts a bridge on all interfaces until the process is stopped.
+     *
+     * @param args amount of lights, port, latency in millis, jitter in millis, commands per second, error rate
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Builder builder = builder().address(new InetSocketAddress(0).getAddress());
+        builder.lights(args.length > 0 ? Integer.parseInt(args[0]) : 50);
+        builder.port(args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+        builder.latency(args.length > 2 ? Long.parseLong(args[2]) : 0L, args.length > 3 ? Long.parseLong(args[3]) : 0L);
+        builder.rateLimit(args.length > 4 ? Integer.parseInt(args[4]) : 0);
+        builder.errorRate(args.length > 5 ? Double.parseDouble(args[5]) : 0d);
+
+        try (MockHueBridge bridge = builder.start()) {
+            System.out.println("Serving " + bridge.lights.size() + " lights at " + bridge.getApiUri()
+                    + " with certificate hash " + CERTIFICATE_HASH);
+            while (true) {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(10L));
+                System.out.println(Summary.of(bridge.getCommands()));
+            }
+        }
+    }
+
+
+    /**
+     * @param receivedNanos  {@link System#nanoTime()} once the request was received
+     * @param respondedNanos {@link System#nanoTime()} once the response was ready
+     * @param method         HTTP method of the request
+     * @param path           path of the request
+     * @param body           body of the request
+     * @param isAccepted     false if the command was rejected due to the rate limit or an injected error
+     */
+    public record Command(long receivedNanos, long respondedNanos, String method, String path, String body,
+                          boolean isAccepted) {
+
+        public double latencyMillis() {
+            return (respondedNanos - receivedNanos) / 1e6d;
+        }
+    }
+
+    /**
+     * @param commands          amount of received commands
+     * @param rejected          amount of commands that were rejected
+     * @param commandsPerSecond received commands per second between the first and the last command
+     * @param maxLatencyMillis  longest time a command took to be answered
+     */
+    public record Summary(int commands, int rejected, double commandsPerSecond, double maxLatencyMillis) {
+
+        public static Summary of(List<Command> commands) {
+            if (commands.isEmpty()) {
+                return new Summary(0, 0, 0d, 0d);
+            }
+
+            long firstNanos = commands.stream().mapToLong(Command::receivedNanos).min().orElseThrow();
+            long lastNanos = commands.stream().mapToLong(Command::receivedNanos).max().orElseThrow();
+            double seconds = Math.max(lastNanos - firstNanos, 1L) / 1e9d;
+            return new Summary(commands.size(),
+                    (int) commands.stream().filter(command -> !command.isAccepted()).count(),
+                    commands.size() / seconds,
+                    commands.stream().mapToDouble(Command::latencyMillis).max().orElseThrow());
+        }
+
+        public double rejectionRate() {
+            return commands > 0 ? rejected / (double) commands : 0d;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d commands, %.1f%% rejected, %.1f/s, max latency %.1f ms",
+                    commands, rejectionRate() * 100d, commandsPerSecond, maxLatencyMillis);
+        }
+    }
+
+    public static class Builder {
+
+        private InetAddress address = InetAddress.getLoopbackAddress();
+        private int port = 0;
+        private int lightCount = 10;
+        private long latencyMillis = 0L;
+        private long jitterMillis = 0L;
+        private int commandsPerSecond = 0;
+        private double errorRate = 0d;
+        private long seed = 0L;
+
+
+        private Builder() {}
+
+        public Builder address(InetAddress address) {
+            this.address = address;
+            return this;
+        }
+
+        /**
+         * @param port to listen on, or 0 for a free port
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder lights(int lightCount) {
+            this.lightCount = lightCount;
+            return this;
+        }
+
+        /**
+         * @param latencyMillis time every request takes at least
+         * @param jitterMillis  maximum random time added to the latency
+         */
+        public Builder latency(long latencyMillis, long jitterMillis) {
+            this.latencyMillis = latencyMillis;
+            this.jitterMillis = jitterMillis;
+            return this;
+        }
+
+        /**
+         * @param commandsPerSecond commands accepted per second, with a burst of one second, or 0 for no limit
+         */
+        public Builder rateLimit(int commandsPerSecond) {
+            this.commandsPerSecond = commandsPerSecond;
+            return this;
+        }
+
+        /**
+         * @param errorRate probability of a command being answered with an error
+         */
+        public Builder errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        /**
+         * @param seed for the jitter and the injected errors
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public MockHueBridge start() throws IOException {
+            return new MockHueBridge(this);
+        }
+    }
+
+    private record Response(int status, String body, boolean isAccepted) {}
+
+    private static class MockLight {
+
+        private final String name;
+
+        // guarded by this
+        private boolean on = true;
+        private int brightness = 254;
+        private int hue = 0;
+        private int saturation = 0;
+        private String xy = "[0.3227,0.3290]";
+        private int ct = 366;
+        private String alert = "\"none\"";
+        private String colorMode = "hs";
+
+
+        private MockLight(String name) {
+            this.name = name;
+        }
+
+        private synchronized void apply(Map<String, String> values) {
+            values.forEach((key, value) -> {
+                switch (key) {
+                    case "on" -> on = Boolean.parseBoolean(value);
+                    case "bri" -> brightness = Integer.parseInt(value);
+                    case "hue" -> {
+                        hue = Integer.parseInt(value);
+                        colorMode = "hs";
+                    }
+                    case "sat" -> {
+                        saturation = Integer.parseInt(value);
+                        colorMode = "hs";
+                    }
+                    case "xy" -> {
+                        xy = value;
+                        colorMode = "xy";
+                    }
+                    case "ct" -> {
+                        ct = Integer.parseInt(value);
+                        colorMode = "ct";
+                    }
+                    case "alert" -> alert = value;
+                    default -> {}
+                }
+            });
+        }
+
+        /**
+         * Must be called while holding the lock.
+         */
+        private String stateJson() {
+            return "{\"on\":" + on + ",\"bri\":" + brightness + ",\"hue\":" + hue + ",\"sat\":" + saturation
+                    + ",\"effect\":\"none\",\"xy\":" + xy + ",\"ct\":" + ct + ",\"alert\":" + alert
+                    + ",\"colormode\":\"" + colorMode + "\",\"mode\":\"homeautomation\",\"reachable\":true}";
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package pw.wunderlich.lightbeat.hue.bridge;
+
+import io.github.zeroone3010.yahueapi.State;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MockHueBridgeTest {
+
+    @Test
+    void lightsAndGroupsAreServed() throws Exception {
+        try (MockHueBridge bridge = MockHueBridge.builder().lights(3).start()) {
+            HttpClient httpClient = HttpClient.newBuilder()
+                    .sslContext(PinnedTrustManager.createContext(MockHueBridge.CERTIFICATE_HASH))
+                    .build();
+            String lights = get(httpClient, bridge, "lights");
+            assertTrue(lights.contains("\"3\":{\"state\":{\"on\":true,\"bri\":254"), lights);
+            assertTrue(get(httpClient, bridge, "groups").contains("\"lights\":[\"1\",\"2\",\"3\"]"));
+            assertTrue(get(httpClient, bridge, "").contains("\"config\":{\"name\":\"Mock Bridge\""));
+        }
+    }
+
+    @Test
+    void commandsAreAppliedAndRecorded() throws Exception {
+        try (MockHueBridge bridge = MockHueBridge.builder().lights(2).start()) {
+            var client = bridge.createClient();
+            client.setLightState("2", new State.Builder().transitionTime(0).brightness(42).hue(1000).build())
+                    .get(5L, TimeUnit.SECONDS);
+
+            assertEquals(42, bridge.getBrightness("2"));
+            assertEquals(254, bridge.getBrightness("1"));
+            List<MockHueBridge.Command> commands = bridge.getCommands();
+            assertEquals(1, commands.size());
+            assertEquals("/api/" + MockHueBridge.API_KEY + "/lights/2/state", commands.get(0).path());
+            assertTrue(commands.get(0).isAccepted());
+        }
+    }
+
+    @Test
+    void latencyIsSimulated() throws Exception {
+        try (MockHueBridge bridge = MockHueBridge.builder().lights(1).latency(50L, 0L).start()) {
+            bridge.createClient().setLightState("1", new State.Builder().brightness(1).build())
+                    .get(5L, TimeUnit.SECONDS);
+            assertTrue(bridge.getCommands().get(0).latencyMillis() >= 50d);
+        }
+    }
+
+    @Test
+    void commandsAboveRateLimitAreRejected() throws Exception {
+        try (MockHueBridge bridge = MockHueBridge.builder().lights(1).rateLimit(2).start()) {
+            var client = bridge.createClient();
+            int failures = 0;
+            for (int i = 0; i < 10; i++) {
+                try {
+                    client.setLightState("1", new State.Builder().brightness(i).build()).get(5L, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    failures++;
+                }
+            }
+
+            assertTrue(failures >= 5, "Failures: " + failures);
+            assertEquals(failures, MockHueBridge.Summary.of(bridge.getCommands()).rejected());
+        }
+    }
+
+    @Test
+    void errorsAreInjected() throws Exception {
+        try (MockHueBridge bridge = MockHueBridge.builder().lights(1).errorRate(1d).start()) {
+            var future = bridge.createClient().setLightState("1", new State.Builder().brightness(1).build());
+            assertThrows(ExecutionException.class, () -> future.get(5L, TimeUnit.SECONDS));
+            assertEquals(254, bridge.getBrightness("1"));
+        }
+    }
+
+    private static String get(HttpClient httpClient, MockHueBridge bridge, String path) throws Exception {
+        var request = HttpRequest.newBuilder(bridge.getApiUri().resolve(path)).GET().build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+}
@@ -0,0 +1,72 @@
+package pw.wunderlich.lightbeat.hue.bridge;
+
+import com.sun.net.httpserver.HttpsConfigurator;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Base64;
+
+/**
+ * Self-signed certificate issued for a bridge id like the certificate of a real bridge, so it doesn't match
+ * the loopback address test servers are reached at.
+ */
+final class TestCertificate {
+
+    /**
+     * SHA-256 hash of {@link #CERTIFICATE} as hex.
+     */
+    static final String HASH = "d32e6abf46b7809cdfc90d0d47624c0f8570acfbc66f888b695aa9137c11aaa6";
+
+    private static final String CERTIFICATE = """
+            MIIBljCCATygAwIBAgIJAJ+ovnH7NgfgMAoGCCqGSM49BAMCMD4xCzAJBgNVBAYT
+            Ak5MMRQwEgYDVQQKEwtQaGlsaXBzIEh1ZTEZMBcGA1UEAxMQMDAxNzg4ZmZmZTAw
+            MDAwMDAgFw0yNjEwMTkxMjAxNDhaGA8yMTI2MDkyNTEyMDE0OFowPjELMAkGA1UE
+            BhMCTkwxFDASBgNVBAoTC1BoaWxpcHMgSHVlMRkwFwYDVQQDExAwMDE3ODhmZmZl
+            MDAwMDAwMFkwEwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAEPDx9pru4v2h7/DoLx9Jg
+            IIC5hs5WGXpGcWkmiCe/3zUiCnz7oCtdNTiGMQ5Je6AZnT7iqv2hBdmgLq/zWYRO
+            baMhMB8wHQYDVR0OBBYEFLeDYo5ujju+KueRSjswkRxBzVrMMAoGCCqGSM49BAMC
+            A0gAMEUCIEVInUi4XEkRhSSUAHBC+hCD5+xiBmruP+Klcr+qFl3hAiEArW3BZ3B4
+            ddQw8/1pjUrb6etb9ly93BCOelBz5ExGDwI=
+            """;
+    private static final String PRIVATE_KEY = """
+            MEECAQAwEwYHKoZIzj0CAQYIKoZIzj0DAQcEJzAlAgEBBCD9emYOww5Dcc7BKHEf
+            AZR2MIx5GSQIAOPwJtvqekyl9w==
+            """;
+
+
+    private TestCertificate() {}
+
+    /**
+     * @return configurator for an HTTPS server that presents the test certificate
+     */
+    static HttpsConfigurator createConfigurator() {
+        try {
+            Certificate certificate = CertificateFactory.getInstance("X.509")
+                    .generateCertificate(new ByteArrayInputStream(Base64.getMimeDecoder().decode(CERTIFICATE)));
+            PrivateKey privateKey = KeyFactory.getInstance("EC")
+                    .generatePrivate(new PKCS8EncodedKeySpec(Base64.getMimeDecoder().decode(PRIVATE_KEY)));
+
+            char[] password = new char[0];
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(null, password);
+            keyStore.setKeyEntry("bridge", privateKey, password, new Certificate[]{certificate});
+            KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(keyStore, password);
+
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keyManagerFactory.getKeyManagers(), null, null);
+            return new HttpsConfigurator(context);
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Could not load test certificate", e);
+        }
+    }
+}
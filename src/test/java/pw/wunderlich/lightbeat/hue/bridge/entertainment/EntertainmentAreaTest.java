@@ -0,0 +1,73 @@
+package pw.wunderlich.lightbeat.hue.bridge.entertainment;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntertainmentAreaTest {
+
+    private static final String AREA_ID = "1a8d99cc-967b-44f2-9202-43f976c0fa6b";
+
+    // channels are not ordered like the lights, light 5 is a gradient strip with two segments
+    private static final String CONFIGURATION = """
+            {"errors": [], "data": [{"id": "%s", "type": "entertainment_configuration", "status": "active",
+              "name": "TV \\"Area\\"", "channels": [
+                {"channel_id": 0, "position": {"x": -0.5, "y": 0.8, "z": 0.0},
+                 "members": [{"service": {"rid": "service-c", "rtype": "entertainment"}, "index": 0}]},
+                {"channel_id": 1, "position": {"x": 0.5, "y": 0.8, "z": 0.0},
+                 "members": [{"service": {"rid": "service-a", "rtype": "entertainment"}, "index": 0}]},
+                {"channel_id": 2, "position": {"x": 0.5, "y": 0.8, "z": 0.0},
+                 "members": [{"service": {"rid": "service-c", "rtype": "entertainment"}, "index": 1}]}
+              ]}]}
+            """.formatted(AREA_ID);
+    private static final String SERVICES = """
+            {"errors": [], "data": [
+              {"id": "service-a", "owner": {"rid": "device-a", "rtype": "device"}, "renderer": true,
+               "renderer_reference": {"rid": "light-a", "rtype": "light"}},
+              {"id": "service-b", "owner": {"rid": "device-b", "rtype": "device"}, "renderer": true,
+               "renderer_reference": {"rid": "light-b", "rtype": "light"}},
+              {"id": "service-c", "owner": {"rid": "device-c", "rtype": "device"}, "renderer": true}
+            ]}
+            """;
+    private static final String LIGHTS = """
+            {"errors": [], "data": [
+              {"id": "light-a", "id_v1": "/lights/3", "owner": {"rid": "device-a", "rtype": "device"}, "on": {"on": true}},
+              {"id": "light-b", "id_v1": "/lights/4", "owner": {"rid": "device-b", "rtype": "device"}, "on": {"on": false}},
+              {"id": "light-c", "id_v1": "/lights/5", "owner": {"rid": "device-c", "rtype": "device"}, "on": {"on": true}}
+            ]}
+            """;
+
+
+    @Test
+    void channelsAreMappedToTheirLights() {
+        var area = EntertainmentArea.parse(AREA_ID, CONFIGURATION, SERVICES, LIGHTS);
+
+        assertEquals(AREA_ID, area.getId());
+        assertTrue(area.isActive());
+        assertEquals(List.of(1), area.getChannelIds("3"));
+        assertEquals(List.of(0, 2), area.getChannelIds("5"));
+        assertEquals(Set.of("3", "5"), area.getLightIds());
+    }
+
+    @Test
+    void lightsOutsideTheAreaHaveNoChannels() {
+        var area = EntertainmentArea.parse(AREA_ID, CONFIGURATION, SERVICES, LIGHTS);
+        assertEquals(List.of(), area.getChannelIds("4"));
+        assertEquals(List.of(), area.getChannelIds("1"));
+    }
+
+    @Test
+    void unknownAreaIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> EntertainmentArea.parse("00000000-0000-0000-0000-000000000000", CONFIGURATION, SERVICES, LIGHTS));
+    }
+
+    @Test
+    void invalidResponseIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> EntertainmentArea.parse(AREA_ID, "{\"data\": [", SERVICES, LIGHTS));
+    }
+}
@@ -0,0 +1,155 @@
+package pw.wunderlich.lightbeat.hue.bridge.entertainment;
+
+import org.junit.jupiter.api.Test;
+import pw.wunderlich.lightbeat.hue.bridge.color.Color;
+import pw.wunderlich.lightbeat.util.VirtualClock;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntertainmentStreamerTest {
+
+    private static final String AREA_ID = "1a8d99cc-967b-44f2-9202-43f976c0fa6b";
+    private static final Color RED = new HueColor(0f, 1f);
+    private static final Color BLUE = new HueColor(2f / 3f, 1f);
+
+
+    @Test
+    void framesAreSentToReceiver() throws Exception {
+        try (var receiver = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            receiver.setSoTimeout(5000);
+            var transport = new UdpFrameTransport(new InetSocketAddress(InetAddress.getLoopbackAddress(), receiver.getLocalPort()));
+            var streamer = new EntertainmentStreamer(AREA_ID, transport, new VirtualClock(), 50);
+            streamer.createChannel(0).setState(RED, 254, true, 0L);
+            streamer.createChannel(1).setState(BLUE, 254, false, 0L);
+            streamer.start();
+
+            var packet = new DatagramPacket(new byte[512], 512);
+            receiver.receive(packet);
+            receiver.receive(packet);
+            streamer.stop();
+            assertTrue(streamer.awaitTermination(5L, TimeUnit.SECONDS));
+
+            assertEquals(HueStreamEncoder.HEADER_SIZE + 2 * HueStreamEncoder.CHANNEL_SIZE, packet.getLength());
+            ByteBuffer frame = ByteBuffer.wrap(packet.getData(), HueStreamEncoder.HEADER_SIZE, 2 * HueStreamEncoder.CHANNEL_SIZE);
+            assertEquals(0, frame.get());
+            assertEquals(0xFFFF, Short.toUnsignedInt(frame.getShort()));
+            assertEquals(0, frame.getShort());
+            assertEquals(0, frame.getShort());
+            assertEquals(1, frame.get());
+            assertEquals(0, frame.getShort());
+            assertEquals(0, frame.getShort());
+            assertEquals(0, frame.getShort());
+            assertTrue(streamer.getFramesSent() >= 2L);
+        }
+    }
+
+    @Test
+    void lightWithSeveralChannelsIsSentToAll() throws Exception {
+        try (var receiver = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            receiver.setSoTimeout(5000);
+            var transport = new UdpFrameTransport(new InetSocketAddress(InetAddress.getLoopbackAddress(), receiver.getLocalPort()));
+            var streamer = new EntertainmentStreamer(AREA_ID, transport, new VirtualClock(), 50);
+            streamer.createChannel(2, 5).setState(RED, 254, true, 0L);
+            assertEquals(HueStreamEncoder.MAX_CHANNELS - 2, streamer.getRemainingChannels());
+            streamer.start();
+
+            var packet = new DatagramPacket(new byte[512], 512);
+            receiver.receive(packet);
+            streamer.stop();
+            assertTrue(streamer.awaitTermination(5L, TimeUnit.SECONDS));
+
+            assertEquals(HueStreamEncoder.HEADER_SIZE + 2 * HueStreamEncoder.CHANNEL_SIZE, packet.getLength());
+            ByteBuffer frame = ByteBuffer.wrap(packet.getData(), HueStreamEncoder.HEADER_SIZE, 2 * HueStreamEncoder.CHANNEL_SIZE);
+            assertEquals(2, frame.get());
+            assertEquals(0xFFFF, Short.toUnsignedInt(frame.getShort()));
+            frame.position(frame.position() + 4);
+            assertEquals(5, frame.get());
+            assertEquals(0xFFFF, Short.toUnsignedInt(frame.getShort()));
+        }
+    }
+
+    @Test
+    void releasingAllChannelsStopsStream() throws Exception {
+        var streamer = new EntertainmentStreamer(AREA_ID, new DiscardingTransport(), new VirtualClock(), 50);
+        var channel = streamer.createChannel(0);
+        streamer.start();
+
+        channel.release();
+        assertTrue(streamer.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void channelColorFades() {
+        var clock = new VirtualClock();
+        var streamer = new EntertainmentStreamer(AREA_ID, new DiscardingTransport(), clock, 50);
+        var channel = streamer.createChannel(0);
+        int[] rgb = new int[3];
+
+        channel.setState(RED, 254, true, 0L);
+        channel.getColor(rgb);
+        assertArrayEquals(new int[]{0xFFFF, 0, 0}, rgb);
+
+        channel.setState(RED, 254, false, 1000L);
+        clock.advance(500L, TimeUnit.MILLISECONDS);
+        channel.getColor(rgb);
+        assertTrue(rgb[0] > 0x6000 && rgb[0] < 0xA000, "red at half of the fade was " + rgb[0]);
+
+        clock.advance(500L, TimeUnit.MILLISECONDS);
+        channel.getColor(rgb);
+        assertArrayEquals(new int[]{0, 0, 0}, rgb);
+    }
+
+    @Test
+    void channelLimitIsEnforced() {
+        var streamer = new EntertainmentStreamer(AREA_ID, new DiscardingTransport(), new VirtualClock(), 50);
+        for (int i = 0; i < HueStreamEncoder.MAX_CHANNELS; i++) {
+            streamer.createChannel(i);
+        }
+        assertThrows(IllegalStateException.class, () -> streamer.createChannel(20));
+    }
+
+    @Test
+    void releasedChannelsCanBeReused() {
+        var streamer = new EntertainmentStreamer(AREA_ID, new DiscardingTransport(), new VirtualClock(), 50);
+        var channel = streamer.createChannel(0, 1, 2);
+        streamer.createChannel(3);
+        channel.release();
+
+        assertEquals(HueStreamEncoder.MAX_CHANNELS - 1, streamer.getRemainingChannels());
+    }
+
+
+    private record HueColor(float getHue, float getSaturation) implements Color {
+
+        @Override
+        public int getRGB() {
+            return java.awt.Color.HSBtoRGB(getHue, getSaturation, 1f);
+        }
+
+        @Override
+        public Color getDerivedColor(double derivationRange) {
+            return this;
+        }
+
+        @Override
+        public boolean isSimilar(Color color, double colorRandomizationRange) {
+            return equals(color);
+        }
+    }
+
+    private static class DiscardingTransport implements FrameTransport {
+
+        @Override
+        public void send(ByteBuffer frame) {}
+
+        @Override
+        public void close() {}
+    }
+}
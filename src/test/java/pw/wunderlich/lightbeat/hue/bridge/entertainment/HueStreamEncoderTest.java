@@ -0,0 +1,76 @@
+package pw.wunderlich.lightbeat.hue.bridge.entertainment;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HueStreamEncoderTest {
+
+    private static final String AREA_ID = "1a8d99cc-967b-44f2-9202-43f976c0fa6b";
+
+
+    @Test
+    void headerIsEncoded() {
+        var encoder = new HueStreamEncoder(AREA_ID);
+        encoder.beginFrame(258);
+        ByteBuffer frame = encoder.endFrame();
+
+        assertEquals(HueStreamEncoder.HEADER_SIZE, frame.remaining());
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        assertEquals("HueStream", new String(bytes, 0, 9, StandardCharsets.US_ASCII));
+        assertEquals(2, bytes[9]);
+        assertEquals(0, bytes[10]);
+        assertEquals(2, bytes[11]);
+        assertEquals(0, bytes[14]);
+        assertEquals(AREA_ID, new String(bytes, 16, 36, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void channelsAreEncoded() {
+        var encoder = new HueStreamEncoder(AREA_ID);
+        encoder.beginFrame(0);
+        encoder.putChannel(3, 0xFFFF, 0x1234, 0);
+        ByteBuffer frame = encoder.endFrame();
+
+        assertEquals(HueStreamEncoder.HEADER_SIZE + HueStreamEncoder.CHANNEL_SIZE, frame.remaining());
+        frame.position(HueStreamEncoder.HEADER_SIZE);
+        assertEquals(3, frame.get());
+        assertEquals(0xFFFF, Short.toUnsignedInt(frame.getShort()));
+        assertEquals(0x1234, Short.toUnsignedInt(frame.getShort()));
+        assertEquals(0, frame.getShort());
+    }
+
+    @Test
+    void nextFrameDiscardsChannels() {
+        var encoder = new HueStreamEncoder(AREA_ID);
+        encoder.beginFrame(0);
+        encoder.putChannel(0, 1, 2, 3);
+        encoder.putChannel(1, 1, 2, 3);
+        encoder.endFrame();
+
+        encoder.beginFrame(1);
+        encoder.putChannel(0, 1, 2, 3);
+        ByteBuffer frame = encoder.endFrame();
+        assertEquals(HueStreamEncoder.HEADER_SIZE + HueStreamEncoder.CHANNEL_SIZE, frame.remaining());
+        assertEquals(AREA_ID, encoder.getConfigurationId());
+    }
+
+    @Test
+    void channelLimitIsEnforced() {
+        var encoder = new HueStreamEncoder(AREA_ID);
+        encoder.beginFrame(0);
+        for (int i = 0; i < HueStreamEncoder.MAX_CHANNELS; i++) {
+            encoder.putChannel(i, 0, 0, 0);
+        }
+        assertThrows(IllegalStateException.class, () -> encoder.putChannel(20, 0, 0, 0));
+    }
+
+    @Test
+    void invalidConfigurationIdIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new HueStreamEncoder("area"));
+    }
+}
@@ -0,0 +1,96 @@
+package pw.wunderlich.lightbeat.hue.bridge.light;
+
+import io.github.zeroone3010.yahueapi.Hue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pw.wunderlich.lightbeat.AppTaskOrchestrator;
+import pw.wunderlich.lightbeat.TaskMetrics;
+import pw.wunderlich.lightbeat.hue.bridge.MockHueBridge;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sends beats to many lights of a {@link MockHueBridge} through {@link LBLight}s, which control the lights of the
+ * API library and send their updates via the default blocking path, like the application does.
+ */
+class BridgeLoadTest {
+
+    private static final int LIGHT_COUNT = 20;
+    private static final int BEATS = 20;
+    private static final long BEAT_INTERVAL_MILLIS = 100L;
+
+    private static final double MAX_DROP_RATE = 0.1d;
+    private static final double MIN_COMMANDS_PER_SECOND = 100d;
+    private static final double MAX_EXECUTION_P99_MILLIS = 250d;
+
+    private AppTaskOrchestrator taskOrchestrator;
+    private MockHueBridge bridge;
+
+
+    @BeforeEach
+    void setUp() throws Exception {
+        taskOrchestrator = new AppTaskOrchestrator();
+        bridge = MockHueBridge.builder().lights(LIGHT_COUNT).latency(5L, 5L).start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        taskOrchestrator.shutdown();
+        bridge.close();
+    }
+
+    @Test
+    void allLightsReachTheirFinalState() throws Exception {
+        URI apiUri = bridge.getApiUri();
+        Hue hue = new Hue(apiUri.getHost() + ":" + apiUri.getPort(), MockHueBridge.API_KEY);
+        hue.setCaching(true);
+        hue.refresh();
+
+        List<LBLight> lights = hue.getAllLights().getLights().stream()
+                .map(apiLight -> new LBLight(apiLight, taskOrchestrator, "mock"))
+                .toList();
+        assertEquals(LIGHT_COUNT, lights.size());
+        lights.forEach(LBLight::storeState);
+
+        for (int beat = 0; beat < BEATS; beat++) {
+            for (LBLight light : lights) {
+                light.getBrightnessController().setBrightness(100 + beat, 10 + beat);
+                light.doLightUpdate(3);
+            }
+            Thread.sleep(BEAT_INTERVAL_MILLIS);
+        }
+        awaitIdle(lights);
+        lights.forEach(LBLight::restoreState);
+        awaitIdle(lights);
+
+        for (int i = 1; i <= LIGHT_COUNT; i++) {
+            assertEquals(254, bridge.getBrightness(Integer.toString(i)), "Brightness of light " + i + " was not restored");
+        }
+
+        // every beat sends the beat and the fade, the restore is sent once
+        int updates = LIGHT_COUNT * (BEATS * 2 + 1);
+        var summary = MockHueBridge.Summary.of(bridge.getCommands());
+        double dropRate = 1d - summary.commands() / (double) updates;
+        assertEquals(0, summary.rejected(), summary.toString());
+        assertTrue(summary.commands() <= updates, summary.toString());
+        assertTrue(dropRate <= MAX_DROP_RATE, "Dropped " + dropRate * 100d + "% of the updates, " + summary);
+        assertTrue(summary.commandsPerSecond() >= MIN_COMMANDS_PER_SECOND, summary.toString());
+
+        TaskMetrics.Snapshot metrics = taskOrchestrator.getMetrics();
+        assertEquals(0, metrics.failedBridgeCommands());
+        assertTrue(metrics.bridgeExecutionTime().p99Millis() <= MAX_EXECUTION_P99_MILLIS,
+                "Bridge commands took too long, " + metrics.bridgeExecutionTime());
+    }
+
+    private static void awaitIdle(List<LBLight> lights) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20L);
+        while (lights.stream().anyMatch(light -> !light.isIdle()) && System.nanoTime() < deadline) {
+            Thread.sleep(10L);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package pw.wunderlich.lightbeat.hue.bridge.light;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pw.wunderlich.lightbeat.AppTaskOrchestrator;
+import pw.wunderlich.lightbeat.util.VirtualClock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandBudgetTest {
+
+    private VirtualClock clock;
+    private AppTaskOrchestrator taskOrchestrator;
+    private CommandBudget budget;
+    private List<String> granted;
+
+
+    @BeforeEach
+    void setUp() {
+        clock = new VirtualClock();
+        taskOrchestrator = new AppTaskOrchestrator(clock);
+        budget = new CommandBudget(taskOrchestrator, 10);
+        granted = new ArrayList<>();
+    }
+
+    @AfterEach
+    void tearDown() {
+        taskOrchestrator.shutdown();
+    }
+
+    @Test
+    void burstIsLimitedToOneSecond() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(budget.acquire("light " + i, UpdatePriority.BEAT, () -> fail("Granted right away")));
+        }
+        assertFalse(acquire("light 10", UpdatePriority.BEAT));
+
+        clock.advance(99L, TimeUnit.MILLISECONDS);
+        assertEquals(List.of(), granted);
+        clock.advance(1L, TimeUnit.MILLISECONDS);
+        assertEquals(List.of("light 10"), granted);
+    }
+
+    @Test
+    void higherPrioritiesAreGrantedFirst() {
+        exhaust();
+        assertFalse(acquire("restore", UpdatePriority.RESTORE));
+        assertFalse(acquire("fade", UpdatePriority.FADE));
+        assertFalse(acquire("beat", UpdatePriority.BEAT));
+
+        clock.advance(300L, TimeUnit.MILLISECONDS);
+        assertEquals(List.of("beat", "fade", "restore"), granted);
+    }
+
+    @Test
+    void requestsOfSamePriorityAreGrantedInOrder() {
+        exhaust();
+        assertFalse(acquire("light 1", UpdatePriority.BEAT));
+        assertFalse(acquire("light 2", UpdatePriority.BEAT));
+
+        // a newer request replaces the waiting one, but keeps its place
+        assertFalse(acquire("light 1", UpdatePriority.BEAT));
+
+        clock.advance(100L, TimeUnit.MILLISECONDS);
+        assertEquals(List.of("light 1"), granted);
+
+        // waiting requests are granted before new ones
+        assertFalse(acquire("light 3", UpdatePriority.BEAT));
+        clock.advance(200L, TimeUnit.MILLISECONDS);
+        assertEquals(List.of("light 1", "light 2", "light 3"), granted);
+    }
+
+    @Test
+    void waitingRequestCanRaisePriority() {
+        exhaust();
+        assertFalse(acquire("light 1", UpdatePriority.BEAT));
+        assertFalse(acquire("light 2", UpdatePriority.FADE));
+        assertFalse(acquire("light 2", UpdatePriority.BEAT));
+
+        clock.advance(200L, TimeUnit.MILLISECONDS);
+        assertEquals(List.of("light 1", "light 2"), granted);
+    }
+
+    @Test
+    void budgetRefillsWhileIdle() {
+        exhaust();
+        clock.advance(5L, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(acquire("light " + i, UpdatePriority.FADE));
+        }
+        assertFalse(acquire("light 10", UpdatePriority.FADE));
+    }
+
+    @Test
+    void shutdownGrantsRightAway() {
+        exhaust();
+        taskOrchestrator.shutdown();
+        assertTrue(acquire("restore", UpdatePriority.RESTORE));
+    }
+
+    private void exhaust() {
+        for (int i = 0; i < 10; i++) {
+            budget.acquire("exhaust", UpdatePriority.BEAT, () -> {});
+        }
+    }
+
+    private boolean acquire(String requester, UpdatePriority priority) {
+        return budget.acquire(requester, priority, () -> granted.add(requester));
+    }
+}
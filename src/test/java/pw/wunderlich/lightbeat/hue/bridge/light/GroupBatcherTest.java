@@ -0,0 +1,237 @@
+package pw.wunderlich.lightbeat.hue.bridge.light;
+
+import io.github.zeroone3010.yahueapi.Group;
+import io.github.zeroone3010.yahueapi.Light;
+import io.github.zeroone3010.yahueapi.State;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pw.wunderlich.lightbeat.AppTaskOrchestrator;
+import pw.wunderlich.lightbeat.util.VirtualClock;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupBatcherTest {
+
+    private static final Set<String> ALL_LIGHTS = Set.of("1", "2", "3", "4", "5", "6");
+    private static final Set<String> LIVING_ROOM = Set.of("1", "2", "3");
+    private static final Set<String> KITCHEN = Set.of("4", "5", "6");
+    private static final Set<String> ZONE = Set.of("3", "4", "5");
+
+    private VirtualClock clock;
+    private AppTaskOrchestrator taskOrchestrator;
+    private List<String> sentLightStates;
+    private List<String> sentGroupStates;
+    private Consumer<State> groupCommand;
+    private List<LBLight> lights;
+    private GroupBatcher groupBatcher;
+
+
+    /**
+     * Four lights, all of them in group "all", lights 2 to 4 in group "room". Light 1 sends via a command budget
+     * of one command per second, so that it can be kept busy.
+     */
+    @BeforeEach
+    void setUp() {
+        clock = new VirtualClock();
+        taskOrchestrator = new AppTaskOrchestrator(clock);
+        sentLightStates = new CopyOnWriteArrayList<>();
+        sentGroupStates = new CopyOnWriteArrayList<>();
+        groupCommand = state -> {};
+
+        List<Light> apiLights = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            apiLights.add(createApiLight(String.valueOf(i)));
+        }
+        groupBatcher = new GroupBatcher(taskOrchestrator, "bridge",
+                List.of(createGroup("all", apiLights), createGroup("room", apiLights.subList(1, 4))));
+
+        lights = new ArrayList<>();
+        for (Light apiLight : apiLights) {
+            CommandBudget commandBudget = lights.isEmpty() ? new CommandBudget(taskOrchestrator, 1) : null;
+            lights.add(new LBLight(apiLight, taskOrchestrator, new UpdateSettings("bridge", commandBudget, null, false, null),
+                    null, groupBatcher, null));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        taskOrchestrator.shutdown();
+    }
+
+    @Test
+    void sameUpdatesAreSentAsGroupAfterWindow() {
+        lights.forEach(light -> addUpdate(light, 100, false));
+
+        clock.advance(9, TimeUnit.MILLISECONDS);
+        assertEquals(List.of(), sentGroupStates);
+        assertEquals(List.of(), sentLightStates);
+
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        assertEquals(List.of("all:100"), sentGroupStates);
+        assertEquals(List.of(), sentLightStates);
+        lights.forEach(light -> assertTrue(light.isIdle()));
+    }
+
+    @Test
+    void divergingUpdatesAreSentIndividually() {
+        addUpdate(lights.get(0), 100, false);
+        addUpdate(lights.get(1), 100, false);
+        addUpdate(lights.get(2), 150, false);
+        addUpdate(lights.get(3), 100, false);
+        clock.advance(10, TimeUnit.MILLISECONDS);
+
+        assertEquals(List.of(), sentGroupStates);
+        assertEquals(List.of("1:100", "2:100", "3:150", "4:100"), sentLightStates);
+    }
+
+    @Test
+    void essentialUpdatesAreSentIndividually() {
+        addUpdate(lights.get(0), 100, true);
+        lights.subList(1, 4).forEach(light -> addUpdate(light, 100, false));
+        clock.advance(10, TimeUnit.MILLISECONDS);
+
+        assertEquals(List.of("room:100"), sentGroupStates);
+        assertEquals(List.of("1:100"), sentLightStates);
+    }
+
+    @Test
+    void busyLightsAreSentIndividually() {
+        // takes the only token, the second update waits for the budget
+        lights.get(0).sendUpdate(LightStateBuilder.create().setBrightness(50), UpdatePriority.BEAT, false);
+        lights.get(0).sendUpdate(LightStateBuilder.create().setBrightness(60), UpdatePriority.BEAT, false);
+        lights.forEach(light -> addUpdate(light, 100, false));
+        clock.advance(10, TimeUnit.MILLISECONDS);
+
+        assertEquals(List.of("room:100"), sentGroupStates);
+        assertEquals(List.of("1:50"), sentLightStates);
+        assertFalse(lights.get(0).isIdle());
+    }
+
+    @Test
+    void lightsAreBusyWhileGroupCommandIsInFlight() {
+        List<Boolean> idleDuringCommand = new ArrayList<>();
+        groupCommand = state -> {
+            lights.forEach(light -> idleDuringCommand.add(light.isIdle()));
+            // must not overtake the group command
+            lights.get(1).sendUpdate(LightStateBuilder.create().setBrightness(150), UpdatePriority.BEAT, false);
+            assertEquals(List.of(), sentLightStates);
+        };
+        lights.forEach(light -> addUpdate(light, 100, false));
+        clock.advance(10, TimeUnit.MILLISECONDS);
+
+        assertEquals(List.of(false, false, false, false), idleDuringCommand);
+        assertEquals(List.of("all:100"), sentGroupStates);
+        assertEquals(List.of("2:150"), sentLightStates);
+        lights.forEach(light -> assertTrue(light.isIdle()));
+    }
+
+    @Test
+    void groupCommandsAreRateLimited() {
+        lights.forEach(light -> addUpdate(light, 100, false));
+        clock.advance(20, TimeUnit.MILLISECONDS);
+        lights.forEach(light -> addUpdate(light, 150, false));
+        clock.advance(10, TimeUnit.MILLISECONDS);
+
+        assertEquals(List.of("all:100"), sentGroupStates);
+        assertEquals(List.of("1:150", "2:150", "3:150", "4:150"), sentLightStates);
+
+        clock.advance(1, TimeUnit.SECONDS);
+        lights.forEach(light -> addUpdate(light, 200, false));
+        clock.advance(10, TimeUnit.MILLISECONDS);
+        assertEquals(List.of("all:100", "all:200"), sentGroupStates);
+    }
+
+    @Test
+    void failedGroupCommandInvalidatesState() {
+        lights.forEach(light -> addUpdate(light, 100, false));
+        clock.advance(1, TimeUnit.SECONDS);
+
+        groupCommand = state -> {
+            throw new IllegalStateException("bridge unreachable");
+        };
+        lights.forEach(light -> addUpdate(light, 150, false));
+        clock.advance(10, TimeUnit.MILLISECONDS);
+        lights.forEach(light -> assertTrue(light.isIdle()));
+
+        // without a known state the update is sent again, even if it equals the state that was sent last
+        lights.get(1).sendUpdate(LightStateBuilder.create().setBrightness(100), UpdatePriority.BEAT, false);
+        clock.runPending();
+        assertEquals(List.of("2:100"), sentLightStates);
+    }
+
+    @Test
+    void discardedUpdatesAreNotSent() {
+        lights.forEach(light -> addUpdate(light, 100, false));
+        groupBatcher.discard(lights.get(0));
+        clock.advance(10, TimeUnit.MILLISECONDS);
+
+        assertEquals(List.of("room:100"), sentGroupStates);
+        assertEquals(List.of(), sentLightStates);
+    }
+
+    @Test
+    void largestGroupIsPreferred() {
+        List<Set<String>> groups = List.of(ALL_LIGHTS, LIVING_ROOM, KITCHEN);
+        assertEquals(List.of(0), GroupBatcher.selectGroups(ALL_LIGHTS, groups));
+    }
+
+    @Test
+    void groupsMustBeFullyContained() {
+        List<Set<String>> groups = List.of(ALL_LIGHTS, LIVING_ROOM, ZONE, KITCHEN);
+        assertEquals(List.of(1), GroupBatcher.selectGroups(Set.of("1", "2", "3", "4"), groups));
+        assertEquals(List.of(0, 2), GroupBatcher.selectGroups(Set.of("1", "2", "3", "4", "5", "6", "7"), List.of(LIVING_ROOM, ZONE, KITCHEN)));
+    }
+
+    @Test
+    void selectedGroupsDontOverlap() {
+        assertEquals(List.of(0), GroupBatcher.selectGroups(Set.of("1", "2", "3", "4", "5"), List.of(LIVING_ROOM, ZONE)));
+    }
+
+    @Test
+    void divergingStatesAreNotGrouped() {
+        assertEquals(List.of(), GroupBatcher.selectGroups(Set.of("1", "2"), List.of(LIVING_ROOM)));
+        assertEquals(List.of(), GroupBatcher.selectGroups(Set.of("1", "2", "4"), List.of(ALL_LIGHTS, LIVING_ROOM, KITCHEN)));
+    }
+
+    private void addUpdate(LBLight light, int brightness, boolean isEssential) {
+        groupBatcher.addUpdate(light, LightStateBuilder.create().setBrightness(brightness), UpdatePriority.BEAT, isEssential);
+    }
+
+    private Light createApiLight(String id) {
+        State state = new State.Builder().on(true).build();
+        return (Light) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Light.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getId" -> id;
+                    case "getName" -> "Light " + id;
+                    case "getState" -> state;
+                    case "setState" -> {
+                        sentLightStates.add(id + ":" + ((State) args[0]).getBri());
+                        yield null;
+                    }
+                    default -> null;
+                });
+    }
+
+    private Group createGroup(String name, List<Light> groupLights) {
+        return (Group) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Group.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getId", "getName" -> name;
+                    case "getLights" -> groupLights;
+                    case "setState" -> {
+                        groupCommand.accept((State) args[0]);
+                        sentGroupStates.add(name + ":" + ((State) args[0]).getBri());
+                        yield null;
+                    }
+                    default -> null;
+                });
+    }
+}
@@ -0,0 +1,67 @@
+package pw.wunderlich.lightbeat.hue.bridge.light;
+
+import io.github.zeroone3010.yahueapi.Light;
+import io.github.zeroone3010.yahueapi.State;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pw.wunderlich.lightbeat.AppTaskOrchestrator;
+import pw.wunderlich.lightbeat.util.VirtualClock;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LBLightTest {
+
+    private AppTaskOrchestrator taskOrchestrator;
+
+
+    @BeforeEach
+    void setUp() {
+        taskOrchestrator = new AppTaskOrchestrator(new VirtualClock());
+    }
+
+    @AfterEach
+    void tearDown() {
+        taskOrchestrator.shutdown();
+    }
+
+    @Test
+    void lightsOfDifferentBridgesWithTheSameIdAreNotEqual() {
+        LBLight firstBridgeLight = new LBLight(createApiLight("1"), taskOrchestrator, "bridge-1");
+        LBLight secondBridgeLight = new LBLight(createApiLight("1"), taskOrchestrator, "bridge-2");
+
+        assertNotEquals(firstBridgeLight, secondBridgeLight);
+
+        Map<LBLight, Boolean> flipDirection = new HashMap<>();
+        flipDirection.put(firstBridgeLight, true);
+        flipDirection.put(secondBridgeLight, false);
+        assertEquals(2, flipDirection.size());
+        assertEquals(Boolean.TRUE, flipDirection.get(firstBridgeLight));
+        assertEquals(Boolean.FALSE, flipDirection.get(secondBridgeLight));
+    }
+
+    @Test
+    void lightsOfTheSameBridgeWithTheSameIdAreEqual() {
+        LBLight light = new LBLight(createApiLight("1"), taskOrchestrator, "bridge-1");
+        LBLight sameLight = new LBLight(createApiLight("1"), taskOrchestrator, "bridge-1");
+
+        assertEquals(light, sameLight);
+        assertEquals(light.hashCode(), sameLight.hashCode());
+        assertNotEquals(light, new LBLight(createApiLight("2"), taskOrchestrator, "bridge-1"));
+    }
+
+    private static Light createApiLight(String id) {
+        State state = new State.Builder().on(true).build();
+        return (Light) Proxy.newProxyInstance(LBLightTest.class.getClassLoader(), new Class<?>[]{Light.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getId" -> id;
+                    case "getName" -> "Light " + id;
+                    case "getState" -> state;
+                    default -> null;
+                });
+    }
+}
@@ -0,0 +1,41 @@
+package pw.wunderlich.lightbeat.hue.bridge.light;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LatencyCompensatorTest {
+
+    private final LatencyCompensator compensator = new LatencyCompensator();
+
+
+    @Test
+    void fasterBridgeIsDelayed() {
+        compensator.recordLatency("fast", TimeUnit.MILLISECONDS.toNanos(20L));
+        compensator.recordLatency("slow", TimeUnit.MILLISECONDS.toNanos(80L));
+
+        assertEquals(60L, compensator.getDelayMillis("fast"));
+        assertEquals(0L, compensator.getDelayMillis("slow"));
+        assertEquals(0L, compensator.getDelayMillis("unknown"));
+    }
+
+    @Test
+    void latencyIsAveraged() {
+        compensator.recordLatency("fast", TimeUnit.MILLISECONDS.toNanos(20L));
+        compensator.recordLatency("slow", TimeUnit.MILLISECONDS.toNanos(20L));
+        // a single slow command only moves the average by a tenth
+        compensator.recordLatency("slow", TimeUnit.MILLISECONDS.toNanos(120L));
+
+        assertEquals(10L, compensator.getDelayMillis("fast"));
+    }
+
+    @Test
+    void delayIsCapped() {
+        compensator.recordLatency("fast", 0L);
+        compensator.recordLatency("slow", TimeUnit.SECONDS.toNanos(2L));
+
+        assertEquals(LatencyCompensator.MAX_DELAY_MILLIS, compensator.getDelayMillis("fast"));
+    }
+}
@@ -0,0 +1,98 @@
+package pw.wunderlich.lightbeat.hue.bridge.light;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LightFrameTest {
+
+    private LightFrame frame;
+
+
+    @BeforeEach
+    void setUp() {
+        frame = new LightFrame();
+    }
+
+    @Test
+    void updatesOfOneFrameAreMerged() {
+        frame.setState(LightStateBuilder.create().setBrightness(100), false);
+        frame.setState(LightStateBuilder.create().setBrightness(200), false);
+        frame.setState(LightStateBuilder.create().setOn(true), false);
+
+        LightFrame.Update update = frame.render();
+        assertNotNull(update);
+        assertEquals(200, update.state().getBrightness());
+        assertEquals(Boolean.TRUE, update.state().getOn());
+        assertNull(frame.render());
+    }
+
+    @Test
+    void unchangedValuesAreNotSent() {
+        frame.setState(LightStateBuilder.create().setBrightness(100).setOn(true), false);
+        assertNotNull(frame.render());
+
+        frame.setState(LightStateBuilder.create().setBrightness(100).setOn(true), false);
+        assertNull(frame.render());
+
+        frame.setState(LightStateBuilder.create().setBrightness(150).setOn(true), false);
+        LightFrame.Update update = frame.render();
+        assertNotNull(update);
+        assertEquals(150, update.state().getBrightness());
+        assertNull(update.state().getOn());
+    }
+
+    @Test
+    void essentialUpdatesKeepTheirOnState() {
+        frame.setState(LightStateBuilder.create().setOn(true), false);
+        frame.render();
+
+        frame.setState(LightStateBuilder.create().setOn(true), true);
+        LightFrame.Update update = frame.render();
+        assertNotNull(update);
+        assertTrue(update.isEssential());
+        assertEquals(Boolean.TRUE, update.state().getOn());
+    }
+
+    @Test
+    void fadeIsSentInNextFrame() {
+        frame.setState(LightStateBuilder.create().setBrightness(254), false);
+        frame.setFade(LightStateBuilder.create().setTransitionTime(3).setBrightness(50));
+
+        LightFrame.Update update = frame.render();
+        assertEquals(254, update.state().getBrightness());
+        assertEquals(UpdatePriority.BEAT, update.priority());
+        update = frame.render();
+        assertEquals(50, update.state().getBrightness());
+        assertEquals(UpdatePriority.FADE, update.priority());
+        assertNull(frame.render());
+    }
+
+    @Test
+    void pendingFadeIsMergedIntoNextUpdate() {
+        frame.setState(LightStateBuilder.create().setBrightness(254), false);
+        frame.render();
+
+        frame.setFade(LightStateBuilder.create().setTransitionTime(3).setBrightness(50).setOn(false));
+        frame.setState(LightStateBuilder.create().setBrightness(200), false);
+
+        LightFrame.Update update = frame.render();
+        assertEquals(200, update.state().getBrightness());
+        assertEquals(Boolean.FALSE, update.state().getOn());
+        assertNull(frame.render());
+    }
+
+    @Test
+    void clearForgetsSentState() {
+        frame.setState(LightStateBuilder.create().setBrightness(100), false);
+        frame.render();
+        frame.setState(LightStateBuilder.create().setBrightness(200), false);
+
+        frame.clear();
+        assertNull(frame.render());
+
+        frame.setState(LightStateBuilder.create().setBrightness(100), false);
+        assertEquals(100, frame.render().state().getBrightness());
+    }
+}
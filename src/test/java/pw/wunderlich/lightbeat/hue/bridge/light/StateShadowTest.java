@@ -0,0 +1,62 @@
+package pw.wunderlich.lightbeat.hue.bridge.light;
+
+import io.github.zeroone3010.yahueapi.AlertType;
+import io.github.zeroone3010.yahueapi.State;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StateShadowTest {
+
+    private StateShadow shadow;
+
+
+    @BeforeEach
+    void setUp() {
+        shadow = new StateShadow();
+        shadow.apply(new State.Builder().transitionTime(0).on(true).brightness(100).hue(1000).saturation(200).build());
+    }
+
+    @Test
+    void onlyChangedValuesAreSent() {
+        State delta = shadow.getDelta(new State.Builder().transitionTime(2).on(true).brightness(150).hue(1000).saturation(200).build());
+        assertNotNull(delta);
+        assertEquals(Integer.valueOf(150), delta.getBri());
+        assertEquals(Integer.valueOf(2), delta.getTransitiontime());
+        assertNull(delta.getOn());
+        assertNull(delta.getHue());
+        assertNull(delta.getSat());
+    }
+
+    @Test
+    void unchangedStateIsNotSent() {
+        assertNull(shadow.getDelta(new State.Builder().transitionTime(0).brightness(100).hue(1000).build()));
+    }
+
+    @Test
+    void alertIsAlwaysSent() {
+        State delta = shadow.getDelta(new State.Builder().transitionTime(0).brightness(100).alert(AlertType.SHORT_ALERT).build());
+        assertNotNull(delta);
+        assertEquals(AlertType.SHORT_ALERT, delta.getAlert());
+        assertNull(delta.getBri());
+    }
+
+    @Test
+    void invalidatedShadowSendsEverything() {
+        shadow.invalidate();
+        State delta = shadow.getDelta(new State.Builder().transitionTime(0).on(true).brightness(100).build());
+        assertNotNull(delta);
+        assertEquals(Boolean.TRUE, delta.getOn());
+        assertEquals(Integer.valueOf(100), delta.getBri());
+    }
+
+    @Test
+    void reportedStateIsCompared() {
+        assertTrue(shadow.matches(new State.Builder().on(true).brightness(100).hue(1000).saturation(200).build()));
+        assertFalse(shadow.matches(new State.Builder().on(true).brightness(30).hue(1000).saturation(200).build()));
+
+        shadow.invalidate();
+        assertTrue(shadow.matches(new State.Builder().on(false).build()));
+    }
+}
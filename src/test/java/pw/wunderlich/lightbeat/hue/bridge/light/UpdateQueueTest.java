@@ -0,0 +1,169 @@
+package pw.wunderlich.lightbeat.hue.bridge.light;
+
+import io.github.zeroone3010.yahueapi.AlertType;
+import io.github.zeroone3010.yahueapi.Light;
+import io.github.zeroone3010.yahueapi.State;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pw.wunderlich.lightbeat.AppTaskOrchestrator;
+import pw.wunderlich.lightbeat.util.VirtualClock;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateQueueTest {
+
+    private VirtualClock clock;
+    private AppTaskOrchestrator taskOrchestrator;
+    private List<State> sentStates;
+    private Light apiLight;
+
+
+    @BeforeEach
+    void setUp() {
+        clock = new VirtualClock();
+        taskOrchestrator = new AppTaskOrchestrator(clock);
+        sentStates = new CopyOnWriteArrayList<>();
+        apiLight = (Light) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Light.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getId" -> "1";
+                    case "getName" -> "Light 1";
+                    case "setState" -> {
+                        sentStates.add((State) args[0]);
+                        yield null;
+                    }
+                    default -> null;
+                });
+    }
+
+    @AfterEach
+    void tearDown() {
+        taskOrchestrator.shutdown();
+    }
+
+    @Test
+    void queuedUpdatesAreMerged() {
+        var updateQueue = new UpdateQueue(apiLight, taskOrchestrator, new UpdateSettings("bridge", null, null, true, null));
+        updateQueue.addUpdate(new State.Builder().transitionTime(0).brightness(100).on(true).build(), UpdatePriority.BEAT, false);
+        updateQueue.addUpdate(new State.Builder().transitionTime(0).hue(1000).saturation(200).build(), UpdatePriority.BEAT, false);
+        updateQueue.addUpdate(new State.Builder().transitionTime(3).brightness(50).build(), UpdatePriority.FADE, false);
+        clock.runPending();
+
+        assertEquals(1, sentStates.size());
+        State sent = sentStates.get(0);
+        assertEquals(Integer.valueOf(50), sent.getBri());
+        assertEquals(Integer.valueOf(1000), sent.getHue());
+        assertEquals(Integer.valueOf(200), sent.getSat());
+        assertEquals(Boolean.TRUE, sent.getOn());
+        assertEquals(Integer.valueOf(3), sent.getTransitiontime());
+        assertTrue(updateQueue.isIdle());
+    }
+
+    @Test
+    void essentialUpdatesKeepTheirOrder() {
+        var updateQueue = new UpdateQueue(apiLight, taskOrchestrator, new UpdateSettings("bridge", null, null, true, null));
+        updateQueue.addUpdate(new State.Builder().transitionTime(0).brightness(100).build(), UpdatePriority.BEAT, false);
+        updateQueue.addUpdate(new State.Builder().transitionTime(0).on(false).build(), UpdatePriority.RESTORE, true);
+        updateQueue.addUpdate(new State.Builder().transitionTime(0).brightness(150).build(), UpdatePriority.BEAT, false);
+        updateQueue.addUpdate(new State.Builder().transitionTime(0).brightness(200).build(), UpdatePriority.BEAT, false);
+        clock.runPending();
+
+        assertEquals(3, sentStates.size());
+        assertEquals(Integer.valueOf(100), sentStates.get(0).getBri());
+        assertEquals(Boolean.FALSE, sentStates.get(1).getOn());
+        assertNull(sentStates.get(1).getBri());
+        assertEquals(Integer.valueOf(200), sentStates.get(2).getBri());
+    }
+
+    @Test
+    void updatesAreSentInOrderWithoutCoalescing() {
+        var updateQueue = new UpdateQueue(apiLight, taskOrchestrator, new UpdateSettings("bridge", null, null, false, null));
+        for (int brightness = 10; brightness <= 30; brightness += 10) {
+            updateQueue.addUpdate(new State.Builder().transitionTime(0).brightness(brightness).build(), UpdatePriority.BEAT, false);
+        }
+        clock.runPending();
+
+        assertEquals(List.of(10, 20, 30), sentStates.stream().map(State::getBri).toList());
+    }
+
+    @Test
+    void updatesOfFasterBridgeAreDelayed() {
+        var compensator = new LatencyCompensator();
+        compensator.recordLatency("other", TimeUnit.MILLISECONDS.toNanos(50L));
+        var updateQueue = new UpdateQueue(apiLight, taskOrchestrator, new UpdateSettings("bridge", null, null, true, compensator));
+
+        // no latency recorded yet for this bridge
+        updateQueue.addUpdate(new State.Builder().transitionTime(0).brightness(100).build(), UpdatePriority.BEAT, false);
+        clock.runPending();
+        assertEquals(1, sentStates.size());
+
+        updateQueue.addUpdate(new State.Builder().transitionTime(0).brightness(150).build(), UpdatePriority.BEAT, false);
+        clock.runPending();
+        assertEquals(1, sentStates.size());
+        assertFalse(updateQueue.isIdle());
+
+        clock.advance(50L, TimeUnit.MILLISECONDS);
+        assertEquals(2, sentStates.size());
+        assertEquals(Integer.valueOf(150), sentStates.get(1).getBri());
+    }
+
+    @Test
+    void unchangedValuesAreNotSent() {
+        var updateQueue = new UpdateQueue(apiLight, taskOrchestrator, new UpdateSettings("bridge", null, null, false, null));
+        updateQueue.addUpdate(new State.Builder().transitionTime(0).brightness(100).on(true).build(), UpdatePriority.BEAT, false);
+        updateQueue.addUpdate(new State.Builder().transitionTime(0).brightness(100).on(true).build(), UpdatePriority.BEAT, false);
+        updateQueue.addUpdate(new State.Builder().transitionTime(0).brightness(120).on(true).build(), UpdatePriority.BEAT, false);
+        clock.runPending();
+
+        assertEquals(2, sentStates.size());
+        assertEquals(Integer.valueOf(120), sentStates.get(1).getBri());
+        assertNull(sentStates.get(1).getOn());
+
+        // light was changed externally
+        updateQueue.checkReportedState(new State.Builder().brightness(5).on(true).build());
+        updateQueue.addUpdate(new State.Builder().transitionTime(0).brightness(120).on(true).build(), UpdatePriority.BEAT, false);
+        clock.runPending();
+        assertEquals(3, sentStates.size());
+        assertEquals(Boolean.TRUE, sentStates.get(2).getOn());
+    }
+
+    @Test
+    void mergedStateKeepsAlert() {
+        State alert = new State.Builder().transitionTime(0).alert(AlertType.SHORT_ALERT).build();
+        State brightness = new State.Builder().transitionTime(2).brightness(80).build();
+
+        State merged = UpdateQueue.mergeStates(alert, brightness);
+        assertEquals(AlertType.SHORT_ALERT, merged.getAlert());
+        assertEquals(Integer.valueOf(80), merged.getBri());
+        assertEquals(Integer.valueOf(2), merged.getTransitiontime());
+        assertNull(merged.getHue());
+    }
+
+    @Test
+    void mergedStateWithoutTransitionMatchesUnmergedStates() {
+        State color = new State.Builder().on(true).brightness(50).hue(1000).saturation(200).build();
+        State brightness = new State.Builder().brightness(80).build();
+
+        // sending both states in order leaves the light in the state of the merged update
+        State merged = UpdateQueue.mergeStates(color, brightness);
+        assertNull(merged.getTransitiontime());
+        assertEquals(Boolean.TRUE, merged.getOn());
+        assertEquals(Integer.valueOf(80), merged.getBri());
+        assertEquals(Integer.valueOf(1000), merged.getHue());
+        assertEquals(Integer.valueOf(200), merged.getSat());
+    }
+
+    @Test
+    void mergedStateKeepsTransitionOfEitherState() {
+        State fade = new State.Builder().transitionTime(4).brightness(50).build();
+        State color = new State.Builder().hue(1000).saturation(200).build();
+
+        assertEquals(Integer.valueOf(4), UpdateQueue.mergeStates(fade, color).getTransitiontime());
+        assertEquals(Integer.valueOf(4), UpdateQueue.mergeStates(color, fade).getTransitiontime());
+    }
+}
@@ -5,6 +5,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import pw.wunderlich.lightbeat.config.Config;
 import pw.wunderlich.lightbeat.config.ConfigNode;
+import pw.wunderlich.lightbeat.config.ConfigSnapshot;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
@@ -38,6 +39,8 @@ class BrightnessCalibratorTest {
         when(config.getInt(ConfigNode.BRIGHTNESS_MIN)).thenReturn(MIN_BRIGHTNESS);
         when(config.getInt(ConfigNode.BRIGHTNESS_MAX)).thenReturn(MAX_BRIGHTNESS);
         when(config.getInt(ConfigNode.BRIGHTNESS_FADE_DIFFERENCE)).thenReturn(FADE_DIFFERENCE_BRIGHTNESS);
+        ConfigSnapshot snapshot = ConfigSnapshot.of(config);
+        when(config.getSnapshot()).thenReturn(snapshot);
 
         calibrator = new BrightnessCalibrator(config);
     }
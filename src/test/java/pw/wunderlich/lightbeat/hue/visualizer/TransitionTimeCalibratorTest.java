@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import pw.wunderlich.lightbeat.config.Config;
 import pw.wunderlich.lightbeat.config.ConfigNode;
+import pw.wunderlich.lightbeat.config.ConfigSnapshot;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -19,6 +20,8 @@ class TransitionTimeCalibratorTest {
     void setUp() {
         Config config = Mockito.mock(Config.class);
         Mockito.when(config.getInt(ConfigNode.BRIGHTNESS_FADE_MAX_TIME)).thenReturn(MAX_TRANSITION_TIME);
+        ConfigSnapshot snapshot = ConfigSnapshot.of(config);
+        Mockito.when(config.getSnapshot()).thenReturn(snapshot);
         transitionTimeCalibrator = new TransitionTimeCalibrator(config);
     }
 
@@ -0,0 +1,141 @@
+package pw.wunderlich.lightbeat.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveLimiterTest {
+
+    private static final long BASELINE_NANOS = TimeUnit.MILLISECONDS.toNanos(20L);
+
+    private AdaptiveLimiter limiter;
+
+
+    @BeforeEach
+    void setUp() {
+        limiter = new AdaptiveLimiter("test", 8, 2, 32);
+    }
+
+    @Test
+    void limitGrowsWhileLatencyIsAtBaseline() throws InterruptedException {
+        for (int i = 0; i < 10; i++) {
+            saturatedWindow(BASELINE_NANOS, true);
+        }
+        assertEquals(18, limiter.getLimit());
+    }
+
+    @Test
+    void limitDoesNotGrowIfNotUsed() throws InterruptedException {
+        for (int i = 0; i < 40; i++) {
+            limiter.acquire();
+            limiter.release(BASELINE_NANOS, true);
+        }
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    void latencyGrowthReducesLimit() throws InterruptedException {
+        saturatedWindow(BASELINE_NANOS, true);
+        assertEquals(9, limiter.getLimit());
+
+        saturatedWindow(BASELINE_NANOS * 3, true);
+        assertEquals(6, limiter.getLimit());
+        // the baseline only rises by a tenth of the difference
+        assertEquals(24d, limiter.snapshot().baselineMillis(), 0.001d);
+        assertEquals(60d, limiter.snapshot().averageMillis(), 0.001d);
+    }
+
+    @Test
+    void errorHalvesLimit() throws InterruptedException {
+        limiter.acquire();
+        limiter.release(BASELINE_NANOS, false);
+        assertEquals(4, limiter.getLimit());
+
+        limiter.acquire();
+        limiter.release(BASELINE_NANOS, false);
+        limiter.acquire();
+        limiter.release(BASELINE_NANOS, false);
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void limitIsBounded() throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            saturatedWindow(BASELINE_NANOS, true);
+        }
+        assertEquals(32, limiter.getLimit());
+    }
+
+    @Test
+    void slowlyRisingBaselineAllowsGrowth() throws InterruptedException {
+        saturatedWindow(BASELINE_NANOS, true);
+        // permanently slower, limit shrinks at first but the baseline follows
+        for (int i = 0; i < 40; i++) {
+            saturatedWindow(BASELINE_NANOS * 3, true);
+        }
+        assertTrue(limiter.getLimit() > 9, "Limit was " + limiter.getLimit());
+    }
+
+    @Test
+    void acquireBlocksAtLimit() throws InterruptedException {
+        for (int i = 0; i < 8; i++) {
+            limiter.acquire();
+        }
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        thread.start();
+        assertFalse(acquired.await(50L, TimeUnit.MILLISECONDS));
+
+        limiter.release(BASELINE_NANOS, true);
+        assertTrue(acquired.await(5L, TimeUnit.SECONDS));
+        assertEquals(8, limiter.snapshot().inFlight());
+    }
+
+    @Test
+    void tryAcquireDoesNotWait() {
+        for (int i = 0; i < 8; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+
+        limiter.release(BASELINE_NANOS, true);
+        assertTrue(limiter.tryAcquire());
+        assertEquals(8, limiter.snapshot().inFlight());
+    }
+
+    @Test
+    void invalidLimitsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveLimiter("test", 1, 2, 32));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveLimiter("test", 8, 0, 32));
+    }
+
+    /**
+     * Uses all slots of the current limit, then releases them with the given latency, which completes a window.
+     */
+    private void saturatedWindow(long latencyNanos, boolean isSuccess) throws InterruptedException {
+        int limit = Math.max(limiter.getLimit(), 8);
+        int slots = limiter.getLimit();
+        int released = 0;
+        while (released < limit) {
+            int batch = Math.min(slots, limit - released);
+            for (int i = 0; i < batch; i++) {
+                limiter.acquire();
+            }
+            for (int i = 0; i < batch; i++) {
+                limiter.release(latencyNanos, isSuccess);
+            }
+            released += batch;
+        }
+    }
+}
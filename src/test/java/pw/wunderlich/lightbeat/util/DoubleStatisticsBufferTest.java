@@ -0,0 +1,151 @@
+package pw.wunderlich.lightbeat.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DoubleStatisticsBufferTest {
+
+    private static final int DEFAULT_BUFFER_SIZE = 5;
+    private static final double DELTA = 1e-9;
+
+    private DoubleStatisticsBuffer buffer;
+
+    @BeforeEach
+    void setup() {
+        buffer = new DoubleStatisticsBuffer(DEFAULT_BUFFER_SIZE);
+    }
+
+    @Test
+    void getCurrentAverage() {
+        assertEquals(0d, buffer.getCurrentAverage());
+        buffer.add(5d);
+        buffer.add(2d);
+        assertEquals(3.5d, buffer.getCurrentAverage(), DELTA);
+    }
+
+    @Test
+    void getVarianceAndStandardDeviation() {
+        double[] values = {2, 4, 4, 4, 5, 5, 7, 9};
+        DoubleStatisticsBuffer buffer = new DoubleStatisticsBuffer(values.length);
+        for (double value : values) {
+            buffer.add(value);
+        }
+        assertEquals(5d, buffer.getCurrentAverage(), DELTA);
+        assertEquals(4d, buffer.getVariance(), DELTA);
+        assertEquals(2d, buffer.getStandardDeviation(), DELTA);
+    }
+
+    @Test
+    void slidingWindowMatchesRecomputation() {
+        Random rnd = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            buffer.add(rnd.nextDouble() * 100d);
+            assertStatisticsMatchBuffer(buffer);
+        }
+    }
+
+    @Test
+    void addAllMatchesSingleAdds() {
+        Random rnd = new Random(7);
+        double[] values = new double[64];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rnd.nextGaussian();
+        }
+
+        DoubleStatisticsBuffer singleAdds = new DoubleStatisticsBuffer(16);
+        DoubleStatisticsBuffer bulkAdds = new DoubleStatisticsBuffer(16);
+        for (double value : values) {
+            singleAdds.add(value);
+        }
+        bulkAdds.addAll(values, 0, 3);
+        bulkAdds.addAll(values, 3, 10);
+        bulkAdds.addAll(values, 13, values.length - 13);
+
+        assertEquals(singleAdds.size(), bulkAdds.size());
+        assertEquals(singleAdds.getCurrentAverage(), bulkAdds.getCurrentAverage(), DELTA);
+        assertEquals(singleAdds.getVariance(), bulkAdds.getVariance(), DELTA);
+
+        // newest value is overwritten last, so the next add must replace the same element
+        singleAdds.add(1d);
+        bulkAdds.add(1d);
+        assertArrayEquals(sorted(singleAdds.getBuffer()), sorted(bulkAdds.getBuffer()), 0d);
+    }
+
+    @Test
+    void addAllLongerThanBufferKeepsTail() {
+        double[] values = {1, 2, 3, 4, 5, 6, 7, 8};
+        buffer.addAll(values, 1, 7);
+        assertTrue(buffer.isFull());
+        assertEquals(6d, buffer.getCurrentAverage(), DELTA);
+        assertStatisticsMatchBuffer(buffer);
+
+        // oldest value (4) must be removed next
+        buffer.add(9d);
+        assertEquals(7d, buffer.getCurrentAverage(), DELTA);
+    }
+
+    @Test
+    void addAllOutOfBounds() {
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.addAll(new double[3], 2, 2));
+    }
+
+    @Test
+    void noDriftOverLongRuns() {
+        Random rnd = new Random(1);
+        DoubleStatisticsBuffer buffer = new DoubleStatisticsBuffer(150);
+        // roughly ten hours of updates at 50 per second, mixing large and tiny magnitudes
+        for (int i = 0; i < 1_800_000; i++) {
+            buffer.add(i % 1000 == 0 ? 1e9 : rnd.nextDouble() * 1e-3);
+        }
+        for (int i = 0; i < 150; i++) {
+            buffer.add(0.5d);
+        }
+        assertEquals(0.5d, buffer.getCurrentAverage(), 1e-15);
+        assertEquals(0d, buffer.getVariance(), 1e-15);
+    }
+
+    @Test
+    void size() {
+        for (int i = 0; i < 100; i++) {
+            buffer.add(i);
+        }
+        assertEquals(DEFAULT_BUFFER_SIZE, buffer.size());
+    }
+
+    @Test
+    void clear() {
+        for (int i = 0; i < 1000; i++) {
+            buffer.add(i);
+        }
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals(0d, buffer.getCurrentAverage());
+        assertEquals(0d, buffer.getVariance());
+    }
+
+    private static void assertStatisticsMatchBuffer(DoubleStatisticsBuffer buffer) {
+        double[] values = buffer.getBuffer();
+        double sum = 0d;
+        for (int i = 0; i < buffer.size(); i++) {
+            sum += values[i];
+        }
+        double mean = sum / buffer.size();
+        double m2 = 0d;
+        for (int i = 0; i < buffer.size(); i++) {
+            m2 += (values[i] - mean) * (values[i] - mean);
+        }
+
+        assertEquals(mean, buffer.getCurrentAverage(), DELTA);
+        assertEquals(m2 / buffer.size(), buffer.getVariance(), 1e-6);
+    }
+
+    private static double[] sorted(double[] values) {
+        double[] copy = values.clone();
+        java.util.Arrays.sort(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,167 @@
+package pw.wunderlich.lightbeat.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventJournalTest {
+
+    private static final int CAPACITY = 16;
+
+    private EventJournal journal;
+
+    @BeforeEach
+    void setup() {
+        journal = new EventJournal(CAPACITY);
+    }
+
+    @Test
+    void drainInOrder() {
+        int source = journal.registerSource("Light 1");
+        journal.record(EventJournal.Type.SILENCE);
+        journal.record(EventJournal.Type.LIGHT_UPDATE_DISCARDED, source, 300);
+        journal.record(EventJournal.Type.BEAT, 0, 0.5, 0.25, 0.1, 0.2);
+
+        List<EventJournal.Type> types = new ArrayList<>();
+        List<String> sources = new ArrayList<>();
+        List<Double> firstValues = new ArrayList<>();
+        int drained = journal.drain((timestamp, type, sourceName, values) -> {
+            types.add(type);
+            sources.add(sourceName);
+            firstValues.add(values[0]);
+        });
+
+        assertEquals(3, drained);
+        assertEquals(List.of(EventJournal.Type.SILENCE, EventJournal.Type.LIGHT_UPDATE_DISCARDED, EventJournal.Type.BEAT), types);
+        assertEquals(List.of("", "Light 1", ""), sources);
+        assertTrue(Double.isNaN(firstValues.get(0)));
+        assertEquals(300d, (double) firstValues.get(1));
+        assertEquals(0.5d, (double) firstValues.get(2));
+
+        assertEquals(0, journal.drain((timestamp, type, sourceName, values) -> fail("No records expected")));
+    }
+
+    @Test
+    void registerSourceTwice() {
+        int first = journal.registerSource("Light 1");
+        assertNotEquals(first, journal.registerSource("Light 2"));
+        assertEquals(first, journal.registerSource("Light 1"));
+    }
+
+    @Test
+    void concurrentRegistrationsGetDistinctIds() throws InterruptedException {
+        int threads = 8;
+        int sourcesPerThread = 200;
+        int[][] ids = new int[threads][sourcesPerThread];
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < sourcesPerThread; i++) {
+                    ids[thread][i] = journal.registerSource("Source " + thread + "-" + i);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        Set<Integer> distinctIds = new HashSet<>();
+        for (int[] threadIds : ids) {
+            for (int id : threadIds) {
+                assertTrue(distinctIds.add(id), "Source id " + id + " was returned twice");
+            }
+        }
+        for (int t = 0; t < threads; t++) {
+            assertEquals(ids[t][0], journal.registerSource("Source " + t + "-0"));
+        }
+    }
+
+    @Test
+    void overflowCountsLostRecords() {
+        for (int i = 0; i < CAPACITY + 5; i++) {
+            journal.record(EventJournal.Type.NO_BEAT, 0, i);
+        }
+
+        List<Double> values = new ArrayList<>();
+        int drained = journal.drain((timestamp, type, source, recordValues) -> values.add(recordValues[0]));
+
+        assertEquals(CAPACITY, drained);
+        assertEquals(5, journal.getLostRecords());
+        assertEquals(5d, (double) values.getFirst());
+        assertEquals(CAPACITY + 4d, (double) values.getLast());
+    }
+
+    @Test
+    void concurrentProducers() throws InterruptedException {
+        EventJournal journal = new EventJournal(1 << 12);
+        int producers = 4;
+        int recordsPerProducer = 500;
+
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < producers; p++) {
+            int source = journal.registerSource("Producer " + p);
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < recordsPerProducer; i++) {
+                    journal.record(EventJournal.Type.LIGHT_UPDATED, source, i, i, i, i, i, i);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        int drained = journal.drain((timestamp, type, source, values) -> {
+            for (double value : values) {
+                assertEquals(values[0], value);
+            }
+        });
+        assertEquals(producers * recordsPerProducer, drained);
+        assertEquals(0, journal.getLostRecords());
+    }
+
+    @Test
+    void format() {
+        double[] values = {2, 254, Double.NaN, Double.NaN, 0, 1};
+        String formatted = EventJournal.Type.LIGHT_UPDATED.format("Light 1", values);
+        assertEquals("Updated light Light 1 (time 2 | bri 254 | color null | alert false | on true)", formatted);
+    }
+
+    @Test
+    void formatPackedColor() {
+        double[] hueSat = {0, 100, EventJournal.COLOR_HUE_SAT, EventJournal.packHueSat(65535, 254), 0, Double.NaN};
+        assertEquals("Updated light Light 1 (time 0 | bri 100 | color hue/sat 65535/254 | alert false | on null)",
+                EventJournal.Type.LIGHT_UPDATED.format("Light 1", hueSat));
+
+        double[] xy = {0, 100, EventJournal.COLOR_XY, EventJournal.packXy(0.6915, 0.3083), 1, 1};
+        assertEquals("Updated light Light 1 (time 0 | bri 100 | color x/y 0.6915/0.3083 | alert true | on true)",
+                EventJournal.Type.LIGHT_UPDATED.format("Light 1", xy));
+
+        double[] ct = {0, 100, EventJournal.COLOR_CT, 366, 0, 0};
+        assertEquals("Updated light Light 1 (time 0 | bri 100 | color ct 366 | alert false | on false)",
+                EventJournal.Type.LIGHT_UPDATED.format("Light 1", ct));
+    }
+}
@@ -0,0 +1,51 @@
+package pw.wunderlich.lightbeat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+
+    @Test
+    void emptySnapshot() {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0L, snapshot.count());
+        assertEquals(0d, snapshot.meanMillis());
+        assertEquals(0d, snapshot.p99Millis());
+        assertEquals(0d, snapshot.maxMillis());
+    }
+
+    @Test
+    void percentilesAreWithinFactorOfTwo() {
+        for (int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(1L));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(100L));
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100L, snapshot.count());
+        assertEquals(1.99d, snapshot.meanMillis(), 0.001d);
+        assertTrue(snapshot.p50Millis() >= 1d && snapshot.p50Millis() <= 2d, "p50 was " + snapshot.p50Millis());
+        assertTrue(snapshot.p99Millis() >= 1d && snapshot.p99Millis() <= 2d, "p99 was " + snapshot.p99Millis());
+        assertEquals(100d, snapshot.maxMillis(), 0.001d);
+    }
+
+    @Test
+    void percentileDoesNotExceedMax() {
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(1500L));
+        assertEquals(1.5d, histogram.snapshot().p99Millis(), 0.001d);
+    }
+
+    @Test
+    void negativeDurationsAreRecordedAsZero() {
+        histogram.record(-5000L);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1L, snapshot.count());
+        assertEquals(0d, snapshot.maxMillis());
+    }
+}
@@ -0,0 +1,140 @@
+package pw.wunderlich.lightbeat.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerWheelTest {
+
+    private ExecutorService executor;
+    private TimerWheel timerWheel;
+
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newCachedThreadPool();
+        // small wheel, so that delays span multiple rotations
+        timerWheel = new TimerWheel(executor, 16);
+    }
+
+    @AfterEach
+    void tearDown() {
+        timerWheel.stop();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void taskRunsAfterDelay() throws Exception {
+        long start = System.nanoTime();
+        ScheduledFuture<?> future = timerWheel.schedule(() -> {}, 50L, TimeUnit.MILLISECONDS);
+        future.get(5L, TimeUnit.SECONDS);
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis >= 50L, "Fired early after " + elapsedMillis + "ms");
+        assertTrue(future.isDone());
+        assertEquals(0, timerWheel.getScheduledCount());
+    }
+
+    @Test
+    void tasksRunInDeadlineOrder() throws Exception {
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        List<ScheduledFuture<?>> futures = new ArrayList<>();
+        for (int i = 5; i > 0; i--) {
+            int index = i;
+            futures.add(timerWheel.schedule(() -> order.add(index), i * 20L, TimeUnit.MILLISECONDS));
+        }
+        for (ScheduledFuture<?> future : futures) {
+            future.get(5L, TimeUnit.SECONDS);
+        }
+        assertEquals(List.of(1, 2, 3, 4, 5), order);
+    }
+
+    @Test
+    void cancelledTaskDoesNotRunAndIsRemoved() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        List<ScheduledFuture<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(timerWheel.schedule(runs::incrementAndGet, 100L, TimeUnit.MILLISECONDS));
+        }
+        futures.forEach(future -> assertTrue(future.cancel(false)));
+
+        // removed on the next ticks, long before their deadline
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50L);
+        while (timerWheel.getScheduledCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1L);
+        }
+        assertEquals(0, timerWheel.getScheduledCount());
+
+        Thread.sleep(150L);
+        assertEquals(0, runs.get());
+        assertTrue(futures.get(0).isCancelled());
+    }
+
+    @Test
+    void periodicTaskRunsUntilCancelled() throws Exception {
+        CountDownLatch latch = new CountDownLatch(5);
+        ScheduledFuture<?> future = timerWheel.scheduleAtFixedRate(latch::countDown, 0L, 10L, TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(5L, TimeUnit.SECONDS));
+        assertFalse(future.isDone());
+
+        future.cancel(false);
+        assertTrue(future.isDone());
+        Thread.sleep(50L);
+        assertEquals(0, timerWheel.getScheduledCount());
+    }
+
+    @Test
+    void stopCancelsRemainingTasks() {
+        ScheduledFuture<?> future = timerWheel.schedule(() -> {}, 10L, TimeUnit.SECONDS);
+        timerWheel.stop();
+        assertThrows(CancellationException.class, () -> future.get(5L, TimeUnit.SECONDS));
+        assertThrows(RejectedExecutionException.class, () -> timerWheel.schedule(() -> {}, 1L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void delayIsReported() {
+        ScheduledFuture<?> future = timerWheel.schedule(() -> {}, 10L, TimeUnit.SECONDS);
+        long delay = future.getDelay(TimeUnit.MILLISECONDS);
+        assertTrue(delay > 9000L && delay <= 10000L, "Delay was " + delay);
+        future.cancel(false);
+    }
+
+    @Test
+    void wheelParksUntilDeadline() throws Exception {
+        Thread.sleep(20L);
+        long idleWakeups = timerWheel.getWakeups();
+        Thread.sleep(100L);
+        assertEquals(idleWakeups, timerWheel.getWakeups(), "Empty wheel woke up");
+
+        ScheduledFuture<?> future = timerWheel.schedule(() -> {}, 300L, TimeUnit.MILLISECONDS);
+        Thread.sleep(200L);
+        // woken up to link the timeout, not once per tick until its deadline
+        assertTrue(timerWheel.getWakeups() - idleWakeups <= 3L, "Woke up " + (timerWheel.getWakeups() - idleWakeups) + " times");
+        future.get(5L, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void earlierTaskWakesParkedWheel() throws Exception {
+        ScheduledFuture<?> laterFuture = timerWheel.schedule(() -> {}, 10L, TimeUnit.SECONDS);
+        Thread.sleep(20L);
+
+        long start = System.nanoTime();
+        timerWheel.schedule(() -> {}, 20L, TimeUnit.MILLISECONDS).get(5L, TimeUnit.SECONDS);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis < 1000L, "Fired after " + elapsedMillis + "ms");
+        assertFalse(laterFuture.isDone());
+        laterFuture.cancel(false);
+    }
+
+    @Test
+    void wheelSizeMustBePowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new TimerWheel(executor, 100));
+    }
+}
@@ -0,0 +1,108 @@
+package pw.wunderlich.lightbeat.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualClockTest {
+
+    private VirtualClock clock;
+
+
+    @BeforeEach
+    void setUp() {
+        clock = new VirtualClock(1000L);
+    }
+
+    @Test
+    void timeOnlyMovesWhenAdvanced() {
+        assertEquals(1000L, clock.currentTimeMillis());
+        assertEquals(1000L * 1_000_000L, clock.nanoTime());
+
+        clock.advance(250L, TimeUnit.MILLISECONDS);
+        assertEquals(1250L, clock.currentTimeMillis());
+        assertThrows(IllegalArgumentException.class, () -> clock.advance(-1L, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void tasksRunInDeadlineOrderAtTheirDeadline() {
+        List<String> runs = new ArrayList<>();
+        clock.schedule(() -> runs.add("b@" + clock.currentTimeMillis()), 20L, TimeUnit.MILLISECONDS);
+        clock.schedule(() -> runs.add("a@" + clock.currentTimeMillis()), 10L, TimeUnit.MILLISECONDS);
+        clock.schedule(() -> runs.add("c@" + clock.currentTimeMillis()), 20L, TimeUnit.MILLISECONDS);
+
+        assertEquals(0, clock.advance(9L, TimeUnit.MILLISECONDS));
+        assertEquals(3, clock.advance(1L, TimeUnit.SECONDS));
+        assertEquals(List.of("a@1010", "b@1020", "c@1020"), runs);
+        assertEquals(2009L, clock.currentTimeMillis());
+    }
+
+    @Test
+    void tasksAddedByTasksRunDuringSameAdvance() {
+        List<Long> runs = new ArrayList<>();
+        clock.schedule(() -> {
+            runs.add(clock.currentTimeMillis());
+            clock.getExecutor().execute(() -> runs.add(clock.currentTimeMillis()));
+            clock.schedule(() -> runs.add(clock.currentTimeMillis()), 5L, TimeUnit.MILLISECONDS);
+        }, 10L, TimeUnit.MILLISECONDS);
+
+        clock.advance(20L, TimeUnit.MILLISECONDS);
+        assertEquals(List.of(1010L, 1010L, 1015L), runs);
+    }
+
+    @Test
+    void executorRunsOnRunPending() throws Exception {
+        var future = clock.getExecutor().submit(() -> 42);
+        assertFalse(future.isDone());
+
+        assertEquals(1, clock.runPending());
+        assertEquals(Integer.valueOf(42), future.get());
+        assertEquals(1000L, clock.currentTimeMillis());
+    }
+
+    @Test
+    void periodicTasksKeepTheirRateForAnHour() {
+        List<Long> runs = new ArrayList<>();
+        clock.scheduleAtFixedRate(() -> runs.add(clock.currentTimeMillis()), 100L, 500L, TimeUnit.MILLISECONDS);
+
+        clock.advance(1L, TimeUnit.HOURS);
+        assertEquals(7200, runs.size());
+        for (int i = 0; i < runs.size(); i++) {
+            assertEquals(1100L + i * 500L, (long) runs.get(i));
+        }
+        assertEquals(1, clock.getScheduledCount());
+    }
+
+    @Test
+    void cancelledTasksDontRun() {
+        List<Integer> runs = new ArrayList<>();
+        ScheduledFuture<?> cancelled = clock.schedule(() -> runs.add(1), 10L, TimeUnit.MILLISECONDS);
+        clock.schedule(() -> runs.add(2), 10L, TimeUnit.MILLISECONDS);
+        assertEquals(2, clock.getScheduledCount());
+
+        assertTrue(cancelled.cancel(false));
+        assertEquals(1, clock.getScheduledCount());
+
+        clock.advance(10L, TimeUnit.MILLISECONDS);
+        assertEquals(List.of(2), runs);
+        assertEquals(0, clock.getScheduledCount());
+    }
+
+    @Test
+    void stopCancelsRemainingTasks() {
+        ScheduledFuture<?> future = clock.schedule(() -> fail("cancelled task ran"), 10L, TimeUnit.MILLISECONDS);
+
+        clock.stop();
+        assertTrue(clock.isStopped());
+        assertTrue(future.isCancelled());
+        assertEquals(0, clock.advance(1L, TimeUnit.SECONDS));
+        assertThrows(RejectedExecutionException.class, () -> clock.schedule(() -> {}, 1L, TimeUnit.MILLISECONDS));
+    }
+}